@@ -19,8 +19,13 @@
 
 package org.jasig.schedassist.impl.oraclecalendar;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import org.apache.commons.lang.StringUtils;
 import org.jasig.schedassist.model.AbstractCalendarAccount;
@@ -45,6 +50,11 @@ public abstract class AbstractOracleCalendarAccount extends AbstractCalendarAcco
 	private String surname;
 	private String oracleGuid;
 	private Map<String, String> attributesMap = new HashMap<String, String>();
+	private transient volatile OracleAttendeeIdentity attendeeIdentity;
+	private transient volatile String [] calendarUniqueIdParts;
+	private volatile boolean oracleGuidDeferred;
+	private transient volatile DeferredOracleGUIDResolver deferredGuidResolver;
+	private transient FutureTask<OracleGUIDLookupResult> pendingGuidLookup;
 	
 	/**
 	 * 
@@ -64,9 +74,16 @@ public abstract class AbstractOracleCalendarAccount extends AbstractCalendarAcco
 	 */
 	@Override
 	public final String getAttributeValue(String attributeName) {
+		if(ORACLE_GUID_ATTRIBUTE.equals(attributeName)) {
+			resolveDeferredOracleGuid();
+		}
 		return this.attributesMap.get(attributeName);
 	}
-	/*
+	/**
+	 * Note the {@link #ORACLE_GUID_ATTRIBUTE} entry is absent from the returned map while the 
+	 * GUID is deferred (see {@link #isOracleGuidDeferred()}); use {@link #getAttributeValue(String)}
+	 * or {@link #getOracleGuid()} to read it.
+	 * 
 	 * (non-Javadoc)
 	 * @see org.jasig.schedassist.model.AbstractCalendarAccount#getAttributes()
 	 */
@@ -91,6 +108,7 @@ public abstract class AbstractOracleCalendarAccount extends AbstractCalendarAcco
 	 */
 	public final void setCtcalxitemid(String ctcalxitemid) {
 		this.ctcalxitemid = ctcalxitemid;
+		this.calendarUniqueIdParts = null;
 	}
 	/**
 	 * @return the givenName
@@ -103,6 +121,7 @@ public abstract class AbstractOracleCalendarAccount extends AbstractCalendarAcco
 	 */
 	public final void setGivenName(String givenName) {
 		this.givenName = givenName;
+		invalidateAttendeeIdentity();
 	}
 	
 	
@@ -125,6 +144,7 @@ public abstract class AbstractOracleCalendarAccount extends AbstractCalendarAcco
 	 */
 	public final void setSurname(String surname) {
 		this.surname = surname;
+		invalidateAttendeeIdentity();
 	}
 	
 	/**
@@ -160,13 +180,26 @@ public abstract class AbstractOracleCalendarAccount extends AbstractCalendarAcco
 	 * @return the node Id.
 	 */
 	public final String getCalendarNodeId() {
-		return getCalendarUniqueId().split(DELIM)[0];
+		return getCalendarUniqueIdParts()[0];
 	}
 	/**
 	 * @return the calendar Id
 	 */
 	public final String getCalendarId() {
-		return getCalendarUniqueId().split(DELIM)[1];
+		return getCalendarUniqueIdParts()[1];
+	}
+	/**
+	 * The ctcalxitemid is split on first use and kept until it changes.
+	 * 
+	 * @return the node id and calendar id
+	 */
+	private String [] getCalendarUniqueIdParts() {
+		String [] parts = this.calendarUniqueIdParts;
+		if(parts == null) {
+			parts = getCalendarUniqueId().split(DELIM);
+			this.calendarUniqueIdParts = parts;
+		}
+		return parts;
 	}
 
 	/*
@@ -210,33 +243,228 @@ public abstract class AbstractOracleCalendarAccount extends AbstractCalendarAcco
 	
 
 	/**
-	 * @return the oracleGuid
+	 * If the GUID was deferred by a {@link DeferredOracleGUIDResolver}, the first call resolves it.
+	 * 
+	 * @return the oracleGuid; null while a failed lookup leaves the GUID deferred
 	 */
 	public final String getOracleGuid() {
+		resolveDeferredOracleGuid();
 		return oracleGuid;
 	}
 	/**
+	 * Replaces any deferred GUID.
+	 * 
 	 * @param oracleGuid the oracleGuid to set
 	 */
 	public final void setOracleGuid(String oracleGuid) {
+		this.oracleGuidDeferred = false;
+		this.deferredGuidResolver = null;
 		this.oracleGuid = oracleGuid;
 		this.attributesMap.put(ORACLE_GUID_ATTRIBUTE, oracleGuid);
+		invalidateAttendeeIdentity();
 	}
-	/* (non-Javadoc)
+	/**
+	 * 
+	 * @return true if the GUID has been deferred and not yet resolved
+	 */
+	public final boolean isOracleGuidDeferred() {
+		return this.oracleGuidDeferred;
+	}
+	/**
+	 * Called by {@link DeferredOracleGUIDResolver#defer(AbstractOracleCalendarAccount)}.
+	 * 
+	 * @param resolver may be null if the deferral is transferred from an account that has none
+	 */
+	final void deferOracleGuid(DeferredOracleGUIDResolver resolver) {
+		this.deferredGuidResolver = resolver;
+		this.oracleGuidDeferred = true;
+	}
+	/**
+	 * 
+	 * @param resolver
+	 * @return true if the GUID is deferred to the specified resolver, or is deferred to no resolver
+	 */
+	final boolean isOracleGuidDeferredTo(DeferredOracleGUIDResolver resolver) {
+		if(!this.oracleGuidDeferred) {
+			return false;
+		}
+		DeferredOracleGUIDResolver current = this.deferredGuidResolver;
+		return current == null || current == resolver;
+	}
+	/**
+	 * 
+	 * @return the resolver the GUID is deferred to, or null if it is not deferred (or deferred to no resolver)
+	 */
+	final DeferredOracleGUIDResolver getOracleGuidResolver() {
+		return this.deferredGuidResolver;
+	}
+	/**
+	 * 
+	 * @return the GUID if it has been set or resolved, without resolving a deferred GUID
+	 */
+	final String getResolvedOracleGuid() {
+		return this.oracleGuid;
+	}
+	/**
+	 * Complete a deferral with a GUID resolved elsewhere (e.g. in a batch).
+	 * 
+	 * @param resolver
+	 * @param guid
+	 * @return true if the GUID was still deferred to the resolver and has now been set
+	 */
+	final synchronized boolean completeDeferredOracleGuid(DeferredOracleGUIDResolver resolver, String guid) {
+		if(!isOracleGuidDeferredTo(resolver)) {
+			return false;
+		}
+		setOracleGuid(guid);
+		return true;
+	}
+	/**
+	 * Complete a deferral with a GUID resolved on a {@link oracle.calendar.sdk.Session} the caller already holds.
+	 * 
+	 * @param guid
+	 * @return true if the GUID was still deferred and has now been set
+	 */
+	final synchronized boolean completeDeferredOracleGuid(String guid) {
+		if(!this.oracleGuidDeferred) {
+			return false;
+		}
+		setOracleGuid(guid);
+		return true;
+	}
+	/**
+	 * Resolve the GUID if it is still deferred; at most one thread performs the lookup, and other callers wait for its result.
+	 * The lookup runs outside of this account's monitor, so it does not block {@link #completeDeferredOracleGuid(String)}.
+	 * A lookup that fails with a transient error leaves the GUID deferred.
+	 */
+	private void resolveDeferredOracleGuid() {
+		if(!this.oracleGuidDeferred) {
+			return;
+		}
+		FutureTask<OracleGUIDLookupResult> lookup;
+		boolean owner = false;
+		synchronized (this) {
+			if(!this.oracleGuidDeferred) {
+				return;
+			}
+			lookup = this.pendingGuidLookup;
+			if(lookup == null) {
+				DeferredOracleGUIDResolver resolver = this.deferredGuidResolver;
+				if(resolver == null) {
+					resolver = DeferredOracleGUIDResolver.getDeserializedAccountResolver();
+					if(resolver == null) {
+						return;
+					}
+					this.deferredGuidResolver = resolver;
+				}
+				lookup = new FutureTask<OracleGUIDLookupResult>(new DeferredGuidLookup(resolver));
+				this.pendingGuidLookup = lookup;
+				owner = true;
+			}
+		}
+		if(owner) {
+			try {
+				lookup.run();
+			} finally {
+				synchronized (this) {
+					if(this.pendingGuidLookup == lookup) {
+						this.pendingGuidLookup = null;
+					}
+				}
+			}
+		}
+		try {
+			lookup.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if(cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException("deferred oracle GUID lookup failed", cause);
+		}
+	}
+	/**
+	 * Performs the lookup for {@link #resolveDeferredOracleGuid()} and completes the deferral with its result.
+	 */
+	private class DeferredGuidLookup implements Callable<OracleGUIDLookupResult> {
+		private final DeferredOracleGUIDResolver resolver;
+		DeferredGuidLookup(DeferredOracleGUIDResolver resolver) {
+			this.resolver = resolver;
+		}
+		/*
+		 * (non-Javadoc)
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		@Override
+		public OracleGUIDLookupResult call() {
+			OracleGUIDLookupResult result = resolver.resolve(AbstractOracleCalendarAccount.this);
+			if(result.getOutcome() != OracleGUIDLookupResult.Outcome.ERROR) {
+				completeDeferredOracleGuid(resolver, result.getGuid());
+			}
+			return result;
+		}
+	}
+	/**
+	 * Only the fact that the GUID is deferred is serialized; reattach a deferred GUID to the resolver for deserialized accounts.
+	 * 
+	 * @param in
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if(this.oracleGuidDeferred) {
+			this.deferredGuidResolver = DeferredOracleGUIDResolver.getDeserializedAccountResolver();
+		}
+	}
+	
+	/**
+	 * The identity is computed on first use and kept until a field it depends on changes.
+	 * 
+	 * @return the {@link OracleAttendeeIdentity} for this account, or null if the account has no email address
+	 */
+	public final OracleAttendeeIdentity getAttendeeIdentity() {
+		final String emailAddress = getEmailAddress();
+		if(null == emailAddress) {
+			return null;
+		}
+		OracleAttendeeIdentity identity = this.attendeeIdentity;
+		// the email address is held by the superclass, so verify it hasn't been replaced
+		if(identity == null || !emailAddress.equals(identity.getEmailAddress())) {
+			identity = new OracleAttendeeIdentity(emailAddress, getDisplayName());
+			this.attendeeIdentity = identity;
+		}
+		return identity;
+	}
+	/**
+	 * Discard the cached {@link OracleAttendeeIdentity}; subclasses must call this
+	 * when a field used by {@link #getDisplayName()} or {@link #getEmailAddress()} changes.
+	 */
+	protected final void invalidateAttendeeIdentity() {
+		this.attendeeIdentity = null;
+	}
+	/**
+	 * The Oracle GUID, and its entry in the attributes, is excluded from {@link #hashCode()} and 
+	 * {@link #equals(Object)}: it is determined by the ctcalxitemid, and is absent while deferred, 
+	 * so an account with a deferred GUID equals its resolved copy.
+	 * 
+	 * (non-Javadoc)
 	 * @see java.lang.Object#hashCode()
 	 */
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = super.hashCode();
-		result = prime * result
-				+ ((attributesMap == null) ? 0 : attributesMap.hashCode());
+		result = prime * result + hashAttributes(attributesMap);
 		result = prime * result
 				+ ((ctcalxitemid == null) ? 0 : ctcalxitemid.hashCode());
 		result = prime * result
 				+ ((givenName == null) ? 0 : givenName.hashCode());
-		result = prime * result
-				+ ((oracleGuid == null) ? 0 : oracleGuid.hashCode());
 		result = prime * result + ((surname == null) ? 0 : surname.hashCode());
 		return result;
 	}
@@ -255,11 +483,7 @@ public abstract class AbstractOracleCalendarAccount extends AbstractCalendarAcco
 			return false;
 		}
 		AbstractOracleCalendarAccount other = (AbstractOracleCalendarAccount) obj;
-		if (attributesMap == null) {
-			if (other.attributesMap != null) {
-				return false;
-			}
-		} else if (!attributesMap.equals(other.attributesMap)) {
+		if (!equalAttributes(attributesMap, other.attributesMap)) {
 			return false;
 		}
 		if (ctcalxitemid == null) {
@@ -276,13 +500,6 @@ public abstract class AbstractOracleCalendarAccount extends AbstractCalendarAcco
 		} else if (!givenName.equals(other.givenName)) {
 			return false;
 		}
-		if (oracleGuid == null) {
-			if (other.oracleGuid != null) {
-				return false;
-			}
-		} else if (!oracleGuid.equals(other.oracleGuid)) {
-			return false;
-		}
 		if (surname == null) {
 			if (other.surname != null) {
 				return false;
@@ -292,6 +509,51 @@ public abstract class AbstractOracleCalendarAccount extends AbstractCalendarAcco
 		}
 		return true;
 	}
+	/**
+	 * 
+	 * @param attributes
+	 * @return the hash of the attributes as {@link Map#hashCode()}, without the {@link #ORACLE_GUID_ATTRIBUTE} entry
+	 */
+	private static int hashAttributes(Map<String, String> attributes) {
+		if(attributes == null) {
+			return 0;
+		}
+		int result = 0;
+		for(Map.Entry<String, String> entry : attributes.entrySet()) {
+			if(!ORACLE_GUID_ATTRIBUTE.equals(entry.getKey())) {
+				result += entry.hashCode();
+			}
+		}
+		return result;
+	}
+	/**
+	 * 
+	 * @param attributes
+	 * @param otherAttributes
+	 * @return true if the maps are equal, ignoring the {@link #ORACLE_GUID_ATTRIBUTE} entry
+	 */
+	private static boolean equalAttributes(Map<String, String> attributes, Map<String, String> otherAttributes) {
+		if(attributes == null || otherAttributes == null) {
+			return attributes == otherAttributes;
+		}
+		int size = 0;
+		for(Map.Entry<String, String> entry : attributes.entrySet()) {
+			String key = entry.getKey();
+			if(ORACLE_GUID_ATTRIBUTE.equals(key)) {
+				continue;
+			}
+			size++;
+			String value = entry.getValue();
+			if(value == null ? (otherAttributes.get(key) != null || !otherAttributes.containsKey(key)) : !value.equals(otherAttributes.get(key))) {
+				return false;
+			}
+		}
+		int otherSize = otherAttributes.size();
+		if(otherAttributes.containsKey(ORACLE_GUID_ATTRIBUTE)) {
+			otherSize--;
+		}
+		return size == otherSize;
+	}
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
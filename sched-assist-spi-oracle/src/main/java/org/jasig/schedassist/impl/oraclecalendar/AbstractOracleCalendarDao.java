@@ -25,8 +25,16 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import net.fortuna.ical4j.data.CalendarBuilder;
 import net.fortuna.ical4j.data.ParserException;
@@ -60,9 +68,14 @@ import org.jasig.schedassist.SchedulingException;
 import org.jasig.schedassist.impl.events.AutomaticAppointmentCancellationEvent;
 import org.jasig.schedassist.impl.events.AutomaticAppointmentCancellationEvent.Reason;
 import org.jasig.schedassist.impl.events.AutomaticAttendeeRemovalEvent;
+import org.jasig.schedassist.impl.oraclecalendar.OracleCalendarOperationMetrics.Phase;
+import org.jasig.schedassist.impl.oraclecalendar.OracleCalendarRetryPolicy.ReadBack;
+import org.jasig.schedassist.impl.oraclecalendar.OracleCalendarRetryPolicy.RetryableOperation;
+import org.jasig.schedassist.impl.oraclecalendar.OracleCalendarStatusClassifier.StatusClass;
 import org.jasig.schedassist.model.AppointmentRole;
 import org.jasig.schedassist.model.AvailabilityReflection;
 import org.jasig.schedassist.model.AvailableBlock;
+import org.jasig.schedassist.model.AvailableBlockBuilder;
 import org.jasig.schedassist.model.AvailableSchedule;
 import org.jasig.schedassist.model.AvailableVersion;
 import org.jasig.schedassist.model.CommonDateOperations;
@@ -97,6 +110,7 @@ public abstract class AbstractOracleCalendarDao extends
 	 * A String containing a "CRLF" (carriage-return, line-feed)
 	 */
 	private static final String CRLF = new String(new byte [] { 0x0D, 0x0A });
+	private static final long MILLISECONDS_PER_DAY = 24L * 60L * 60L * 1000L;
 	static {
 		CompatibilityHints.setHintEnabled(CompatibilityHints.KEY_RELAXED_PARSING, true);
 	}
@@ -107,6 +121,19 @@ public abstract class AbstractOracleCalendarDao extends
 	private OracleEventUtilsImpl oracleEventUtils = new OracleEventUtilsImpl(new NullAffiliationSourceImpl());
 	private OracleGUIDSource oracleGUIDSource;
 	private ApplicationEventPublisher applicationEventPublisher;
+	private OracleCalendarNodeBulkhead nodeBulkhead;
+	private OracleCalendarAgendaCoalescer agendaCoalescer;
+	private ExecutorService chunkFetchExecutor;
+	private int agendaChunkSizeDays = 7;
+	private int maxParallelChunksPerRequest = 4;
+	private OracleCalendarNodeAvailability nodeAvailability;
+	private OracleCalendarAgendaSnapshotStore agendaSnapshotStore;
+	private boolean useAppointmentWriter = true;
+	private OracleCalendarBusyBitmapCache busyBitmapCache;
+	private volatile OracleAvailableAppointmentWriter appointmentWriter;
+	private OracleCalendarOperationMetrics operationMetrics;
+	private OracleCalendarStatusClassifier statusClassifier = new OracleCalendarStatusClassifier();
+	private OracleCalendarRetryPolicy retryPolicy;
 	
 	/**
 	 * @param serverNodes the serverNodes to set
@@ -121,6 +148,7 @@ public abstract class AbstractOracleCalendarDao extends
 	@Autowired
 	public void setOracleEventUtils(OracleEventUtilsImpl oracleEventUtils) {
 		this.oracleEventUtils = oracleEventUtils;
+		this.appointmentWriter = null;
 	}
 	/**
 	 * @param oracleGUIDSource the oracleGUIDSource to set
@@ -137,9 +165,126 @@ public abstract class AbstractOracleCalendarDao extends
 			ApplicationEventPublisher applicationEventPublisher) {
 		this.applicationEventPublisher = applicationEventPublisher;
 	}
+	/**
+	 * Optional; if set, every {@link Session} obtained through this DAO requires a permit
+	 * from the bulkhead for the account's {@link OracleCalendarServerNode}.
+	 * 
+	 * @param nodeBulkhead the nodeBulkhead to set
+	 */
+	public void setNodeBulkhead(OracleCalendarNodeBulkhead nodeBulkhead) {
+		this.nodeBulkhead = nodeBulkhead;
+	}
+	/**
+	 * Optional; if set, concurrent identical {@link #getCalendar(ICalendarAccount, Date, Date)} calls
+	 * share a single fetch.
+	 * 
+	 * @param agendaCoalescer the agendaCoalescer to set
+	 */
+	public void setAgendaCoalescer(OracleCalendarAgendaCoalescer agendaCoalescer) {
+		this.agendaCoalescer = agendaCoalescer;
+	}
+	/**
+	 * Optional; if set, the chunks of a long agenda range are fetched in parallel on this
+	 * {@link ExecutorService}, each on its own {@link Session}. If not set, chunks are fetched 
+	 * one after another on a single {@link Session}.
+	 * 
+	 * @param chunkFetchExecutor the chunkFetchExecutor to set
+	 */
+	public void setChunkFetchExecutor(ExecutorService chunkFetchExecutor) {
+		this.chunkFetchExecutor = chunkFetchExecutor;
+	}
+	/**
+	 * Ranges longer than this number of days are fetched in chunks of this size. 
+	 * A value less than 1 disables chunking. Default is 7.
+	 * 
+	 * @param agendaChunkSizeDays the agendaChunkSizeDays to set
+	 */
+	public void setAgendaChunkSizeDays(int agendaChunkSizeDays) {
+		this.agendaChunkSizeDays = agendaChunkSizeDays;
+	}
+	/**
+	 * The maximum number of chunks of a single request fetched at the same time; this bounds
+	 * the number of raw agenda strings a request holds in memory. Default is 4.
+	 * 
+	 * @param maxParallelChunksPerRequest the maxParallelChunksPerRequest to set
+	 */
+	public void setMaxParallelChunksPerRequest(int maxParallelChunksPerRequest) {
+		this.maxParallelChunksPerRequest = maxParallelChunksPerRequest;
+	}
+	/**
+	 * Optional; if set, nodes that report themselves unavailable are tracked and writes
+	 * against them are refused until the node recovers.
+	 * 
+	 * @param nodeAvailability the nodeAvailability to set
+	 */
+	public void setNodeAvailability(OracleCalendarNodeAvailability nodeAvailability) {
+		this.nodeAvailability = nodeAvailability;
+	}
+	/**
+	 * Optional; if set, the last agenda retrieved for each account is kept and served 
+	 * (marked stale) by {@link #getCalendar(ICalendarAccount, Date, Date)} while the account's node is unavailable.
+	 * 
+	 * @param agendaSnapshotStore the agendaSnapshotStore to set
+	 */
+	public void setAgendaSnapshotStore(
+			OracleCalendarAgendaSnapshotStore agendaSnapshotStore) {
+		this.agendaSnapshotStore = agendaSnapshotStore;
+	}
+	/**
+	 * If true (the default), {@link #createAppointment(IScheduleVisitor, IScheduleOwner, AvailableBlock, String)}
+	 * writes the iCalendar text sent to Oracle with an {@link OracleAvailableAppointmentWriter} rather than
+	 * serializing the event.
+	 * 
+	 * @param useAppointmentWriter the useAppointmentWriter to set
+	 */
+	public void setUseAppointmentWriter(boolean useAppointmentWriter) {
+		this.useAppointmentWriter = useAppointmentWriter;
+	}
+	/**
+	 * Optional; if set, {@link #checkForConflicts(IScheduleOwner, AvailableBlock)} tests the owner's 
+	 * cached busy bitmaps and fetches the agenda only for days without a current bitmap.
+	 * 
+	 * @param busyBitmapCache the busyBitmapCache to set
+	 */
+	public void setBusyBitmapCache(OracleCalendarBusyBitmapCache busyBitmapCache) {
+		this.busyBitmapCache = busyBitmapCache;
+	}
+	/**
+	 * Optional; if set, the latency (by node and by {@link Phase}) and outcome of every 
+	 * {@link ICalendarDataDao} operation is recorded.
+	 * 
+	 * @param operationMetrics the operationMetrics to set
+	 */
+	public void setOperationMetrics(OracleCalendarOperationMetrics operationMetrics) {
+		this.operationMetrics = operationMetrics;
+	}
+	/**
+	 * Decides, from the status of each {@link Api.StatusException}, whether the {@link Session} is discarded 
+	 * and the node marked unavailable; also counts the statuses and rate limits their stack traces.
+	 * Defaults to an {@link OracleCalendarStatusClassifier} with the default configuration.
+	 * 
+	 * @param statusClassifier the statusClassifier to set
+	 */
+	public void setStatusClassifier(OracleCalendarStatusClassifier statusClassifier) {
+		this.statusClassifier = statusClassifier;
+	}
+	/**
+	 * Optional; if set, operations that fail with a {@link StatusClass#TRANSIENT} status are retried on a fresh
+	 * {@link Session}: reads ({@link #getCalendar(ICalendarAccount, Date, Date)} and 
+	 * {@link #getExistingAppointment(IScheduleOwner, AvailableBlock)}) always, and
+	 * {@link #createAppointment(IScheduleVisitor, IScheduleOwner, AvailableBlock, String)} and
+	 * {@link #cancelAppointment(IScheduleVisitor, IScheduleOwner, VEvent)} only when reading the
+	 * owner's schedule back shows the failed attempt had no effect.
+	 * 
+	 * @param retryPolicy the retryPolicy to set
+	 */
+	public void setRetryPolicy(OracleCalendarRetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
 	/**
 	 * Get a {@link Session} for the specified account.
-	 * Implementations must call {@link Session#setIdentity(int, String)} appropriately.
+	 * Implementations must switch the identity of the {@link Session} to the account, preferably
+	 * with {@link #setIdentity(Session, ICalendarAccount)} so the time taken is recorded.
 	 * @param calendarAccount
 	 * @return
 	 */
@@ -155,6 +300,314 @@ public abstract class AbstractOracleCalendarDao extends
 	 */
 	protected abstract void doneWithSession(Session session, OracleCalendarServerNode serverNode, boolean invalidate);
 	
+	/**
+	 * Obtain a permit from the {@link OracleCalendarNodeBulkhead} (if configured) and then
+	 * a {@link Session} from {@link #getSession(ICalendarAccount, OracleCalendarServerNode)}.
+	 * The permit is held until the non-null {@link Session} is passed to 
+	 * {@link #closeSession(Session, OracleCalendarServerNode, boolean)}.
+	 * 
+	 * @param calendarAccount
+	 * @param serverNode
+	 * @return a {@link Session} for the account
+	 * @throws OracleCalendarNodeSaturatedException if the bulkhead rejects the call
+	 * @throws StatusException
+	 */
+	protected final Session openSession(ICalendarAccount calendarAccount, OracleCalendarServerNode serverNode) throws Api.StatusException {
+		startPhase(Phase.BORROW);
+		try {
+			if(this.nodeBulkhead == null || serverNode == null) {
+				return getSession(calendarAccount, serverNode);
+			}
+			this.nodeBulkhead.acquire(serverNode);
+			boolean opened = false;
+			try {
+				Session session = getSession(calendarAccount, serverNode);
+				opened = (session != null);
+				return session;
+			} finally {
+				if(!opened) {
+					this.nodeBulkhead.release(serverNode);
+				}
+			}
+		} finally {
+			endPhase();
+		}
+	}
+	
+	/**
+	 * Switch the identity of the {@link Session} to the account, timed as {@link Phase#SET_IDENTITY}.
+	 * 
+	 * @param session
+	 * @param calendarAccount
+	 * @throws StatusException
+	 */
+	protected final void setIdentity(Session session, ICalendarAccount calendarAccount) throws Api.StatusException {
+		startPhase(Phase.SET_IDENTITY);
+		try {
+			session.setIdentity(Api.CSDK_FLAG_NONE, calendarAccount.getCalendarLoginId());
+		} finally {
+			endPhase();
+		}
+	}
+	
+	/**
+	 * Counterpart to {@link #openSession(ICalendarAccount, OracleCalendarServerNode)}; passes the
+	 * {@link Session} to {@link #doneWithSession(Session, OracleCalendarServerNode, boolean)} and returns
+	 * the bulkhead permit. A null session (openSession failed) is ignored.
+	 * 
+	 * @param session
+	 * @param serverNode
+	 * @param invalidate
+	 */
+	protected final void closeSession(Session session, OracleCalendarServerNode serverNode, boolean invalidate) {
+		if(session == null) {
+			return;
+		}
+		try {
+			doneWithSession(session, serverNode, invalidate);
+		} finally {
+			if(this.nodeBulkhead != null && serverNode != null) {
+				this.nodeBulkhead.release(serverNode);
+			}
+		}
+	}
+	
+	/**
+	 * Start timing a phase of the current operation, if {@link #setOperationMetrics(OracleCalendarOperationMetrics)} is set.
+	 * Must be followed by {@link #endPhase()} in a finally block, so that a retried operation doesn't carry an open phase into its next attempt.
+	 * 
+	 * @param phase
+	 */
+	protected final void startPhase(Phase phase) {
+		if(this.operationMetrics != null) {
+			this.operationMetrics.startPhase(phase);
+		}
+	}
+	
+	/**
+	 * Stop timing the phase most recently passed to {@link #startPhase(Phase)}.
+	 */
+	protected final void endPhase() {
+		if(this.operationMetrics != null) {
+			this.operationMetrics.endPhase();
+		}
+	}
+	
+	/**
+	 * 
+	 * @param operationName
+	 * @param calendarAccount
+	 * @return the running operation, or null if metrics are not in use
+	 */
+	private OracleCalendarOperationMetrics.Operation beginOperation(String operationName, ICalendarAccount calendarAccount) {
+		if(this.operationMetrics == null) {
+			return null;
+		}
+		OracleCalendarServerNode serverNode = getOracleCalendarServerNode(calendarAccount);
+		return this.operationMetrics.begin(operationName, serverNode != null ? serverNode.getNodeName() : null);
+	}
+	
+	/**
+	 * 
+	 * @param operation the return value of {@link #beginOperation(String, ICalendarAccount)}
+	 * @param failure the exception the operation ended with, or null
+	 */
+	private void endOperation(OracleCalendarOperationMetrics.Operation operation, Throwable failure) {
+		if(operation != null && this.operationMetrics != null) {
+			this.operationMetrics.end(operation, failure);
+		}
+	}
+	
+	/**
+	 * {@link Session#storeEvents}, timed as {@link Phase#STORE}.
+	 * 
+	 * @param session
+	 * @param flags
+	 * @param payload
+	 * @param requestResult
+	 * @throws StatusException
+	 */
+	private void storeEvents(Session session, int flags, String payload, RequestResult requestResult) throws StatusException {
+		startPhase(Phase.STORE);
+		try {
+			session.storeEvents(flags, payload, requestResult);
+		} finally {
+			endPhase();
+		}
+	}
+	
+	/**
+	 * {@link Session#deleteEvents}, timed as {@link Phase#STORE}.
+	 * 
+	 * @param session
+	 * @param flags
+	 * @param eventUids
+	 * @param recurrenceIds
+	 * @param modifier
+	 * @param requestResult
+	 * @throws StatusException
+	 */
+	private void deleteEvents(Session session, int flags, String[] eventUids, String[] recurrenceIds, int modifier, RequestResult requestResult) throws StatusException {
+		startPhase(Phase.STORE);
+		try {
+			session.deleteEvents(flags, eventUids, recurrenceIds, modifier, requestResult);
+		} finally {
+			endPhase();
+		}
+	}
+	
+	/**
+	 * 
+	 * @param block
+	 * @param owner
+	 * @param ownerGuid
+	 * @param visitor
+	 * @param visitorGuid
+	 * @param eventDescription
+	 * @param dateStamp
+	 * @param uid may be null
+	 * @return the iCalendar text to store for the appointment, from the {@link OracleAvailableAppointmentWriter} 
+	 * if it is in use and can write the appointment, otherwise serialized from the {@link VEvent}
+	 */
+	private String availableAppointmentPayload(AvailableBlock block, IScheduleOwner owner, String ownerGuid, 
+			IScheduleVisitor visitor, String visitorGuid, String eventDescription, Date dateStamp, String uid) {
+		final OracleAvailableAppointmentWriter writer = getAppointmentWriter();
+		if(writer != null) {
+			String payload = writer.writeAvailableAppointment(block, owner, ownerGuid, visitor, visitorGuid, eventDescription, dateStamp, uid);
+			if(payload != null) {
+				return payload;
+			}
+		}
+		VEvent event = this.oracleEventUtils.constructAvailableAppointment(block, owner, ownerGuid, visitor, visitorGuid, eventDescription);
+		if(uid != null) {
+			event.getProperties().add(new Uid(uid));
+		}
+		return this.oracleEventUtils.wrapEventInCalendar(event).toString();
+	}
+	
+	/**
+	 * 
+	 * @return the {@link OracleAvailableAppointmentWriter} for the current {@link OracleEventUtilsImpl}, or null if not in use
+	 */
+	protected final OracleAvailableAppointmentWriter getAppointmentWriter() {
+		if(!useAppointmentWriter) {
+			return null;
+		}
+		OracleAvailableAppointmentWriter writer = this.appointmentWriter;
+		if(writer == null) {
+			writer = new OracleAvailableAppointmentWriter(this.oracleEventUtils);
+			this.appointmentWriter = writer;
+		}
+		return writer.isEnabled() ? writer : null;
+	}
+	/**
+	 * 
+	 * @param serverNode
+	 * @throws OracleCalendarNodeUnavailableException if the node is currently marked unavailable
+	 */
+	protected final void checkNodeAvailableForWrite(OracleCalendarServerNode serverNode) {
+		if(this.nodeAvailability != null && serverNode != null) {
+			this.nodeAvailability.checkAvailableForWrite(serverNode);
+		}
+	}
+	
+	/**
+	 * Mark the node unavailable if the exception (or one of its causes) reports the server unavailable.
+	 * 
+	 * @param serverNode
+	 * @param e
+	 * @return true if the exception reports the server unavailable
+	 */
+	protected final boolean recordNodeOutage(OracleCalendarServerNode serverNode, Throwable e) {
+		if(this.statusClassifier.classify(e) != StatusClass.NODE_DOWN) {
+			return false;
+		}
+		markNodeUnavailable(serverNode);
+		return true;
+	}
+	
+	/**
+	 * Classify the {@link Api.StatusException} without counting or logging it, marking the node 
+	 * unavailable if the status reports it down. For failures that are rethrown to a caller that 
+	 * records them with {@link #recordStatusException(OracleCalendarServerNode, String, StatusException)}.
+	 * 
+	 * @param serverNode
+	 * @param e
+	 * @return the {@link StatusClass} of the exception
+	 */
+	private StatusClass classifyStatusException(OracleCalendarServerNode serverNode, Api.StatusException e) {
+		StatusClass statusClass = this.statusClassifier.classify(e.getStatus());
+		if(statusClass == StatusClass.NODE_DOWN) {
+			markNodeUnavailable(serverNode);
+		}
+		return statusClass;
+	}
+	
+	/**
+	 * Classify, count and log (with a rate limited stack trace) the {@link Api.StatusException}, 
+	 * marking the node unavailable if the status reports it down.
+	 * 
+	 * @param serverNode
+	 * @param message
+	 * @param e
+	 * @return the {@link StatusClass} of the exception
+	 */
+	protected final StatusClass recordStatusException(OracleCalendarServerNode serverNode, String message, Api.StatusException e) {
+		StatusClass statusClass = this.statusClassifier.record(LOG, message, serverNode, e);
+		if(statusClass == StatusClass.NODE_DOWN) {
+			markNodeUnavailable(serverNode);
+		}
+		return statusClass;
+	}
+	
+	/**
+	 * 
+	 * @param serverNode
+	 */
+	private void markNodeUnavailable(OracleCalendarServerNode serverNode) {
+		if(this.nodeAvailability != null && serverNode != null) {
+			this.nodeAvailability.markUnavailable(serverNode);
+		}
+	}
+	
+	/**
+	 * Run the operation with {@link OracleCalendarRetryPolicy#execute(String, OracleCalendarStatusClassifier, RetryableOperation)},
+	 * or attempt it once if no {@link OracleCalendarRetryPolicy} is set. A failed attempt has already discarded 
+	 * its {@link Session}, so each retry runs on a fresh one.
+	 * 
+	 * @param operationName
+	 * @param operation
+	 * @return the result of the operation
+	 */
+	private <T> T executeWithRetries(String operationName, RetryableOperation<T> operation) {
+		if(this.retryPolicy == null) {
+			return operation.attempt();
+		}
+		return this.retryPolicy.execute(operationName, this.statusClassifier, operation);
+	}
+	
+	/**
+	 * 
+	 * @param calendarAccount
+	 * @param serverNode
+	 * @param startDate
+	 * @param endDate
+	 * @return the last known agenda for the account marked stale, or null if none is available
+	 */
+	private Calendar getStaleCalendar(ICalendarAccount calendarAccount, OracleCalendarServerNode serverNode, Date startDate, Date endDate) {
+		if(this.agendaSnapshotStore == null || serverNode == null) {
+			return null;
+		}
+		Calendar stale = this.agendaSnapshotStore.getStaleCalendar(calendarAccount, serverNode.getNodeName(), startDate, endDate);
+		if(stale != null) {
+			if(this.operationMetrics != null) {
+				this.operationMetrics.markStale();
+			}
+			LOG.warn("serving stale agenda for " + calendarAccount + " while node " + serverNode.getNodeName() + " is unavailable");
+		}
+		return stale;
+	}
+	
 	/**
 	 * 
 	 * @param account
@@ -169,31 +622,120 @@ public abstract class AbstractOracleCalendarDao extends
 	 * @see org.jasig.schedassist.ICalendarDataDao#getCalendar(org.jasig.schedassist.model.ICalendarAccount, java.util.Date, java.util.Date)
 	 */
 	@Override
-	public final Calendar getCalendar(ICalendarAccount calendarAccount,
+	public final Calendar getCalendar(final ICalendarAccount calendarAccount,
+			final Date startDate, final Date endDate) {
+		OracleCalendarOperationMetrics.Operation operation = beginOperation("getCalendar", calendarAccount);
+		Throwable failure = null;
+		try {
+			if(this.agendaCoalescer == null) {
+				return fetchCalendarWithRetries(calendarAccount, startDate, endDate);
+			}
+			return this.agendaCoalescer.getCalendar(calendarAccount, startDate, endDate, new Callable<Calendar>() {
+				@Override
+				public Calendar call() {
+					return fetchCalendarWithRetries(calendarAccount, startDate, endDate);
+				}
+			});
+		} catch (RuntimeException e) {
+			failure = e;
+			throw e;
+		} finally {
+			endOperation(operation, failure);
+		}
+	}
+	
+	/**
+	 * {@link #fetchCalendar(ICalendarAccount, Date, Date)}, retried according to the {@link OracleCalendarRetryPolicy}.
+	 * 
+	 * @param calendarAccount
+	 * @param startDate
+	 * @param endDate
+	 * @return the agenda
+	 */
+	private Calendar fetchCalendarWithRetries(final ICalendarAccount calendarAccount,
+			final Date startDate, final Date endDate) {
+		return executeWithRetries("getCalendar", new RetryableOperation<Calendar>() {
+			@Override
+			Calendar attempt() {
+				return fetchCalendar(calendarAccount, startDate, endDate);
+			}
+		});
+	}
+	
+	/**
+	 * Retrieve, parse and purge the agenda for the account on a {@link Session} of its own.
+	 * 
+	 * @param calendarAccount
+	 * @param startDate
+	 * @param endDate
+	 * @return the agenda, minus any appointments removed by {@link #purgeDeclinedAttendees(Calendar, Session, ICalendarAccount)}
+	 */
+	private Calendar fetchCalendar(ICalendarAccount calendarAccount,
 			Date startDate, Date endDate) {
 		boolean invalidateSession = false;
 		// make agenda available to catch blocks
 		String agenda = null;
 		Session session = null;
 		OracleCalendarServerNode serverNode = getOracleCalendarServerNode(calendarAccount);
+		if(this.nodeAvailability != null && serverNode != null && this.nodeAvailability.isUnavailable(serverNode)) {
+			Calendar stale = getStaleCalendar(calendarAccount, serverNode, startDate, endDate);
+			if(stale != null) {
+				return stale;
+			}
+			throw new OracleCalendarNodeUnavailableException(serverNode.getNodeName(), "node " + serverNode.getNodeName() + " unavailable and no snapshot available for " + calendarAccount);
+		}
 		try {
-			session = getSession(calendarAccount, serverNode);
-
-			agenda = getCalendarInternal(calendarAccount, startDate, endDate, session);
-			
-			Calendar result = parseAgenda(agenda);
-			result = purgeDeclinedAttendees(result, session, calendarAccount);
+			Calendar result;
+			List<Date[]> chunks = splitRange(startDate, endDate);
+			if(chunks.size() == 1) {
+				session = openSession(calendarAccount, serverNode);
+				agenda = getCalendarInternal(calendarAccount, startDate, endDate, session);
+				result = parseAgenda(agenda);
+			} else if (this.chunkFetchExecutor == null) {
+				session = openSession(calendarAccount, serverNode);
+				result = fetchChunksSequentially(calendarAccount, chunks, session);
+			} else {
+				result = fetchChunksInParallel(calendarAccount, serverNode, chunks);
+				session = openSession(calendarAccount, serverNode);
+			}
+			startPhase(Phase.PURGE);
+			try {
+				result = purgeDeclinedAttendees(result, session, calendarAccount);
+			} finally {
+				endPhase();
+			}
 			
+			if(this.agendaSnapshotStore != null) {
+				this.agendaSnapshotStore.store(calendarAccount, startDate, endDate, result);
+			}
+			if(this.nodeAvailability != null && serverNode != null) {
+				this.nodeAvailability.markAvailable(serverNode);
+			}
 			return result;
 		} catch (ParserException e) {
 			LOG.error("caught ParserException in getCalendar for " + calendarAccount, e);
 			throw new OracleCalendarParserException("caught ParserException", agenda, e);
 		} catch (Api.StatusException e) {
-			LOG.error("caught Api.StatusException in getCalendar for " + calendarAccount, e);
-			invalidateSession = true;
+			StatusClass statusClass = recordStatusException(serverNode, "caught Api.StatusException in getCalendar for " + calendarAccount, e);
+			invalidateSession = statusClass.isSessionInvalid();
+			if(statusClass == StatusClass.NODE_DOWN) {
+				Calendar stale = getStaleCalendar(calendarAccount, serverNode, startDate, endDate);
+				if(stale != null) {
+					return stale;
+				}
+			}
 			throw new OracleCalendarDataAccessException("caught Oracle Calendar Exception", e);
+		} catch (OracleCalendarDataAccessException e) {
+			// raised by openSession when the node can't be reached or the bulkhead is full
+			if(recordNodeOutage(serverNode, e) || e instanceof OracleCalendarNodeSaturatedException) {
+				Calendar stale = getStaleCalendar(calendarAccount, serverNode, startDate, endDate);
+				if(stale != null) {
+					return stale;
+				}
+			}
+			throw e;
 		} finally {
-			doneWithSession(session, serverNode, invalidateSession);
+			closeSession(session, serverNode, invalidateSession);
 		}
 		
 	}
@@ -273,6 +815,8 @@ public abstract class AbstractOracleCalendarDao extends
 			}
 		}
 		Calendar result = new Calendar(resultList);
+		// keep PRODID, VERSION and the like
+		result.getProperties().addAll(calendar.getProperties());
 		return result;
 	}
 	/*
@@ -280,8 +824,33 @@ public abstract class AbstractOracleCalendarDao extends
 	 * @see org.jasig.schedassist.ICalendarDataDao#getExistingAppointment(org.jasig.schedassist.model.IScheduleOwner, org.jasig.schedassist.model.AvailableBlock)
 	 */
 	@Override
-	public final VEvent getExistingAppointment(IScheduleOwner owner,
-			AvailableBlock block) {
+	public final VEvent getExistingAppointment(final IScheduleOwner owner,
+			final AvailableBlock block) {
+		OracleCalendarOperationMetrics.Operation operation = beginOperation("getExistingAppointment", owner.getCalendarAccount());
+		Throwable failure = null;
+		try {
+			return executeWithRetries("getExistingAppointment", new RetryableOperation<VEvent>() {
+				@Override
+				VEvent attempt() {
+					return doGetExistingAppointment(owner, block);
+				}
+			});
+		} catch (RuntimeException e) {
+			failure = e;
+			throw e;
+		} finally {
+			endOperation(operation, failure);
+		}
+	}
+	
+	/**
+	 * Implementation of {@link #getExistingAppointment(IScheduleOwner, AvailableBlock)}.
+	 * 
+	 * @param owner
+	 * @param block
+	 * @return the matching appointment, or null
+	 */
+	private VEvent doGetExistingAppointment(IScheduleOwner owner, AvailableBlock block) {
 		OracleCalendarServerNode serverNode = getOracleCalendarServerNode(owner.getCalendarAccount());
 
 		// make agenda available to catch blocks
@@ -290,18 +859,18 @@ public abstract class AbstractOracleCalendarDao extends
 		boolean invalidateSession = false;
 		
 		try {
-			session = getSession(owner.getCalendarAccount(), serverNode);
+			session = openSession(owner.getCalendarAccount(), serverNode);
 
 			return getAvailableAppointmentInternal(owner, block.getStartTime(), block.getEndTime(), session);
 		} catch (ParserException e) {
 			LOG.error("caught ParserException in getExistingAppointment for " + owner + " and " + block, e);
 			throw new OracleCalendarParserException("caught ParserException", agenda, e);
 		} catch (Api.StatusException e) {
-			LOG.error("caught Api.StatusException in getExistingAppointment for " + owner + " and " + block, e);
-			invalidateSession = true;
+			StatusClass statusClass = recordStatusException(serverNode, "caught Api.StatusException in getExistingAppointment for " + owner + " and " + block, e);
+			invalidateSession = statusClass.isSessionInvalid();
 			throw new OracleCalendarDataAccessException("caught Api.StatusException in getExistingAppointment", e);
 		} finally {
-			doneWithSession(session, serverNode, invalidateSession);
+			closeSession(session, serverNode, invalidateSession);
 		}
 	}
 
@@ -312,62 +881,114 @@ public abstract class AbstractOracleCalendarDao extends
 	@Override
 	public final VEvent createAppointment(IScheduleVisitor visitor,
 			IScheduleOwner owner, AvailableBlock block, String eventDescription) {
+		OracleCalendarOperationMetrics.Operation operation = beginOperation("createAppointment", owner.getCalendarAccount());
+		Throwable failure = null;
+		try {
+			return executeWithRetries("createAppointment", createAppointmentOperation(visitor, owner, block, eventDescription));
+		} catch (RuntimeException e) {
+			failure = e;
+			throw e;
+		} finally {
+			endOperation(operation, failure);
+		}
+	}
+	
+	/**
+	 * {@link #doCreateAppointment(IScheduleVisitor, IScheduleOwner, AvailableBlock, String)} as a {@link RetryableOperation};
+	 * only safe to create again if the failed attempt left nothing behind in the block.
+	 * 
+	 * @param visitor
+	 * @param owner
+	 * @param block
+	 * @param eventDescription
+	 * @return the operation
+	 */
+	RetryableOperation<VEvent> createAppointmentOperation(final IScheduleVisitor visitor, final IScheduleOwner owner, 
+			final AvailableBlock block, final String eventDescription) {
+		return new RetryableOperation<VEvent>() {
+			@Override
+			VEvent attempt() {
+				return doCreateAppointment(visitor, owner, block, eventDescription);
+			}
+			@Override
+			ReadBack readBack(OracleCalendarDataAccessException failure) {
+				return ReadBack.afterCreate(doGetExistingAppointment(owner, block));
+			}
+		};
+	}
+	
+	/**
+	 * Implementation of {@link #createAppointment(IScheduleVisitor, IScheduleOwner, AvailableBlock, String)}.
+	 * 
+	 * @param visitor
+	 * @param owner
+	 * @param block
+	 * @param eventDescription
+	 * @return the created appointment
+	 */
+	private VEvent doCreateAppointment(IScheduleVisitor visitor, IScheduleOwner owner, AvailableBlock block, String eventDescription) {
 		OracleCalendarServerNode serverNode = getOracleCalendarServerNode(owner.getCalendarAccount());
+		checkNodeAvailableForWrite(serverNode);
 
 		Session session = null;
 		boolean invalidateSession = false;
 		final String logEventKey = RandomStringUtils.randomAlphanumeric(16);
 		
 		try {
-			session = getSession(owner.getCalendarAccount(), serverNode);
+			session = openSession(owner.getCalendarAccount(), serverNode);
 
+			// located on this session before the event is built; for a resource owner this is also the resource's GUID,
+			// so building the event never resolves a deferred GUID on a second session
 			final String ownerGuid = locateOracleGuid(owner.getCalendarAccount(), session);
 			final String visitorGuid = locateOracleGuid(visitor.getCalendarAccount(), session);
-			VEvent event = this.oracleEventUtils.constructAvailableAppointment(
-					block, 
-					owner,
-					ownerGuid,
-					visitor, 
-					visitorGuid,
-					eventDescription);
-
-			Calendar calendar = this.oracleEventUtils.wrapEventInCalendar(event);
-
+			final Date dateStamp = new Date();
+			String payload = availableAppointmentPayload(block, owner, ownerGuid, visitor, visitorGuid, eventDescription, dateStamp, null);
 			
 			if(LOG.isDebugEnabled()) {
-				LOG.debug("createAppointment " + logEventKey + " attempting first Session#storeEvents for " + owner + ", " + visitor + ", " + block + ", " + event);
+				LOG.debug("createAppointment " + logEventKey + " attempting first Session#storeEvents for " + owner + ", " + visitor + ", " + block + ", " + payload);
 			}
 			RequestResult requestResults = new RequestResult();
-			session.storeEvents(getOracleCreateFlags(), calendar.toString(), requestResults);
+			storeEvents(session, getOracleCreateFlags(), payload, requestResults);
 
 			String eventUID = requestResults.getFirstResult().getUID();
 			if(LOG.isDebugEnabled()) {
 				LOG.debug("createAppointment " + logEventKey + " first Session#storeEvents results: " + requestResults.toString());
 			}
-			event.getProperties().add(new Uid(eventUID));
-
-			calendar = this.oracleEventUtils.wrapEventInCalendar(event);
+			payload = availableAppointmentPayload(block, owner, ownerGuid, visitor, visitorGuid, eventDescription, dateStamp, eventUID);
 
 			if(LOG.isDebugEnabled()) {
 				LOG.debug("createAppointment " + logEventKey + " attempting second Session#storeEvents, event uid: " + eventUID);
 			}
-			session.storeEvents(getOracleModifyFlags(), calendar.toString(), requestResults);
+			storeEvents(session, getOracleModifyFlags(), payload, requestResults);
 
 			if(LOG.isDebugEnabled()) {
 				LOG.debug("createAppointment " + logEventKey + " second Session#storeEvents results: " + requestResults.toString());
 			}
+			if(this.busyBitmapCache != null) {
+				this.busyBitmapCache.markBusy(owner.getCalendarAccount(), block.getStartTime(), block.getEndTime());
+				this.busyBitmapCache.markBusy(visitor.getCalendarAccount(), block.getStartTime(), block.getEndTime());
+			}
+			// the event itself is only needed for the caller
+			VEvent event = this.oracleEventUtils.constructAvailableAppointment(
+					block, 
+					owner,
+					ownerGuid,
+					visitor, 
+					visitorGuid,
+					eventDescription);
+			event.getProperties().add(new Uid(eventUID));
 			return event;
 		} catch (Api.StatusException e) {
+			StatusClass statusClass = recordStatusException(serverNode, logEventKey + " caught Api.StatusException in createAppointment for " + owner + ", " + visitor + ", and " + block, e);
 			if(e.getStatus() == (Api.CSDK_STAT_SECUR_CANTBOOKATTENDEE | Api.CSDK_STATMODE_FATAL)) {
 				//TODO note that this exact error code will also be raised when attempting to create an appointment with resource that is already booked
 				LOG.error(logEventKey + " createAppointment failed due to account not accepting invitations, visitor: " + visitor + ", owner: " + owner);
 				throw new VisitorDeclinedInvitationsException("createAppointment failed due to visitor not accepting invitations: visitor: " + visitor);
 			}
-			invalidateSession = true;
-			LOG.error(logEventKey + " caught Api.StatusException in createAppointment for " + owner + ", " + visitor + ", and " + block, e);
+			invalidateSession = statusClass.isSessionInvalid();
 			throw new OracleCalendarDataAccessException("caught Api.StatusException in createAppointment", e);
 		} finally {
-			doneWithSession(session, serverNode, invalidateSession);
+			closeSession(session, serverNode, invalidateSession);
 		}
 	}
 
@@ -377,20 +998,81 @@ public abstract class AbstractOracleCalendarDao extends
 	 */
 	@Override
 	public final void cancelAppointment(IScheduleVisitor visitor, IScheduleOwner owner, VEvent event) {
+		OracleCalendarOperationMetrics.Operation operation = beginOperation("cancelAppointment", owner.getCalendarAccount());
+		Throwable failure = null;
+		try {
+			executeWithRetries("cancelAppointment", cancelAppointmentOperation(visitor, owner, event));
+		} catch (RuntimeException e) {
+			failure = e;
+			throw e;
+		} finally {
+			endOperation(operation, failure);
+		}
+	}
+	
+	/**
+	 * {@link #doCancelAppointment(IScheduleVisitor, IScheduleOwner, VEvent)} as a {@link RetryableOperation};
+	 * only safe to cancel again if the event is still there, if it is gone the failed attempt was applied.
+	 * 
+	 * @param visitor
+	 * @param owner
+	 * @param event
+	 * @return the operation
+	 */
+	RetryableOperation<Void> cancelAppointmentOperation(final IScheduleVisitor visitor, final IScheduleOwner owner, final VEvent event) {
+		return new RetryableOperation<Void>() {
+			@Override
+			Void attempt() {
+				doCancelAppointment(visitor, owner, event);
+				return null;
+			}
+			@Override
+			ReadBack readBack(OracleCalendarDataAccessException failure) {
+				if(event.getStartDate() == null || event.getEndDate(true) == null) {
+					return ReadBack.UNSAFE;
+				}
+				VEvent remaining = doGetExistingAppointment(owner, 
+						AvailableBlockBuilder.createBlock(event.getStartDate().getDate(), event.getEndDate(true).getDate()));
+				return ReadBack.afterCancel(event, remaining);
+			}
+			@Override
+			Void applied() {
+				invalidateBusyBitmaps(owner.getCalendarAccount(), event);
+				if(visitor != null) {
+					invalidateBusyBitmaps(visitor.getCalendarAccount(), event);
+				}
+				return null;
+			}
+		};
+	}
+	
+	/**
+	 * Implementation of {@link #cancelAppointment(IScheduleVisitor, IScheduleOwner, VEvent)}.
+	 * 
+	 * @param visitor
+	 * @param owner
+	 * @param event
+	 */
+	private void doCancelAppointment(IScheduleVisitor visitor, IScheduleOwner owner, VEvent event) {
 		Validate.notNull(event, "event argument cannot be null for cancelAppointment");
 		OracleCalendarServerNode serverNode = getOracleCalendarServerNode(owner.getCalendarAccount());
+		checkNodeAvailableForWrite(serverNode);
 		Session session = null;
 		boolean invalidateSession = false;
 		Uid eventUid = event.getUid();
 		try {
-			session = getSession(owner.getCalendarAccount(), serverNode);
+			session = openSession(owner.getCalendarAccount(), serverNode);
 			cancelAppointmentInternal(session, eventUid);
+			invalidateBusyBitmaps(owner.getCalendarAccount(), event);
+			if(visitor != null) {
+				invalidateBusyBitmaps(visitor.getCalendarAccount(), event);
+			}
 		} catch (Api.StatusException e) {
-			LOG.error("caught Api.StatusException in cancelAppointment for " + owner + " and " + eventUid, e);
-			invalidateSession = true;
+			StatusClass statusClass = recordStatusException(serverNode, "caught Api.StatusException in cancelAppointment for " + owner + " and " + eventUid, e);
+			invalidateSession = statusClass.isSessionInvalid();
 			throw new OracleCalendarDataAccessException("caught Api.StatusException", e);
 		} finally {
-			doneWithSession(session, serverNode, invalidateSession);
+			closeSession(session, serverNode, invalidateSession);
 		}
 	}
 	
@@ -404,7 +1086,7 @@ public abstract class AbstractOracleCalendarDao extends
 		RequestResult requestResult = new RequestResult();
 		LOG.debug("cancelAppointmentInternal calling Session#deleteEvents for event uid: " + eventUid);
 		if(eventUid != null) {
-			session.deleteEvents(Api.CSDK_FLAG_NONE, 
+			deleteEvents(session, Api.CSDK_FLAG_NONE, 
 				new String[] { eventUid.getValue() }, 
 				null, 
 				Api.CSDK_THISINSTANCE, 
@@ -423,13 +1105,39 @@ public abstract class AbstractOracleCalendarDao extends
 	public final VEvent joinAppointment(IScheduleVisitor visitor,
 			IScheduleOwner owner, VEvent appointment)
 			throws SchedulingException {
+		OracleCalendarOperationMetrics.Operation operation = beginOperation("joinAppointment", owner.getCalendarAccount());
+		Throwable failure = null;
+		try {
+			return doJoinAppointment(visitor, owner, appointment);
+		} catch (SchedulingException e) {
+			failure = e;
+			throw e;
+		} catch (RuntimeException e) {
+			failure = e;
+			throw e;
+		} finally {
+			endOperation(operation, failure);
+		}
+	}
+	
+	/**
+	 * Implementation of {@link #joinAppointment(IScheduleVisitor, IScheduleOwner, VEvent)}.
+	 * 
+	 * @param visitor
+	 * @param owner
+	 * @param appointment
+	 * @return the updated appointment
+	 * @throws SchedulingException
+	 */
+	private VEvent doJoinAppointment(IScheduleVisitor visitor, IScheduleOwner owner, VEvent appointment) throws SchedulingException {
 		OracleCalendarServerNode serverNode = getOracleCalendarServerNode(owner.getCalendarAccount());
+		checkNodeAvailableForWrite(serverNode);
 
 		Session session = null;
 		boolean invalidateSession = false;
 		Uid eventUid = appointment.getUid();
 		try {
-			session = getSession(owner.getCalendarAccount(), serverNode);
+			session = openSession(owner.getCalendarAccount(), serverNode);
 			
 			// last check of visitor limit
 			Property visitorLimit = appointment.getProperty(VisitorLimit.VISITOR_LIMIT);
@@ -455,29 +1163,32 @@ public abstract class AbstractOracleCalendarDao extends
 				LOG.debug("joinAppointment " + eventUid + " attempting first Session#storeEvents for " + owner + ", " + visitor + ", " + appointment);
 			}
 			RequestResult requestResults = new RequestResult();
-			session.storeEvents(getOracleModifyFlags(), calendar.toString(), requestResults);
+			storeEvents(session, getOracleModifyFlags(), calendar.toString(), requestResults);
 			if(LOG.isDebugEnabled()) {
 				LOG.debug("joinAppointment " + eventUid + " first Session#storeEvents complete, capi result: " + requestResults.toString());
 			}
 
 			// a 2nd storeEvents MUST be called on the same event to get PARTSTAT=ACCEPTED to persist
-			session.storeEvents(getOracleModifyFlags(), calendar.toString(), requestResults);
+			storeEvents(session, getOracleModifyFlags(), calendar.toString(), requestResults);
 			if(LOG.isDebugEnabled()) {
 				LOG.debug("joinAppointment " + eventUid + " second Session#storeEventsstoreEvents complete: " + requestResults.toString());
 			}
+			if(this.busyBitmapCache != null && appointment.getStartDate() != null && appointment.getEndDate(true) != null) {
+				this.busyBitmapCache.markBusy(visitor.getCalendarAccount(), appointment.getStartDate().getDate(), appointment.getEndDate(true).getDate());
+			}
 			
 			return appointment;
 		} catch (Api.StatusException e) {
+			StatusClass statusClass = recordStatusException(serverNode, "caught Api.StatusException in joinAppoinment for owner " + owner + " and " + visitor + " and " + eventUid, e);
 			if(e.getStatus() == (Api.CSDK_STAT_SECUR_CANTBOOKATTENDEE | Api.CSDK_STATMODE_FATAL)) {
 				//TODO note that this exact error code will also be raised when attempting to create an appointment with resource that is already booked
 				LOG.error("joinAppointment " + eventUid + " failed due to account not accepting invitations, visitor: " + visitor + ", owner: " + owner);
 				throw new VisitorDeclinedInvitationsException("createAppointment failed due to visitor not accepting invitations: visitor: " + visitor);
 			}
-			LOG.error("caught Api.StatusException in joinAppoinment for owner " + owner + " and " + visitor + " and " + eventUid, e);
-			invalidateSession = true;
+			invalidateSession = statusClass.isSessionInvalid();
 			throw new OracleCalendarDataAccessException("caught Api.StatusException in joinAppointment", e);
 		} finally {
-			doneWithSession(session, serverNode, invalidateSession);
+			closeSession(session, serverNode, invalidateSession);
 		}
 	}
 
@@ -489,13 +1200,39 @@ public abstract class AbstractOracleCalendarDao extends
 	public final VEvent leaveAppointment(IScheduleVisitor visitor,
 			IScheduleOwner owner, VEvent appointment)
 			throws SchedulingException {
+		OracleCalendarOperationMetrics.Operation operation = beginOperation("leaveAppointment", owner.getCalendarAccount());
+		Throwable failure = null;
+		try {
+			return doLeaveAppointment(visitor, owner, appointment);
+		} catch (SchedulingException e) {
+			failure = e;
+			throw e;
+		} catch (RuntimeException e) {
+			failure = e;
+			throw e;
+		} finally {
+			endOperation(operation, failure);
+		}
+	}
+	
+	/**
+	 * Implementation of {@link #leaveAppointment(IScheduleVisitor, IScheduleOwner, VEvent)}.
+	 * 
+	 * @param visitor
+	 * @param owner
+	 * @param appointment
+	 * @return the updated appointment
+	 * @throws SchedulingException
+	 */
+	private VEvent doLeaveAppointment(IScheduleVisitor visitor, IScheduleOwner owner, VEvent appointment) throws SchedulingException {
 		OracleCalendarServerNode serverNode = getOracleCalendarServerNode(owner.getCalendarAccount());
+		checkNodeAvailableForWrite(serverNode);
 
 		Session session = null;
 		boolean invalidateSession = false;
 		Uid eventUid = appointment.getUid();
 		try {
-			session = getSession(owner.getCalendarAccount(), serverNode);
+			session = openSession(owner.getCalendarAccount(), serverNode);
 
 			Date startTime = appointment.getStartDate().getDate();
 			Date endTime = appointment.getEndDate(true).getDate();
@@ -525,23 +1262,24 @@ public abstract class AbstractOracleCalendarDao extends
 			}
 			
 			replaceEventInternal(session, targetAppointment);
+			invalidateBusyBitmaps(visitor.getCalendarAccount(), targetAppointment);
 			
 			return targetAppointment;
 			
 		} catch (Api.StatusException e) {
+			StatusClass statusClass = recordStatusException(serverNode, "caught Api.StatusException in leaveAppoinment for " + owner + " and " + visitor + " and " + eventUid, e);
 			if(e.getStatus() == (Api.CSDK_STAT_SECUR_CANTBOOKATTENDEE | Api.CSDK_STATMODE_FATAL)) {
 				//TODO note that this exact error code will also be raised when attempting to create an appointment with resource that is already booked
 				LOG.error("leaveAppointment " + eventUid + " failed due to account not accepting invitations, visitor: " + visitor + ", owner: " + owner);
 				throw new VisitorDeclinedInvitationsException("createAppointment failed due to visitor not accepting invitations: visitor: " + visitor);
 			}
-			LOG.error("caught Api.StatusException in leaveAppoinment for " + owner + " and " + visitor + " and " + eventUid, e);
-			invalidateSession = true;
+			invalidateSession = statusClass.isSessionInvalid();
 			throw new OracleCalendarDataAccessException("caught Api.StatusException", e);
 		} catch (ParserException e) {
 			LOG.error("caught ParserException in leaveAppointment for " + owner + " and " + visitor + " and " + eventUid, e);
 			throw new OracleCalendarParserException("caught ParserException", e);
 		} finally {
-			doneWithSession(session, serverNode, invalidateSession);
+			closeSession(session, serverNode, invalidateSession);
 		}
 	}
 	
@@ -558,7 +1296,7 @@ public abstract class AbstractOracleCalendarDao extends
 			LOG.debug("replaceEventInternal before Session#storeEvents for " + event);
 		}
 		RequestResult requestResults = new RequestResult();
-		session.storeEvents(getOracleReplaceFlags(), calendar.toString(), requestResults);
+		storeEvents(session, getOracleReplaceFlags(), calendar.toString(), requestResults);
 		if(LOG.isDebugEnabled()) {
 			LOG.debug("replaceEventInternal Session#storeEvents capi result: " + requestResults.toString());
 		}
@@ -571,6 +1309,33 @@ public abstract class AbstractOracleCalendarDao extends
 	@Override
 	public final void checkForConflicts(IScheduleOwner owner, AvailableBlock block)
 			throws ConflictExistsException {
+		OracleCalendarOperationMetrics.Operation operation = beginOperation("checkForConflicts", owner.getCalendarAccount());
+		Throwable failure = null;
+		try {
+			doCheckForConflicts(owner, block);
+		} catch (ConflictExistsException e) {
+			failure = e;
+			throw e;
+		} catch (RuntimeException e) {
+			failure = e;
+			throw e;
+		} finally {
+			endOperation(operation, failure);
+		}
+	}
+	
+	/**
+	 * Implementation of {@link #checkForConflicts(IScheduleOwner, AvailableBlock)}.
+	 * 
+	 * @param owner
+	 * @param block
+	 * @throws ConflictExistsException
+	 */
+	private void doCheckForConflicts(IScheduleOwner owner, AvailableBlock block) throws ConflictExistsException {
+		if(this.busyBitmapCache != null) {
+			checkForConflictsWithBitmaps(owner, block);
+			return;
+		}
 		// note: when retrieving a list of events between times, oracle will return events that END at the same minute as the start time
 		// in this case, we don't want a preceding event to be considered, so add 1 minute (60,000 milliseconds) to start time.
 		Date startTime = new Date(block.getStartTime().getTime() + 60000);	
@@ -580,17 +1345,84 @@ public abstract class AbstractOracleCalendarDao extends
 			if(LOG.isDebugEnabled()) {
 				LOG.debug("checkForConflicts found " + events.size() + " events for " + owner + " between " + startTime + " and " + block.getEndTime());
 			}
-			for(Object component : events) {
-				VEvent event = (VEvent) component;
-				if(this.oracleEventUtils.willEventCauseConflict(owner.getCalendarAccount(), event)) {
-					throw new ConflictExistsException("a conflict exists for " + block + " in the schedule for " + owner);
-				} 
+			List<VEvent> conflicts = this.oracleEventUtils.getConflictingEvents(owner.getCalendarAccount(), events);
+			if(!conflicts.isEmpty()) {
+				if(LOG.isDebugEnabled()) {
+					LOG.debug("checkForConflicts found " + conflicts.size() + " conflicting events for " + owner + ", first: " + conflicts.get(0));
+				}
+				throw new ConflictExistsException("a conflict exists for " + block + " in the schedule for " + owner);
 			}
 		} else {
 			LOG.debug("checkForConflicts found 0 events for " + owner + " between " + startTime + " and " + block.getEndTime());
 		}
 	}
 
+	/**
+	 * Implementation of {@link #checkForConflicts(IScheduleOwner, AvailableBlock)} with an {@link OracleCalendarBusyBitmapCache}.
+	 * If any day the block covers has no current bitmap, the agenda for those whole days is retrieved and converted first.
+	 * 
+	 * @param owner
+	 * @param block
+	 * @throws ConflictExistsException
+	 */
+	private void checkForConflictsWithBitmaps(IScheduleOwner owner, AvailableBlock block) throws ConflictExistsException {
+		final ICalendarAccount calendarAccount = owner.getCalendarAccount();
+		Boolean busy = this.busyBitmapCache.isBusy(calendarAccount, block.getStartTime(), block.getEndTime());
+		if(busy == null) {
+			final long generation = this.busyBitmapCache.getGeneration();
+			final Date rangeStart = this.busyBitmapCache.getDayStart(block.getStartTime());
+			final Date rangeEnd = this.busyBitmapCache.getRangeEnd(block.getEndTime());
+			Calendar calendar = getCalendar(calendarAccount, rangeStart, rangeEnd);
+			List<VEvent> conflicts = this.oracleEventUtils.getConflictingEvents(calendarAccount, calendar.getComponents(Component.VEVENT));
+			if(!OracleCalendarAgendaSnapshotStore.isStale(calendar)) {
+				this.busyBitmapCache.store(calendarAccount, rangeStart, rangeEnd, conflicts, generation);
+			}
+			busy = false;
+			for(VEvent event : conflicts) {
+				if(overlaps(event, block)) {
+					busy = true;
+					break;
+				}
+			}
+		}
+		if(busy) {
+			throw new ConflictExistsException("a conflict exists for " + block + " in the schedule for " + owner);
+		}
+	}
+
+	/**
+	 * 
+	 * @param event
+	 * @param block
+	 * @return true if the event's time range intersects the block
+	 */
+	private static boolean overlaps(VEvent event, AvailableBlock block) {
+		if(event.getStartDate() == null) {
+			return false;
+		}
+		Date eventStart = event.getStartDate().getDate();
+		Date eventEnd = event.getEndDate(true) != null ? event.getEndDate(true).getDate() : eventStart;
+		if(eventStart.equals(eventEnd)) {
+			return !eventStart.before(block.getStartTime()) && eventStart.before(block.getEndTime());
+		}
+		return eventStart.before(block.getEndTime()) && eventEnd.after(block.getStartTime());
+	}
+
+	/**
+	 * Discard the busy bitmaps covering the event, if bitmaps are in use.
+	 * 
+	 * @param calendarAccount
+	 * @param event
+	 */
+	private void invalidateBusyBitmaps(ICalendarAccount calendarAccount, VEvent event) {
+		if(this.busyBitmapCache == null || event.getStartDate() == null) {
+			return;
+		}
+		Date startTime = event.getStartDate().getDate();
+		Date endTime = event.getEndDate(true) != null ? event.getEndDate(true).getDate() : startTime;
+		this.busyBitmapCache.invalidate(calendarAccount, startTime, endTime);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.jasig.schedassist.ICalendarDataDao#reflectAvailableSchedule(org.jasig.schedassist.model.IScheduleOwner, org.jasig.schedassist.model.AvailableSchedule)
@@ -598,19 +1430,45 @@ public abstract class AbstractOracleCalendarDao extends
 	@Override
 	public final void reflectAvailableSchedule(IScheduleOwner owner,
 			AvailableSchedule schedule) {
+		OracleCalendarOperationMetrics.Operation operation = beginOperation("reflectAvailableSchedule", owner.getCalendarAccount());
+		Throwable failure = null;
+		try {
+			doReflectAvailableSchedule(owner, schedule);
+		} catch (RuntimeException e) {
+			failure = e;
+			throw e;
+		} finally {
+			endOperation(operation, failure);
+		}
+	}
+	
+	/**
+	 * Implementation of {@link #reflectAvailableSchedule(IScheduleOwner, AvailableSchedule)}.
+	 * Existing reflections are purged on the same {@link Session}, so only one bulkhead permit is held.
+	 * 
+	 * @param owner
+	 * @param schedule
+	 */
+	private void doReflectAvailableSchedule(IScheduleOwner owner, AvailableSchedule schedule) {
 		if(!schedule.isEmpty()) {
 			LOG.info("beginning reflectAvailableSchedule for " + owner);
 
 			Session session = null;
 			boolean invalidate = false;
 			OracleCalendarServerNode serverNode = getOracleCalendarServerNode(owner.getCalendarAccount());
+			checkNodeAvailableForWrite(serverNode);
 			try {
-				session = getSession(owner.getCalendarAccount(), serverNode);
+				session = openSession(owner.getCalendarAccount(), serverNode);
 
 				Date startDate = CommonDateOperations.beginningOfDay(schedule.getScheduleStartTime());
 				Date endDate = CommonDateOperations.endOfDay(schedule.getScheduleEndTime());
 
-				purgeAvailableScheduleReflections(owner, startDate, endDate);
+				startPhase(Phase.PURGE);
+				try {
+					purgeAvailableScheduleReflectionsInternal(owner, startDate, endDate, session);
+				} finally {
+					endPhase();
+				}
 
 				List<Calendar> newReflections = this.oracleEventUtils.convertScheduleForReflection(schedule);
 				// oracleEventUtils overrides this method to only return 1 calendar
@@ -620,7 +1478,7 @@ public abstract class AbstractOracleCalendarDao extends
 						LOG.debug("reflectAvailableSchedule begin call to Session#storeEvents for " + owner);
 					}
 					Calendar calendar = newReflections.get(0);
-					session.storeEvents(getOracleCreateReflectionFlags(), calendar.toString(), storeResult);
+					storeEvents(session, getOracleCreateReflectionFlags(), calendar.toString(), storeResult);
 					if(LOG.isDebugEnabled()) {
 						LOG.debug("reflectAvailableSchedule Session#storeEvents for " + owner + " complete, capi result: " + storeResult);
 					}
@@ -629,10 +1487,16 @@ public abstract class AbstractOracleCalendarDao extends
 				}
 				
 			} catch (Api.StatusException e) {
-				LOG.error("caught Api.StatusException in reflectAvailableSchedule", e);
+				invalidate = recordStatusException(serverNode, "caught Api.StatusException in reflectAvailableSchedule for owner " + owner, e).isSessionInvalid();
 				throw new OracleCalendarDataAccessException("reflectAvailableSchedule failed for owner " + owner, e);
+			} catch (IOException e) {
+				LOG.error("caught IOException in reflectAvailableSchedule for " + owner, e);
+				throw new OracleCalendarParserException("reflectAvailableSchedule failed for owner " + owner, e);
+			} catch (ParserException e) {
+				LOG.error("failed to parse existing reflection events for " + owner, e);
+				throw new OracleCalendarParserException("reflectAvailableSchedule failed for owner " + owner, e);
 			} finally {
-				doneWithSession(session, serverNode, invalidate);
+				closeSession(session, serverNode, invalidate);
 			}
 			LOG.info("reflectAvailableSchedule complete for " + owner);
 		} else {
@@ -647,44 +1511,36 @@ public abstract class AbstractOracleCalendarDao extends
 	@Override
 	public void purgeAvailableScheduleReflections(IScheduleOwner owner,
 			Date startDate, Date endDate) {
+		OracleCalendarOperationMetrics.Operation operation = beginOperation("purgeAvailableScheduleReflections", owner.getCalendarAccount());
+		Throwable failure = null;
+		try {
+			doPurgeAvailableScheduleReflections(owner, startDate, endDate);
+		} catch (RuntimeException e) {
+			failure = e;
+			throw e;
+		} finally {
+			endOperation(operation, failure);
+		}
+	}
+	
+	/**
+	 * Implementation of {@link #purgeAvailableScheduleReflections(IScheduleOwner, Date, Date)}.
+	 * 
+	 * @param owner
+	 * @param startDate
+	 * @param endDate
+	 */
+	private void doPurgeAvailableScheduleReflections(IScheduleOwner owner, Date startDate, Date endDate) {
 		if(startDate != null && endDate != null) {
 			Session session = null;
 			boolean invalidate = false;
 			OracleCalendarServerNode serverNode = getOracleCalendarServerNode(owner.getCalendarAccount());
+			checkNodeAvailableForWrite(serverNode);
 			try {
-				session = getSession(owner.getCalendarAccount(), serverNode);
-
-				Calendar existingReflections = getExistingAvailableScheduleReflections(owner, 
-						startDate, 
-						endDate, 
-						session);
-				ComponentList existingComponents = existingReflections.getComponents();
-				List<String> uidsToRemove = new ArrayList<String>();
-				for(Object o : existingComponents) {
-					Component component = (Component) o;
-					if(AvailabilityReflection.TRUE.equals(component.getProperty(AvailabilityReflection.AVAILABILITY_REFLECTION))) {
-						// add the UID to the list for removal
-						String uidValue = component.getProperty(Uid.UID).getValue();
-						uidsToRemove.add(uidValue);
-						LOG.debug("added " + uidValue + " to list of reflection events to be removed");
-					}
-				}
-
-				if(!uidsToRemove.isEmpty()) {
-					RequestResult deleteResult = new RequestResult();
-					session.deleteEvents(Api.CSDK_FLAG_CONTINUE_ON_ERROR, 
-							uidsToRemove.toArray(new String[] {}),
-							null,
-							Api.CSDK_THISINSTANCE,
-							deleteResult);
-					if(LOG.isDebugEnabled()) {
-						LOG.debug("delete existing reflections complete: " + deleteResult);
-					}
-				} else {
-					LOG.debug("no existing reflections to remove");
-				}
+				session = openSession(owner.getCalendarAccount(), serverNode);
+				purgeAvailableScheduleReflectionsInternal(owner, startDate, endDate, session);
 			} catch (Api.StatusException e) {
-				LOG.error("caught Api.StatusException in reflectAvailableSchedule for owner " + owner, e);
+				invalidate = recordStatusException(serverNode, "caught Api.StatusException in purgeAvailableScheduleReflections for owner " + owner, e).isSessionInvalid();
 				throw new OracleCalendarDataAccessException("reflectAvailableSchedule failed for owner " + owner, e);
 			} catch (IOException e) {
 				LOG.error("caught IOException in reflectAvailableSchedule for " + owner, e);
@@ -693,19 +1549,64 @@ public abstract class AbstractOracleCalendarDao extends
 				LOG.error("failed to parse existing reflection events for " + owner, e);
 				throw new OracleCalendarParserException("reflectAvailableSchedule failed for owner " + owner, e);
 			} finally {
-				doneWithSession(session, serverNode, invalidate);
+				closeSession(session, serverNode, invalidate);
 			}
 		} else {
 			LOG.warn("skipping purgeAvailableScheduleReflections since date argument is null (start: " + startDate + ", end: " + endDate);
 		}
 	}
 	
+	/**
+	 * Remove the available schedule reflections between the dates using the caller's {@link Session}.
+	 * 
+	 * @param owner
+	 * @param startDate
+	 * @param endDate
+	 * @param session
+	 * @throws StatusException
+	 * @throws IOException
+	 * @throws ParserException
+	 */
+	private void purgeAvailableScheduleReflectionsInternal(IScheduleOwner owner, Date startDate, Date endDate, Session session) throws StatusException, IOException, ParserException {
+		Calendar existingReflections = getExistingAvailableScheduleReflections(owner, 
+				startDate, 
+				endDate, 
+				session);
+		ComponentList existingComponents = existingReflections.getComponents();
+		List<String> uidsToRemove = new ArrayList<String>();
+		for(Object o : existingComponents) {
+			Component component = (Component) o;
+			if(AvailabilityReflection.TRUE.equals(component.getProperty(AvailabilityReflection.AVAILABILITY_REFLECTION))) {
+				// add the UID to the list for removal
+				String uidValue = component.getProperty(Uid.UID).getValue();
+				uidsToRemove.add(uidValue);
+				LOG.debug("added " + uidValue + " to list of reflection events to be removed");
+			}
+		}
+
+		if(!uidsToRemove.isEmpty()) {
+			RequestResult deleteResult = new RequestResult();
+			deleteEvents(session, Api.CSDK_FLAG_CONTINUE_ON_ERROR, 
+					uidsToRemove.toArray(new String[] {}),
+					null,
+					Api.CSDK_THISINSTANCE,
+					deleteResult);
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("delete existing reflections complete: " + deleteResult);
+			}
+		} else {
+			LOG.debug("no existing reflections to remove");
+		}
+	}
+	
 	/**
 	 * Helper method to locate the correct value of Oracle GUID for the specified account.
 	 * If the {@link ICalendarAccount} is an instance of {@link AbstractOracleCalendarAccount}, which
 	 * in all likelihood it is if you are using this DAO, it tries to call {@link AbstractOracleCalendarAccount#getOracleGuid()}.
 	 * If that return value is null, or the {@link ICalendarAccount} is some other subclass, this method
 	 * uses the {@link Session} argument in a call to {@link OracleGUIDSource#getOracleGUID(ICalendarAccount, Session)}.
+	 * A deferred GUID is always resolved this way, and stored on the account, so that no second {@link Session}
+	 * (and bulkhead permit) is taken on the node.
 	 * 
 	 * @param calendarAccount
 	 * @param session
@@ -722,9 +1623,11 @@ public abstract class AbstractOracleCalendarDao extends
 		
 		LOG.debug("oracle GUID not found from attributes map, attempting cast");
 		// fail safe
+		AbstractOracleCalendarAccount casted = null;
 		if(calendarAccount instanceof AbstractOracleCalendarAccount) {
-			AbstractOracleCalendarAccount casted = (AbstractOracleCalendarAccount) calendarAccount;
-			String castedGuid = casted.getOracleGuid();
+			casted = (AbstractOracleCalendarAccount) calendarAccount;
+			// a deferred GUID is resolved below on the session already held, not on a second pooled session
+			String castedGuid = casted.isOracleGuidDeferred() ? null : casted.getOracleGuid();
 			if(null != castedGuid) {
 				return castedGuid;
 			} 
@@ -734,7 +1637,11 @@ public abstract class AbstractOracleCalendarDao extends
 		
 		// fall back to OracleGUIDSource
 		try {
-			return this.oracleGUIDSource.getOracleGUID(calendarAccount, session);
+			String resolved = this.oracleGUIDSource.getOracleGUID(calendarAccount, session);
+			if(resolved != null && casted != null) {
+				casted.completeDeferredOracleGuid(resolved);
+			}
+			return resolved;
 		} catch (StatusException e) {
 			LOG.warn("unable to locate oracle GUID for " + calendarAccount, e);
 			return null;
@@ -757,24 +1664,41 @@ public abstract class AbstractOracleCalendarDao extends
 		agendas[0] = session.getHandle(Api.CSDK_FLAG_NONE, owner.getCalendarAccount().getCalendarLoginId());
 
 		String properties[] = new String[0];
-		RequestResult requestResults = new RequestResult();
-		String agenda = session.fetchEventsByRange(
-				getOracleFetchFlagsForReflectionLookup(), 
-				agendas,
-				DefaultEventUtilsImpl.convertToICalendarFormat(startTime),
-				DefaultEventUtilsImpl.convertToICalendarFormat(endTime),
-				properties,
-				requestResults);
-		
-		StringReader reader = new StringReader(agenda);
-		CalendarBuilder builder = new CalendarBuilder();
-		Calendar parsedAgenda = builder.build(reader);
-		ComponentList allComponents = parsedAgenda.getComponents();
 		ComponentList onlyReflections = new ComponentList();
-		for(Object o : allComponents) {
-			Component component = (Component) o;
-			if(AvailabilityReflection.TRUE.equals(component.getProperty(AvailabilityReflection.AVAILABILITY_REFLECTION))) {
-				onlyReflections.add(o);
+		Set<String> seenKeys = new HashSet<String>();
+		// a schedule window can span months; fetch and parse it a chunk at a time
+		for(Date[] chunk : splitRange(startTime, endTime)) {
+			RequestResult requestResults = new RequestResult();
+			String agenda;
+			startPhase(Phase.FETCH);
+			try {
+				agenda = session.fetchEventsByRange(
+						getOracleFetchFlagsForReflectionLookup(), 
+						agendas,
+						DefaultEventUtilsImpl.convertToICalendarFormat(chunk[0]),
+						DefaultEventUtilsImpl.convertToICalendarFormat(chunk[1]),
+						properties,
+						requestResults);
+			} finally {
+				endPhase();
+			}
+
+			StringReader reader = new StringReader(agenda);
+			CalendarBuilder builder = new CalendarBuilder();
+			Calendar parsedAgenda;
+			startPhase(Phase.PARSE);
+			try {
+				parsedAgenda = builder.build(reader);
+			} finally {
+				endPhase();
+			}
+			ComponentList allComponents = parsedAgenda.getComponents();
+			for(Object o : allComponents) {
+				Component component = (Component) o;
+				if(AvailabilityReflection.TRUE.equals(component.getProperty(AvailabilityReflection.AVAILABILITY_REFLECTION)) 
+						&& seenKeys.add(getChunkMergeKey(component))) {
+					onlyReflections.add(o);
+				}
 			}
 		}
 		
@@ -795,7 +1719,7 @@ public abstract class AbstractOracleCalendarDao extends
 				LOG.debug("removeAvailableScheduleReflections begin Session#deleteEvents for " + owner);
 			}
 			RequestResult deleteResult = new RequestResult();
-			session.deleteEvents(Api.CSDK_FLAG_CONTINUE_ON_ERROR, 
+			deleteEvents(session, Api.CSDK_FLAG_CONTINUE_ON_ERROR, 
 				eventUids.toArray(new String[] {}),
 				null,
 				Api.CSDK_THISINSTANCE,
@@ -928,13 +1852,19 @@ public abstract class AbstractOracleCalendarDao extends
 		String properties[] = new String[0];
 		RequestResult requestResults = new RequestResult();
 
-		String agenda = session.fetchEventsByRange(
-				getOracleFetchFlags(), 
-				agendas,
-				DefaultEventUtilsImpl.convertToICalendarFormat(startDate),
-				DefaultEventUtilsImpl.convertToICalendarFormat(endDate),
-				properties,
-				requestResults);
+		String agenda;
+		startPhase(Phase.FETCH);
+		try {
+			agenda = session.fetchEventsByRange(
+					getOracleFetchFlags(), 
+					agendas,
+					DefaultEventUtilsImpl.convertToICalendarFormat(startDate),
+					DefaultEventUtilsImpl.convertToICalendarFormat(endDate),
+					properties,
+					requestResults);
+		} finally {
+			endPhase();
+		}
 
 		if(LOG.isTraceEnabled()) {
 			LOG.trace("raw agenda from Session#fetchEventsByRange for " + calendarUser + ": " + agenda);
@@ -958,6 +1888,22 @@ public abstract class AbstractOracleCalendarDao extends
 	 * @throws ParserException
 	 */
 	protected Calendar parseAgenda(String agenda) throws ParserException {	
+		startPhase(Phase.PARSE);
+		try {
+			return parseAgendaInternal(agenda);
+		} finally {
+			endPhase();
+		}
+	}
+	
+	/**
+	 * Implementation of {@link #parseAgenda(String)}.
+	 * 
+	 * @param agenda
+	 * @return the parsed agenda
+	 * @throws ParserException
+	 */
+	private Calendar parseAgendaInternal(String agenda) throws ParserException {
 		final String chomped = StringUtils.chomp(agenda);
 		if(!StringUtils.endsWith(chomped, "END:VCALENDAR")) {
 			// Oracle for an unknown reason sometimes does not properly end the iCalendar
@@ -990,6 +1936,198 @@ public abstract class AbstractOracleCalendarDao extends
 		}
 	}
 
+	/**
+	 * Split the range into consecutive chunks of {@link #setAgendaChunkSizeDays(int)} days.
+	 * Returns a single chunk (the original range) if chunking is disabled or the range is short enough.
+	 * 
+	 * @param startDate
+	 * @param endDate
+	 * @return a list of 2 element arrays (chunk start, chunk end)
+	 */
+	protected final List<Date[]> splitRange(Date startDate, Date endDate) {
+		List<Date[]> chunks = new ArrayList<Date[]>();
+		final long chunkMillis = agendaChunkSizeDays * MILLISECONDS_PER_DAY;
+		if(chunkMillis <= 0 || endDate.getTime() - startDate.getTime() <= chunkMillis) {
+			chunks.add(new Date[] { startDate, endDate });
+			return chunks;
+		}
+		long chunkStart = startDate.getTime();
+		while(chunkStart < endDate.getTime()) {
+			long chunkEnd = Math.min(chunkStart + chunkMillis, endDate.getTime());
+			chunks.add(new Date[] { new Date(chunkStart), new Date(chunkEnd) });
+			chunkStart = chunkEnd;
+		}
+		return chunks;
+	}
+	
+	/**
+	 * Fetch and parse each chunk in turn on the same {@link Session}; only one raw agenda 
+	 * is held in memory at a time.
+	 * 
+	 * @param calendarAccount
+	 * @param chunks
+	 * @param session
+	 * @return the merged agenda, see {@link #mergeChunks(Calendar[])}
+	 * @throws StatusException
+	 * @throws ParserException
+	 */
+	private Calendar fetchChunksSequentially(ICalendarAccount calendarAccount, List<Date[]> chunks, Session session) throws StatusException, ParserException {
+		Calendar [] chunkCalendars = new Calendar[chunks.size()];
+		for(int i = 0; i < chunks.size(); i++) {
+			chunkCalendars[i] = fetchChunk(calendarAccount, chunks.get(i), session);
+		}
+		return mergeChunks(chunkCalendars);
+	}
+	
+	/**
+	 * Fetch and parse the chunks on the {@link #setChunkFetchExecutor(ExecutorService)}, each on its own
+	 * {@link Session}. At most {@link #setMaxParallelChunksPerRequest(int)} chunks are in flight at once, and
+	 * sessions are taken through {@link #openSession(ICalendarAccount, OracleCalendarServerNode)} so the
+	 * node's bulkhead limit applies.
+	 * 
+	 * @param calendarAccount
+	 * @param serverNode
+	 * @param chunks
+	 * @return the merged agenda, see {@link #mergeChunks(Calendar[])}
+	 * @throws StatusException
+	 * @throws ParserException
+	 */
+	private Calendar fetchChunksInParallel(final ICalendarAccount calendarAccount, final OracleCalendarServerNode serverNode, final List<Date[]> chunks) throws StatusException, ParserException {
+		CompletionService<FetchedChunk> completionService = new ExecutorCompletionService<FetchedChunk>(this.chunkFetchExecutor);
+		List<Future<FetchedChunk>> submitted = new ArrayList<Future<FetchedChunk>>();
+		Calendar [] chunkCalendars = new Calendar[chunks.size()];
+		final int parallelism = Math.max(1, this.maxParallelChunksPerRequest);
+		int next = 0;
+		int running = 0;
+		try {
+			while(next < chunks.size() || running > 0) {
+				while(next < chunks.size() && running < parallelism) {
+					final int index = next++;
+					submitted.add(completionService.submit(new Callable<FetchedChunk>() {
+						@Override
+						public FetchedChunk call() throws StatusException, ParserException {
+							Session chunkSession = null;
+							boolean invalidate = false;
+							// runs on a pool thread, so recorded as an operation of its own
+							OracleCalendarOperationMetrics.Operation operation = beginOperation("getCalendarChunk", calendarAccount);
+							Throwable failure = null;
+							try {
+								chunkSession = openSession(calendarAccount, serverNode);
+								return new FetchedChunk(index, fetchChunk(calendarAccount, chunks.get(index), chunkSession));
+							} catch (StatusException e) {
+								// counted and logged once, by fetchCalendar, when awaitChunk rethrows it
+								invalidate = classifyStatusException(serverNode, e).isSessionInvalid();
+								failure = e;
+								throw e;
+							} catch (ParserException e) {
+								failure = e;
+								throw e;
+							} catch (RuntimeException e) {
+								failure = e;
+								throw e;
+							} finally {
+								closeSession(chunkSession, serverNode, invalidate);
+								endOperation(operation, failure);
+							}
+						}
+					}));
+					running++;
+				}
+				FetchedChunk completed = awaitChunk(completionService);
+				running--;
+				chunkCalendars[completed.index] = completed.calendar;
+			}
+		} finally {
+			// stop any chunks not yet started; chunks in flight finish and release their own sessions
+			for(Future<FetchedChunk> future : submitted) {
+				future.cancel(false);
+			}
+		}
+		
+		return mergeChunks(chunkCalendars);
+	}
+	
+	/**
+	 * 
+	 * @param completionService
+	 * @return the result of the next completed chunk
+	 * @throws StatusException
+	 * @throws ParserException
+	 */
+	private FetchedChunk awaitChunk(CompletionService<FetchedChunk> completionService) throws StatusException, ParserException {
+		try {
+			return completionService.take().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OracleCalendarDataAccessException("interrupted waiting for agenda chunk", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof StatusException) {
+				throw (StatusException) cause;
+			} else if (cause instanceof ParserException) {
+				throw (ParserException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new OracleCalendarDataAccessException("agenda chunk fetch failed", cause);
+		}
+	}
+	
+	/**
+	 * 
+	 * @param calendarAccount
+	 * @param chunk
+	 * @param session
+	 * @return the parsed agenda for the chunk
+	 * @throws StatusException
+	 * @throws ParserException
+	 */
+	private Calendar fetchChunk(ICalendarAccount calendarAccount, Date[] chunk, Session session) throws StatusException, ParserException {
+		String agenda = getCalendarInternal(calendarAccount, chunk[0], chunk[1], session);
+		return parseAgenda(agenda);
+	}
+	
+	/**
+	 * Merge the events of the chunks, in chunk order, skipping events already added from an earlier
+	 * chunk (events spanning a chunk boundary are returned by both chunks). The merged calendar carries 
+	 * the first chunk's calendar properties (PRODID, VERSION and so on), as an unchunked fetch would.
+	 * 
+	 * @param chunkCalendars
+	 * @return the merged calendar
+	 */
+	private static Calendar mergeChunks(Calendar [] chunkCalendars) {
+		ComponentList events = new ComponentList();
+		Set<String> seenKeys = new HashSet<String>();
+		for(Calendar chunkCalendar : chunkCalendars) {
+			for(Object o : chunkCalendar.getComponents(VEvent.VEVENT)) {
+				if(seenKeys.add(getChunkMergeKey((Component) o))) {
+					events.add(o);
+				}
+			}
+		}
+		Calendar result = new Calendar(events);
+		if(chunkCalendars.length > 0) {
+			result.getProperties().addAll(chunkCalendars[0].getProperties());
+		}
+		return result;
+	}
+	
+	/**
+	 * 
+	 * @param component
+	 * @return the UID and DTSTART of the component (recurring instances share a UID); components without a UID get a unique key
+	 */
+	private static String getChunkMergeKey(Component component) {
+		Property uid = component.getProperty(Property.UID);
+		if(uid == null) {
+			return "noUid@" + System.identityHashCode(component);
+		}
+		Property start = component.getProperty(Property.DTSTART);
+		return start == null ? uid.getValue() : uid.getValue() + "|" + start.getValue();
+	}
+	
 	/**
 	 * 
 	 * @param user
@@ -1080,4 +2218,20 @@ public abstract class AbstractOracleCalendarDao extends
 			LOG.debug("ignoring disconnectQuietly call for null session");
 		}
 	}
+	
+	/**
+	 * The parsed agenda of one chunk of a parallel fetch, with the chunk's position in the range.
+	 */
+	private static class FetchedChunk {
+		private final int index;
+		private final Calendar calendar;
+		/**
+		 * @param index
+		 * @param calendar
+		 */
+		FetchedChunk(int index, Calendar calendar) {
+			this.index = index;
+			this.calendar = calendar;
+		}
+	}
 }
@@ -0,0 +1,241 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Array backed attributes map for {@link CompactOracleCalendarUserAccount}.
+ * 
+ * Keys and values are held alternately in a single array with no per entry objects; lookups are a 
+ * linear scan, which for the dozen or so attributes an account carries is as fast as hashing.
+ * Keys that are already canonical LDAP attribute names share the instances held by 
+ * {@link OracleLdapAttributeNames}.
+ * 
+ * The map is modified by replacing the array, so readers never see a partial update; concurrent 
+ * writers are not expected (the only write after construction is the resolution of a deferred Oracle GUID,
+ * which {@link AbstractOracleCalendarAccount} already serializes).
+ *
+ * @version $Id: CompactAttributesMap.java $
+ */
+final class CompactAttributesMap extends AbstractMap<String, String> implements Serializable {
+
+	private static final long serialVersionUID = 53706L;
+	private static final String [] EMPTY = new String[0];
+	
+	private volatile String [] entries;
+	
+	/**
+	 * 
+	 * @param source
+	 */
+	CompactAttributesMap(Map<String, String> source) {
+		if(source == null || source.isEmpty()) {
+			this.entries = EMPTY;
+			return;
+		}
+		String [] copy = new String[source.size() * 2];
+		int i = 0;
+		for(Map.Entry<String, String> entry : source.entrySet()) {
+			copy[i++] = shared(entry.getKey());
+			copy[i++] = entry.getValue();
+		}
+		this.entries = copy;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractMap#size()
+	 */
+	@Override
+	public int size() {
+		return entries.length / 2;
+	}
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractMap#containsKey(java.lang.Object)
+	 */
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(entries, key) >= 0;
+	}
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractMap#get(java.lang.Object)
+	 */
+	@Override
+	public String get(Object key) {
+		String [] current = entries;
+		int index = indexOf(current, key);
+		return index < 0 ? null : current[index + 1];
+	}
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractMap#put(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public String put(String key, String value) {
+		String [] current = entries;
+		int index = indexOf(current, key);
+		String [] updated;
+		String previous = null;
+		if(index >= 0) {
+			previous = current[index + 1];
+			updated = current.clone();
+			updated[index + 1] = value;
+		} else {
+			updated = new String[current.length + 2];
+			System.arraycopy(current, 0, updated, 0, current.length);
+			updated[current.length] = shared(key);
+			updated[current.length + 1] = value;
+		}
+		this.entries = updated;
+		return previous;
+	}
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractMap#remove(java.lang.Object)
+	 */
+	@Override
+	public String remove(Object key) {
+		String [] current = entries;
+		int index = indexOf(current, key);
+		if(index < 0) {
+			return null;
+		}
+		String previous = current[index + 1];
+		String [] updated = new String[current.length - 2];
+		System.arraycopy(current, 0, updated, 0, index);
+		System.arraycopy(current, index + 2, updated, index, current.length - index - 2);
+		this.entries = updated;
+		return previous;
+	}
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractMap#clear()
+	 */
+	@Override
+	public void clear() {
+		this.entries = EMPTY;
+	}
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractMap#entrySet()
+	 */
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		return new AbstractSet<Map.Entry<String, String>>() {
+			@Override
+			public Iterator<Map.Entry<String, String>> iterator() {
+				return new EntryIterator();
+			}
+			@Override
+			public int size() {
+				return CompactAttributesMap.this.size();
+			}
+		};
+	}
+	
+	/**
+	 * 
+	 * @param current
+	 * @param key
+	 * @return the index of the key in the array, or -1
+	 */
+	private static int indexOf(String [] current, Object key) {
+		// canonical keys usually match by reference
+		for(int i = 0; i < current.length; i += 2) {
+			if(current[i] == key) {
+				return i;
+			}
+		}
+		if(key == null) {
+			return -1;
+		}
+		for(int i = 0; i < current.length; i += 2) {
+			if(key.equals(current[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	/**
+	 * 
+	 * @param key
+	 * @return the shared instance of the key if it is a canonical attribute name, otherwise the key
+	 */
+	private static String shared(String key) {
+		if(key == null) {
+			return null;
+		}
+		String canonical = OracleLdapAttributeNames.canonical(key);
+		return canonical.equals(key) ? canonical : key;
+	}
+	
+	/**
+	 * Iterates over a snapshot of the entries; {@link Map.Entry#setValue(Object)} and 
+	 * {@link Iterator#remove()} write through to the map.
+	 */
+	private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+		private final String [] snapshot = entries;
+		private int next = 0;
+		private String lastKey;
+		private boolean removable = false;
+		
+		@Override
+		public boolean hasNext() {
+			return next < snapshot.length;
+		}
+		@Override
+		public Map.Entry<String, String> next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			final String key = snapshot[next];
+			final String value = snapshot[next + 1];
+			next += 2;
+			lastKey = key;
+			removable = true;
+			return new AbstractMap.SimpleEntry<String, String>(key, value) {
+				private static final long serialVersionUID = 53706L;
+				@Override
+				public String setValue(String updated) {
+					super.setValue(updated);
+					return put(key, updated);
+				}
+			};
+		}
+		@Override
+		public void remove() {
+			if(!removable) {
+				throw new IllegalStateException();
+			}
+			CompactAttributesMap.this.remove(lastKey);
+			removable = false;
+		}
+	}
+}
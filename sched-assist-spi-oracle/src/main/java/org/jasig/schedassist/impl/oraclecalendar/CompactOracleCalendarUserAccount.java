@@ -0,0 +1,207 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jasig.schedassist.model.ICalendarAccount;
+
+/**
+ * Compact form of {@link OracleCalendarUserAccount} for accounts held in large numbers, 
+ * e.g. in the account cache and the account search index.
+ * 
+ * Compared to the mapper's accounts it:
+ * <ul>
+ * <li>holds its attributes in a {@link CompactAttributesMap} (one array, shared canonical keys) instead of a HashMap,</li>
+ * <li>splits the ctcalxitemid into node id and calendar id once, at construction,</li>
+ * <li>computes its hash code once, at construction,</li>
+ * <li>implements {@link Externalizable} with a flat field-by-field format for the ehcache disk tier and 
+ * the cache snapshots.</li>
+ * </ul>
+ * 
+ * Instances must be treated as immutable: the hash code is not recomputed if a setter is called after 
+ * construction. Resolving a deferred Oracle GUID is the exception, the GUID is not part of the hash.
+ *
+ * @version $Id: CompactOracleCalendarUserAccount.java $
+ */
+public final class CompactOracleCalendarUserAccount extends OracleCalendarUserAccount implements Externalizable {
+
+	private static final long serialVersionUID = 53706L;
+	private static final byte FORMAT_VERSION = 1;
+	
+	private transient int hash;
+	
+	/**
+	 * Required by {@link Externalizable}; use {@link #compact(ICalendarAccount)}.
+	 */
+	public CompactOracleCalendarUserAccount() {
+	}
+	/**
+	 * A deferred Oracle GUID stays deferred, to the same {@link DeferredOracleGUIDResolver}.
+	 * 
+	 * @param account
+	 */
+	CompactOracleCalendarUserAccount(OracleCalendarUserAccount account) {
+		super(new CompactAttributesMap(account.getAttributes()));
+		setUsername(account.getUsername());
+		setEmailAddress(account.getEmailAddress());
+		setDisplayName(account.getAttributeValue(OracleCalendarUserAccountAttributesMapper.DISPLAYNAME_ATTRIBUTE));
+		setCtcalxitemid(account.getCtcalxitemid());
+		setGivenName(account.getGivenName());
+		setSurname(account.getSurname());
+		if(account.isOracleGuidDeferred()) {
+			// a transfer, not a new deferral, so the resolver's counters are untouched
+			deferOracleGuid(account.getOracleGuidResolver());
+		} else {
+			String oracleGuid = account.getOracleGuid();
+			if(oracleGuid != null) {
+				setOracleGuid(oracleGuid);
+			}
+		}
+		precompute();
+	}
+	
+	/**
+	 * 
+	 * @param account
+	 * @return the compact form of an {@link OracleCalendarUserAccount}; any other account (including one 
+	 * already compact) is returned as is
+	 */
+	public static ICalendarAccount compact(ICalendarAccount account) {
+		if(account == null || account.getClass() != OracleCalendarUserAccount.class) {
+			return account;
+		}
+		return new CompactOracleCalendarUserAccount((OracleCalendarUserAccount) account);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see org.jasig.schedassist.impl.oraclecalendar.AbstractOracleCalendarAccount#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+	/*
+	 * (non-Javadoc)
+	 * @see org.jasig.schedassist.impl.oraclecalendar.AbstractOracleCalendarAccount#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if(obj instanceof CompactOracleCalendarUserAccount && ((CompactOracleCalendarUserAccount) obj).hash != hash) {
+			return false;
+		}
+		return super.equals(obj);
+	}
+	
+	/**
+	 * A deferred GUID is written as deferred, as the {@link java.io.Serializable} form does; no lookup is made.
+	 * 
+	 * (non-Javadoc)
+	 * @see java.io.Externalizable#writeExternal(java.io.ObjectOutput)
+	 */
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeByte(FORMAT_VERSION);
+		writeString(out, getUsername());
+		writeString(out, getEmailAddress());
+		writeString(out, getCtcalxitemid());
+		writeString(out, getGivenName());
+		writeString(out, getSurname());
+		out.writeBoolean(isOracleGuidDeferred());
+		writeString(out, getResolvedOracleGuid());
+		Map<String, String> attributes = getAttributes();
+		out.writeInt(attributes.size());
+		for(Map.Entry<String, String> entry : attributes.entrySet()) {
+			out.writeUTF(entry.getKey());
+			writeString(out, entry.getValue());
+		}
+	}
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Externalizable#readExternal(java.io.ObjectInput)
+	 */
+	@Override
+	public void readExternal(ObjectInput in) throws IOException {
+		byte version = in.readByte();
+		if(version != FORMAT_VERSION) {
+			throw new IOException("unsupported CompactOracleCalendarUserAccount format " + version);
+		}
+		setUsername(readString(in));
+		setEmailAddress(readString(in));
+		setCtcalxitemid(readString(in));
+		setGivenName(readString(in));
+		setSurname(readString(in));
+		boolean deferred = in.readBoolean();
+		String oracleGuid = readString(in);
+		int size = in.readInt();
+		Map<String, String> attributes = new LinkedHashMap<String, String>(size * 2);
+		for(int i = 0; i < size; i++) {
+			String key = in.readUTF();
+			attributes.put(key, readString(in));
+		}
+		setAttributes(new CompactAttributesMap(attributes));
+		setDisplayName(getAttributeValue(OracleCalendarUserAccountAttributesMapper.DISPLAYNAME_ATTRIBUTE));
+		if(deferred) {
+			deferOracleGuid(DeferredOracleGUIDResolver.getDeserializedAccountResolver());
+		} else if(oracleGuid != null) {
+			setOracleGuid(oracleGuid);
+		}
+		precompute();
+	}
+	
+	/**
+	 * Split the ctcalxitemid and compute the hash code.
+	 */
+	private void precompute() {
+		String ctcalxitemid = getCtcalxitemid();
+		if(ctcalxitemid != null && ctcalxitemid.indexOf(':') > 0) {
+			getCalendarNodeId();
+		}
+		this.hash = super.hashCode();
+	}
+	/**
+	 * 
+	 * @param out
+	 * @param value may be null
+	 * @throws IOException
+	 */
+	private static void writeString(ObjectOutput out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if(value != null) {
+			out.writeUTF(value);
+		}
+	}
+	/**
+	 * 
+	 * @param in
+	 * @return the value written by {@link #writeString(ObjectOutput, String)}
+	 * @throws IOException
+	 */
+	private static String readString(ObjectInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
@@ -50,7 +50,7 @@ public class DefaultOracleCalendarDaoImpl extends AbstractOracleCalendarDao {
 				serverNode.getSysopPassword());
 
 		// switch identity to owner
-		session.setIdentity(Api.CSDK_FLAG_NONE, calendarAccount.getCalendarLoginId());
+		setIdentity(session, calendarAccount);
 		return session;
 	}
 
@@ -0,0 +1,197 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Defers the Oracle GUID lookup for accounts returned by the LDAP attribute mappers.
+ * 
+ * Resolving the GUID requires a call to the Oracle Calendar server, while most accounts
+ * returned by an LDAP search (e.g. for autocomplete or the visitor search) never need it.
+ * The mappers register accounts with {@link #defer(AbstractOracleCalendarAccount)} instead;
+ * the account calls back into {@link #resolve(AbstractOracleCalendarAccount)} the first time 
+ * {@link AbstractOracleCalendarAccount#getOracleGuid()} or the 
+ * {@link AbstractOracleCalendarAccount#ORACLE_GUID_ATTRIBUTE} attribute is read.
+ * 
+ * The resolver itself is not serialized with the account, only the fact that the GUID is deferred;
+ * a deserialized account is reattached to the resolver set with {@link #setResolvesDeserializedAccounts(boolean)}.
+ * 
+ * @version $Id: DeferredOracleGUIDResolver.java $
+ */
+public class DeferredOracleGUIDResolver {
+
+	private static volatile DeferredOracleGUIDResolver deserializedAccountResolver;
+	
+	private Log LOG = LogFactory.getLog(this.getClass());
+	
+	private final OracleGUIDSource oracleGUIDSource;
+	private final AtomicLong deferred = new AtomicLong();
+	private final AtomicLong resolved = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	
+	/**
+	 * @param oracleGUIDSource
+	 */
+	public DeferredOracleGUIDResolver(OracleGUIDSource oracleGUIDSource) {
+		this.oracleGUIDSource = oracleGUIDSource;
+	}
+	
+	/**
+	 * If true, accounts deserialized with a deferred GUID (e.g. from the ehcache disk tier or a cache snapshot) 
+	 * are reattached to this resolver. Set on the one shared resolver; accounts deserialized while no resolver
+	 * is set stay deferred until {@link AbstractOracleCalendarDao} resolves them on its own {@link oracle.calendar.sdk.Session}.
+	 * 
+	 * @param resolvesDeserializedAccounts
+	 */
+	public void setResolvesDeserializedAccounts(boolean resolvesDeserializedAccounts) {
+		if(resolvesDeserializedAccounts) {
+			deserializedAccountResolver = this;
+		} else if (deserializedAccountResolver == this) {
+			deserializedAccountResolver = null;
+		}
+	}
+	/**
+	 * 
+	 * @return the resolver set by {@link #setResolvesDeserializedAccounts(boolean)}, or null
+	 */
+	static DeferredOracleGUIDResolver getDeserializedAccountResolver() {
+		return deserializedAccountResolver;
+	}
+	
+	/**
+	 * Mark the account's GUID as pending; no Oracle Calendar call is made.
+	 * 
+	 * @param account
+	 */
+	public void defer(AbstractOracleCalendarAccount account) {
+		account.deferOracleGuid(this);
+		deferred.incrementAndGet();
+	}
+	
+	/**
+	 * Perform the lookup for an account previously passed to {@link #defer(AbstractOracleCalendarAccount)}.
+	 * The account should stay pending, and try again on the next read, if the result is
+	 * {@link OracleGUIDLookupResult.Outcome#ERROR}; exceptions from the {@link OracleGUIDSource} are rethrown.
+	 * 
+	 * @param account
+	 * @return the {@link OracleGUIDLookupResult} returned by the {@link OracleGUIDSource}
+	 */
+	OracleGUIDLookupResult resolve(AbstractOracleCalendarAccount account) {
+		try {
+			OracleGUIDLookupResult result = this.oracleGUIDSource.lookupOracleGUID(account);
+			if(result.getOutcome() == OracleGUIDLookupResult.Outcome.ERROR) {
+				failed.incrementAndGet();
+				if(LOG.isDebugEnabled()) {
+					LOG.debug("deferred oracle GUID lookup failed for " + account.getCalendarUniqueId() + ", leaving it pending");
+				}
+				return result;
+			}
+			resolved.incrementAndGet();
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("resolved deferred oracle GUID " + result.getGuid() + " for " + account.getCalendarUniqueId());
+			}
+			return result;
+		} catch (RuntimeException e) {
+			failed.incrementAndGet();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Resolve every account in the collection that is still deferred to this resolver with a single
+	 * {@link OracleGUIDSource#getOracleGUIDs(Collection)} call, e.g. before rendering a page of 
+	 * search results. Accounts the batch could not resolve stay deferred.
+	 * 
+	 * @param accounts
+	 * @return the number of accounts resolved
+	 */
+	public int resolveAll(Collection<? extends AbstractOracleCalendarAccount> accounts) {
+		List<AbstractOracleCalendarAccount> pending = new ArrayList<AbstractOracleCalendarAccount>();
+		for(AbstractOracleCalendarAccount account : accounts) {
+			if(account.isOracleGuidDeferredTo(this)) {
+				pending.add(account);
+			}
+		}
+		if(pending.isEmpty()) {
+			return 0;
+		}
+		Map<String, String> guids;
+		try {
+			guids = this.oracleGUIDSource.getOracleGUIDs(pending);
+		} catch (RuntimeException e) {
+			failed.incrementAndGet();
+			throw e;
+		}
+		int count = 0;
+		for(AbstractOracleCalendarAccount account : pending) {
+			String guid = guids.get(account.getCalendarUniqueId());
+			if(guid != null && account.completeDeferredOracleGuid(this, guid)) {
+				count++;
+			}
+		}
+		resolved.addAndGet(count);
+		if(LOG.isDebugEnabled()) {
+			LOG.debug("batch resolved " + count + " of " + pending.size() + " deferred oracle GUIDs");
+		}
+		return count;
+	}
+	
+	/**
+	 * 
+	 * @return the number of accounts mapped with a deferred GUID
+	 */
+	public long getDeferredCount() {
+		return deferred.get();
+	}
+	/**
+	 * 
+	 * @return the number of deferred GUIDs that were later resolved
+	 */
+	public long getResolvedCount() {
+		return resolved.get();
+	}
+	/**
+	 * 
+	 * @return the number of resolution attempts that failed or threw an exception
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+	/**
+	 * 
+	 * @return the percentage (0-100) of deferred GUIDs that were never needed (so far)
+	 */
+	public double getAvoidedLookupPercent() {
+		long d = deferred.get();
+		if(d == 0) {
+			return 0.0;
+		}
+		long unresolved = Math.max(0, d - resolved.get());
+		return (unresolved * 100.0) / d;
+	}
+}
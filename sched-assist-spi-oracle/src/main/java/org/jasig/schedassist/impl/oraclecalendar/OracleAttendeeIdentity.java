@@ -0,0 +1,111 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import net.fortuna.ical4j.model.Parameter;
+import net.fortuna.ical4j.model.Property;
+import net.fortuna.ical4j.model.parameter.Cn;
+import net.fortuna.ical4j.model.property.Attendee;
+
+import org.jasig.schedassist.model.DefaultEventUtilsImpl;
+
+/**
+ * The values an ATTENDEE (or {@link OracleResourceAttendee}) must carry to represent an
+ * {@link AbstractOracleCalendarAccount}: the "mailto:" calendar address and the CN.
+ * 
+ * Both are computed once, so comparing an attendee against an account does no URI parsing
+ * or string concatenation. Instances are immutable; the account replaces its instance when
+ * the underlying fields change.
+ * 
+ * @see AbstractOracleCalendarAccount#getAttendeeIdentity()
+ * @version $Id: OracleAttendeeIdentity.java $
+ */
+public final class OracleAttendeeIdentity {
+
+	private final String emailAddress;
+	private final String mailto;
+	private final String displayName;
+
+	/**
+	 * @param emailAddress
+	 * @param displayName
+	 */
+	OracleAttendeeIdentity(String emailAddress, String displayName) {
+		this.emailAddress = emailAddress;
+		this.mailto = DefaultEventUtilsImpl.emailToURI(emailAddress).toString();
+		this.displayName = displayName;
+	}
+
+	/**
+	 * @return the email address this identity was computed from
+	 */
+	public String getEmailAddress() {
+		return emailAddress;
+	}
+	/**
+	 * @return the calendar address, e.g. "mailto:user@domain.edu"
+	 */
+	public String getMailto() {
+		return mailto;
+	}
+	/**
+	 * @return the value expected in the CN parameter
+	 */
+	public String getDisplayName() {
+		return displayName;
+	}
+
+	/**
+	 * Same criteria as {@link OracleEventUtilsImpl#attendeeMatchesPerson(Property, org.jasig.schedassist.model.ICalendarAccount)}:
+	 * the property must be an ATTENDEE or {@link OracleResourceAttendee}, the value must equal {@link #getMailto()}
+	 * and the CN must equal {@link #getDisplayName()}.
+	 * 
+	 * The calendar address is checked first as it rejects nearly every non-matching attendee.
+	 * 
+	 * @param attendee
+	 * @return true if the attendee represents this identity
+	 */
+	public boolean matches(Property attendee) {
+		if(null == attendee) {
+			return false;
+		}
+		final String name = attendee.getName();
+		if(!Attendee.ATTENDEE.equals(name) && !OracleResourceAttendee.ORACLE_RESOURCE_ATTENDEE.equals(name)) {
+			return false;
+		}
+		if(!mailto.equals(attendee.getValue())) {
+			return false;
+		}
+		Parameter cn = attendee.getParameter(Cn.CN);
+		if(null == cn) {
+			return false;
+		}
+		return cn.getValue().equals(displayName);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "OracleAttendeeIdentity [mailto=" + mailto + ", displayName=" + displayName + "]";
+	}
+}
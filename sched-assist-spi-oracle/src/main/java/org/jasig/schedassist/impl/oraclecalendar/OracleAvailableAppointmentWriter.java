@@ -0,0 +1,324 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.fortuna.ical4j.model.component.VEvent;
+import net.fortuna.ical4j.model.parameter.Cn;
+import net.fortuna.ical4j.model.parameter.CuType;
+import net.fortuna.ical4j.model.parameter.PartStat;
+import net.fortuna.ical4j.model.parameter.Rsvp;
+import net.fortuna.ical4j.model.property.Attendee;
+import net.fortuna.ical4j.model.property.Clazz;
+import net.fortuna.ical4j.model.property.Description;
+import net.fortuna.ical4j.model.property.DtEnd;
+import net.fortuna.ical4j.model.property.DtStamp;
+import net.fortuna.ical4j.model.property.DtStart;
+import net.fortuna.ical4j.model.property.Location;
+import net.fortuna.ical4j.model.property.Organizer;
+import net.fortuna.ical4j.model.property.Status;
+import net.fortuna.ical4j.model.property.Summary;
+import net.fortuna.ical4j.model.property.Uid;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jasig.schedassist.model.AppointmentRole;
+import org.jasig.schedassist.model.AvailableBlock;
+import org.jasig.schedassist.model.AvailableVersion;
+import org.jasig.schedassist.model.ICalendarAccount;
+import org.jasig.schedassist.model.IScheduleOwner;
+import org.jasig.schedassist.model.IScheduleVisitor;
+import org.jasig.schedassist.model.Preferences;
+import org.jasig.schedassist.model.SchedulingAssistantAppointment;
+import org.jasig.schedassist.model.VisitorLimit;
+
+/**
+ * Writes the iCalendar text of an available appointment directly into a reusable buffer, without
+ * assembling the {@link VEvent} and its Calendar.
+ * 
+ * The text carries the same properties, parameters and values, in the same order, as
+ * {@link OracleEventUtilsImpl#wrapEventInCalendar(VEvent)} for the event returned by
+ * {@link OracleEventUtilsImpl#constructAvailableAppointment(AvailableBlock, IScheduleOwner, String, IScheduleVisitor, String, String)}.
+ * Only the calendar's own properties (PRODID, VERSION) are taken from the {@link OracleEventUtilsImpl}, once,
+ * when the writer is constructed.
+ * 
+ * The writer is disabled for a customized (subclassed) {@link OracleEventUtilsImpl}, whose appointments it
+ * can't know. Appointments the writer can't express (an account without an email address, or a resource
+ * owner without an Oracle GUID) return null so callers serialize the event instead; these fallbacks are
+ * counted, see {@link #getFallbackCount()}.
+ * 
+ * @version $Id: OracleAvailableAppointmentWriter.java $
+ */
+public class OracleAvailableAppointmentWriter {
+
+	private static final String CRLF = "\r\n";
+	private static final String MAILTO = "mailto:";
+	/**
+	 * Buffers larger than this are not kept for reuse.
+	 */
+	private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+	private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(2048);
+		}
+	};
+
+	private Log LOG = LogFactory.getLog(this.getClass());
+	
+	private final boolean enabled;
+	private final String calendarPrefix;
+	private final AtomicLong fallbacks = new AtomicLong();
+
+	/**
+	 * 
+	 * @param eventUtils the {@link OracleEventUtilsImpl} whose appointments this writer writes
+	 */
+	public OracleAvailableAppointmentWriter(OracleEventUtilsImpl eventUtils) {
+		this.enabled = eventUtils.getClass() == OracleEventUtilsImpl.class;
+		if(!this.enabled) {
+			LOG.info("appointment writer disabled for customized event utils " + eventUtils.getClass());
+			this.calendarPrefix = null;
+		} else {
+			this.calendarPrefix = "BEGIN:VCALENDAR" + CRLF + eventUtils.wrapEventInCalendar(new VEvent()).getProperties().toString();
+		}
+	}
+
+	/**
+	 * 
+	 * @return true if the writer is in use
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+	/**
+	 * 
+	 * @return the number of appointments the writer returned null for
+	 */
+	public long getFallbackCount() {
+		return fallbacks.get();
+	}
+
+	/**
+	 * Write the iCalendar text for the appointment described by the arguments (the same arguments
+	 * given to {@link OracleEventUtilsImpl#constructAvailableAppointment(AvailableBlock, IScheduleOwner, String, IScheduleVisitor, String, String)}).
+	 * 
+	 * @param block
+	 * @param owner
+	 * @param ownerGuid the Oracle GUID for the owner (may be null); for a resource owner, used for the ORGANIZER and resource attendee too
+	 * @param visitor
+	 * @param visitorGuid the Oracle GUID for the visitor (may be null)
+	 * @param eventDescription
+	 * @param dateStamp the value for DTSTAMP (null for now)
+	 * @param uid the UID to append after the other properties (may be null)
+	 * @return the iCalendar text, or null if this writer can't produce this appointment
+	 */
+	public String writeAvailableAppointment(final AvailableBlock block, final IScheduleOwner owner, final String ownerGuid, 
+			final IScheduleVisitor visitor, final String visitorGuid, final String eventDescription, 
+			final Date dateStamp, final String uid) {
+		if(!enabled) {
+			return null;
+		}
+		final ICalendarAccount ownerAccount = owner.getCalendarAccount();
+		final ICalendarAccount visitorAccount = visitor.getCalendarAccount();
+		final boolean samePerson = owner.isSamePerson(visitor);
+		final String resourceGuid = ownerAccount instanceof OracleCalendarResourceAccount ? 
+				OracleEventUtilsImpl.resourceOracleGuid((OracleCalendarResourceAccount) ownerAccount, ownerGuid) : null;
+		String unsupported = null;
+		if(visitorAccount.getEmailAddress() == null || (!samePerson && ownerAccount.getEmailAddress() == null)) {
+			unsupported = "account without email address";
+		} else if (!samePerson && ownerAccount instanceof OracleCalendarResourceAccount 
+				&& resourceGuid == null) {
+			unsupported = "resource owner without oracle GUID";
+		}
+		if(unsupported != null) {
+			fallbacks.incrementAndGet();
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("not writing appointment for " + owner + " and " + visitor + ": " + unsupported);
+			}
+			return null;
+		}
+
+		StringBuilder out = BUFFER.get();
+		out.setLength(0);
+		try {
+			out.append(calendarPrefix);
+			out.append("BEGIN:VEVENT").append(CRLF);
+			appendDate(out, DtStamp.DTSTAMP, dateStamp != null ? dateStamp : new Date());
+			appendDate(out, DtStart.DTSTART, block.getStartTime());
+			appendDate(out, DtEnd.DTEND, block.getEndTime());
+			if(samePerson) {
+				appendAttendee(out, Attendee.ATTENDEE, visitorAccount, AppointmentRole.BOTH, visitorGuid);
+			} else {
+				appendAttendee(out, Attendee.ATTENDEE, visitorAccount, AppointmentRole.VISITOR, visitorGuid);
+				if(ownerAccount instanceof OracleCalendarResourceAccount) {
+					OracleCalendarResourceAccount resourceAccount = (OracleCalendarResourceAccount) ownerAccount;
+					out.append(Organizer.ORGANIZER);
+					appendParameter(out, OracleEventUtilsImpl.ORACLE_GUID, resourceGuid);
+					appendParameter(out, Cn.CN, resourceAccount.getResourceName());
+					appendParameter(out, AppointmentRole.APPOINTMENT_ROLE, AppointmentRole.OWNER.getValue());
+					out.append(':').append(MAILTO).append(resourceAccount.getEmailAddress()).append(CRLF);
+					appendAttendee(out, OracleResourceAttendee.ORACLE_RESOURCE_ATTENDEE, resourceAccount, AppointmentRole.OWNER, resourceGuid);
+				}
+				appendAttendee(out, Attendee.ATTENDEE, ownerAccount, AppointmentRole.OWNER, ownerGuid);
+			}
+			appendLine(out, OracleEventUtilsImpl.ORACLE_EVENTTYPE, "APPOINTMENT");
+			appendLine(out, SchedulingAssistantAppointment.AVAILABLE_APPOINTMENT, SchedulingAssistantAppointment.TRUE.getValue());
+			appendLine(out, AvailableVersion.AVAILABLE_VERSION, AvailableVersion.AVAILABLE_VERSION_1_2.getValue());
+			appendLine(out, VisitorLimit.VISITOR_LIMIT, Integer.toString(block.getVisitorLimit()));
+
+			StringBuilder title = new StringBuilder();
+			title.append(owner.getPreference(Preferences.MEETING_PREFIX));
+			if(block.getVisitorLimit() == 1) {
+				title.append(" with ");
+				title.append(visitorAccount.getDisplayName());
+				appendText(out, Description.DESCRIPTION, eventDescription);
+			}
+			appendText(out, Summary.SUMMARY, title.toString());
+			appendLine(out, Clazz.CLASS, Clazz.PRIVATE.getValue());
+			appendLine(out, "X-ORACLE-CLASS", "NORMAL");
+
+			final String blockMeetingLocationOverride = block.getMeetingLocation();
+			if(StringUtils.isNotBlank(blockMeetingLocationOverride)) {
+				appendText(out, Location.LOCATION, blockMeetingLocationOverride);
+			} else {
+				final String preferredLocation = owner.getPreferredLocation();
+				if(StringUtils.isNotBlank(preferredLocation)) {
+					appendText(out, Location.LOCATION, preferredLocation);
+				}
+			}
+			appendLine(out, Status.STATUS, Status.VEVENT_CONFIRMED.getValue());
+			if(uid != null) {
+				appendText(out, Uid.UID, uid);
+			}
+			out.append("END:VEVENT").append(CRLF);
+			out.append("END:VCALENDAR").append(CRLF);
+			return out.toString();
+		} finally {
+			if(out.capacity() > MAX_RETAINED_BUFFER) {
+				BUFFER.remove();
+			}
+		}
+	}
+
+	/**
+	 * Append an ATTENDEE (or resource attendee) in the form of
+	 * {@link OracleEventUtilsImpl#constructAvailableAttendee(ICalendarAccount, AppointmentRole, String)}.
+	 * 
+	 * @param out
+	 * @param name the property name
+	 * @param account
+	 * @param role
+	 * @param guid may be null
+	 */
+	static void appendAttendee(StringBuilder out, String name, ICalendarAccount account, AppointmentRole role, String guid) {
+		out.append(name);
+		appendParameter(out, PartStat.PARTSTAT, PartStat.ACCEPTED.getValue());
+		appendParameter(out, CuType.CUTYPE, CuType.INDIVIDUAL.getValue());
+		appendParameter(out, Rsvp.RSVP, Rsvp.FALSE.getValue());
+		appendParameter(out, AppointmentRole.APPOINTMENT_ROLE, role.getValue());
+		appendParameter(out, Cn.CN, account.getDisplayName());
+		appendParameter(out, OracleEventUtilsImpl.ORACLE_SHOWASFREE, "BUSY");
+		if(StringUtils.isNotBlank(guid)) {
+			appendParameter(out, OracleEventUtilsImpl.ORACLE_GUID, guid);
+		}
+		out.append(':').append(MAILTO).append(account.getEmailAddress()).append(CRLF);
+	}
+	/**
+	 * Append ";name=value", quoting values that contain ':', ';', ',' or non-ASCII characters.
+	 * 
+	 * @param out
+	 * @param name
+	 * @param value may be null
+	 */
+	static void appendParameter(StringBuilder out, String name, String value) {
+		out.append(';').append(name).append('=');
+		if(value == null) {
+			return;
+		}
+		boolean quote = false;
+		for(int i = 0; i < value.length() && !quote; i++) {
+			char c = value.charAt(i);
+			quote = c == ':' || c == ';' || c == ',' || c > 127;
+		}
+		if(quote) {
+			out.append('"').append(value).append('"');
+		} else {
+			out.append(value);
+		}
+	}
+	/**
+	 * Append a UTC date-time property.
+	 * 
+	 * @param out
+	 * @param name
+	 * @param date
+	 */
+	static void appendDate(StringBuilder out, String name, Date date) {
+		out.append(name).append(':').append(OracleEventUtilsImpl.FASTDATEFORMAT.format(date)).append(CRLF);
+	}
+	/**
+	 * Append a property whose value needs no escaping.
+	 * 
+	 * @param out
+	 * @param name
+	 * @param value
+	 */
+	static void appendLine(StringBuilder out, String name, String value) {
+		out.append(name).append(':').append(value).append(CRLF);
+	}
+	/**
+	 * Append a TEXT property, escaping backslash, ';', ',' and line breaks.
+	 * 
+	 * @param out
+	 * @param name
+	 * @param value may be null
+	 */
+	static void appendText(StringBuilder out, String name, String value) {
+		out.append(name).append(':');
+		if(value != null) {
+			for(int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				switch(c) {
+				case '\\':
+				case ';':
+				case ',':
+					out.append('\\').append(c);
+					break;
+				case '\r':
+					if(i + 1 < value.length() && value.charAt(i + 1) == '\n') {
+						break;
+					}
+					out.append("\\n");
+					break;
+				case '\n':
+					out.append("\\n");
+					break;
+				default:
+					out.append(c);
+				}
+			}
+		}
+		out.append(CRLF);
+	}
+}
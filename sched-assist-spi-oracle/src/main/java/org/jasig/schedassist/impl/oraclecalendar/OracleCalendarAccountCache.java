@@ -0,0 +1,415 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListener;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jasig.schedassist.model.ICalendarAccount;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Required;
+
+/**
+ * Cache of Oracle calendar user accounts that stores each account once, keyed by username, and 
+ * finds it by username, calendar unique id (ctcalxitemid), email address or the attribute it was 
+ * originally looked up by. An account loaded by one key is therefore a hit for all of the others.
+ * 
+ * The accounts live in a single {@link Ehcache}, so that cache's size, TTL and eviction policy apply to
+ * every key. The secondary keys are held in a map of secondary key to username that a listener on the 
+ * {@link Ehcache} keeps in step with puts, removals, expiry and eviction; entries restored by the 
+ * {@link WarmRestartCacheSnapshotter} are indexed by {@link #rebuildIndex()}. A secondary key is only honored if the cached account still carries it.
+ * 
+ * Key values are compared without regard to case, as LDAP does.
+ *
+ * @version $Id: OracleCalendarAccountCache.java $
+ */
+public class OracleCalendarAccountCache implements InitializingBean {
+
+	/**
+	 * The kinds of key accounts can be found by.
+	 */
+	public static enum KeyType {
+		USERNAME("uid:"),
+		CALENDAR_UNIQUE_ID("ctcalxitemid:"),
+		EMAIL_ADDRESS("email:"),
+		ATTRIBUTE("attribute:");
+		
+		private final String prefix;
+		/**
+		 * @param prefix
+		 */
+		private KeyType(String prefix) {
+			this.prefix = prefix;
+		}
+		/**
+		 * 
+		 * @param value
+		 * @return the cache key for the value
+		 */
+		String key(String value) {
+			return prefix + value.toLowerCase();
+		}
+	}
+	
+	private Log LOG = LogFactory.getLog(this.getClass());
+	
+	private Ehcache cache;
+	private final ConcurrentMap<String, String> secondaryKeys = new ConcurrentHashMap<String, String>();
+	private final Map<KeyType, AtomicLong> hits = new EnumMap<KeyType, AtomicLong>(KeyType.class);
+	private final Map<KeyType, AtomicLong> misses = new EnumMap<KeyType, AtomicLong>(KeyType.class);
+	
+	/**
+	 * 
+	 */
+	public OracleCalendarAccountCache() {
+		for(KeyType type : KeyType.values()) {
+			hits.put(type, new AtomicLong());
+			misses.put(type, new AtomicLong());
+		}
+	}
+	/**
+	 * @param cache the cache to set
+	 */
+	@Required
+	public void setCache(Ehcache cache) {
+		this.cache = cache;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		cache.getCacheEventNotificationService().registerListener(new SecondaryKeyMaintainer());
+		// index anything already present, e.g. restored from a snapshot
+		rebuildIndex();
+		LOG.info("account cache " + cache.getName() + " started with " + secondaryKeys.size() + " secondary keys");
+	}
+	
+	/**
+	 * Rebuild the secondary keys from the contents of the {@link Ehcache}; needed after entries are
+	 * put without notifying listeners, as {@link WarmRestartCacheSnapshotter} does.
+	 */
+	void rebuildIndex() {
+		secondaryKeys.clear();
+		for(Object key : cache.getKeys()) {
+			Element element = cache.getQuiet(key);
+			if(element != null) {
+				index(element);
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @param type one of USERNAME, CALENDAR_UNIQUE_ID or EMAIL_ADDRESS
+	 * @param value
+	 * @return the cached account, or null
+	 */
+	public ICalendarAccount get(KeyType type, String value) {
+		if(type == KeyType.ATTRIBUTE) {
+			throw new IllegalArgumentException("use getByAttribute for attribute lookups");
+		}
+		return lookup(type, type.key(value));
+	}
+	
+	/**
+	 * Lookups on the uid, ctcalxitemid and wisceducalemail attributes use the corresponding {@link KeyType}.
+	 * 
+	 * @param attributeName
+	 * @param value
+	 * @return the cached account, or null
+	 */
+	public ICalendarAccount getByAttribute(String attributeName, String value) {
+		KeyType type = keyTypeFor(attributeName);
+		if(type != KeyType.ATTRIBUTE) {
+			return get(type, value);
+		}
+		return lookup(type, attributeKey(attributeName, value));
+	}
+	
+	/**
+	 * Cache the account under its username, calendar unique id and email address.
+	 * Accounts without a username are not cached.
+	 * 
+	 * @param account
+	 */
+	public void put(ICalendarAccount account) {
+		put(account, null, null);
+	}
+	
+	/**
+	 * Cache the account, additionally findable by {@link #getByAttribute(String, String)} with the attribute.
+	 * 
+	 * @param account
+	 * @param attributeName
+	 * @param attributeValue
+	 */
+	public void put(ICalendarAccount account, String attributeName, String attributeValue) {
+		if(account == null || account.getUsername() == null) {
+			return;
+		}
+		List<String> keys = new ArrayList<String>(4);
+		if(account.getCalendarUniqueId() != null) {
+			keys.add(KeyType.CALENDAR_UNIQUE_ID.key(account.getCalendarUniqueId()));
+		}
+		String emailAddress = account.getEmailAddress();
+		if(emailAddress != null) {
+			keys.add(KeyType.EMAIL_ADDRESS.key(emailAddress));
+		}
+		if(attributeName != null && attributeValue != null && keyTypeFor(attributeName) == KeyType.ATTRIBUTE) {
+			keys.add(attributeKey(attributeName, attributeValue));
+		}
+		final String primaryKey = KeyType.USERNAME.key(account.getUsername());
+		// keep attribute keys recorded by earlier lookups of the same account
+		Element existing = cache.getQuiet(primaryKey);
+		if(existing != null && existing.getObjectValue() instanceof CachedAccount) {
+			for(String key : ((CachedAccount) existing.getObjectValue()).secondaryKeys) {
+				if(key.startsWith(KeyType.ATTRIBUTE.prefix) && !keys.contains(key)) {
+					keys.add(key);
+				}
+			}
+		}
+		cache.put(new Element(primaryKey, new CachedAccount(account, keys.toArray(new String[keys.size()]))));
+	}
+	
+	/**
+	 * Remove the account from the cache.
+	 * 
+	 * @param username
+	 * @return true if the account was cached
+	 */
+	public boolean remove(String username) {
+		return cache.remove(KeyType.USERNAME.key(username));
+	}
+	
+	/**
+	 * 
+	 * @return the number of accounts cached
+	 */
+	public int getSize() {
+		return cache.getSize();
+	}
+	/**
+	 * 
+	 * @return the number of secondary keys held
+	 */
+	public int getSecondaryKeyCount() {
+		return secondaryKeys.size();
+	}
+	/**
+	 * 
+	 * @return hits keyed by key type
+	 */
+	public Map<String, Long> getHits() {
+		return counts(hits);
+	}
+	/**
+	 * 
+	 * @return misses keyed by key type
+	 */
+	public Map<String, Long> getMisses() {
+		return counts(misses);
+	}
+	/**
+	 * 
+	 * @return the hit percentage (0-100) keyed by key type
+	 */
+	public Map<String, Double> getHitPercent() {
+		Map<String, Double> result = new TreeMap<String, Double>();
+		for(KeyType type : KeyType.values()) {
+			long hit = hits.get(type).get();
+			long total = hit + misses.get(type).get();
+			result.put(type.name(), total == 0 ? 0.0 : (hit * 100.0) / total);
+		}
+		return result;
+	}
+	
+	/**
+	 * 
+	 * @param type
+	 * @param key
+	 * @return the cached account, or null
+	 */
+	private ICalendarAccount lookup(KeyType type, String key) {
+		String primaryKey = type == KeyType.USERNAME ? key : secondaryKeys.get(key);
+		CachedAccount cached = null;
+		if(primaryKey != null) {
+			Element element = cache.get(primaryKey);
+			if(element != null && element.getObjectValue() instanceof CachedAccount) {
+				cached = (CachedAccount) element.getObjectValue();
+				if(type != KeyType.USERNAME && !cached.hasSecondaryKey(key)) {
+					// the account was replaced by one that no longer carries this key
+					secondaryKeys.remove(key, primaryKey);
+					cached = null;
+				}
+			}
+		}
+		if(cached == null) {
+			misses.get(type).incrementAndGet();
+			return null;
+		}
+		hits.get(type).incrementAndGet();
+		return cached.account;
+	}
+	
+	/**
+	 * 
+	 * @param element
+	 */
+	private void index(Element element) {
+		if(element.getObjectValue() instanceof CachedAccount) {
+			String primaryKey = (String) element.getObjectKey();
+			for(String key : ((CachedAccount) element.getObjectValue()).secondaryKeys) {
+				secondaryKeys.put(key, primaryKey);
+			}
+		}
+	}
+	/**
+	 * 
+	 * @param element
+	 */
+	private void unindex(Element element) {
+		if(element != null && element.getObjectValue() instanceof CachedAccount) {
+			String primaryKey = (String) element.getObjectKey();
+			for(String key : ((CachedAccount) element.getObjectValue()).secondaryKeys) {
+				secondaryKeys.remove(key, primaryKey);
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @param attributeName
+	 * @return the {@link KeyType} for lookups by the attribute
+	 */
+	static KeyType keyTypeFor(String attributeName) {
+		String lcAttributeName = attributeName.toLowerCase();
+		if(OracleCalendarUserAccountAttributesMapper.USERNAME_ATTRIBUTE.equals(lcAttributeName)) {
+			return KeyType.USERNAME;
+		} else if (AbstractOracleCalendarAccount.CTCALXITEMID.equals(lcAttributeName)) {
+			return KeyType.CALENDAR_UNIQUE_ID;
+		} else if (AbstractOracleCalendarAccount.WISCEDUCALEMAIL.equals(lcAttributeName)) {
+			return KeyType.EMAIL_ADDRESS;
+		}
+		return KeyType.ATTRIBUTE;
+	}
+	/**
+	 * 
+	 * @param attributeName
+	 * @param value
+	 * @return the secondary key for an arbitrary attribute
+	 */
+	static String attributeKey(String attributeName, String value) {
+		return KeyType.ATTRIBUTE.key(attributeName + "=" + value);
+	}
+	/**
+	 * 
+	 * @param counters
+	 * @return the counters keyed by key type name
+	 */
+	static Map<String, Long> counts(Map<KeyType, AtomicLong> counters) {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for(Map.Entry<KeyType, AtomicLong> entry : counters.entrySet()) {
+			result.put(entry.getKey().name(), entry.getValue().get());
+		}
+		return result;
+	}
+	
+	/**
+	 * The cached value: the account and the secondary keys it can be found by.
+	 */
+	static final class CachedAccount implements Serializable {
+		private static final long serialVersionUID = 53706L;
+		private final ICalendarAccount account;
+		private final String [] secondaryKeys;
+		
+		/**
+		 * @param account
+		 * @param secondaryKeys
+		 */
+		CachedAccount(ICalendarAccount account, String[] secondaryKeys) {
+			this.account = account;
+			this.secondaryKeys = secondaryKeys;
+		}
+		/**
+		 * 
+		 * @param key
+		 * @return true if the account can be found by the key
+		 */
+		boolean hasSecondaryKey(String key) {
+			return Arrays.asList(secondaryKeys).contains(key);
+		}
+	}
+	
+	/**
+	 * Keeps {@link OracleCalendarAccountCache#secondaryKeys} in step with the {@link Ehcache}.
+	 */
+	private class SecondaryKeyMaintainer implements CacheEventListener {
+		@Override
+		public void notifyElementPut(Ehcache ehcache, Element element) throws CacheException {
+			index(element);
+		}
+		@Override
+		public void notifyElementUpdated(Ehcache ehcache, Element element) throws CacheException {
+			// keys dropped by the update are discarded on their next lookup
+			index(element);
+		}
+		@Override
+		public void notifyElementRemoved(Ehcache ehcache, Element element) throws CacheException {
+			unindex(element);
+		}
+		@Override
+		public void notifyElementExpired(Ehcache ehcache, Element element) {
+			unindex(element);
+		}
+		@Override
+		public void notifyElementEvicted(Ehcache ehcache, Element element) {
+			unindex(element);
+		}
+		@Override
+		public void notifyRemoveAll(Ehcache ehcache) {
+			secondaryKeys.clear();
+		}
+		@Override
+		public void dispose() {
+		}
+		@Override
+		public Object clone() throws CloneNotSupportedException {
+			throw new CloneNotSupportedException();
+		}
+	}
+}
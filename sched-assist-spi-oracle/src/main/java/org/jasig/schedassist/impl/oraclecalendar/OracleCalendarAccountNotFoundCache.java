@@ -0,0 +1,271 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jasig.schedassist.impl.oraclecalendar.OracleCalendarAccountCache.KeyType;
+import org.jasig.schedassist.model.ICalendarAccount;
+import org.springframework.beans.factory.annotation.Required;
+
+/**
+ * Ehcache backed record of account lookups that found no account (e.g. a visitor without a calendar), 
+ * so that repeated lookups for the same key don't each cost an LDAP search.
+ * 
+ * Entries live for {@link #setNotFoundTimeToLiveSeconds(int)}, independent of the account cache's TTL;
+ * the size bound is that of the {@link Ehcache}. Keys are built the same way as 
+ * {@link OracleCalendarAccountCache}'s and compared without regard to case.
+ * 
+ * An account that is found again (for example by another key, after being provisioned) clears its entries 
+ * via {@link #remove(ICalendarAccount)}; entries can also be invalidated explicitly with 
+ * {@link #invalidate(String)} and {@link #invalidateAll()}.
+ *
+ * @version $Id: OracleCalendarAccountNotFoundCache.java $
+ */
+public class OracleCalendarAccountNotFoundCache {
+
+	private static final KeyType [] ACCOUNT_KEY_TYPES = new KeyType[] { KeyType.USERNAME, KeyType.CALENDAR_UNIQUE_ID, KeyType.EMAIL_ADDRESS };
+	
+	private Log LOG = LogFactory.getLog(this.getClass());
+	
+	private Ehcache cache;
+	private int notFoundTimeToLiveSeconds = 300;
+	
+	private final Map<KeyType, AtomicLong> hits = new EnumMap<KeyType, AtomicLong>(KeyType.class);
+	private final Map<KeyType, AtomicLong> misses = new EnumMap<KeyType, AtomicLong>(KeyType.class);
+	private final AtomicLong notFoundLookups = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+	
+	/**
+	 * 
+	 */
+	public OracleCalendarAccountNotFoundCache() {
+		for(KeyType type : KeyType.values()) {
+			hits.put(type, new AtomicLong());
+			misses.put(type, new AtomicLong());
+		}
+	}
+	/**
+	 * @param cache the cache to set
+	 */
+	@Required
+	public void setCache(Ehcache cache) {
+		this.cache = cache;
+	}
+	/**
+	 * @param notFoundTimeToLiveSeconds how long a lookup that found nothing is remembered (default 300)
+	 */
+	public void setNotFoundTimeToLiveSeconds(int notFoundTimeToLiveSeconds) {
+		this.notFoundTimeToLiveSeconds = notFoundTimeToLiveSeconds;
+	}
+	
+	/**
+	 * 
+	 * @param type one of USERNAME, CALENDAR_UNIQUE_ID or EMAIL_ADDRESS
+	 * @param value
+	 * @return true if a recent lookup by the key found no account
+	 */
+	public boolean isNotFound(KeyType type, String value) {
+		if(type == KeyType.ATTRIBUTE) {
+			throw new IllegalArgumentException("use isNotFoundByAttribute for attribute lookups");
+		}
+		return lookup(type, type.key(value));
+	}
+	/**
+	 * Lookups on the uid, ctcalxitemid and wisceducalemail attributes use the corresponding {@link KeyType}.
+	 * 
+	 * @param attributeName
+	 * @param value
+	 * @return true if a recent lookup by the attribute found no account
+	 */
+	public boolean isNotFoundByAttribute(String attributeName, String value) {
+		KeyType type = OracleCalendarAccountCache.keyTypeFor(attributeName);
+		if(type != KeyType.ATTRIBUTE) {
+			return isNotFound(type, value);
+		}
+		return lookup(type, OracleCalendarAccountCache.attributeKey(attributeName, value));
+	}
+	
+	/**
+	 * Record that a lookup by the key found no account.
+	 * 
+	 * @param type one of USERNAME, CALENDAR_UNIQUE_ID or EMAIL_ADDRESS
+	 * @param value
+	 */
+	public void putNotFound(KeyType type, String value) {
+		if(type == KeyType.ATTRIBUTE) {
+			throw new IllegalArgumentException("use putNotFoundByAttribute for attribute lookups");
+		}
+		store(type.key(value));
+	}
+	/**
+	 * Record that a lookup by the attribute found no account.
+	 * 
+	 * @param attributeName
+	 * @param value
+	 */
+	public void putNotFoundByAttribute(String attributeName, String value) {
+		KeyType type = OracleCalendarAccountCache.keyTypeFor(attributeName);
+		if(type != KeyType.ATTRIBUTE) {
+			putNotFound(type, value);
+		} else {
+			store(OracleCalendarAccountCache.attributeKey(attributeName, value));
+		}
+	}
+	
+	/**
+	 * Clear the entries for the account's username, calendar unique id and email address.
+	 * 
+	 * @param account
+	 */
+	public void remove(ICalendarAccount account) {
+		if(account == null || cache.getSize() == 0) {
+			return;
+		}
+		removeKey(account.getUsername(), KeyType.USERNAME);
+		removeKey(account.getCalendarUniqueId(), KeyType.CALENDAR_UNIQUE_ID);
+		removeKey(account.getEmailAddress(), KeyType.EMAIL_ADDRESS);
+	}
+	
+	/**
+	 * Clear the entries for the value as a username, calendar unique id or email address.
+	 * 
+	 * @param value
+	 * @return the number of entries removed
+	 */
+	public int invalidate(String value) {
+		int removed = 0;
+		if(value != null) {
+			for(KeyType type : ACCOUNT_KEY_TYPES) {
+				if(cache.remove(type.key(value))) {
+					removed++;
+				}
+			}
+		}
+		invalidations.addAndGet(removed);
+		LOG.info("invalidated " + removed + " not found entries for " + value);
+		return removed;
+	}
+	/**
+	 * Clear every entry.
+	 * 
+	 * @return the number of entries removed
+	 */
+	public int invalidateAll() {
+		int removed = cache.getSize();
+		cache.removeAll();
+		invalidations.addAndGet(removed);
+		LOG.info("invalidated all " + removed + " not found entries");
+		return removed;
+	}
+	
+	/**
+	 * 
+	 * @return the number of keys currently recorded as not found
+	 */
+	public int getSize() {
+		return cache.getSize();
+	}
+	/**
+	 * 
+	 * @return the number of lookups recorded as not found
+	 */
+	public long getNotFoundLookups() {
+		return notFoundLookups.get();
+	}
+	/**
+	 * 
+	 * @return the number of entries removed by {@link #invalidate(String)} and {@link #invalidateAll()}
+	 */
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+	/**
+	 * 
+	 * @return lookups answered as not found, keyed by key type
+	 */
+	public Map<String, Long> getHits() {
+		return OracleCalendarAccountCache.counts(hits);
+	}
+	/**
+	 * 
+	 * @return lookups with no not found entry, keyed by key type
+	 */
+	public Map<String, Long> getMisses() {
+		return OracleCalendarAccountCache.counts(misses);
+	}
+	/**
+	 * 
+	 * @return the percentage (0-100) of lookups answered as not found, keyed by key type
+	 */
+	public Map<String, Double> getHitPercent() {
+		Map<String, Double> result = new TreeMap<String, Double>();
+		for(KeyType type : KeyType.values()) {
+			long hit = hits.get(type).get();
+			long total = hit + misses.get(type).get();
+			result.put(type.name(), total == 0 ? 0.0 : (hit * 100.0) / total);
+		}
+		return result;
+	}
+	
+	/**
+	 * 
+	 * @param type
+	 * @param key
+	 * @return true if the key is recorded as not found
+	 */
+	private boolean lookup(KeyType type, String key) {
+		if(cache.get(key) != null) {
+			hits.get(type).incrementAndGet();
+			return true;
+		}
+		misses.get(type).incrementAndGet();
+		return false;
+	}
+	/**
+	 * 
+	 * @param key
+	 */
+	private void store(String key) {
+		notFoundLookups.incrementAndGet();
+		Element element = new Element(key, Boolean.TRUE);
+		element.setTimeToLive(notFoundTimeToLiveSeconds);
+		cache.put(element);
+	}
+	/**
+	 * 
+	 * @param value
+	 * @param type
+	 */
+	private void removeKey(String value, KeyType type) {
+		if(value != null) {
+			cache.remove(type.key(value));
+		}
+	}
+}
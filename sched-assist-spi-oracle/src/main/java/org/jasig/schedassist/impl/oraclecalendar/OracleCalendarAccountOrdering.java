@@ -0,0 +1,119 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
+
+import org.jasig.schedassist.model.ICalendarAccount;
+
+/**
+ * Sorts accounts by display name, then username, nulls first.
+ * 
+ * {@link AbstractOracleCalendarAccount#getDisplayName()} builds a new String on every call, so the 
+ * sort keys are computed once per account rather than once per comparison, and the comparator itself 
+ * does not allocate.
+ *
+ * @version $Id: OracleCalendarAccountOrdering.java $
+ */
+final class OracleCalendarAccountOrdering {
+
+	private static final Comparator<SortKey> KEY_ORDER = new Comparator<SortKey>() {
+		@Override
+		public int compare(SortKey o1, SortKey o2) {
+			int result = compareNullsFirst(o1.displayName, o2.displayName);
+			if(result == 0) {
+				result = compareNullsFirst(o1.username, o2.username);
+			}
+			return result;
+		}
+	};
+	
+	/**
+	 * Not instantiated.
+	 */
+	private OracleCalendarAccountOrdering() {
+	}
+	
+	/**
+	 * Sort the list in place.
+	 * 
+	 * @param accounts
+	 * @param byUsername if false, accounts with equal display names keep their relative order
+	 */
+	static <T extends ICalendarAccount> void sort(List<T> accounts, boolean byUsername) {
+		if(accounts.size() < 2) {
+			return;
+		}
+		SortKey [] keys = new SortKey[accounts.size()];
+		int i = 0;
+		for(T account : accounts) {
+			keys[i++] = new SortKey(account, account.getDisplayName(), byUsername ? account.getUsername() : null);
+		}
+		Arrays.sort(keys, KEY_ORDER);
+		// the search results may be a LinkedList
+		ListIterator<T> iterator = accounts.listIterator();
+		for(SortKey key : keys) {
+			iterator.next();
+			@SuppressWarnings("unchecked")
+			T account = (T) key.account;
+			iterator.set(account);
+		}
+	}
+	
+	/**
+	 * Same result as {@link org.apache.commons.lang.builder.CompareToBuilder#append(Object, Object)} for Strings.
+	 * 
+	 * @param s1
+	 * @param s2
+	 * @return a negative, zero or positive value
+	 */
+	static int compareNullsFirst(String s1, String s2) {
+		if(s1 == s2) {
+			return 0;
+		} else if (s1 == null) {
+			return -1;
+		} else if (s2 == null) {
+			return 1;
+		}
+		return s1.compareTo(s2);
+	}
+	
+	/**
+	 * An account with its precomputed sort fields.
+	 */
+	private static final class SortKey {
+		private final ICalendarAccount account;
+		private final String displayName;
+		private final String username;
+		/**
+		 * @param account
+		 * @param displayName
+		 * @param username
+		 */
+		SortKey(ICalendarAccount account, String displayName, String username) {
+			this.account = account;
+			this.displayName = displayName;
+			this.username = username;
+		}
+	}
+}
@@ -0,0 +1,549 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.directory.SearchControls;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jasig.schedassist.model.ICalendarAccount;
+import org.springframework.beans.factory.annotation.Required;
+import org.springframework.ldap.core.LdapTemplate;
+import org.springframework.ldap.filter.AndFilter;
+import org.springframework.ldap.filter.GreaterThanOrEqualsFilter;
+import org.springframework.ldap.filter.LikeFilter;
+
+/**
+ * In-memory index of eligible Oracle calendar user accounts for the visitor search box, 
+ * answering the same substring queries {@link OracleLdapCalendarAccountDaoImpl#searchForCalendarAccounts(String)}
+ * sends to LDAP (uid or displayName contains the text) without a directory round trip.
+ * 
+ * Every account's lower cased uid and display name are broken into trigrams; a query of 3 or more 
+ * characters intersects the posting lists of its trigrams and verifies the candidates, shorter queries scan 
+ * the accounts in order. Results come back in display name, username order.
+ * 
+ * {@link #rebuild()} loads every account with paged LDAP searches; {@link #refresh()} only loads accounts whose 
+ * modifyTimestamp is at or after the newest one already seen, and falls back to {@link #rebuild()} when the index is empty.
+ * A modified account that is no longer eligible is removed by {@link #refresh()}, but modifications cannot detect 
+ * deleted accounts, so {@link #rebuild()} should also be scheduled (e.g. nightly).
+ * Accounts keep only the attributes named by {@link #setReturningAttributes(String[])}.
+ * Both build a new immutable snapshot and swap it in, so queries never wait on a refresh.
+ * 
+ * Until the first load completes {@link #isReady()} is false and callers should use LDAP.
+ *
+ * @version $Id: OracleCalendarAccountSearchIndex.java $
+ */
+public class OracleCalendarAccountSearchIndex {
+
+	static final String MODIFY_TIMESTAMP = "modifyTimestamp";
+	private static final String WILD = "*";
+	private static final char FIELD_SEPARATOR = '\u0000';
+	
+	private Log LOG = LogFactory.getLog(this.getClass());
+	
+	private LdapTemplate ldapTemplate;
+	private String baseDn = "o=isp";
+	private String calendarUniqueIdAttributeName = AbstractOracleCalendarAccount.CTCALXITEMID;
+	private DeferredOracleGUIDResolver deferredOracleGUIDResolver;
+	private int pageSize = 500;
+	private int searchTimeLimit = 60000;
+	private String [] requestedAttributes = { WILD, MODIFY_TIMESTAMP };
+	private Set<String> retainedAttributes;
+	
+	private volatile Snapshot snapshot;
+	private final AtomicLong queries = new AtomicLong();
+	private final AtomicLong rebuilds = new AtomicLong();
+	private final AtomicLong refreshes = new AtomicLong();
+	private volatile long lastLoadMillis;
+	private volatile long lastLoadDurationMillis;
+	
+	/**
+	 * @param ldapTemplate the ldapTemplate to set
+	 */
+	@Required
+	public void setLdapTemplate(LdapTemplate ldapTemplate) {
+		this.ldapTemplate = ldapTemplate;
+	}
+	/**
+	 * @param baseDn the baseDn to set
+	 */
+	@Required
+	public void setBaseDn(String baseDn) {
+		this.baseDn = baseDn;
+	}
+	/**
+	 * Default value is "ctcalxitemid".
+	 * 
+	 * @param calendarUniqueIdAttributeName the calendarUniqueIdAttributeName to set
+	 */
+	public void setCalendarUniqueIdAttributeName(String calendarUniqueIdAttributeName) {
+		this.calendarUniqueIdAttributeName = calendarUniqueIdAttributeName;
+	}
+	/**
+	 * @param deferredOracleGUIDResolver the deferredOracleGUIDResolver to set
+	 */
+	@Required
+	public void setDeferredOracleGUIDResolver(
+			DeferredOracleGUIDResolver deferredOracleGUIDResolver) {
+		this.deferredOracleGUIDResolver = deferredOracleGUIDResolver;
+	}
+	/**
+	 * @param pageSize the LDAP paged results page size (default 500)
+	 */
+	public void setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+	}
+	/**
+	 * @param searchTimeLimit the time limit in milliseconds for each page (default 60000)
+	 */
+	public void setSearchTimeLimit(int searchTimeLimit) {
+		this.searchTimeLimit = searchTimeLimit;
+	}
+	
+	/**
+	 * Optional; the attributes to request from the directory and keep on the indexed accounts, as for 
+	 * {@link OracleLdapCalendarAccountDaoImpl#setReturningAttributes(String[])}. modifyTimestamp is always added.
+	 * The default (null) requests and keeps all attributes.
+	 * 
+	 * @param returningAttributes the returningAttributes to set
+	 */
+	public void setReturningAttributes(String[] returningAttributes) {
+		if(returningAttributes == null) {
+			this.requestedAttributes = new String[] { WILD, MODIFY_TIMESTAMP };
+			this.retainedAttributes = null;
+		} else {
+			this.requestedAttributes = Arrays.copyOf(returningAttributes, returningAttributes.length + 1);
+			this.requestedAttributes[returningAttributes.length] = MODIFY_TIMESTAMP;
+			this.retainedAttributes = OracleLdapAttributeNames.retained(this.requestedAttributes);
+		}
+	}
+	
+	/**
+	 * 
+	 * @return true once the index has been loaded
+	 */
+	public boolean isReady() {
+		return snapshot != null;
+	}
+	
+	/**
+	 * 
+	 * @param searchText
+	 * @param limit maximum number of results
+	 * @return accounts whose uid or display name contains the text (case insensitive), in display name order
+	 * @throws IllegalStateException if the index is not {@link #isReady()}
+	 */
+	public List<ICalendarAccount> search(String searchText, int limit) {
+		Snapshot current = this.snapshot;
+		if(current == null) {
+			throw new IllegalStateException("search index is not loaded");
+		}
+		queries.incrementAndGet();
+		return current.search(searchText == null ? "" : searchText.trim().toLowerCase(), limit);
+	}
+	
+	/**
+	 * Replace the index with a full load of the directory.
+	 * 
+	 * @return the number of accounts indexed
+	 */
+	public synchronized int rebuild() {
+		final long start = System.currentTimeMillis();
+		List<ICalendarAccount> loaded = load(null);
+		if(loaded == null) {
+			return -1;
+		}
+		List<ICalendarAccount> eligible = new ArrayList<ICalendarAccount>(loaded.size());
+		for(ICalendarAccount account : loaded) {
+			if(account.isEligible()) {
+				eligible.add(account);
+			}
+		}
+		Snapshot rebuilt = Snapshot.build(eligible, null);
+		this.snapshot = rebuilt;
+		rebuilds.incrementAndGet();
+		recordLoad(start);
+		LOG.info("rebuilt account search index with " + rebuilt.accounts.length + " accounts in " + lastLoadDurationMillis + " msec");
+		return rebuilt.accounts.length;
+	}
+	
+	/**
+	 * Merge accounts modified since the previous load into the index, or {@link #rebuild()} if it is empty.
+	 * Modified accounts that are no longer eligible are removed.
+	 * 
+	 * @return the number of modified accounts loaded
+	 */
+	public synchronized int refresh() {
+		Snapshot current = this.snapshot;
+		if(current == null || current.highWaterMark == null) {
+			return rebuild();
+		}
+		final long start = System.currentTimeMillis();
+		List<ICalendarAccount> modified = load(current.highWaterMark);
+		if(modified == null) {
+			return -1;
+		}
+		if(!modified.isEmpty()) {
+			List<ICalendarAccount> eligible = new ArrayList<ICalendarAccount>(modified.size());
+			List<ICalendarAccount> ineligible = new ArrayList<ICalendarAccount>();
+			for(ICalendarAccount account : modified) {
+				if(account.isEligible()) {
+					eligible.add(account);
+				} else {
+					ineligible.add(account);
+				}
+			}
+			this.snapshot = current.merge(eligible, ineligible);
+			LOG.info("merged " + eligible.size() + " modified accounts into account search index, removed up to " + ineligible.size() + " no longer eligible");
+		}
+		refreshes.incrementAndGet();
+		recordLoad(start);
+		return modified.size();
+	}
+	
+	/**
+	 * 
+	 * @return the number of accounts in the index
+	 */
+	public int getIndexedAccounts() {
+		Snapshot current = this.snapshot;
+		return current == null ? 0 : current.accounts.length;
+	}
+	/**
+	 * 
+	 * @return the number of distinct trigrams in the index
+	 */
+	public int getIndexedTrigrams() {
+		Snapshot current = this.snapshot;
+		return current == null ? 0 : current.trigrams.size();
+	}
+	/**
+	 * 
+	 * @return the number of queries served by the index
+	 */
+	public long getQueries() {
+		return queries.get();
+	}
+	/**
+	 * 
+	 * @return the number of full loads
+	 */
+	public long getRebuilds() {
+		return rebuilds.get();
+	}
+	/**
+	 * 
+	 * @return the number of incremental loads
+	 */
+	public long getRefreshes() {
+		return refreshes.get();
+	}
+	/**
+	 * 
+	 * @return the time (epoch millis) the last load completed, or 0
+	 */
+	public long getLastLoadMillis() {
+		return lastLoadMillis;
+	}
+	/**
+	 * 
+	 * @return how long the last load took
+	 */
+	public long getLastLoadDurationMillis() {
+		return lastLoadDurationMillis;
+	}
+	
+	/**
+	 * 
+	 * @param start
+	 */
+	private void recordLoad(long start) {
+		this.lastLoadMillis = System.currentTimeMillis();
+		this.lastLoadDurationMillis = lastLoadMillis - start;
+	}
+	
+	/**
+	 * Load the accounts with a paged search: all accounts with a calendar unique id, or, if the timestamp 
+	 * is not null, all accounts modified at or after it (including those that lost their calendar unique id).
+	 * Eligible accounts are returned in their compact form; the caller checks eligibility.
+	 * 
+	 * @param modifiedSince generalized time, or null for all accounts
+	 * @return the accounts, or null if the load failed
+	 */
+	protected List<ICalendarAccount> load(String modifiedSince) {
+		AndFilter searchFilter = new AndFilter();
+		searchFilter.and(new LikeFilter(OracleCalendarUserAccountAttributesMapper.USERNAME_ATTRIBUTE, WILD));
+		if(modifiedSince != null) {
+			searchFilter.and(new GreaterThanOrEqualsFilter(MODIFY_TIMESTAMP, modifiedSince));
+		} else {
+			searchFilter.and(new LikeFilter(calendarUniqueIdAttributeName, WILD));
+		}
+		SearchControls searchControls = new SearchControls();
+		searchControls.setCountLimit(0);
+		searchControls.setTimeLimit(searchTimeLimit);
+		searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+		// modifyTimestamp is operational, it must be requested explicitly
+		searchControls.setReturningAttributes(requestedAttributes);
+		
+		try {
+			List<ICalendarAccount> loaded = OracleLdapPagedSearch.search(ldapTemplate, baseDn, searchFilter.toString(), searchControls, 
+					new OracleCalendarUserAccountAttributesMapper(deferredOracleGUIDResolver, retainedAttributes), pageSize);
+			List<ICalendarAccount> results = new ArrayList<ICalendarAccount>(loaded.size());
+			for(ICalendarAccount account : loaded) {
+				results.add(account.isEligible() ? CompactOracleCalendarUserAccount.compact(account) : account);
+			}
+			return results;
+		} catch (RuntimeException e) {
+			LOG.error("failed to load accounts for search index (modified since " + modifiedSince + ")", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * 
+	 * @param account
+	 * @return the lower cased text queries are matched against
+	 */
+	static String searchableText(ICalendarAccount account) {
+		StringBuilder text = new StringBuilder();
+		if(account.getUsername() != null) {
+			text.append(account.getUsername().toLowerCase());
+		}
+		text.append(FIELD_SEPARATOR);
+		String displayName = account.getAttributeValue(OracleCalendarUserAccountAttributesMapper.DISPLAYNAME_ATTRIBUTE);
+		if(displayName != null) {
+			text.append(displayName.toLowerCase());
+		}
+		return text.toString();
+	}
+	
+	/**
+	 * Immutable index contents.
+	 */
+	static final class Snapshot {
+		private static final int [] EMPTY = new int[0];
+		
+		final ICalendarAccount [] accounts;
+		final String [] texts;
+		final Map<String, int[]> trigrams;
+		final String highWaterMark;
+		
+		/**
+		 * @param accounts
+		 * @param texts
+		 * @param trigrams
+		 * @param highWaterMark
+		 */
+		private Snapshot(ICalendarAccount[] accounts, String[] texts,
+				Map<String, int[]> trigrams, String highWaterMark) {
+			this.accounts = accounts;
+			this.texts = texts;
+			this.trigrams = trigrams;
+			this.highWaterMark = highWaterMark;
+		}
+		
+		/**
+		 * 
+		 * @param loaded
+		 * @param previousHighWaterMark
+		 * @return a new snapshot of the accounts
+		 */
+		static Snapshot build(List<ICalendarAccount> loaded, String previousHighWaterMark) {
+			// the last occurrence of a username wins
+			Map<String, ICalendarAccount> unique = new LinkedHashMap<String, ICalendarAccount>();
+			for(ICalendarAccount account : loaded) {
+				unique.put(account.getUsername(), account);
+			}
+			String highWaterMark = newest(loaded, previousHighWaterMark);
+			List<ICalendarAccount> sorted = new ArrayList<ICalendarAccount>(unique.values());
+			OracleCalendarAccountOrdering.sort(sorted, true);
+			ICalendarAccount [] accounts = sorted.toArray(new ICalendarAccount[sorted.size()]);
+			
+			String [] texts = new String[accounts.length];
+			Map<String, int[]> postings = new HashMap<String, int[]>();
+			Map<String, Integer> lengths = new HashMap<String, Integer>();
+			for(int i = 0; i < accounts.length; i++) {
+				texts[i] = searchableText(accounts[i]);
+				String previousTrigram = null;
+				for(String trigram : trigramsOf(texts[i])) {
+					if(trigram.equals(previousTrigram)) {
+						continue;
+					}
+					previousTrigram = trigram;
+					int [] list = postings.get(trigram);
+					Integer length = lengths.get(trigram);
+					int n = length == null ? 0 : length;
+					if(list == null) {
+						list = new int[4];
+					} else if (n > 0 && list[n - 1] == i) {
+						// repeated trigram within the same account
+						continue;
+					} else if (n == list.length) {
+						list = Arrays.copyOf(list, n * 2);
+					}
+					list[n] = i;
+					postings.put(trigram, list);
+					lengths.put(trigram, n + 1);
+				}
+			}
+			Map<String, int[]> trigrams = new HashMap<String, int[]>(postings.size() * 2);
+			for(Entry<String, int[]> entry : postings.entrySet()) {
+				trigrams.put(entry.getKey(), Arrays.copyOf(entry.getValue(), lengths.get(entry.getKey())));
+			}
+			return new Snapshot(accounts, texts, trigrams, highWaterMark);
+		}
+		
+		/**
+		 * 
+		 * @param accounts
+		 * @param highWaterMark
+		 * @return the newest modifyTimestamp among the accounts and the high water mark
+		 */
+		static String newest(List<ICalendarAccount> accounts, String highWaterMark) {
+			String newest = highWaterMark;
+			for(ICalendarAccount account : accounts) {
+				String modified = account.getAttributeValue(MODIFY_TIMESTAMP.toLowerCase());
+				if(modified != null && (newest == null || modified.compareTo(newest) > 0)) {
+					newest = modified;
+				}
+			}
+			return newest;
+		}
+		
+		/**
+		 * 
+		 * @param modified eligible modified accounts
+		 * @param removed modified accounts that are no longer eligible
+		 * @return a new snapshot with the modified accounts replacing (or added to) this snapshot's accounts, 
+		 * and the removed accounts dropped
+		 */
+		Snapshot merge(List<ICalendarAccount> modified, List<ICalendarAccount> removed) {
+			Set<String> removedUsernames = new HashSet<String>();
+			for(ICalendarAccount account : removed) {
+				removedUsernames.add(account.getUsername());
+			}
+			List<ICalendarAccount> combined = new ArrayList<ICalendarAccount>(accounts.length + modified.size());
+			for(ICalendarAccount account : accounts) {
+				if(!removedUsernames.contains(account.getUsername())) {
+					combined.add(account);
+				}
+			}
+			combined.addAll(modified);
+			// removed accounts still advance the high water mark, so they are not loaded again
+			return build(combined, newest(removed, highWaterMark));
+		}
+		
+		/**
+		 * 
+		 * @param query lower cased
+		 * @param limit
+		 * @return matching accounts in index order
+		 */
+		List<ICalendarAccount> search(String query, int limit) {
+			List<ICalendarAccount> results = new ArrayList<ICalendarAccount>();
+			if(query.length() < 3) {
+				for(int i = 0; i < accounts.length && results.size() < limit; i++) {
+					if(texts[i].indexOf(query) >= 0) {
+						results.add(accounts[i]);
+					}
+				}
+				return results;
+			}
+			
+			List<int[]> lists = new ArrayList<int[]>();
+			for(String trigram : trigramsOf(query)) {
+				int [] list = trigrams.get(trigram);
+				if(list == null) {
+					return results;
+				}
+				lists.add(list);
+			}
+			Collections.sort(lists, new Comparator<int[]>() {
+				@Override
+				public int compare(int[] o1, int[] o2) {
+					return o1.length - o2.length;
+				}
+			});
+			int [] candidates = lists.get(0);
+			for(int l = 1; l < lists.size() && candidates.length > 0; l++) {
+				candidates = intersect(candidates, lists.get(l));
+			}
+			for(int i = 0; i < candidates.length && results.size() < limit; i++) {
+				// trigrams match in any order, confirm the whole text
+				if(texts[candidates[i]].indexOf(query) >= 0) {
+					results.add(accounts[candidates[i]]);
+				}
+			}
+			return results;
+		}
+		
+		/**
+		 * 
+		 * @param a sorted
+		 * @param b sorted
+		 * @return the sorted intersection
+		 */
+		static int [] intersect(int [] a, int [] b) {
+			int [] result = new int[Math.min(a.length, b.length)];
+			int i = 0, j = 0, n = 0;
+			while(i < a.length && j < b.length) {
+				if(a[i] < b[j]) {
+					i++;
+				} else if (a[i] > b[j]) {
+					j++;
+				} else {
+					result[n++] = a[i];
+					i++;
+					j++;
+				}
+			}
+			return n == 0 ? EMPTY : Arrays.copyOf(result, n);
+		}
+		
+		/**
+		 * 
+		 * @param text
+		 * @return the trigrams of the text that don't span the field separator
+		 */
+		static List<String> trigramsOf(String text) {
+			List<String> result = new ArrayList<String>();
+			for(int i = 0; i + 3 <= text.length(); i++) {
+				String trigram = text.substring(i, i + 3);
+				if(trigram.indexOf(FIELD_SEPARATOR) < 0) {
+					result.add(trigram);
+				}
+			}
+			return result;
+		}
+	}
+}
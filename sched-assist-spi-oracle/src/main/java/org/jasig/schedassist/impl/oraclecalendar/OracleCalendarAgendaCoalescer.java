@@ -0,0 +1,192 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.Component;
+import net.fortuna.ical4j.model.ComponentList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jasig.schedassist.model.ICalendarAccount;
+
+/**
+ * Single-flight coalescing for agenda retrieval.
+ *
+ * When several threads ask for the same account's agenda over the same range at the same time,
+ * only the first (the "leader") runs the supplied loader; the others wait for the leader's result.
+ * Nothing is retained once the leader completes, so this is not a cache: a request arriving after
+ * the in-flight fetch finishes triggers a new fetch.
+ *
+ * Every caller, leader included, receives its own deep copy of the shared {@link Calendar} so that
+ * callers that modify the result (e.g. adding attendees) cannot affect each other.
+ *
+ * @version $Id: OracleCalendarAgendaCoalescer.java $
+ */
+public class OracleCalendarAgendaCoalescer {
+
+	private Log LOG = LogFactory.getLog(this.getClass());
+
+	private final ConcurrentMap<String, FutureTask<Calendar>> inFlight = new ConcurrentHashMap<String, FutureTask<Calendar>>();
+	private final AtomicLong leaderFetches = new AtomicLong();
+	private final AtomicLong coalescedFetches = new AtomicLong();
+
+	/**
+	 * Return a copy of the agenda for the account between the dates, joining an identical in-flight
+	 * request if one exists or running the loader otherwise.
+	 *
+	 * Runtime exceptions thrown by the loader are rethrown to the leader and every waiting caller.
+	 *
+	 * @param calendarAccount
+	 * @param startDate
+	 * @param endDate
+	 * @param loader
+	 * @return a private copy of the agenda
+	 */
+	public Calendar getCalendar(ICalendarAccount calendarAccount, Date startDate, Date endDate, Callable<Calendar> loader) {
+		final String key = buildKey(calendarAccount, startDate, endDate);
+		FutureTask<Calendar> task = new FutureTask<Calendar>(loader);
+		FutureTask<Calendar> existing = inFlight.putIfAbsent(key, task);
+		if(existing == null) {
+			leaderFetches.incrementAndGet();
+			try {
+				task.run();
+			} finally {
+				inFlight.remove(key, task);
+			}
+		} else {
+			coalescedFetches.incrementAndGet();
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("joining in-flight agenda fetch for " + key);
+			}
+			task = existing;
+		}
+
+		Calendar shared = awaitResult(task);
+		return copyCalendar(shared);
+	}
+
+	/**
+	 *
+	 * @return the number of requests that performed their own fetch
+	 */
+	public long getLeaderFetches() {
+		return leaderFetches.get();
+	}
+	/**
+	 *
+	 * @return the number of requests that joined another request's fetch
+	 */
+	public long getCoalescedFetches() {
+		return coalescedFetches.get();
+	}
+	/**
+	 *
+	 * @return the percentage (0-100) of requests that were served by another request's fetch
+	 */
+	public double getCoalescingRatePercent() {
+		long coalesced = coalescedFetches.get();
+		long total = coalesced + leaderFetches.get();
+		return total == 0 ? 0.0 : (coalesced * 100.0) / total;
+	}
+	/**
+	 *
+	 * @return the number of distinct fetches currently in flight
+	 */
+	public int getInFlightFetches() {
+		return inFlight.size();
+	}
+
+	/**
+	 *
+	 * @param calendarAccount
+	 * @param startDate
+	 * @param endDate
+	 * @return the key identifying identical requests
+	 */
+	protected String buildKey(ICalendarAccount calendarAccount, Date startDate, Date endDate) {
+		StringBuilder key = new StringBuilder();
+		key.append(calendarAccount.getCalendarUniqueId());
+		key.append('|');
+		key.append(startDate.getTime());
+		key.append('|');
+		key.append(endDate.getTime());
+		return key.toString();
+	}
+
+	/**
+	 *
+	 * @param task
+	 * @return the result of the task, rethrowing its failure
+	 */
+	private Calendar awaitResult(FutureTask<Calendar> task) {
+		boolean interrupted = false;
+		try {
+			while(true) {
+				try {
+					return task.get();
+				} catch (InterruptedException e) {
+					// keep waiting; the leader is bounded by the Oracle call timeouts
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new OracleCalendarDataAccessException("agenda fetch failed", cause);
+		} finally {
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param calendar
+	 * @return a deep copy of the calendar's components in a new {@link Calendar}
+	 */
+	protected Calendar copyCalendar(Calendar calendar) {
+		ComponentList copies = new ComponentList();
+		for(Object o : calendar.getComponents()) {
+			Component component = (Component) o;
+			try {
+				copies.add(component.copy());
+			} catch (Exception e) {
+				throw new OracleCalendarParserException("failed to copy component " + component, e);
+			}
+		}
+		Calendar result = new Calendar(copies);
+		result.getProperties().addAll(calendar.getProperties());
+		return result;
+	}
+}
@@ -0,0 +1,275 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.ComponentList;
+import net.fortuna.ical4j.model.DateTime;
+import net.fortuna.ical4j.model.component.VEvent;
+import net.fortuna.ical4j.model.property.DtEnd;
+import net.fortuna.ical4j.model.property.XProperty;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jasig.schedassist.model.ICalendarAccount;
+
+/**
+ * Keeps the last successfully retrieved agenda(s) for each account so that
+ * {@link AbstractOracleCalendarDao#getCalendar(ICalendarAccount, Date, Date)} can serve
+ * a read-only copy while the account's node is unavailable.
+ * 
+ * A served snapshot carries the calendar property {@link #STALE_AGENDA_PROPERTY}, whose value
+ * is the time the snapshot was captured; see {@link #isStale(Calendar)}.
+ * 
+ * Snapshots hold copies of the agenda's events, taken when the agenda is stored, since callers of
+ * getCalendar are free to modify the events they are returned; a stale agenda is served as a further copy,
+ * as the snapshot may be served again. At most {@link #setMaxSnapshotsPerAccount(int)} per
+ * account and {@link #setMaxAccounts(int)} accounts (least recently used accounts are dropped first).
+ *
+ * @version $Id: OracleCalendarAgendaSnapshotStore.java $
+ */
+public class OracleCalendarAgendaSnapshotStore {
+
+	/**
+	 * Calendar property added to agendas served from a snapshot.
+	 */
+	public static final String STALE_AGENDA_PROPERTY = "X-SCHEDASSIST-STALE-AGENDA";
+
+	private Log LOG = LogFactory.getLog(this.getClass());
+
+	private int maxAccounts = 2000;
+	private int maxSnapshotsPerAccount = 2;
+	private long maxSnapshotAgeMillis = 86400000L;
+
+	private final Map<String, LinkedList<AgendaSnapshot>> snapshots = new LinkedHashMap<String, LinkedList<AgendaSnapshot>>(16, 0.75f, true) {
+		private static final long serialVersionUID = 53706L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, LinkedList<AgendaSnapshot>> eldest) {
+			return size() > maxAccounts;
+		}
+	};
+	private final ConcurrentMap<String, AtomicLong> staleServesByNode = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentMap<String, AtomicLong> staleMissesByNode = new ConcurrentHashMap<String, AtomicLong>();
+
+	/**
+	 * @param maxAccounts the maximum number of accounts to keep snapshots for (default 2000)
+	 */
+	public void setMaxAccounts(int maxAccounts) {
+		this.maxAccounts = maxAccounts;
+	}
+	/**
+	 * @param maxSnapshotsPerAccount the number of distinct ranges kept per account (default 2)
+	 */
+	public void setMaxSnapshotsPerAccount(int maxSnapshotsPerAccount) {
+		this.maxSnapshotsPerAccount = maxSnapshotsPerAccount;
+	}
+	/**
+	 * @param maxSnapshotAgeMillis snapshots older than this are never served (default 24 hours)
+	 */
+	public void setMaxSnapshotAgeMillis(long maxSnapshotAgeMillis) {
+		this.maxSnapshotAgeMillis = maxSnapshotAgeMillis;
+	}
+
+	/**
+	 * Record a successfully retrieved agenda. The agenda's events are copied, the agenda itself is
+	 * not retained.
+	 * 
+	 * @param calendarAccount
+	 * @param startDate
+	 * @param endDate
+	 * @param agenda
+	 */
+	public void store(ICalendarAccount calendarAccount, Date startDate, Date endDate, Calendar agenda) {
+		// copies, so a caller changing or removing events from the agenda does not change the snapshot
+		ComponentList events = new ComponentList();
+		try {
+			for(Object o : agenda.getComponents(VEvent.VEVENT)) {
+				events.add(((VEvent) o).copy());
+			}
+		} catch (Exception e) {
+			LOG.error("failed to copy agenda for snapshot of " + calendarAccount + ", keeping any previous snapshot", e);
+			return;
+		}
+		AgendaSnapshot snapshot = new AgendaSnapshot(startDate.getTime(), endDate.getTime(), System.currentTimeMillis(), events);
+		final String key = calendarAccount.getCalendarUniqueId();
+		synchronized (snapshots) {
+			LinkedList<AgendaSnapshot> existing = snapshots.get(key);
+			if(existing == null) {
+				existing = new LinkedList<AgendaSnapshot>();
+				snapshots.put(key, existing);
+			}
+			// the new snapshot supersedes any older one for a range it covers
+			for(Iterator<AgendaSnapshot> i = existing.iterator(); i.hasNext(); ) {
+				if(snapshot.covers(i.next())) {
+					i.remove();
+				}
+			}
+			existing.addFirst(snapshot);
+			while(existing.size() > maxSnapshotsPerAccount) {
+				existing.removeLast();
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @param calendarAccount
+	 * @param nodeName the account's node, for statistics
+	 * @param startDate
+	 * @param endDate
+	 * @return the events of the newest snapshot covering the range, marked stale; or null if there is no such snapshot
+	 */
+	public Calendar getStaleCalendar(ICalendarAccount calendarAccount, String nodeName, Date startDate, Date endDate) {
+		AgendaSnapshot match = null;
+		final long oldestAllowed = System.currentTimeMillis() - maxSnapshotAgeMillis;
+		synchronized (snapshots) {
+			LinkedList<AgendaSnapshot> existing = snapshots.get(calendarAccount.getCalendarUniqueId());
+			if(existing != null) {
+				for(AgendaSnapshot snapshot : existing) {
+					if(snapshot.capturedAt >= oldestAllowed && snapshot.covers(startDate.getTime(), endDate.getTime())) {
+						match = snapshot;
+						break;
+					}
+				}
+			}
+		}
+		if(match == null) {
+			OracleCalendarNodeAvailability.increment(staleMissesByNode, nodeName);
+			return null;
+		}
+
+		try {
+			ComponentList inRange = new ComponentList();
+			for(Object o : match.events) {
+				VEvent event = (VEvent) o;
+				if(overlaps(event, startDate, endDate)) {
+					// a copy, the snapshot may be served again
+					inRange.add(event.copy());
+				}
+			}
+			Calendar result = new Calendar(inRange);
+			result.getProperties().add(new XProperty(STALE_AGENDA_PROPERTY, new DateTime(match.capturedAt).toString()));
+			OracleCalendarNodeAvailability.increment(staleServesByNode, nodeName);
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("serving stale agenda captured " + new Date(match.capturedAt) + " for " + calendarAccount);
+			}
+			return result;
+		} catch (Exception e) {
+			LOG.error("failed to copy agenda snapshot for " + calendarAccount, e);
+		}
+		OracleCalendarNodeAvailability.increment(staleMissesByNode, nodeName);
+		return null;
+	}
+
+	/**
+	 * 
+	 * @param calendar
+	 * @return true if the calendar was served from a snapshot
+	 */
+	public static boolean isStale(Calendar calendar) {
+		return calendar != null && calendar.getProperty(STALE_AGENDA_PROPERTY) != null;
+	}
+
+	/**
+	 * 
+	 * @return the number of stale agendas served, keyed by node name
+	 */
+	public Map<String, Long> getStaleServeCounts() {
+		return OracleCalendarNodeAvailability.snapshot(staleServesByNode);
+	}
+	/**
+	 * 
+	 * @return the number of times no usable snapshot was available, keyed by node name
+	 */
+	public Map<String, Long> getStaleMissCounts() {
+		return OracleCalendarNodeAvailability.snapshot(staleMissesByNode);
+	}
+	/**
+	 * 
+	 * @return the number of accounts with at least one snapshot
+	 */
+	public int getAccountCount() {
+		synchronized (snapshots) {
+			return snapshots.size();
+		}
+	}
+	/**
+	 * Discard all snapshots.
+	 */
+	public void clear() {
+		synchronized (snapshots) {
+			snapshots.clear();
+		}
+	}
+
+	/**
+	 * 
+	 * @param event
+	 * @param startDate
+	 * @param endDate
+	 * @return true if the event overlaps the range
+	 */
+	private static boolean overlaps(VEvent event, Date startDate, Date endDate) {
+		if(event.getStartDate() == null) {
+			return true;
+		}
+		Date eventStart = event.getStartDate().getDate();
+		DtEnd eventEnd = event.getEndDate(true);
+		Date eventEndDate = eventEnd == null ? eventStart : eventEnd.getDate();
+		return eventStart.before(endDate) && !eventEndDate.before(startDate);
+	}
+
+	/**
+	 * A captured agenda and the range it covers.
+	 */
+	private static class AgendaSnapshot {
+		private final long start;
+		private final long end;
+		private final long capturedAt;
+		private final ComponentList events;
+		/**
+		 * @param start
+		 * @param end
+		 * @param capturedAt
+		 * @param events
+		 */
+		AgendaSnapshot(long start, long end, long capturedAt, ComponentList events) {
+			this.start = start;
+			this.end = end;
+			this.capturedAt = capturedAt;
+			this.events = events;
+		}
+		boolean covers(long otherStart, long otherEnd) {
+			return start <= otherStart && end >= otherEnd;
+		}
+		boolean covers(AgendaSnapshot other) {
+			return covers(other.start, other.end);
+		}
+	}
+}
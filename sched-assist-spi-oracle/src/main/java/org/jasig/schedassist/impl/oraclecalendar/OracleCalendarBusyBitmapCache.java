@@ -0,0 +1,391 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.fortuna.ical4j.model.component.VEvent;
+import net.fortuna.ical4j.model.property.DtEnd;
+
+import org.apache.commons.lang.time.DateUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jasig.schedassist.model.ICalendarAccount;
+
+/**
+ * Per account, per day busy bitmaps with one bit per minute.
+ * 
+ * A day's bitmap is built from the events of the account's agenda that
+ * {@link OracleEventUtilsImpl#willEventCauseConflict(ICalendarAccount, VEvent)}, after which
+ * a conflict check for a block within the day is a bit range test rather than an Oracle round trip.
+ * 
+ * Bitmaps expire after {@link #setTimeToLiveMillis(long)} (changes made directly in Oracle Calendar
+ * are picked up on expiry). Changes made by this application are applied immediately: 
+ * new appointments set the bits for their range with {@link #markBusy(ICalendarAccount, Date, Date)}, 
+ * while cancelled or left appointments discard the affected days with {@link #invalidate(ICalendarAccount, Date, Date)}
+ * as other events may still cover the same minutes.
+ * 
+ * Days are delimited in the JVM's default time zone.
+ * 
+ * @version $Id: OracleCalendarBusyBitmapCache.java $
+ */
+public class OracleCalendarBusyBitmapCache {
+
+	private static final long MILLISECONDS_PER_MINUTE = 60000L;
+	/**
+	 * Minutes in the longest possible day (25 hours, at the end of daylight saving time).
+	 */
+	private static final int MAX_MINUTES_PER_DAY = 25 * 60;
+
+	private Log LOG = LogFactory.getLog(this.getClass());
+
+	private long timeToLiveMillis = 60000L;
+	private int maxEntries = 20000;
+
+	private final Map<String, DayBitmap> bitmaps = new LinkedHashMap<String, DayBitmap>(16, 0.75f, true) {
+		private static final long serialVersionUID = 53706L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, DayBitmap> eldest) {
+			return size() > maxEntries;
+		}
+	};
+	/**
+	 * Incremented by every update; a load that started before an update must not overwrite it.
+	 */
+	private final AtomicLong generation = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong loads = new AtomicLong();
+	private final AtomicLong discardedLoads = new AtomicLong();
+	private final AtomicLong markedBusy = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	/**
+	 * @param timeToLiveMillis how long a day's bitmap is used before the agenda is fetched again (default 60 seconds)
+	 */
+	public void setTimeToLiveMillis(long timeToLiveMillis) {
+		this.timeToLiveMillis = timeToLiveMillis;
+	}
+	/**
+	 * @param maxEntries the maximum number of account days held, least recently used are dropped first (default 20000)
+	 */
+	public void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * 
+	 * @param calendarAccount
+	 * @param startTime
+	 * @param endTime
+	 * @return true if any minute in [startTime, endTime) is busy, false if none are, or null if a day in the range has no current bitmap
+	 */
+	public Boolean isBusy(ICalendarAccount calendarAccount, Date startTime, Date endTime) {
+		final long now = System.currentTimeMillis();
+		final String accountKey = calendarAccount.getCalendarUniqueId();
+		Date day = getDayStart(startTime);
+		synchronized (bitmaps) {
+			boolean busy = false;
+			while(day.before(endTime)) {
+				Date nextDay = DateUtils.addDays(day, 1);
+				DayBitmap bitmap = bitmaps.get(buildKey(accountKey, day));
+				if(bitmap == null || bitmap.expires <= now) {
+					misses.incrementAndGet();
+					return null;
+				}
+				if(!busy) {
+					busy = anySet(bitmap.bits, minuteOfDay(day, startTime, false), minuteOfDay(day, min(endTime, nextDay), true));
+				}
+				day = nextDay;
+			}
+			hits.incrementAndGet();
+			return busy;
+		}
+	}
+
+	/**
+	 * 
+	 * @return a token to pass to {@link #store(ICalendarAccount, Date, Date, List, long)}
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Replace the bitmaps for every day in the range with the conflicting events.
+	 * The store is skipped if any update happened after the generation was read, as the events
+	 * may predate it.
+	 * 
+	 * @param calendarAccount
+	 * @param rangeStart the start of the first day, see {@link #getDayStart(Date)}
+	 * @param rangeEnd the end of the last day, see {@link #getRangeEnd(Date)}
+	 * @param conflictingEvents the events in the range that cause a conflict for the account
+	 * @param generation the value of {@link #getGeneration()} before the events were retrieved
+	 */
+	public void store(ICalendarAccount calendarAccount, Date rangeStart, Date rangeEnd, List<VEvent> conflictingEvents, long generation) {
+		final long expires = System.currentTimeMillis() + timeToLiveMillis;
+		final String accountKey = calendarAccount.getCalendarUniqueId();
+		synchronized (bitmaps) {
+			if(this.generation.get() != generation) {
+				discardedLoads.incrementAndGet();
+				return;
+			}
+			for(Date day = rangeStart; day.before(rangeEnd); day = DateUtils.addDays(day, 1)) {
+				Date nextDay = DateUtils.addDays(day, 1);
+				DayBitmap bitmap = new DayBitmap(expires);
+				for(VEvent event : conflictingEvents) {
+					if(event.getStartDate() == null) {
+						continue;
+					}
+					Date eventStart = event.getStartDate().getDate();
+					DtEnd dtEnd = event.getEndDate(true);
+					Date eventEnd = dtEnd != null ? dtEnd.getDate() : eventStart;
+					if(!eventEnd.after(eventStart)) {
+						// zero length events still occupy their starting minute
+						eventEnd = new Date(eventStart.getTime() + MILLISECONDS_PER_MINUTE);
+					}
+					if(eventStart.before(nextDay) && eventEnd.after(day)) {
+						setRange(bitmap.bits, minuteOfDay(day, max(eventStart, day), false), minuteOfDay(day, min(eventEnd, nextDay), true));
+					}
+				}
+				bitmaps.put(buildKey(accountKey, day), bitmap);
+			}
+			loads.incrementAndGet();
+		}
+		if(LOG.isDebugEnabled()) {
+			LOG.debug("stored busy bitmaps for " + accountKey + " from " + rangeStart + " to " + rangeEnd + ", " + conflictingEvents.size() + " conflicting events");
+		}
+	}
+
+	/**
+	 * Set the bits for [startTime, endTime) in any bitmaps held for the account.
+	 * 
+	 * @param calendarAccount
+	 * @param startTime
+	 * @param endTime
+	 */
+	public void markBusy(ICalendarAccount calendarAccount, Date startTime, Date endTime) {
+		final String accountKey = calendarAccount.getCalendarUniqueId();
+		synchronized (bitmaps) {
+			generation.incrementAndGet();
+			for(Date day = getDayStart(startTime); day.before(endTime); day = DateUtils.addDays(day, 1)) {
+				DayBitmap bitmap = bitmaps.get(buildKey(accountKey, day));
+				if(bitmap != null) {
+					Date nextDay = DateUtils.addDays(day, 1);
+					setRange(bitmap.bits, minuteOfDay(day, max(startTime, day), false), minuteOfDay(day, min(endTime, nextDay), true));
+				}
+			}
+		}
+		markedBusy.incrementAndGet();
+	}
+
+	/**
+	 * Discard the bitmaps for the days the range covers.
+	 * 
+	 * @param calendarAccount
+	 * @param startTime
+	 * @param endTime
+	 */
+	public void invalidate(ICalendarAccount calendarAccount, Date startTime, Date endTime) {
+		final String accountKey = calendarAccount.getCalendarUniqueId();
+		synchronized (bitmaps) {
+			generation.incrementAndGet();
+			Date day = getDayStart(startTime);
+			do {
+				bitmaps.remove(buildKey(accountKey, day));
+				day = DateUtils.addDays(day, 1);
+			} while (day.before(endTime));
+		}
+		invalidations.incrementAndGet();
+	}
+
+	/**
+	 * 
+	 * @param date
+	 * @return midnight at the start of the date's day
+	 */
+	public Date getDayStart(Date date) {
+		return DateUtils.truncate(date, java.util.Calendar.DATE);
+	}
+	/**
+	 * 
+	 * @param endTime
+	 * @return midnight at the end of the day containing the last minute before endTime
+	 */
+	public Date getRangeEnd(Date endTime) {
+		return DateUtils.addDays(getDayStart(new Date(endTime.getTime() - 1)), 1);
+	}
+
+	/**
+	 * 
+	 * @return the number of checks answered from bitmaps
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	/**
+	 * 
+	 * @return the number of checks that required the agenda
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	/**
+	 * 
+	 * @return the number of agenda ranges converted to bitmaps
+	 */
+	public long getLoads() {
+		return loads.get();
+	}
+	/**
+	 * 
+	 * @return the number of loads not stored due to a concurrent update
+	 */
+	public long getDiscardedLoads() {
+		return discardedLoads.get();
+	}
+	/**
+	 * 
+	 * @return the number of calls to {@link #markBusy(ICalendarAccount, Date, Date)}
+	 */
+	public long getMarkedBusy() {
+		return markedBusy.get();
+	}
+	/**
+	 * 
+	 * @return the number of calls to {@link #invalidate(ICalendarAccount, Date, Date)}
+	 */
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+	/**
+	 * 
+	 * @return the number of account days currently held
+	 */
+	public int getEntryCount() {
+		synchronized (bitmaps) {
+			return bitmaps.size();
+		}
+	}
+
+	/**
+	 * 
+	 * @param accountKey
+	 * @param day
+	 * @return the key for the account's day
+	 */
+	private static String buildKey(String accountKey, Date day) {
+		return accountKey + "|" + day.getTime();
+	}
+	/**
+	 * 
+	 * @param day
+	 * @param time
+	 * @param roundUp true to count a partial minute (for the exclusive end of a range)
+	 * @return the minute of the day for the time
+	 */
+	private static int minuteOfDay(Date day, Date time, boolean roundUp) {
+		long offset = time.getTime() - day.getTime();
+		if(roundUp) {
+			offset += MILLISECONDS_PER_MINUTE - 1;
+		}
+		int minute = (int) (offset / MILLISECONDS_PER_MINUTE);
+		return Math.max(0, Math.min(MAX_MINUTES_PER_DAY, minute));
+	}
+	private static Date min(Date a, Date b) {
+		return a.before(b) ? a : b;
+	}
+	private static Date max(Date a, Date b) {
+		return a.after(b) ? a : b;
+	}
+
+	/**
+	 * Set bits [from, to).
+	 * 
+	 * @param bits
+	 * @param from
+	 * @param to
+	 */
+	static void setRange(long[] bits, int from, int to) {
+		if(from >= to) {
+			return;
+		}
+		int firstWord = from >>> 6;
+		int lastWord = (to - 1) >>> 6;
+		long firstMask = -1L << from;
+		long lastMask = -1L >>> -to;
+		if(firstWord == lastWord) {
+			bits[firstWord] |= (firstMask & lastMask);
+			return;
+		}
+		bits[firstWord] |= firstMask;
+		for(int i = firstWord + 1; i < lastWord; i++) {
+			bits[i] = -1L;
+		}
+		bits[lastWord] |= lastMask;
+	}
+	/**
+	 * 
+	 * @param bits
+	 * @param from
+	 * @param to
+	 * @return true if any bit in [from, to) is set
+	 */
+	static boolean anySet(long[] bits, int from, int to) {
+		if(from >= to) {
+			return false;
+		}
+		int firstWord = from >>> 6;
+		int lastWord = (to - 1) >>> 6;
+		long firstMask = -1L << from;
+		long lastMask = -1L >>> -to;
+		if(firstWord == lastWord) {
+			return (bits[firstWord] & firstMask & lastMask) != 0;
+		}
+		if((bits[firstWord] & firstMask) != 0) {
+			return true;
+		}
+		for(int i = firstWord + 1; i < lastWord; i++) {
+			if(bits[i] != 0) {
+				return true;
+			}
+		}
+		return (bits[lastWord] & lastMask) != 0;
+	}
+
+	/**
+	 * One bit per minute of a day.
+	 */
+	static class DayBitmap {
+		private final long [] bits = new long[(MAX_MINUTES_PER_DAY + 63) >>> 6];
+		private final long expires;
+
+		/**
+		 * @param expires
+		 */
+		DayBitmap(long expires) {
+			this.expires = expires;
+		}
+	}
+}
@@ -0,0 +1,495 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.Component;
+import net.fortuna.ical4j.model.Property;
+import net.fortuna.ical4j.model.component.VEvent;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jasig.schedassist.NullAffiliationSourceImpl;
+import org.jasig.schedassist.model.AvailableBlock;
+import org.jasig.schedassist.model.AvailableBlockBuilder;
+import org.jasig.schedassist.model.ICalendarAccount;
+import org.jasig.schedassist.oraclecalendar.OracleCalendarServerNode;
+
+/**
+ * Finds the windows in which every account of a group (several owners, or an owner and a resource) is free.
+ * 
+ * The accounts' agendas are retrieved through {@link AbstractOracleCalendarDao#getCalendar(ICalendarAccount, Date, Date)}
+ * in parallel on the optional {@link ExecutorService}, at most {@link #setMaxParallelAccountsPerNode(int)} at once
+ * for any one {@link OracleCalendarServerNode}; each retrieval also takes a permit from the node's
+ * {@link OracleCalendarNodeBulkhead}. An agenda served from a snapshot (see {@link OracleCalendarAgendaSnapshotStore#isStale(Calendar)})
+ * may lack events booked since it was captured, so by default it fails the search, see {@link #setAllowStaleAgendas(boolean)}. The busy intervals
+ * (events that {@link OracleEventUtilsImpl#willEventCauseConflict(ICalendarAccount, VEvent)})
+ * of all accounts are then merged in a single sweep ordered by start time, and the gaps of at
+ * least the requested length are returned.
+ * 
+ * Search latency is recorded by group size, see {@link #getSearchCountsByGroupSize()} and
+ * {@link #getAverageLatencyMillisByGroupSize()}.
+ * 
+ * @version $Id: OracleCalendarCommonFreeTimeFinder.java $
+ */
+public class OracleCalendarCommonFreeTimeFinder {
+
+	private static final long MILLISECONDS_PER_MINUTE = 60000L;
+	/**
+	 * Upper bounds of the group size buckets used for latency statistics.
+	 */
+	private static final int [] GROUP_SIZE_BUCKETS = new int[] { 1, 2, 4, 8, 16, 32 };
+
+	private Log LOG = LogFactory.getLog(this.getClass());
+
+	private AbstractOracleCalendarDao calendarDao;
+	private OracleEventUtilsImpl oracleEventUtils = new OracleEventUtilsImpl(new NullAffiliationSourceImpl());
+	private ExecutorService nodeFetchExecutor;
+	private long maxWaitMillis = 30000L;
+	private int maxParallelAccountsPerNode = 4;
+	private boolean allowStaleAgendas = false;
+	private final AtomicLong staleAgendas = new AtomicLong();
+
+	private final Map<String, LatencyStatistics> latencyByGroupSize = new LinkedHashMap<String, LatencyStatistics>();
+
+	/**
+	 * 
+	 */
+	public OracleCalendarCommonFreeTimeFinder() {
+		for(int i = 0; i <= GROUP_SIZE_BUCKETS.length; i++) {
+			latencyByGroupSize.put(getBucketLabel(i), new LatencyStatistics());
+		}
+	}
+
+	/**
+	 * @param calendarDao the calendarDao to set
+	 */
+	public void setCalendarDao(AbstractOracleCalendarDao calendarDao) {
+		this.calendarDao = calendarDao;
+	}
+	/**
+	 * @param oracleEventUtils the oracleEventUtils to set
+	 */
+	public void setOracleEventUtils(OracleEventUtilsImpl oracleEventUtils) {
+		this.oracleEventUtils = oracleEventUtils;
+	}
+	/**
+	 * Optional; if not set, the agendas are retrieved one after another on the calling thread.
+	 * 
+	 * @param nodeFetchExecutor the nodeFetchExecutor to set
+	 */
+	public void setNodeFetchExecutor(ExecutorService nodeFetchExecutor) {
+		this.nodeFetchExecutor = nodeFetchExecutor;
+	}
+	/**
+	 * @param maxWaitMillis how long to wait for all nodes before giving up (default 30 seconds)
+	 */
+	public void setMaxWaitMillis(long maxWaitMillis) {
+		this.maxWaitMillis = maxWaitMillis;
+	}
+	/**
+	 * Keep this well below the bulkhead's maxConcurrentCallsPerNode, so that one search can't fill a node's compartment.
+	 * 
+	 * @param maxParallelAccountsPerNode the most agendas retrieved at once from one node for a search (default 4)
+	 */
+	public void setMaxParallelAccountsPerNode(int maxParallelAccountsPerNode) {
+		this.maxParallelAccountsPerNode = maxParallelAccountsPerNode;
+	}
+	/**
+	 * @param allowStaleAgendas if true, agendas served from a snapshot are searched (with a warning) rather than failing the search (default false)
+	 */
+	public void setAllowStaleAgendas(boolean allowStaleAgendas) {
+		this.allowStaleAgendas = allowStaleAgendas;
+	}
+
+	/**
+	 * 
+	 * @param calendarAccounts
+	 * @param startTime
+	 * @param endTime
+	 * @param minimumMinutes the shortest window to return
+	 * @return the windows between startTime and endTime in which none of the accounts are busy, in time order
+	 */
+	public List<AvailableBlock> findCommonFreeTime(Collection<? extends ICalendarAccount> calendarAccounts, Date startTime, Date endTime, int minimumMinutes) {
+		final long start = System.currentTimeMillis();
+		try {
+			List<long[]> busy = getBusyIntervals(calendarAccounts, startTime, endTime);
+			return findFreeWindows(busy, startTime.getTime(), endTime.getTime(), minimumMinutes * MILLISECONDS_PER_MINUTE);
+		} finally {
+			long elapsed = System.currentTimeMillis() - start;
+			latencyByGroupSize.get(getBucketLabel(getBucket(calendarAccounts.size()))).record(elapsed);
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("findCommonFreeTime for " + calendarAccounts.size() + " accounts between " + startTime + " and " + endTime + " took " + elapsed + " msec");
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @param calendarAccounts
+	 * @param startTime
+	 * @param endTime
+	 * @return the busy intervals ({start, end} in milliseconds, clipped to the range) of all the accounts, unsorted
+	 * @throws OracleCalendarDataAccessException if an agenda could not be retrieved, or is stale and stale agendas are not allowed
+	 */
+	public List<long[]> getBusyIntervals(Collection<? extends ICalendarAccount> calendarAccounts, final Date startTime, final Date endTime) {
+		Map<String, List<ICalendarAccount>> accountsByNode = new LinkedHashMap<String, List<ICalendarAccount>>();
+		for(ICalendarAccount account : calendarAccounts) {
+			String nodeName = getNodeName(account);
+			List<ICalendarAccount> nodeAccounts = accountsByNode.get(nodeName);
+			if(nodeAccounts == null) {
+				nodeAccounts = new ArrayList<ICalendarAccount>();
+				accountsByNode.put(nodeName, nodeAccounts);
+			}
+			nodeAccounts.add(account);
+		}
+
+		List<long[]> result = new ArrayList<long[]>();
+		if(this.nodeFetchExecutor == null || calendarAccounts.size() == 1) {
+			for(List<ICalendarAccount> nodeAccounts : accountsByNode.values()) {
+				result.addAll(getBusyIntervalsForNode(nodeAccounts, startTime, endTime));
+			}
+			return result;
+		}
+
+		CompletionService<List<long[]>> completionService = new ExecutorCompletionService<List<long[]>>(this.nodeFetchExecutor);
+		Map<Future<List<long[]>>, String> submitted = new HashMap<Future<List<long[]>>, String>();
+		Map<String, Iterator<ICalendarAccount>> pending = new LinkedHashMap<String, Iterator<ICalendarAccount>>();
+		Map<String, Integer> inFlight = new HashMap<String, Integer>();
+		for(Map.Entry<String, List<ICalendarAccount>> entry : accountsByNode.entrySet()) {
+			pending.put(entry.getKey(), entry.getValue().iterator());
+			inFlight.put(entry.getKey(), 0);
+		}
+		final int parallelism = Math.max(1, this.maxParallelAccountsPerNode);
+		final long deadline = System.currentTimeMillis() + maxWaitMillis;
+		int running = 0;
+		try {
+			while(true) {
+				for(Map.Entry<String, Iterator<ICalendarAccount>> entry : pending.entrySet()) {
+					final String nodeName = entry.getKey();
+					while(entry.getValue().hasNext() && inFlight.get(nodeName) < parallelism) {
+						final ICalendarAccount account = entry.getValue().next();
+						submitted.put(completionService.submit(new Callable<List<long[]>>() {
+							@Override
+							public List<long[]> call() {
+								return getBusyIntervalsForAccount(account, startTime, endTime);
+							}
+						}), nodeName);
+						inFlight.put(nodeName, inFlight.get(nodeName) + 1);
+						running++;
+					}
+				}
+				if(running == 0) {
+					return result;
+				}
+				Future<List<long[]>> done = poll(completionService, deadline);
+				running--;
+				String nodeName = submitted.get(done);
+				inFlight.put(nodeName, inFlight.get(nodeName) - 1);
+				result.addAll(await(done, deadline));
+			}
+		} finally {
+			for(Future<List<long[]>> future : submitted.keySet()) {
+				future.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @return the number of stale agendas met by searches (failed, unless stale agendas are allowed)
+	 */
+	public long getStaleAgendaCount() {
+		return staleAgendas.get();
+	}
+	/**
+	 * 
+	 * @return the number of searches, keyed by group size range
+	 */
+	public Map<String, Long> getSearchCountsByGroupSize() {
+		Map<String, Long> result = new LinkedHashMap<String, Long>();
+		for(Map.Entry<String, LatencyStatistics> entry : latencyByGroupSize.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().count.get());
+		}
+		return result;
+	}
+	/**
+	 * 
+	 * @return the average search latency in milliseconds, keyed by group size range
+	 */
+	public Map<String, Long> getAverageLatencyMillisByGroupSize() {
+		Map<String, Long> result = new LinkedHashMap<String, Long>();
+		for(Map.Entry<String, LatencyStatistics> entry : latencyByGroupSize.entrySet()) {
+			long count = entry.getValue().count.get();
+			result.put(entry.getKey(), count == 0 ? 0L : entry.getValue().totalMillis.get() / count);
+		}
+		return result;
+	}
+	/**
+	 * 
+	 * @return the longest search latency in milliseconds, keyed by group size range
+	 */
+	public Map<String, Long> getMaxLatencyMillisByGroupSize() {
+		Map<String, Long> result = new LinkedHashMap<String, Long>();
+		for(Map.Entry<String, LatencyStatistics> entry : latencyByGroupSize.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().maxMillis.get());
+		}
+		return result;
+	}
+
+	/**
+	 * 
+	 * @param nodeAccounts accounts on the same node
+	 * @param startTime
+	 * @param endTime
+	 * @return the busy intervals of the accounts, retrieved one after another
+	 */
+	protected List<long[]> getBusyIntervalsForNode(List<ICalendarAccount> nodeAccounts, Date startTime, Date endTime) {
+		List<long[]> result = new ArrayList<long[]>();
+		for(ICalendarAccount account : nodeAccounts) {
+			result.addAll(getBusyIntervalsForAccount(account, startTime, endTime));
+		}
+		return result;
+	}
+
+	/**
+	 * 
+	 * @param account
+	 * @param startTime
+	 * @param endTime
+	 * @return the busy intervals of the account
+	 * @throws OracleCalendarDataAccessException if the agenda is stale and stale agendas are not allowed
+	 */
+	protected List<long[]> getBusyIntervalsForAccount(ICalendarAccount account, Date startTime, Date endTime) {
+		Calendar calendar = getAgenda(account, startTime, endTime);
+		if(OracleCalendarAgendaSnapshotStore.isStale(calendar)) {
+			staleAgendas.incrementAndGet();
+			Property capturedAt = calendar.getProperty(OracleCalendarAgendaSnapshotStore.STALE_AGENDA_PROPERTY);
+			if(!allowStaleAgendas) {
+				throw new OracleCalendarDataAccessException("agenda for " + account + " is a snapshot captured " + capturedAt.getValue() + ", free time can't be determined");
+			}
+			LOG.warn("searching stale agenda captured " + capturedAt.getValue() + " for " + account + ", events booked since are missing");
+		}
+		List<long[]> result = new ArrayList<long[]>();
+		final long rangeStart = startTime.getTime();
+		final long rangeEnd = endTime.getTime();
+		List<VEvent> conflicts = this.oracleEventUtils.getConflictingEvents(account, calendar.getComponents(Component.VEVENT));
+		for(VEvent event : conflicts) {
+			if(event.getStartDate() == null) {
+				continue;
+			}
+			long eventStart = event.getStartDate().getDate().getTime();
+			long eventEnd = event.getEndDate(true) != null ? event.getEndDate(true).getDate().getTime() : eventStart;
+			if(eventEnd <= eventStart) {
+				// zero length events still occupy their starting minute
+				eventEnd = eventStart + MILLISECONDS_PER_MINUTE;
+			}
+			long clippedStart = Math.max(eventStart, rangeStart);
+			long clippedEnd = Math.min(eventEnd, rangeEnd);
+			if(clippedStart < clippedEnd) {
+				result.add(new long[] { clippedStart, clippedEnd });
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 
+	 * @param account
+	 * @return the name of the account's node, or "" if it has none
+	 */
+	protected String getNodeName(ICalendarAccount account) {
+		OracleCalendarServerNode serverNode = this.calendarDao.getOracleCalendarServerNode(account);
+		return serverNode != null ? serverNode.getNodeName() : "";
+	}
+	/**
+	 * 
+	 * @param account
+	 * @param startTime
+	 * @param endTime
+	 * @return the account's agenda, from {@link AbstractOracleCalendarDao#getCalendar(ICalendarAccount, Date, Date)}
+	 */
+	protected Calendar getAgenda(ICalendarAccount account, Date startTime, Date endTime) {
+		return this.calendarDao.getCalendar(account, startTime, endTime);
+	}
+
+	/**
+	 * Sweep the busy intervals in start order, extending the current busy run while intervals overlap
+	 * or touch it; each gap between runs of at least minimumMillis is a free window.
+	 * 
+	 * @param busy {start, end} pairs within the range, in any order (sorted in place)
+	 * @param rangeStart
+	 * @param rangeEnd
+	 * @param minimumMillis
+	 * @return the free windows in time order
+	 */
+	static List<AvailableBlock> findFreeWindows(List<long[]> busy, long rangeStart, long rangeEnd, long minimumMillis) {
+		Collections.sort(busy, INTERVAL_START_ORDER);
+		List<AvailableBlock> free = new ArrayList<AvailableBlock>();
+		long cursor = rangeStart;
+		for(long[] interval : busy) {
+			if(interval[0] > cursor) {
+				addWindow(free, cursor, interval[0], minimumMillis);
+			}
+			if(interval[1] > cursor) {
+				cursor = interval[1];
+			}
+		}
+		if(rangeEnd > cursor) {
+			addWindow(free, cursor, rangeEnd, minimumMillis);
+		}
+		return free;
+	}
+
+	/**
+	 * 
+	 * @param free
+	 * @param start
+	 * @param end
+	 * @param minimumMillis
+	 */
+	private static void addWindow(List<AvailableBlock> free, long start, long end, long minimumMillis) {
+		if(end - start >= minimumMillis && end > start) {
+			free.add(AvailableBlockBuilder.createBlock(new Date(start), new Date(end), 1));
+		}
+	}
+
+	/**
+	 * Orders {start, end} pairs by start.
+	 */
+	private static final Comparator<long[]> INTERVAL_START_ORDER = new Comparator<long[]>() {
+		@Override
+		public int compare(long[] o1, long[] o2) {
+			return o1[0] < o2[0] ? -1 : (o1[0] == o2[0] ? 0 : 1);
+		}
+	};
+
+	/**
+	 * 
+	 * @param completionService
+	 * @param deadline
+	 * @return the next completed future
+	 */
+	private Future<List<long[]>> poll(CompletionService<List<long[]>> completionService, long deadline) {
+		try {
+			Future<List<long[]>> done = completionService.poll(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+			if(done == null) {
+				throw new OracleCalendarDataAccessException("agendas not retrieved within " + maxWaitMillis + " msec");
+			}
+			return done;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OracleCalendarDataAccessException("interrupted waiting for agendas", e);
+		}
+	}
+	/**
+	 * 
+	 * @param future
+	 * @param deadline
+	 * @return the future's result
+	 */
+	private List<long[]> await(Future<List<long[]>> future, long deadline) {
+		try {
+			return future.get(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OracleCalendarDataAccessException("interrupted waiting for agendas", e);
+		} catch (TimeoutException e) {
+			throw new OracleCalendarDataAccessException("agendas not retrieved within " + maxWaitMillis + " msec", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new OracleCalendarDataAccessException("agenda fetch failed", cause);
+		}
+	}
+
+	/**
+	 * 
+	 * @param groupSize
+	 * @return the index of the bucket for the group size
+	 */
+	private static int getBucket(int groupSize) {
+		for(int i = 0; i < GROUP_SIZE_BUCKETS.length; i++) {
+			if(groupSize <= GROUP_SIZE_BUCKETS[i]) {
+				return i;
+			}
+		}
+		return GROUP_SIZE_BUCKETS.length;
+	}
+	/**
+	 * 
+	 * @param bucket
+	 * @return a label such as "3-4" for the bucket
+	 */
+	private static String getBucketLabel(int bucket) {
+		if(bucket == GROUP_SIZE_BUCKETS.length) {
+			return (GROUP_SIZE_BUCKETS[bucket - 1] + 1) + "+";
+		}
+		int low = bucket == 0 ? 1 : GROUP_SIZE_BUCKETS[bucket - 1] + 1;
+		int high = GROUP_SIZE_BUCKETS[bucket];
+		return low == high ? Integer.toString(low) : low + "-" + high;
+	}
+
+	/**
+	 * Latency counters for one group size range.
+	 */
+	static class LatencyStatistics {
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalMillis = new AtomicLong();
+		private final AtomicLong maxMillis = new AtomicLong();
+
+		/**
+		 * 
+		 * @param millis
+		 */
+		void record(long millis) {
+			count.incrementAndGet();
+			totalMillis.addAndGet(millis);
+			long max = maxMillis.get();
+			while(millis > max && !maxMillis.compareAndSet(max, millis)) {
+				max = maxMillis.get();
+			}
+		}
+	}
+}
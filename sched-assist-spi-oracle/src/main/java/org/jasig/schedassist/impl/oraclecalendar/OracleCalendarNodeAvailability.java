@@ -0,0 +1,171 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jasig.schedassist.oraclecalendar.OracleCalendarServerNode;
+
+/**
+ * Tracks {@link OracleCalendarServerNode}s that have recently reported a status the
+ * {@link OracleCalendarStatusClassifier} classifies as {@link OracleCalendarStatusClassifier.StatusClass#NODE_DOWN}.
+ * 
+ * A node marked unavailable stays that way for {@link #setUnavailableWindowMillis(long)}; during
+ * that window writes are refused immediately with an {@link OracleCalendarNodeUnavailableException}
+ * rather than waiting on the Oracle connect timeout. The first successful call after the window
+ * (or an explicit {@link #markAvailable(OracleCalendarServerNode)}) clears the mark.
+ *
+ * @version $Id: OracleCalendarNodeAvailability.java $
+ */
+public class OracleCalendarNodeAvailability {
+
+	private Log LOG = LogFactory.getLog(this.getClass());
+
+	private long unavailableWindowMillis = 30000L;
+
+	private final ConcurrentMap<String, Long> unavailableUntil = new ConcurrentHashMap<String, Long>();
+	private final ConcurrentMap<String, AtomicLong> outagesByNode = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentMap<String, AtomicLong> refusedWritesByNode = new ConcurrentHashMap<String, AtomicLong>();
+
+	/**
+	 * @param unavailableWindowMillis how long a node stays marked unavailable (default 30000)
+	 */
+	public void setUnavailableWindowMillis(long unavailableWindowMillis) {
+		this.unavailableWindowMillis = unavailableWindowMillis;
+	}
+
+	/**
+	 * Mark the node unavailable for the next {@link #setUnavailableWindowMillis(long)}.
+	 * 
+	 * @param serverNode
+	 */
+	public void markUnavailable(OracleCalendarServerNode serverNode) {
+		Long previous = unavailableUntil.put(serverNode.getNodeName(), System.currentTimeMillis() + unavailableWindowMillis);
+		if(previous == null) {
+			increment(outagesByNode, serverNode.getNodeName());
+			LOG.warn("Oracle Calendar node " + serverNode.getNodeName() + " reported unavailable; refusing writes for " + unavailableWindowMillis + " msec");
+		}
+	}
+
+	/**
+	 * Clear any unavailable mark on the node.
+	 * 
+	 * @param serverNode
+	 */
+	public void markAvailable(OracleCalendarServerNode serverNode) {
+		if(unavailableUntil.remove(serverNode.getNodeName()) != null) {
+			LOG.info("Oracle Calendar node " + serverNode.getNodeName() + " available again");
+		}
+	}
+
+	/**
+	 * 
+	 * @param serverNode
+	 * @return true if the node is within its unavailable window
+	 */
+	public boolean isUnavailable(OracleCalendarServerNode serverNode) {
+		Long until = unavailableUntil.get(serverNode.getNodeName());
+		if(until == null) {
+			return false;
+		}
+		if(until < System.currentTimeMillis()) {
+			// window elapsed, let the next call probe the node
+			unavailableUntil.remove(serverNode.getNodeName(), until);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * 
+	 * @param serverNode
+	 * @throws OracleCalendarNodeUnavailableException if the node is marked unavailable
+	 */
+	public void checkAvailableForWrite(OracleCalendarServerNode serverNode) {
+		if(isUnavailable(serverNode)) {
+			increment(refusedWritesByNode, serverNode.getNodeName());
+			throw new OracleCalendarNodeUnavailableException(serverNode.getNodeName(), "Oracle Calendar node " + serverNode.getNodeName() + " is unavailable, write refused");
+		}
+	}
+
+	/**
+	 * 
+	 * @return the node names currently marked unavailable
+	 */
+	public Map<String, Long> getUnavailableNodes() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		long now = System.currentTimeMillis();
+		for(Map.Entry<String, Long> entry : unavailableUntil.entrySet()) {
+			if(entry.getValue() >= now) {
+				result.put(entry.getKey(), entry.getValue() - now);
+			}
+		}
+		return result;
+	}
+	/**
+	 * 
+	 * @return the number of times each node has been marked unavailable
+	 */
+	public Map<String, Long> getOutageCounts() {
+		return snapshot(outagesByNode);
+	}
+	/**
+	 * 
+	 * @return the number of writes refused for each node
+	 */
+	public Map<String, Long> getRefusedWriteCounts() {
+		return snapshot(refusedWritesByNode);
+	}
+
+	/**
+	 * 
+	 * @param counters
+	 * @param nodeName
+	 */
+	static void increment(ConcurrentMap<String, AtomicLong> counters, String nodeName) {
+		AtomicLong counter = counters.get(nodeName);
+		if(counter == null) {
+			AtomicLong created = new AtomicLong();
+			counter = counters.putIfAbsent(nodeName, created);
+			if(counter == null) {
+				counter = created;
+			}
+		}
+		counter.incrementAndGet();
+	}
+	/**
+	 * 
+	 * @param counters
+	 * @return a sorted copy of the counters
+	 */
+	static Map<String, Long> snapshot(ConcurrentMap<String, AtomicLong> counters) {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for(Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().get());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,245 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jasig.schedassist.oraclecalendar.OracleCalendarServerNode;
+
+/**
+ * Bulkhead that isolates the Oracle Calendar server nodes from one another.
+ *
+ * Each {@link OracleCalendarServerNode} gets its own compartment: a fixed number of
+ * permits (the number of concurrent Oracle calls allowed against that node) and a bounded
+ * number of threads that may wait for a permit. A caller that cannot get a permit within
+ * {@link #setMaxWaitMillis(long)}, or that arrives while the waiting slots are all taken, is
+ * rejected immediately with an {@link OracleCalendarNodeSaturatedException}.
+ *
+ * A slow node can therefore only tie up the callers already admitted to its compartment; requests
+ * for users on the other nodes are unaffected.
+ *
+ * Callers must pair every successful {@link #acquire(OracleCalendarServerNode)} with exactly one
+ * {@link #release(OracleCalendarServerNode)}.
+ *
+ * @version $Id: OracleCalendarNodeBulkhead.java $
+ */
+public class OracleCalendarNodeBulkhead {
+
+	private Log LOG = LogFactory.getLog(this.getClass());
+
+	private int maxConcurrentCallsPerNode = 20;
+	private int maxWaitingCallsPerNode = 10;
+	private long maxWaitMillis = 1000L;
+	private Map<String, Integer> nodeConcurrencyOverrides = new HashMap<String, Integer>();
+
+	private final ConcurrentMap<String, NodeCompartment> compartments = new ConcurrentHashMap<String, NodeCompartment>();
+
+	/**
+	 * @param maxConcurrentCallsPerNode the number of concurrent calls allowed for each node (default 20)
+	 */
+	public void setMaxConcurrentCallsPerNode(int maxConcurrentCallsPerNode) {
+		this.maxConcurrentCallsPerNode = maxConcurrentCallsPerNode;
+	}
+	/**
+	 * @param maxWaitingCallsPerNode the number of callers that may wait for a permit on each node (default 10)
+	 */
+	public void setMaxWaitingCallsPerNode(int maxWaitingCallsPerNode) {
+		this.maxWaitingCallsPerNode = maxWaitingCallsPerNode;
+	}
+	/**
+	 * @param maxWaitMillis how long a waiting caller will wait for a permit before being rejected (default 1000)
+	 */
+	public void setMaxWaitMillis(long maxWaitMillis) {
+		this.maxWaitMillis = maxWaitMillis;
+	}
+	/**
+	 * Optional; keys are node names (e.g. "13000"), values override {@link #setMaxConcurrentCallsPerNode(int)} for that node.
+	 *
+	 * @param nodeConcurrencyOverrides the nodeConcurrencyOverrides to set
+	 */
+	public void setNodeConcurrencyOverrides(
+			Map<String, Integer> nodeConcurrencyOverrides) {
+		this.nodeConcurrencyOverrides = nodeConcurrencyOverrides;
+	}
+
+	/**
+	 * Acquire a permit for the node, waiting at most {@link #setMaxWaitMillis(long)}.
+	 *
+	 * @param serverNode
+	 * @throws OracleCalendarNodeSaturatedException if the node's compartment is full
+	 */
+	public void acquire(OracleCalendarServerNode serverNode) {
+		NodeCompartment compartment = getCompartment(serverNode);
+		if(compartment.permits.tryAcquire()) {
+			compartment.admitted.incrementAndGet();
+			return;
+		}
+
+		if(compartment.waiting.incrementAndGet() > maxWaitingCallsPerNode) {
+			compartment.waiting.decrementAndGet();
+			throw reject(compartment, "waiting slots exhausted");
+		}
+		boolean acquired = false;
+		try {
+			acquired = compartment.permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			compartment.waiting.decrementAndGet();
+		}
+		if(!acquired) {
+			throw reject(compartment, "no permit available within " + maxWaitMillis + " msec");
+		}
+		compartment.admitted.incrementAndGet();
+	}
+
+	/**
+	 * Return the permit obtained by a successful {@link #acquire(OracleCalendarServerNode)}.
+	 *
+	 * @param serverNode
+	 */
+	public void release(OracleCalendarServerNode serverNode) {
+		getCompartment(serverNode).permits.release();
+	}
+
+	/**
+	 *
+	 * @return the number of calls currently holding a permit, keyed by node name
+	 */
+	public Map<String, Integer> getActiveCalls() {
+		Map<String, Integer> result = new TreeMap<String, Integer>();
+		for(NodeCompartment compartment : compartments.values()) {
+			result.put(compartment.nodeName, compartment.capacity - compartment.permits.availablePermits());
+		}
+		return result;
+	}
+	/**
+	 *
+	 * @return the number of callers currently waiting for a permit, keyed by node name
+	 */
+	public Map<String, Integer> getWaitingCalls() {
+		Map<String, Integer> result = new TreeMap<String, Integer>();
+		for(NodeCompartment compartment : compartments.values()) {
+			result.put(compartment.nodeName, compartment.waiting.get());
+		}
+		return result;
+	}
+	/**
+	 *
+	 * @return the total number of admitted calls, keyed by node name
+	 */
+	public Map<String, Long> getAdmittedCalls() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for(NodeCompartment compartment : compartments.values()) {
+			result.put(compartment.nodeName, compartment.admitted.get());
+		}
+		return result;
+	}
+	/**
+	 *
+	 * @return the total number of rejected calls, keyed by node name
+	 */
+	public Map<String, Long> getRejectedCalls() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for(NodeCompartment compartment : compartments.values()) {
+			result.put(compartment.nodeName, compartment.rejected.get());
+		}
+		return result;
+	}
+	/**
+	 *
+	 * @return the percentage (0-100) of each node's permits currently in use, keyed by node name
+	 */
+	public Map<String, Integer> getSaturationPercent() {
+		Map<String, Integer> result = new TreeMap<String, Integer>();
+		for(NodeCompartment compartment : compartments.values()) {
+			int inUse = compartment.capacity - compartment.permits.availablePermits();
+			result.put(compartment.nodeName, compartment.capacity == 0 ? 100 : (inUse * 100) / compartment.capacity);
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 * @param serverNode
+	 * @return the (possibly new) {@link NodeCompartment} for the node
+	 */
+	protected NodeCompartment getCompartment(OracleCalendarServerNode serverNode) {
+		final String nodeName = serverNode.getNodeName();
+		NodeCompartment compartment = compartments.get(nodeName);
+		if(compartment == null) {
+			Integer override = nodeConcurrencyOverrides.get(nodeName);
+			int capacity = override != null ? override : maxConcurrentCallsPerNode;
+			NodeCompartment created = new NodeCompartment(nodeName, capacity);
+			compartment = compartments.putIfAbsent(nodeName, created);
+			if(compartment == null) {
+				compartment = created;
+				LOG.info("created bulkhead compartment for node " + nodeName + " with " + capacity + " permits");
+			}
+		}
+		return compartment;
+	}
+
+	/**
+	 *
+	 * @param compartment
+	 * @param reason
+	 * @return an {@link OracleCalendarNodeSaturatedException} for the caller to throw
+	 */
+	private OracleCalendarNodeSaturatedException reject(NodeCompartment compartment, String reason) {
+		long rejected = compartment.rejected.incrementAndGet();
+		if(LOG.isDebugEnabled()) {
+			LOG.debug("bulkhead rejected call for node " + compartment.nodeName + " (" + reason + "), total rejected: " + rejected);
+		}
+		return new OracleCalendarNodeSaturatedException(compartment.nodeName, "Oracle Calendar node " + compartment.nodeName + " is saturated: " + reason);
+	}
+
+	/**
+	 * Permits and counters for a single node.
+	 */
+	static class NodeCompartment {
+		private final String nodeName;
+		private final int capacity;
+		private final Semaphore permits;
+		private final AtomicInteger waiting = new AtomicInteger();
+		private final AtomicLong admitted = new AtomicLong();
+		private final AtomicLong rejected = new AtomicLong();
+
+		/**
+		 * @param nodeName
+		 * @param capacity
+		 */
+		NodeCompartment(String nodeName, int capacity) {
+			this.nodeName = nodeName;
+			this.capacity = capacity;
+			this.permits = new Semaphore(capacity);
+		}
+	}
+}
@@ -0,0 +1,52 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import org.jasig.schedassist.oraclecalendar.OracleCalendarServerNode;
+
+/**
+ * Thrown when the {@link OracleCalendarNodeBulkhead} rejects work for an
+ * {@link OracleCalendarServerNode} because all of its permits and waiting slots are in use.
+ *
+ * @version $Id: OracleCalendarNodeSaturatedException.java $
+ */
+public class OracleCalendarNodeSaturatedException extends
+		OracleCalendarDataAccessException {
+
+	private static final long serialVersionUID = 53706L;
+
+	private final String nodeName;
+
+	/**
+	 * @param nodeName
+	 * @param message
+	 */
+	public OracleCalendarNodeSaturatedException(String nodeName, String message) {
+		super(message);
+		this.nodeName = nodeName;
+	}
+
+	/**
+	 * @return the name of the saturated node
+	 */
+	public String getNodeName() {
+		return nodeName;
+	}
+}
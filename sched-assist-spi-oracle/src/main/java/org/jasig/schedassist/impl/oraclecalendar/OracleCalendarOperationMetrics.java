@@ -0,0 +1,560 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jasig.schedassist.ConflictExistsException;
+import org.jasig.schedassist.SchedulingException;
+
+/**
+ * Latency histograms and outcome counters for the {@link org.jasig.schedassist.ICalendarDataDao} 
+ * operations of {@link AbstractOracleCalendarDao}.
+ * 
+ * An operation is begun and ended on the calling thread; while it is running, the DAO marks the 
+ * {@link Phase}s it passes through (borrowing a session, switching identity, fetching, parsing and so on).
+ * Phases may nest (the identity switch happens while borrowing, stores happen while purging declined attendees); 
+ * each phase records only its own (exclusive) time, so the phases of an operation add up to no more than its total.
+ * An operation begun while another is running on the thread (e.g. by a listener for an event published during a purge)
+ * records its own latency and is excluded from the enclosing operation's open phase, so it is not counted twice.
+ * 
+ * Every sample is kept in a fixed-bucket histogram keyed by operation, node and phase; the getters 
+ * aggregate these into summaries by operation, by operation and node, and by operation and phase.
+ * Percentiles are reported as the upper bound of the bucket they fall in.
+ * 
+ * @version $Id: OracleCalendarOperationMetrics.java $
+ */
+public class OracleCalendarOperationMetrics {
+
+	/**
+	 * The stages of an operation that are timed separately.
+	 */
+	public static enum Phase {
+		/** obtaining a {@link oracle.calendar.sdk.Session}, including any wait for a bulkhead permit */
+		BORROW,
+		/** Session#setIdentity */
+		SET_IDENTITY,
+		/** Session#fetchEventsByRange */
+		FETCH,
+		/** building the iCalendar model from the raw agenda */
+		PARSE,
+		/** removing declined attendees or old availability reflections */
+		PURGE,
+		/** Session#storeEvents and Session#deleteEvents */
+		STORE;
+	}
+	
+	/**
+	 * How an operation ended.
+	 */
+	public static enum Outcome {
+		SUCCESS,
+		/** a stale snapshot was served because the node was unavailable */
+		STALE,
+		CONFLICT,
+		SCHEDULING_ERROR,
+		VISITOR_DECLINED,
+		NODE_UNAVAILABLE,
+		NODE_SATURATED,
+		PARSE_ERROR,
+		ORACLE_ERROR,
+		ERROR;
+	}
+	
+	/**
+	 * Upper bounds (milliseconds) of the histogram buckets; a final bucket holds everything slower.
+	 */
+	static final long [] BUCKET_BOUNDS_MILLIS = new long [] { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000 };
+	
+	private static final String TOTAL = "total";
+	private static final String UNKNOWN_NODE = "unknown";
+	
+	private Log LOG = LogFactory.getLog(this.getClass());
+	
+	private final ThreadLocal<Operation> currentOperation = new ThreadLocal<Operation>();
+	private final ConcurrentMap<HistogramKey, LatencyHistogram> histograms = new ConcurrentHashMap<HistogramKey, LatencyHistogram>();
+	private final ConcurrentMap<String, AtomicLong> outcomes = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentMap<String, AtomicLong> nodeOutcomes = new ConcurrentHashMap<String, AtomicLong>();
+	
+	/**
+	 * Begin timing an operation on the current thread. An operation begun while another is running
+	 * (e.g. checkForConflicts calling getCalendar) is timed on its own; the outer operation resumes
+	 * when it ends.
+	 * 
+	 * @param operationName
+	 * @param nodeName the Oracle node the operation runs against, may be null
+	 * @return the new {@link Operation}, to be passed to {@link #end(Operation, Throwable)}
+	 */
+	Operation begin(String operationName, String nodeName) {
+		Operation operation = new Operation(operationName, nodeName == null ? UNKNOWN_NODE : nodeName, currentOperation.get());
+		currentOperation.set(operation);
+		return operation;
+	}
+	
+	/**
+	 * End the operation, recording its total latency, any phases still open, and its {@link Outcome}.
+	 * The total is excluded from the exclusive time of the enclosing operation's innermost open phase.
+	 * 
+	 * @param operation
+	 * @param failure the exception the operation ended with, or null if it returned normally
+	 */
+	void end(Operation operation, Throwable failure) {
+		final long now = System.nanoTime();
+		while(!operation.openPhases.isEmpty()) {
+			closePhase(operation, now);
+		}
+		final long total = now - operation.startNanos;
+		record(operation.name, operation.nodeName, TOTAL, total);
+		if(operation.parent != null && !operation.parent.openPhases.isEmpty()) {
+			operation.parent.openPhases.get(operation.parent.openPhases.size() - 1).nestedNanos += total;
+		}
+		
+		Outcome outcome = classify(failure);
+		if(outcome == Outcome.SUCCESS && operation.stale) {
+			outcome = Outcome.STALE;
+		}
+		increment(outcomes, operation.name + " " + outcome);
+		increment(nodeOutcomes, operation.nodeName + " " + outcome);
+		
+		if(currentOperation.get() == operation) {
+			if(operation.parent == null) {
+				currentOperation.remove();
+			} else {
+				currentOperation.set(operation.parent);
+			}
+		} else {
+			LOG.warn("operation " + operation.name + " ended on a thread where it is not current");
+		}
+	}
+	
+	/**
+	 * Start a phase of the current thread's operation; ignored if no operation is running.
+	 * Must be paired with {@link #endPhase()}.
+	 * 
+	 * @param phase
+	 */
+	void startPhase(Phase phase) {
+		Operation operation = currentOperation.get();
+		if(operation != null) {
+			operation.openPhases.add(new OpenPhase(phase, System.nanoTime()));
+		}
+	}
+	
+	/**
+	 * End the most recently started phase of the current thread's operation.
+	 */
+	void endPhase() {
+		Operation operation = currentOperation.get();
+		if(operation != null && !operation.openPhases.isEmpty()) {
+			closePhase(operation, System.nanoTime());
+		}
+	}
+	
+	/**
+	 * Mark the current thread's operation as having served stale data.
+	 */
+	void markStale() {
+		Operation operation = currentOperation.get();
+		if(operation != null) {
+			operation.stale = true;
+		}
+	}
+	
+	/**
+	 * 
+	 * @return latency summaries keyed by operation
+	 */
+	public Map<String, String> getOperationLatency() {
+		return summarize(false, false);
+	}
+	/**
+	 * 
+	 * @return latency summaries keyed by "operation node"
+	 */
+	public Map<String, String> getNodeLatency() {
+		return summarize(true, false);
+	}
+	/**
+	 * 
+	 * @return latency summaries keyed by "operation phase", across all nodes
+	 */
+	public Map<String, String> getPhaseLatency() {
+		return summarize(false, true);
+	}
+	/**
+	 * 
+	 * @return latency summaries keyed by "operation node phase"
+	 */
+	public Map<String, String> getNodePhaseLatency() {
+		return summarize(true, true);
+	}
+	/**
+	 * 
+	 * @return the number of operations that ended with each {@link Outcome}, keyed by "operation outcome"
+	 */
+	public Map<String, Long> getOutcomes() {
+		return snapshot(outcomes);
+	}
+	/**
+	 * 
+	 * @return the number of operations that ended with each {@link Outcome}, keyed by "node outcome"
+	 */
+	public Map<String, Long> getNodeOutcomes() {
+		return snapshot(nodeOutcomes);
+	}
+	/**
+	 * Discard all recorded latencies and outcome counts.
+	 */
+	public void reset() {
+		histograms.clear();
+		outcomes.clear();
+		nodeOutcomes.clear();
+	}
+	
+	/**
+	 * 
+	 * @param failure
+	 * @return the {@link Outcome} for an operation ending with the argument
+	 */
+	static Outcome classify(Throwable failure) {
+		if(failure == null) {
+			return Outcome.SUCCESS;
+		} else if (failure instanceof ConflictExistsException) {
+			return Outcome.CONFLICT;
+		} else if (failure instanceof SchedulingException) {
+			return Outcome.SCHEDULING_ERROR;
+		} else if (failure instanceof VisitorDeclinedInvitationsException) {
+			return Outcome.VISITOR_DECLINED;
+		} else if (failure instanceof OracleCalendarNodeUnavailableException) {
+			return Outcome.NODE_UNAVAILABLE;
+		} else if (failure instanceof OracleCalendarNodeSaturatedException) {
+			return Outcome.NODE_SATURATED;
+		} else if (failure instanceof OracleCalendarParserException) {
+			return Outcome.PARSE_ERROR;
+		} else if (failure instanceof OracleCalendarDataAccessException) {
+			return Outcome.ORACLE_ERROR;
+		}
+		return Outcome.ERROR;
+	}
+	
+	/**
+	 * Close the innermost open phase of the operation, recording its exclusive time and 
+	 * charging its full time to the enclosing phase.
+	 * 
+	 * @param operation
+	 * @param now
+	 */
+	private void closePhase(Operation operation, long now) {
+		OpenPhase phase = operation.openPhases.remove(operation.openPhases.size() - 1);
+		final long elapsed = now - phase.startNanos;
+		record(operation.name, operation.nodeName, phase.phase.name(), elapsed - phase.nestedNanos);
+		if(!operation.openPhases.isEmpty()) {
+			operation.openPhases.get(operation.openPhases.size() - 1).nestedNanos += elapsed;
+		}
+	}
+	
+	/**
+	 * 
+	 * @param operationName
+	 * @param nodeName
+	 * @param phaseName
+	 * @param nanos
+	 */
+	private void record(String operationName, String nodeName, String phaseName, long nanos) {
+		HistogramKey key = new HistogramKey(operationName, nodeName, phaseName);
+		LatencyHistogram histogram = histograms.get(key);
+		if(histogram == null) {
+			LatencyHistogram created = new LatencyHistogram();
+			histogram = histograms.putIfAbsent(key, created);
+			if(histogram == null) {
+				histogram = created;
+			}
+		}
+		histogram.record(Math.max(0L, nanos));
+	}
+	
+	/**
+	 * 
+	 * @param byNode
+	 * @param byPhase
+	 * @return the histograms merged by operation (and node and/or phase, if requested), summarized
+	 */
+	private Map<String, String> summarize(boolean byNode, boolean byPhase) {
+		Map<String, LatencyHistogram> merged = new TreeMap<String, LatencyHistogram>();
+		for(Map.Entry<HistogramKey, LatencyHistogram> entry : histograms.entrySet()) {
+			HistogramKey key = entry.getKey();
+			if(!byPhase && !TOTAL.equals(key.phaseName)) {
+				continue;
+			} else if (byPhase && TOTAL.equals(key.phaseName)) {
+				continue;
+			}
+			StringBuilder name = new StringBuilder(key.operationName);
+			if(byNode) {
+				name.append(' ').append(key.nodeName);
+			}
+			if(byPhase) {
+				name.append(' ').append(key.phaseName);
+			}
+			LatencyHistogram target = merged.get(name.toString());
+			if(target == null) {
+				target = new LatencyHistogram();
+				merged.put(name.toString(), target);
+			}
+			target.add(entry.getValue());
+		}
+		Map<String, String> result = new TreeMap<String, String>();
+		for(Map.Entry<String, LatencyHistogram> entry : merged.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().toString());
+		}
+		return result;
+	}
+	
+	/**
+	 * 
+	 * @param counters
+	 * @param key
+	 */
+	private static void increment(ConcurrentMap<String, AtomicLong> counters, String key) {
+		AtomicLong counter = counters.get(key);
+		if(counter == null) {
+			AtomicLong created = new AtomicLong();
+			counter = counters.putIfAbsent(key, created);
+			if(counter == null) {
+				counter = created;
+			}
+		}
+		counter.incrementAndGet();
+	}
+	
+	/**
+	 * 
+	 * @param counters
+	 * @return a sorted copy of the counters
+	 */
+	private static Map<String, Long> snapshot(ConcurrentMap<String, AtomicLong> counters) {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for(Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().get());
+		}
+		return result;
+	}
+	
+	/**
+	 * A running operation; confined to the thread that began it.
+	 */
+	static final class Operation {
+		private final String name;
+		private final String nodeName;
+		private final Operation parent;
+		private final long startNanos = System.nanoTime();
+		private final List<OpenPhase> openPhases = new ArrayList<OpenPhase>(4);
+		private boolean stale = false;
+		
+		/**
+		 * @param name
+		 * @param nodeName
+		 * @param parent
+		 */
+		Operation(String name, String nodeName, Operation parent) {
+			this.name = name;
+			this.nodeName = nodeName;
+			this.parent = parent;
+		}
+	}
+	
+	/**
+	 * A started phase and the time spent in phases nested within it.
+	 */
+	private static final class OpenPhase {
+		private final Phase phase;
+		private final long startNanos;
+		private long nestedNanos = 0L;
+		
+		/**
+		 * @param phase
+		 * @param startNanos
+		 */
+		OpenPhase(Phase phase, long startNanos) {
+			this.phase = phase;
+			this.startNanos = startNanos;
+		}
+	}
+	
+	/**
+	 * Identifies one histogram; phaseName is "total" for whole operations.
+	 */
+	private static final class HistogramKey {
+		private final String operationName;
+		private final String nodeName;
+		private final String phaseName;
+		
+		/**
+		 * @param operationName
+		 * @param nodeName
+		 * @param phaseName
+		 */
+		HistogramKey(String operationName, String nodeName, String phaseName) {
+			this.operationName = operationName;
+			this.nodeName = nodeName;
+			this.phaseName = phaseName;
+		}
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return (operationName.hashCode() * 31 + nodeName.hashCode()) * 31 + phaseName.hashCode();
+		}
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj) {
+				return true;
+			}
+			if(!(obj instanceof HistogramKey)) {
+				return false;
+			}
+			HistogramKey other = (HistogramKey) obj;
+			return operationName.equals(other.operationName) 
+				&& nodeName.equals(other.nodeName) 
+				&& phaseName.equals(other.phaseName);
+		}
+	}
+	
+	/**
+	 * Fixed bucket latency histogram; safe for concurrent recording.
+	 */
+	static final class LatencyHistogram {
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+		
+		/**
+		 * 
+		 * @param nanos
+		 */
+		void record(long nanos) {
+			buckets.incrementAndGet(bucketFor(nanos));
+			count.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			long max = maxNanos.get();
+			while(nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+				max = maxNanos.get();
+			}
+		}
+		/**
+		 * Merge the other histogram's samples into this one.
+		 * 
+		 * @param other
+		 */
+		void add(LatencyHistogram other) {
+			for(int i = 0; i < buckets.length(); i++) {
+				buckets.addAndGet(i, other.buckets.get(i));
+			}
+			count.addAndGet(other.count.get());
+			totalNanos.addAndGet(other.totalNanos.get());
+			long otherMax = other.maxNanos.get();
+			if(otherMax > maxNanos.get()) {
+				maxNanos.set(otherMax);
+			}
+		}
+		/**
+		 * 
+		 * @return the number of samples
+		 */
+		long getCount() {
+			return count.get();
+		}
+		/**
+		 * 
+		 * @return the mean latency in milliseconds
+		 */
+		double getMeanMillis() {
+			long samples = count.get();
+			return samples == 0 ? 0.0 : (totalNanos.get() / (double) samples) / TimeUnit.MILLISECONDS.toNanos(1);
+		}
+		/**
+		 * 
+		 * @return the largest sample in milliseconds
+		 */
+		long getMaxMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+		}
+		/**
+		 * 
+		 * @param percent (0-100]
+		 * @return the upper bound in milliseconds of the bucket holding the percentile, or the max for the last bucket
+		 */
+		long getPercentileMillis(double percent) {
+			long samples = count.get();
+			if(samples == 0) {
+				return 0L;
+			}
+			long target = (long) Math.ceil(samples * percent / 100.0);
+			long seen = 0;
+			for(int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+				seen += buckets.get(i);
+				if(seen >= target) {
+					return BUCKET_BOUNDS_MILLIS[i];
+				}
+			}
+			return getMaxMillis();
+		}
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return String.format("count=%d mean=%.1fms p50=%dms p95=%dms p99=%dms max=%dms", 
+					getCount(), getMeanMillis(), getPercentileMillis(50), getPercentileMillis(95), getPercentileMillis(99), getMaxMillis());
+		}
+		/**
+		 * 
+		 * @param nanos
+		 * @return the index of the bucket for the sample
+		 */
+		private static int bucketFor(long nanos) {
+			final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+			for(int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+				if(millis < BUCKET_BOUNDS_MILLIS[i]) {
+					return i;
+				}
+			}
+			return BUCKET_BOUNDS_MILLIS.length;
+		}
+	}
+}
@@ -66,6 +66,7 @@ public class OracleCalendarResourceAccount extends
 	public OracleCalendarResourceAccount(ICalendarAccount accountOwner, String resourceName) {
 		this(accountOwner);
 		this.resourceName = resourceName;
+		invalidateAttendeeIdentity();
 	}
 	
 	/*
@@ -21,6 +21,7 @@ package org.jasig.schedassist.impl.oraclecalendar;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
@@ -39,22 +40,41 @@ import org.springframework.ldap.core.AttributesMapper;
 public final class OracleCalendarResourceAccountAttributesMapper implements AttributesMapper {
 	
 	protected static final String RESOURCE_OWNER_USERNAME = "wisceducalresourceownerid";
-	private final OracleGUIDSource oracleGUIDSource;
+	private final DeferredOracleGUIDResolver guidResolver;
 	private final ICalendarAccount owner;
+	private final Set<String> retainedAttributes;
 	/**
 	 * 
 	 */
 	public OracleCalendarResourceAccountAttributesMapper(OracleGUIDSource oracleGUIDSource) {
-		this.oracleGUIDSource = oracleGUIDSource;
-		this.owner = null;
+		this(new DeferredOracleGUIDResolver(oracleGUIDSource), null);
 	}
 	/**
 	 * @param owner
 	 */
 	public OracleCalendarResourceAccountAttributesMapper(OracleGUIDSource oracleGUIDSource,
 			ICalendarAccount owner) {
-		this.oracleGUIDSource = oracleGUIDSource;
+		this(new DeferredOracleGUIDResolver(oracleGUIDSource), owner);
+	}
+	/**
+	 * @param guidResolver
+	 * @param owner
+	 */
+	public OracleCalendarResourceAccountAttributesMapper(DeferredOracleGUIDResolver guidResolver,
+			ICalendarAccount owner) {
+		this(guidResolver, owner, null);
+	}
+	/**
+	 * @param guidResolver
+	 * @param owner
+	 * @param retainedAttributes canonical names (see {@link OracleLdapAttributeNames#retained(String[])}) of the attributes 
+	 * to keep in the account's attributes map; null keeps all
+	 */
+	public OracleCalendarResourceAccountAttributesMapper(DeferredOracleGUIDResolver guidResolver,
+			ICalendarAccount owner, Set<String> retainedAttributes) {
+		this.guidResolver = guidResolver;
 		this.owner = owner;
+		this.retainedAttributes = retainedAttributes;
 	}
 
 	/*
@@ -70,12 +90,15 @@ public final class OracleCalendarResourceAccountAttributesMapper implements Attr
 		Map<String, String> attributesMap = new HashMap<String, String>();
 		while(attributeNames.hasMore()) {
 			String attributeName = attributeNames.next();
+			final String lcAttributeName = OracleLdapAttributeNames.canonical(attributeName);
+			if(retainedAttributes != null && !retainedAttributes.contains(lcAttributeName)) {
+				continue;
+			}
 			Attribute attribute = attributes.get(attributeName);
 			String value = (String) attribute.get();
 			if(null != value) {
 				value = value.trim();
 			}
-			final String lcAttributeName = attributeName.toLowerCase();
 			attributesMap.put(lcAttributeName, value);
 			
 			if(RESOURCE_OWNER_USERNAME.equals(lcAttributeName)) {
@@ -99,9 +122,8 @@ public final class OracleCalendarResourceAccountAttributesMapper implements Attr
 		user.setContactInformation(contactInfo);
 		
 		
-		String oracleGuid = this.oracleGUIDSource.getOracleGUID(user);
-		user.setOracleGuid(oracleGuid);
-		user.getAttributes().put(AbstractOracleCalendarAccount.ORACLE_GUID_ATTRIBUTE, oracleGuid);
+		// the Oracle GUID is looked up on first read, keeping the search LDAP only
+		this.guidResolver.defer(user);
 		return user;
 	}
 	
@@ -0,0 +1,416 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.directory.SearchControls;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jasig.schedassist.model.ICalendarAccount;
+import org.jasig.schedassist.model.IDelegateCalendarAccount;
+import org.springframework.beans.factory.annotation.Required;
+import org.springframework.dao.support.DataAccessUtils;
+import org.springframework.ldap.core.LdapTemplate;
+import org.springframework.ldap.filter.LikeFilter;
+
+/**
+ * In-memory replica of the Oracle calendar resource catalogue, so that {@link OracleLdapCalendarResourceAccountDaoImpl}
+ * can answer delegate lookups without LDAP on the request path.
+ * 
+ * {@link #refresh()} loads every resource with a calendar unique id from under the base DN (resources are a small, 
+ * slowly changing set, so each refresh is a full load) and swaps in a new immutable snapshot indexed by 
+ * name (cn), unique id (ctcalxitemid) and owner username. Names and owner usernames are matched without regard to case, 
+ * as LDAP does. A failed refresh keeps the previous snapshot.
+ * 
+ * The snapshot holds templates; every lookup returns a new {@link OracleCalendarResourceAccount} with the requested owner, 
+ * so callers cannot modify each other's results. Their Oracle GUIDs are deferred as the LDAP mapper does.
+ * 
+ * Until the first refresh completes {@link #isReady()} is false and callers should use LDAP.
+ *
+ * @version $Id: OracleCalendarResourceDirectory.java $
+ */
+public class OracleCalendarResourceDirectory {
+
+	private static final String WILDCARD = "*";
+	
+	private Log LOG = LogFactory.getLog(this.getClass());
+	
+	private LdapTemplate ldapTemplate;
+	private String baseDn = "o=isp";
+	private DeferredOracleGUIDResolver deferredOracleGUIDResolver;
+	private int pageSize = 500;
+	private int searchTimeLimit = 60000;
+	
+	private volatile Snapshot snapshot;
+	private final AtomicLong lookups = new AtomicLong();
+	private final AtomicLong refreshes = new AtomicLong();
+	private final AtomicLong failedRefreshes = new AtomicLong();
+	private volatile long lastRefreshMillis;
+	private volatile long lastRefreshDurationMillis;
+	
+	/**
+	 * @param ldapTemplate the ldapTemplate to set
+	 */
+	@Required
+	public void setLdapTemplate(LdapTemplate ldapTemplate) {
+		this.ldapTemplate = ldapTemplate;
+	}
+	/**
+	 * @param baseDn the baseDn to set
+	 */
+	@Required
+	public void setBaseDn(String baseDn) {
+		this.baseDn = baseDn;
+	}
+	/**
+	 * @param deferredOracleGUIDResolver the deferredOracleGUIDResolver to set
+	 */
+	@Required
+	public void setDeferredOracleGUIDResolver(
+			DeferredOracleGUIDResolver deferredOracleGUIDResolver) {
+		this.deferredOracleGUIDResolver = deferredOracleGUIDResolver;
+	}
+	/**
+	 * @param pageSize the LDAP paged results page size (default 500)
+	 */
+	public void setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+	}
+	/**
+	 * @param searchTimeLimit the time limit in milliseconds for each page (default 60000)
+	 */
+	public void setSearchTimeLimit(int searchTimeLimit) {
+		this.searchTimeLimit = searchTimeLimit;
+	}
+	
+	/**
+	 * 
+	 * @return true once the catalogue has been loaded
+	 */
+	public boolean isReady() {
+		return snapshot != null;
+	}
+	
+	/**
+	 * Reload the catalogue from LDAP.
+	 * 
+	 * @return the number of resources loaded, or -1 if the load failed
+	 */
+	public synchronized int refresh() {
+		final long start = System.currentTimeMillis();
+		SearchControls searchControls = new SearchControls();
+		searchControls.setCountLimit(0);
+		searchControls.setTimeLimit(searchTimeLimit);
+		searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+		try {
+			List<OracleCalendarResourceAccount> loaded = OracleLdapPagedSearch.search(ldapTemplate, baseDn, 
+					new LikeFilter(AbstractOracleCalendarAccount.CTCALXITEMID, WILDCARD).toString(), searchControls, 
+					new OracleCalendarResourceAccountAttributesMapper(deferredOracleGUIDResolver, null), pageSize);
+			replace(loaded);
+			refreshes.incrementAndGet();
+			this.lastRefreshMillis = System.currentTimeMillis();
+			this.lastRefreshDurationMillis = lastRefreshMillis - start;
+			LOG.info("loaded " + loaded.size() + " resource accounts in " + lastRefreshDurationMillis + " msec");
+			return loaded.size();
+		} catch (RuntimeException e) {
+			failedRefreshes.incrementAndGet();
+			LOG.error("failed to refresh resource account directory, keeping previous contents", e);
+			return -1;
+		}
+	}
+	
+	/**
+	 * Swap in a snapshot of the resources.
+	 * 
+	 * @param resources
+	 */
+	void replace(List<OracleCalendarResourceAccount> resources) {
+		this.snapshot = new Snapshot(resources);
+	}
+	
+	/**
+	 * 
+	 * @param accountName
+	 * @param owner optional; if set, the resource must belong to the owner
+	 * @return the resource with the name, or null
+	 * @throws org.springframework.dao.IncorrectResultSizeDataAccessException if more than one resource matches
+	 */
+	public IDelegateCalendarAccount getDelegate(String accountName, ICalendarAccount owner) {
+		Snapshot current = current();
+		return DataAccessUtils.singleResult(copies(ownedBy(current.byName.get(key(accountName)), owner), owner));
+	}
+	
+	/**
+	 * 
+	 * @param accountUniqueId
+	 * @param owner optional; if set, the resource must belong to the owner
+	 * @return the resource with the unique id, or null
+	 * @throws org.springframework.dao.IncorrectResultSizeDataAccessException if more than one resource matches
+	 */
+	public IDelegateCalendarAccount getDelegateByUniqueId(String accountUniqueId, ICalendarAccount owner) {
+		Snapshot current = current();
+		return DataAccessUtils.singleResult(copies(ownedBy(current.byUniqueId.get(accountUniqueId), owner), owner));
+	}
+	
+	/**
+	 * Matches names the way {@link OracleLdapCalendarResourceAccountDaoImpl#searchForDelegates(String)} does: 
+	 * spaces (and asterisks) in the search text are wildcards and the name must start with the text.
+	 * 
+	 * @param searchText
+	 * @param owner optional; if set, only the owner's resources are searched
+	 * @param limit maximum number of results
+	 * @return matching resources in display name order
+	 */
+	public List<IDelegateCalendarAccount> searchForDelegates(String searchText, ICalendarAccount owner, int limit) {
+		Snapshot current = current();
+		List<OracleCalendarResourceAccount> candidates;
+		if(owner != null) {
+			candidates = current.byOwner.get(key(owner.getUsername()));
+		} else {
+			candidates = current.all;
+		}
+		if(candidates == null) {
+			return new ArrayList<IDelegateCalendarAccount>();
+		}
+		String [] parts = searchText.toLowerCase().split("[ *]");
+		List<OracleCalendarResourceAccount> matches = new ArrayList<OracleCalendarResourceAccount>();
+		for(OracleCalendarResourceAccount resource : candidates) {
+			if(matches.size() >= limit) {
+				break;
+			}
+			if(matchesName(key(resource.getResourceName()), parts)) {
+				matches.add(resource);
+			}
+		}
+		// candidates are already in display name order
+		return copies(matches, owner);
+	}
+	
+	/**
+	 * 
+	 * @return the number of resources in the directory
+	 */
+	public int getResourceCount() {
+		Snapshot current = this.snapshot;
+		return current == null ? 0 : current.all.size();
+	}
+	/**
+	 * 
+	 * @return the number of distinct resource owners in the directory
+	 */
+	public int getOwnerCount() {
+		Snapshot current = this.snapshot;
+		return current == null ? 0 : current.byOwner.size();
+	}
+	/**
+	 * 
+	 * @return the number of lookups and searches served
+	 */
+	public long getLookups() {
+		return lookups.get();
+	}
+	/**
+	 * 
+	 * @return the number of successful refreshes
+	 */
+	public long getRefreshes() {
+		return refreshes.get();
+	}
+	/**
+	 * 
+	 * @return the number of failed refreshes
+	 */
+	public long getFailedRefreshes() {
+		return failedRefreshes.get();
+	}
+	/**
+	 * 
+	 * @return the time (epoch millis) the last successful refresh completed, or 0
+	 */
+	public long getLastRefreshMillis() {
+		return lastRefreshMillis;
+	}
+	/**
+	 * 
+	 * @return how long the last successful refresh took
+	 */
+	public long getLastRefreshDurationMillis() {
+		return lastRefreshDurationMillis;
+	}
+	
+	/**
+	 * 
+	 * @return the current snapshot
+	 * @throws IllegalStateException if the directory is not {@link #isReady()}
+	 */
+	private Snapshot current() {
+		Snapshot current = this.snapshot;
+		if(current == null) {
+			throw new IllegalStateException("resource account directory is not loaded");
+		}
+		lookups.incrementAndGet();
+		return current;
+	}
+	
+	/**
+	 * 
+	 * @param resources may be null
+	 * @param owner
+	 * @return the resources belonging to the owner, or all of them if the owner is null
+	 */
+	private List<OracleCalendarResourceAccount> ownedBy(List<OracleCalendarResourceAccount> resources, ICalendarAccount owner) {
+		if(resources == null) {
+			return Collections.emptyList();
+		}
+		if(owner == null) {
+			return resources;
+		}
+		List<OracleCalendarResourceAccount> result = new ArrayList<OracleCalendarResourceAccount>();
+		for(OracleCalendarResourceAccount resource : resources) {
+			if(key(owner.getUsername()).equals(key(resource.getAccountOwnerUsername()))) {
+				result.add(resource);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * 
+	 * @param templates
+	 * @param owner
+	 * @return a copy of each template with the owner set
+	 */
+	private List<IDelegateCalendarAccount> copies(List<OracleCalendarResourceAccount> templates, ICalendarAccount owner) {
+		List<IDelegateCalendarAccount> result = new ArrayList<IDelegateCalendarAccount>(templates.size());
+		for(OracleCalendarResourceAccount template : templates) {
+			result.add(copyOf(template, owner));
+		}
+		return result;
+	}
+	
+	/**
+	 * 
+	 * @param template
+	 * @param owner
+	 * @return a new account equivalent to what the LDAP mapper would return for the owner
+	 */
+	OracleCalendarResourceAccount copyOf(OracleCalendarResourceAccount template, ICalendarAccount owner) {
+		OracleCalendarResourceAccount copy = new OracleCalendarResourceAccount(owner);
+		boolean deferred = template.isOracleGuidDeferred();
+		copy.setAttributes(new HashMap<String, String>(template.getAttributes()));
+		copy.setAccountOwnerUsername(template.getAccountOwnerUsername());
+		copy.setCtcalxitemid(template.getCtcalxitemid());
+		copy.setResourceName(template.getResourceName());
+		copy.setLocation(template.getLocation());
+		copy.setEmailAddress(template.getAttributeValue(AbstractOracleCalendarAccount.WISCEDUCALEMAIL));
+		copy.setContactInformation(template.getContactInformation());
+		if(deferred) {
+			deferredOracleGUIDResolver.defer(copy);
+		} else {
+			copy.setOracleGuid(template.getOracleGuid());
+		}
+		return copy;
+	}
+	
+	/**
+	 * 
+	 * @param name lower cased
+	 * @param parts lower cased search text split on spaces
+	 * @return true if the name starts with the first part and contains the remaining parts in order
+	 */
+	static boolean matchesName(String name, String [] parts) {
+		if(!name.startsWith(parts[0])) {
+			return false;
+		}
+		int position = parts[0].length();
+		for(int i = 1; i < parts.length; i++) {
+			int found = name.indexOf(parts[i], position);
+			if(found < 0) {
+				return false;
+			}
+			position = found + parts[i].length();
+		}
+		return true;
+	}
+	
+	/**
+	 * 
+	 * @param value
+	 * @return the lower cased value, or the empty string if null
+	 */
+	static String key(String value) {
+		return value == null ? "" : value.toLowerCase();
+	}
+	
+	/**
+	 * Immutable directory contents.
+	 */
+	static final class Snapshot {
+		final List<OracleCalendarResourceAccount> all;
+		final Map<String, List<OracleCalendarResourceAccount>> byName;
+		final Map<String, List<OracleCalendarResourceAccount>> byUniqueId;
+		final Map<String, List<OracleCalendarResourceAccount>> byOwner;
+		
+		/**
+		 * 
+		 * @param resources
+		 */
+		Snapshot(List<OracleCalendarResourceAccount> resources) {
+			List<OracleCalendarResourceAccount> sorted = new ArrayList<OracleCalendarResourceAccount>(resources);
+			OracleCalendarAccountOrdering.sort(sorted, false);
+			Map<String, List<OracleCalendarResourceAccount>> names = new HashMap<String, List<OracleCalendarResourceAccount>>();
+			Map<String, List<OracleCalendarResourceAccount>> uniqueIds = new HashMap<String, List<OracleCalendarResourceAccount>>();
+			Map<String, List<OracleCalendarResourceAccount>> owners = new HashMap<String, List<OracleCalendarResourceAccount>>();
+			for(OracleCalendarResourceAccount resource : sorted) {
+				add(names, key(resource.getResourceName()), resource);
+				add(uniqueIds, resource.getCtcalxitemid(), resource);
+				if(resource.getAccountOwnerUsername() != null) {
+					add(owners, key(resource.getAccountOwnerUsername()), resource);
+				}
+			}
+			this.all = Collections.unmodifiableList(sorted);
+			this.byName = names;
+			this.byUniqueId = uniqueIds;
+			this.byOwner = owners;
+		}
+		
+		/**
+		 * 
+		 * @param index
+		 * @param key
+		 * @param resource
+		 */
+		private static void add(Map<String, List<OracleCalendarResourceAccount>> index, String key, OracleCalendarResourceAccount resource) {
+			List<OracleCalendarResourceAccount> list = index.get(key);
+			if(list == null) {
+				list = new ArrayList<OracleCalendarResourceAccount>(1);
+				index.put(key, list);
+			}
+			list.add(resource);
+		}
+	}
+}
@@ -0,0 +1,309 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.fortuna.ical4j.model.component.VEvent;
+import net.fortuna.ical4j.model.property.Uid;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jasig.schedassist.impl.oraclecalendar.OracleCalendarStatusClassifier.StatusClass;
+
+/**
+ * Backoff and limits for retrying {@link AbstractOracleCalendarDao} operations that failed with a 
+ * {@link OracleCalendarStatusClassifier.StatusClass#TRANSIENT} status.
+ * 
+ * The delay before retry n (n = 1, 2, ...) is drawn uniformly from the upper half of
+ * min({@link #setMaxBackoffMillis(long)}, {@link #setInitialBackoffMillis(long)} * 2^(n-1)), so concurrent
+ * callers that failed together do not retry together. No retry is made once an operation has made
+ * {@link #setMaxAttempts(int)} attempts, or if the delay would take it past {@link #setTimeBudgetMillis(long)}
+ * from its start.
+ * 
+ * {@link #execute(String, OracleCalendarStatusClassifier, RetryableOperation)} runs the attempts. Whether a failed 
+ * write is safe to attempt again is decided by its {@link RetryableOperation#readBack(OracleCalendarDataAccessException)}.
+ * 
+ * @version $Id: OracleCalendarRetryPolicy.java $
+ */
+public class OracleCalendarRetryPolicy {
+
+	private Log LOG = LogFactory.getLog(this.getClass());
+	
+	private int maxAttempts = 3;
+	private long initialBackoffMillis = 100L;
+	private long maxBackoffMillis = 2000L;
+	private long timeBudgetMillis = 5000L;
+	private final Random random = new Random();
+	
+	private final ConcurrentMap<String, AtomicLong> retries = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentMap<String, AtomicLong> recoveries = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentMap<String, AtomicLong> attemptsExhausted = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentMap<String, AtomicLong> budgetExhausted = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentMap<String, AtomicLong> unsafeWrites = new ConcurrentHashMap<String, AtomicLong>();
+	
+	/**
+	 * @param maxAttempts the total number of attempts per operation, including the first (default 3)
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+	/**
+	 * @param initialBackoffMillis the upper bound of the delay before the first retry (default 100)
+	 */
+	public void setInitialBackoffMillis(long initialBackoffMillis) {
+		this.initialBackoffMillis = initialBackoffMillis;
+	}
+	/**
+	 * @param maxBackoffMillis the largest delay before any retry (default 2000)
+	 */
+	public void setMaxBackoffMillis(long maxBackoffMillis) {
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+	/**
+	 * @param timeBudgetMillis the time from the start of an operation after which it is no longer retried (default 5000)
+	 */
+	public void setTimeBudgetMillis(long timeBudgetMillis) {
+		this.timeBudgetMillis = timeBudgetMillis;
+	}
+	
+	/**
+	 * Attempt the operation until it succeeds, fails with a status that is not {@link StatusClass#TRANSIENT}, 
+	 * or {@link #awaitRetry(String, int, long)} gives up. Before each retry the operation's 
+	 * {@link RetryableOperation#readBack(OracleCalendarDataAccessException)} is consulted; if the read-back 
+	 * itself fails the failed attempt is treated as {@link ReadBack#UNSAFE}.
+	 * 
+	 * @param operationName
+	 * @param statusClassifier
+	 * @param operation
+	 * @return the result of the successful attempt, or {@link RetryableOperation#applied()} if a read-back shows the failed attempt took effect
+	 * @throws OracleCalendarDataAccessException the failure of the last attempt
+	 */
+	<T> T execute(String operationName, OracleCalendarStatusClassifier statusClassifier, RetryableOperation<T> operation) {
+		final long started = System.currentTimeMillis();
+		for(int attempt = 1; ; attempt++) {
+			try {
+				T result = operation.attempt();
+				if(attempt > 1) {
+					recordRecovery(operationName);
+				}
+				return result;
+			} catch (OracleCalendarDataAccessException e) {
+				if(statusClassifier.classify(e) != StatusClass.TRANSIENT || !awaitRetry(operationName, attempt, started)) {
+					throw e;
+				}
+				ReadBack readBack;
+				try {
+					readBack = operation.readBack(e);
+				} catch (RuntimeException readBackFailure) {
+					LOG.warn("not retrying " + operationName + "; read-back after the failed attempt failed", readBackFailure);
+					readBack = ReadBack.UNSAFE;
+				}
+				if(readBack == ReadBack.APPLIED) {
+					LOG.info(operationName + " failed but read-back shows it was applied");
+					recordRecovery(operationName);
+					return operation.applied();
+				} else if (readBack == ReadBack.UNSAFE) {
+					LOG.warn("not retrying " + operationName + "; the failed attempt may have taken effect");
+					recordUnsafeWrite(operationName);
+					throw e;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Decide whether the operation may be attempted again and, if so, wait out the backoff.
+	 * 
+	 * @param operationName
+	 * @param failedAttempt the number of the attempt that just failed (the first attempt is 1)
+	 * @param startedMillis when the operation started
+	 * @return true if the caller should try again; false if attempts or time budget are exhausted, or the wait was interrupted
+	 */
+	public boolean awaitRetry(String operationName, int failedAttempt, long startedMillis) {
+		if(failedAttempt >= maxAttempts) {
+			OracleCalendarNodeAvailability.increment(attemptsExhausted, operationName);
+			return false;
+		}
+		final long backoff = getBackoffMillis(failedAttempt);
+		if(System.currentTimeMillis() + backoff - startedMillis > timeBudgetMillis) {
+			OracleCalendarNodeAvailability.increment(budgetExhausted, operationName);
+			return false;
+		}
+		try {
+			Thread.sleep(backoff);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		OracleCalendarNodeAvailability.increment(retries, operationName);
+		if(LOG.isDebugEnabled()) {
+			LOG.debug("retrying " + operationName + " after attempt " + failedAttempt + " and " + backoff + " msec backoff");
+		}
+		return true;
+	}
+	
+	/**
+	 * 
+	 * @param failedAttempt
+	 * @return a delay in milliseconds drawn from the upper half of the exponential backoff for the attempt
+	 */
+	long getBackoffMillis(int failedAttempt) {
+		final int shift = Math.min(Math.max(failedAttempt - 1, 0), 30);
+		final long ceiling = Math.max(0L, Math.min(maxBackoffMillis, initialBackoffMillis << shift));
+		final long half = ceiling / 2;
+		synchronized (random) {
+			return half + (long) (random.nextDouble() * (ceiling - half));
+		}
+	}
+	
+	/**
+	 * Count an operation that succeeded after at least one retry.
+	 * 
+	 * @param operationName
+	 */
+	public void recordRecovery(String operationName) {
+		OracleCalendarNodeAvailability.increment(recoveries, operationName);
+	}
+	/**
+	 * Count a failed write that was not retried because a read-back could not show the first attempt had no effect.
+	 * 
+	 * @param operationName
+	 */
+	public void recordUnsafeWrite(String operationName) {
+		OracleCalendarNodeAvailability.increment(unsafeWrites, operationName);
+	}
+	
+	/**
+	 * 
+	 * @return the number of retries made, keyed by operation
+	 */
+	public Map<String, Long> getRetries() {
+		return OracleCalendarNodeAvailability.snapshot(retries);
+	}
+	/**
+	 * 
+	 * @return the number of operations that succeeded after retrying, keyed by operation
+	 */
+	public Map<String, Long> getRecoveries() {
+		return OracleCalendarNodeAvailability.snapshot(recoveries);
+	}
+	/**
+	 * 
+	 * @return the number of operations that failed on their last allowed attempt, keyed by operation
+	 */
+	public Map<String, Long> getAttemptsExhausted() {
+		return OracleCalendarNodeAvailability.snapshot(attemptsExhausted);
+	}
+	/**
+	 * 
+	 * @return the number of operations not retried because the time budget would be exceeded, keyed by operation
+	 */
+	public Map<String, Long> getBudgetExhausted() {
+		return OracleCalendarNodeAvailability.snapshot(budgetExhausted);
+	}
+	/**
+	 * 
+	 * @return the number of failed writes not retried after the read-back, keyed by operation
+	 */
+	public Map<String, Long> getUnsafeWrites() {
+		return OracleCalendarNodeAvailability.snapshot(unsafeWrites);
+	}
+	
+	/**
+	 * What a read-back after a failed attempt shows.
+	 */
+	enum ReadBack {
+		/**
+		 * The failed attempt left nothing behind; safe to attempt again.
+		 */
+		NOT_APPLIED,
+		/**
+		 * The failed attempt took effect after all; the operation succeeded.
+		 */
+		APPLIED,
+		/**
+		 * Attempting again could repeat the effect of the failed attempt.
+		 */
+		UNSAFE;
+		
+		/**
+		 * 
+		 * @param existing the appointment found in the block after a failed create, may be null
+		 * @return {@link #NOT_APPLIED} if the block is empty, otherwise {@link #UNSAFE}
+		 */
+		static ReadBack afterCreate(VEvent existing) {
+			return existing == null ? NOT_APPLIED : UNSAFE;
+		}
+		/**
+		 * 
+		 * @param cancelled the event the failed cancel was for
+		 * @param remaining the appointment found in its time range after the failed cancel, may be null
+		 * @return {@link #APPLIED} if the event is gone, {@link #NOT_APPLIED} if it is still there,
+		 * {@link #UNSAFE} if an event without a UID on either side makes it impossible to tell
+		 */
+		static ReadBack afterCancel(VEvent cancelled, VEvent remaining) {
+			if(remaining == null) {
+				return APPLIED;
+			}
+			Uid cancelledUid = cancelled.getUid();
+			Uid remainingUid = remaining.getUid();
+			if(cancelledUid == null || remainingUid == null) {
+				return UNSAFE;
+			}
+			return cancelledUid.equals(remainingUid) ? NOT_APPLIED : APPLIED;
+		}
+	}
+	
+	/**
+	 * An operation run by {@link OracleCalendarRetryPolicy#execute(String, OracleCalendarStatusClassifier, RetryableOperation)}.
+	 * Reads are always safe to attempt again; writes override {@link #readBack(OracleCalendarDataAccessException)}.
+	 */
+	abstract static class RetryableOperation<T> {
+		/**
+		 * 
+		 * @return the result of the operation
+		 * @throws OracleCalendarDataAccessException
+		 */
+		abstract T attempt();
+		/**
+		 * Check what a failed attempt left behind before attempting again.
+		 * 
+		 * @param failure the failure of the attempt
+		 * @return {@link ReadBack#NOT_APPLIED} unless overridden
+		 */
+		ReadBack readBack(OracleCalendarDataAccessException failure) {
+			return ReadBack.NOT_APPLIED;
+		}
+		/**
+		 * Called when {@link #readBack(OracleCalendarDataAccessException)} returns {@link ReadBack#APPLIED}.
+		 * 
+		 * @return the result of the operation; null unless overridden
+		 */
+		T applied() {
+			return null;
+		}
+	}
+}
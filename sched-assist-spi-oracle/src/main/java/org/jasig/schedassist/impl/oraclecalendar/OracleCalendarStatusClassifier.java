@@ -0,0 +1,432 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import oracle.calendar.sdk.Api;
+import oracle.calendar.sdk.Api.StatusException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jasig.schedassist.oraclecalendar.OracleCalendarServerNode;
+
+/**
+ * Sorts the status codes carried by {@link Api.StatusException}s into a small number of 
+ * {@link StatusClass}es, counts them per node, and rate limits the stack traces logged for them.
+ * 
+ * A status is classified by, in order:
+ * <ol>
+ * <li>the status names configured for each class (e.g. {@link #setNodeDownStatusNames(List)}),</li>
+ * <li>the category in the name of the {@link Api} constant with that value: SECUR is {@link StatusClass#PERMISSION},
+ * DATA is {@link StatusClass#DATA_ERROR}, LIBRARY is {@link StatusClass#TRANSIENT} and API is {@link StatusClass#FATAL},</li>
+ * <li>{@link StatusClass#FATAL} if the status carries {@link Api#CSDK_STATMODE_FATAL}, {@link StatusClass#TRANSIENT} otherwise.</li>
+ * </ol>
+ * Status names are resolved against the installed CSDK by reflection; names it does not define are ignored.
+ * 
+ * {@link #record(Log, String, OracleCalendarServerNode, StatusException)} logs the stack trace for a given node and 
+ * status at most once per {@link #setStackTraceIntervalMillis(long)}; the rest are logged at debug and reported as 
+ * a suppressed count with the next stack trace.
+ * 
+ * @version $Id: OracleCalendarStatusClassifier.java $
+ */
+public class OracleCalendarStatusClassifier {
+
+	/**
+	 * The kinds of failure reported by the CSDK.
+	 */
+	public static enum StatusClass {
+		/** may succeed if retried on a fresh {@link oracle.calendar.sdk.Session} */
+		TRANSIENT(true, true),
+		/** the node is not answering; do not retry against it until it recovers */
+		NODE_DOWN(false, true),
+		/** the account lacks the rights for the request; retrying will not help */
+		PERMISSION(false, false),
+		/** the request or the data it refers to is invalid (e.g. unknown uid) */
+		DATA_ERROR(false, false),
+		/** anything else the CSDK considers fatal */
+		FATAL(false, true);
+		
+		private final boolean retryable;
+		private final boolean sessionInvalid;
+		
+		/**
+		 * @param retryable
+		 * @param sessionInvalid
+		 */
+		private StatusClass(boolean retryable, boolean sessionInvalid) {
+			this.retryable = retryable;
+			this.sessionInvalid = sessionInvalid;
+		}
+		/**
+		 * 
+		 * @return true if the request may be retried
+		 */
+		public boolean isRetryable() {
+			return retryable;
+		}
+		/**
+		 * 
+		 * @return true if the {@link oracle.calendar.sdk.Session} that raised the status should not be reused
+		 */
+		public boolean isSessionInvalid() {
+			return sessionInvalid;
+		}
+	}
+	
+	static final List<String> DEFAULT_NODE_DOWN_STATUS_NAMES = Collections.unmodifiableList(Arrays.asList(
+			"CSDK_STAT_LIBRARY_SERVER_UNAVAILABLE", "CAPI_STAT_LIBRARY_SERVER_UNAVAILABLE"));
+	
+	private static final String UNKNOWN_NODE = "unknown";
+	
+	private static Log LOG = LogFactory.getLog(OracleCalendarStatusClassifier.class);
+	
+	private final Map<Integer, String> statusNames = resolveStatusNames();
+	private volatile Map<Integer, StatusClass> configuredClasses = Collections.emptyMap();
+	private final Map<StatusClass, List<String>> configuredNames = new HashMap<StatusClass, List<String>>();
+	private long stackTraceIntervalMillis = 60000L;
+	
+	private final ConcurrentMap<String, AtomicLong> classCounts = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentMap<String, AtomicLong> codeCounts = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentMap<String, AtomicLong> lastStackTraceMillis = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentMap<String, AtomicLong> suppressedStackTraces = new ConcurrentHashMap<String, AtomicLong>();
+	private final AtomicLong totalSuppressed = new AtomicLong();
+	
+	/**
+	 * 
+	 */
+	public OracleCalendarStatusClassifier() {
+		setStatusNames(StatusClass.NODE_DOWN, DEFAULT_NODE_DOWN_STATUS_NAMES);
+	}
+	
+	/**
+	 * @param names {@link Api} status constants to classify as {@link StatusClass#TRANSIENT}
+	 */
+	public void setTransientStatusNames(List<String> names) {
+		setStatusNames(StatusClass.TRANSIENT, names);
+	}
+	/**
+	 * @param names {@link Api} status constants to classify as {@link StatusClass#NODE_DOWN}; 
+	 * the default is CSDK_STAT_LIBRARY_SERVER_UNAVAILABLE and CAPI_STAT_LIBRARY_SERVER_UNAVAILABLE
+	 */
+	public void setNodeDownStatusNames(List<String> names) {
+		setStatusNames(StatusClass.NODE_DOWN, names);
+	}
+	/**
+	 * @param names {@link Api} status constants to classify as {@link StatusClass#PERMISSION}
+	 */
+	public void setPermissionStatusNames(List<String> names) {
+		setStatusNames(StatusClass.PERMISSION, names);
+	}
+	/**
+	 * @param names {@link Api} status constants to classify as {@link StatusClass#DATA_ERROR}
+	 */
+	public void setDataErrorStatusNames(List<String> names) {
+		setStatusNames(StatusClass.DATA_ERROR, names);
+	}
+	/**
+	 * @param names {@link Api} status constants to classify as {@link StatusClass#FATAL}
+	 */
+	public void setFatalStatusNames(List<String> names) {
+		setStatusNames(StatusClass.FATAL, names);
+	}
+	/**
+	 * @param stackTraceIntervalMillis the minimum time between stack traces for the same node and status (default 60000)
+	 */
+	public void setStackTraceIntervalMillis(long stackTraceIntervalMillis) {
+		this.stackTraceIntervalMillis = stackTraceIntervalMillis;
+	}
+	
+	/**
+	 * 
+	 * @param status
+	 * @return the {@link StatusClass} for the status code
+	 */
+	public StatusClass classify(int status) {
+		final int code = baseStatus(status);
+		StatusClass configured = configuredClasses.get(code);
+		if(configured != null) {
+			return configured;
+		}
+		String name = statusNames.get(code);
+		if(name != null) {
+			if(name.contains("_STAT_SECUR_")) {
+				return StatusClass.PERMISSION;
+			} else if (name.contains("_STAT_DATA_")) {
+				return StatusClass.DATA_ERROR;
+			} else if (name.contains("_STAT_LIBRARY_")) {
+				return StatusClass.TRANSIENT;
+			} else if (name.contains("_STAT_API_")) {
+				return StatusClass.FATAL;
+			}
+		}
+		return isFatalMode(status) ? StatusClass.FATAL : StatusClass.TRANSIENT;
+	}
+	
+	/**
+	 * 
+	 * @param throwable
+	 * @return the {@link StatusClass} of the first {@link Api.StatusException} in the cause chain, or null if there is none
+	 */
+	public StatusClass classify(Throwable throwable) {
+		StatusException statusException = findStatusException(throwable);
+		return statusException == null ? null : classify(statusException.getStatus());
+	}
+	
+	/**
+	 * Classify the exception, count it against the node, and log it; the stack trace is included
+	 * only if none has been logged for the node and status within {@link #setStackTraceIntervalMillis(long)}.
+	 * 
+	 * @param log the caller's log
+	 * @param message
+	 * @param serverNode may be null
+	 * @param e
+	 * @return the {@link StatusClass} of the exception
+	 */
+	public StatusClass record(Log log, String message, OracleCalendarServerNode serverNode, StatusException e) {
+		final int status = e.getStatus();
+		final StatusClass statusClass = classify(status);
+		final String nodeName = serverNode != null ? serverNode.getNodeName() : UNKNOWN_NODE;
+		final String statusName = describe(status);
+		OracleCalendarNodeAvailability.increment(classCounts, nodeName + " " + statusClass);
+		OracleCalendarNodeAvailability.increment(codeCounts, nodeName + " " + statusName);
+		
+		final String key = nodeName + " " + status;
+		final long now = System.currentTimeMillis();
+		AtomicLong last = counter(lastStackTraceMillis, key);
+		long previous = last.get();
+		if((previous == 0L || now - previous >= stackTraceIntervalMillis) && last.compareAndSet(previous, now)) {
+			long suppressed = counter(suppressedStackTraces, key).getAndSet(0L);
+			StringBuilder text = new StringBuilder(message);
+			text.append(" [").append(statusClass).append(", ").append(statusName).append(", node ").append(nodeName);
+			if(suppressed > 0) {
+				text.append(", ").append(suppressed).append(" similar since last stack trace");
+			}
+			text.append("]");
+			log.error(text.toString(), e);
+		} else {
+			counter(suppressedStackTraces, key).incrementAndGet();
+			totalSuppressed.incrementAndGet();
+			if(log.isDebugEnabled()) {
+				log.debug(message + " [" + statusClass + ", " + statusName + ", node " + nodeName + "]");
+			}
+		}
+		return statusClass;
+	}
+	
+	/**
+	 * 
+	 * @param status
+	 * @return the name of the {@link Api} constant for the status (plus the fatal mode, if set), or the number if unknown
+	 */
+	public String describe(int status) {
+		String name = statusNames.get(baseStatus(status));
+		if(name == null) {
+			name = Integer.toString(baseStatus(status));
+		}
+		return isFatalMode(status) ? name + "|FATAL" : name;
+	}
+	
+	/**
+	 * 
+	 * @return the number of statuses recorded in each {@link StatusClass}, keyed by "node class"
+	 */
+	public Map<String, Long> getStatusClassCounts() {
+		return OracleCalendarNodeAvailability.snapshot(classCounts);
+	}
+	/**
+	 * 
+	 * @return the number of times each status was recorded, keyed by "node status"
+	 */
+	public Map<String, Long> getStatusCodeCounts() {
+		return OracleCalendarNodeAvailability.snapshot(codeCounts);
+	}
+	/**
+	 * 
+	 * @return the number of stack traces not logged because of the rate limit
+	 */
+	public long getSuppressedStackTraces() {
+		return totalSuppressed.get();
+	}
+	/**
+	 * 
+	 * @return the configured status names for each {@link StatusClass}
+	 */
+	public Map<String, String> getConfiguredStatusNames() {
+		Map<String, String> result = new TreeMap<String, String>();
+		synchronized (configuredNames) {
+			for(Map.Entry<StatusClass, List<String>> entry : configuredNames.entrySet()) {
+				result.put(entry.getKey().toString(), entry.getValue().toString());
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * 
+	 * @param status
+	 * @param codes
+	 * @return true if the status is one of the codes, with or without {@link Api#CSDK_STATMODE_FATAL}
+	 */
+	public static boolean matches(int status, int [] codes) {
+		for(int code : codes) {
+			if(status == code || status == (code | Api.CSDK_STATMODE_FATAL)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * 
+	 * @param throwable
+	 * @return the first {@link Api.StatusException} in the cause chain of the throwable, or null
+	 */
+	public static StatusException findStatusException(Throwable throwable) {
+		Throwable current = throwable;
+		while(current != null) {
+			if(current instanceof StatusException) {
+				return (StatusException) current;
+			}
+			if(current.getCause() == current) {
+				break;
+			}
+			current = current.getCause();
+		}
+		return null;
+	}
+	
+	/**
+	 * Resolve the names of {@link Api} status constants to their values; names not defined 
+	 * by the installed CSDK are logged and ignored.
+	 * 
+	 * @param names
+	 * @return the status codes
+	 */
+	static int [] resolveStatusCodes(List<String> names) {
+		List<Integer> codes = new ArrayList<Integer>();
+		for(String name : names) {
+			try {
+				codes.add(Api.class.getField(name).getInt(null));
+			} catch (NoSuchFieldException e) {
+				LOG.warn("ignoring unknown Api status constant " + name);
+			} catch (IllegalAccessException e) {
+				LOG.warn("ignoring inaccessible Api status constant " + name);
+			} catch (IllegalArgumentException e) {
+				LOG.warn("ignoring non-int Api status constant " + name);
+			}
+		}
+		int [] result = new int[codes.size()];
+		for(int i = 0; i < result.length; i++) {
+			result[i] = codes.get(i);
+		}
+		return result;
+	}
+	
+	/**
+	 * 
+	 * @return the names of the CSDK_STAT_ and CAPI_STAT_ constants of {@link Api}, keyed by value; CSDK names are preferred
+	 */
+	static Map<Integer, String> resolveStatusNames() {
+		Map<Integer, String> result = new HashMap<Integer, String>();
+		for(Field field : Api.class.getFields()) {
+			final String name = field.getName();
+			if(!Modifier.isStatic(field.getModifiers()) || field.getType() != int.class 
+					|| !(name.startsWith("CSDK_STAT_") || name.startsWith("CAPI_STAT_"))) {
+				continue;
+			}
+			try {
+				Integer value = field.getInt(null);
+				String existing = result.get(value);
+				if(existing == null || (existing.startsWith("CAPI_") && name.startsWith("CSDK_"))) {
+					result.put(value, name);
+				}
+			} catch (IllegalAccessException e) {
+				LOG.debug("ignoring inaccessible Api status constant " + name);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * 
+	 * @param statusClass
+	 * @param names
+	 */
+	private void setStatusNames(StatusClass statusClass, List<String> names) {
+		synchronized (configuredNames) {
+			configuredNames.put(statusClass, new ArrayList<String>(names));
+			Map<Integer, StatusClass> rebuilt = new HashMap<Integer, StatusClass>();
+			for(Map.Entry<StatusClass, List<String>> entry : configuredNames.entrySet()) {
+				for(int code : resolveStatusCodes(entry.getValue())) {
+					rebuilt.put(baseStatus(code), entry.getKey());
+				}
+			}
+			this.configuredClasses = rebuilt;
+		}
+	}
+	
+	/**
+	 * 
+	 * @param status
+	 * @return the status without {@link Api#CSDK_STATMODE_FATAL}
+	 */
+	private static int baseStatus(int status) {
+		return status & ~Api.CSDK_STATMODE_FATAL;
+	}
+	/**
+	 * 
+	 * @param status
+	 * @return true if the status carries {@link Api#CSDK_STATMODE_FATAL}
+	 */
+	private static boolean isFatalMode(int status) {
+		return (status & Api.CSDK_STATMODE_FATAL) == Api.CSDK_STATMODE_FATAL;
+	}
+	
+	/**
+	 * 
+	 * @param counters
+	 * @param key
+	 * @return the (possibly new) counter for the key
+	 */
+	private static AtomicLong counter(ConcurrentMap<String, AtomicLong> counters, String key) {
+		AtomicLong counter = counters.get(key);
+		if(counter == null) {
+			AtomicLong created = new AtomicLong();
+			counter = counters.putIfAbsent(key, created);
+			if(counter == null) {
+				counter = created;
+			}
+		}
+		return counter;
+	}
+}
@@ -21,6 +21,7 @@ package org.jasig.schedassist.impl.oraclecalendar;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
@@ -46,13 +47,31 @@ public final class OracleCalendarUserAccountAttributesMapper implements Attribut
 	protected static final String GIVENNAME_ATTRIBUTE = "givenname";
 	protected static final String SURNAME_ATTRIBUTE = "sn";
 	
-	private final OracleGUIDSource oracleGUIDSource;
+	private final DeferredOracleGUIDResolver guidResolver;
+	private final Set<String> retainedAttributes;
 	/**
 	 * @param oracleGUIDSource
 	 */
 	public OracleCalendarUserAccountAttributesMapper(
 			OracleGUIDSource oracleGUIDSource) {
-		this.oracleGUIDSource = oracleGUIDSource;
+		this(new DeferredOracleGUIDResolver(oracleGUIDSource));
+	}
+	/**
+	 * @param guidResolver
+	 */
+	public OracleCalendarUserAccountAttributesMapper(
+			DeferredOracleGUIDResolver guidResolver) {
+		this(guidResolver, null);
+	}
+	/**
+	 * @param guidResolver
+	 * @param retainedAttributes canonical names (see {@link OracleLdapAttributeNames#retained(String[])}) of the attributes 
+	 * to keep in the account's attributes map; null keeps all
+	 */
+	public OracleCalendarUserAccountAttributesMapper(
+			DeferredOracleGUIDResolver guidResolver, Set<String> retainedAttributes) {
+		this.guidResolver = guidResolver;
+		this.retainedAttributes = retainedAttributes;
 	}
 
 	/* (non-Javadoc)
@@ -64,12 +83,15 @@ public final class OracleCalendarUserAccountAttributesMapper implements Attribut
 		Map<String, String> attributesMap = new HashMap<String, String>();
 		while(attributeNames.hasMore()) {
 			String attributeName = attributeNames.next();
+			final String lcAttributeName = OracleLdapAttributeNames.canonical(attributeName);
+			if(retainedAttributes != null && !retainedAttributes.contains(lcAttributeName)) {
+				continue;
+			}
 			Attribute attribute = attributes.get(attributeName);
 			String value = (String) attribute.get();
 			if(null != value) {
 				value = value.trim();
 			}
-			final String lcAttributeName = attributeName.toLowerCase();
 			attributesMap.put(lcAttributeName, value);
 			
 			
@@ -90,9 +112,8 @@ public final class OracleCalendarUserAccountAttributesMapper implements Attribut
 		user.setAttributes(attributesMap);
 		
 		if(user.getCalendarUniqueId() != null) {
-			String oracleGuid = this.oracleGUIDSource.getOracleGUID(user);
-			user.setOracleGuid(oracleGuid);
-			user.getAttributes().put(AbstractOracleCalendarAccount.ORACLE_GUID_ATTRIBUTE, oracleGuid);
+			// the Oracle GUID is looked up on first read, keeping the search LDAP only
+			this.guidResolver.defer(user);
 		}
 		return user;
 	}
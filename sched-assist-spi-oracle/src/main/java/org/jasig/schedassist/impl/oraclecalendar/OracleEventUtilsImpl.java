@@ -25,6 +25,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.SortedSet;
@@ -126,6 +127,22 @@ public class OracleEventUtilsImpl extends DefaultEventUtilsImpl {
 	// Commons-Lang provides a thread-safe replacement for SimpleDateFormat
 	public static final FastDateFormat FASTDATEFORMAT = FastDateFormat.getInstance(ICAL_DATETIME_FORMAT, 
 			TimeZone.getTimeZone("UTC"));
+	/**
+	 * Orders {@link VEvent}s by DTSTART; events without a DTSTART sort last.
+	 */
+	private static final Comparator<VEvent> START_TIME_ORDER = new Comparator<VEvent>() {
+		@Override
+		public int compare(VEvent o1, VEvent o2) {
+			Date start1 = o1.getStartDate() != null ? o1.getStartDate().getDate() : null;
+			Date start2 = o2.getStartDate() != null ? o2.getStartDate().getDate() : null;
+			if(start1 == null) {
+				return start2 == null ? 0 : 1;
+			} else if (start2 == null) {
+				return -1;
+			}
+			return start1.compareTo(start2);
+		}
+	};
 	/**
 	 * 
 	 * @param affiliationSource
@@ -146,6 +163,14 @@ public class OracleEventUtilsImpl extends DefaultEventUtilsImpl {
 		if( !Attendee.ATTENDEE.equals(attendee.getName()) && !OracleResourceAttendee.ORACLE_RESOURCE_ATTENDEE.equals(attendee.getName())) {
 			return false;
 		}
+		if(calendarAccount instanceof AbstractOracleCalendarAccount) {
+			OracleAttendeeIdentity identity = ((AbstractOracleCalendarAccount) calendarAccount).getAttendeeIdentity();
+			if(null == identity) {
+				LOG.warn("returning false for calendarAccount with null email address in attendeeMatchesPerson: " + calendarAccount);
+				return false;
+			}
+			return identity.matches(attendee);
+		}
 		
 		Cn cn = (Cn) attendee.getParameter(Cn.CN);
 		if(null == cn) {
@@ -196,7 +221,7 @@ public class OracleEventUtilsImpl extends DefaultEventUtilsImpl {
 	 * 
 	 * @param block the selected {@link AvailableBlock} 
 	 * @param owner the owner of the appointment
-	 * @param ownerGuid the Oracle GUID for the owner (may be null)
+	 * @param ownerGuid the Oracle GUID for the owner (may be null); for a resource owner, used for the ORGANIZER and resource attendee too
 	 * @param visitor the visitor to the appointment
 	 * @param visitorGuid the Oracle GUID for the visitor (may be null)
 	 * @param eventDescription text to enter into the DESCRIPTION property for the appointment
@@ -213,28 +238,27 @@ public class OracleEventUtilsImpl extends DefaultEventUtilsImpl {
 			VEvent event = new VEvent();
 			event.getProperties().add(new DtStart(new DateTime(DefaultEventUtilsImpl.convertToICalendarFormat(block.getStartTime()))));
 			event.getProperties().add(new DtEnd(new DateTime(DefaultEventUtilsImpl.convertToICalendarFormat(block.getEndTime()))));
-			Attendee visitorAttendee = constructAvailableAttendee(visitor.getCalendarAccount(), AppointmentRole.VISITOR, visitorGuid);
-			Attendee ownerAttendee = constructAvailableAttendee(owner.getCalendarAccount(), AppointmentRole.OWNER, ownerGuid);
 			if(owner.isSamePerson(visitor)) {
 				// only add the person to attendee list once with X-UW-AVAILABLE-APPOINTMENT-ROLE=BOTH
 				Attendee singleAttendee = constructAvailableAttendee(visitor.getCalendarAccount(), AppointmentRole.BOTH, visitorGuid);
 				event.getProperties().add(singleAttendee);
 			} else {
-				//Attendee visitorAttendee = constructAvailableAttendee(visitor.getCalendarAccount(), AppointmentRole.VISITOR, visitorGuid);
+				Attendee visitorAttendee = constructAvailableAttendee(visitor.getCalendarAccount(), AppointmentRole.VISITOR, visitorGuid);
 				event.getProperties().add(visitorAttendee);
 
 				ICalendarAccount ownerCalendarAccount = owner.getCalendarAccount();
 				if(ownerCalendarAccount instanceof OracleCalendarResourceAccount) {
 					// owner is a resource, must add ORGANIZER in addition to attendee
 					OracleCalendarResourceAccount resourceAccount = (OracleCalendarResourceAccount) ownerCalendarAccount;
-					Organizer ownerOrganizer = constructOracleResourceOrganizer(resourceAccount);
+					final String resourceGuid = resourceOracleGuid(resourceAccount, ownerGuid);
+					Organizer ownerOrganizer = constructOracleResourceOrganizer(resourceAccount, resourceGuid);
 					event.getProperties().add(ownerOrganizer);
 					
-					OracleResourceAttendee resourceAttendee = constructOracleResourceAttendee(resourceAccount);
+					OracleResourceAttendee resourceAttendee = constructOracleResourceAttendee(resourceAccount, resourceGuid);
 					event.getProperties().add(resourceAttendee);
 				} 
 				// add the owner with X-UW-AVAILABLE-APPOINTMENT-ROLE=OWNER
-				//Attendee ownerAttendee = constructAvailableAttendee(owner.getCalendarAccount(), AppointmentRole.OWNER, ownerGuid);
+				Attendee ownerAttendee = constructAvailableAttendee(owner.getCalendarAccount(), AppointmentRole.OWNER, ownerGuid);
 				event.getProperties().add(ownerAttendee);
 			}
 			// add the oracle "X-ORACLE-EVENTTYPE"
@@ -321,7 +345,16 @@ public class OracleEventUtilsImpl extends DefaultEventUtilsImpl {
 	 * @return
 	 */
 	protected OracleResourceAttendee constructOracleResourceAttendee(OracleCalendarResourceAccount resource) {
-		Attendee attendee = this.constructAvailableAttendee(resource, AppointmentRole.OWNER, resource.getOracleGuid());
+		return constructOracleResourceAttendee(resource, resource.getOracleGuid());
+	}
+	/**
+	 * 
+	 * @param resource
+	 * @param resourceGuid the Oracle GUID for the resource
+	 * @return
+	 */
+	protected OracleResourceAttendee constructOracleResourceAttendee(OracleCalendarResourceAccount resource, String resourceGuid) {
+		Attendee attendee = this.constructAvailableAttendee(resource, AppointmentRole.OWNER, resourceGuid);
 		OracleResourceAttendee result = new OracleResourceAttendee(attendee);
 		return result;
 	}
@@ -331,13 +364,33 @@ public class OracleEventUtilsImpl extends DefaultEventUtilsImpl {
 	 * @return
 	 */
 	protected Organizer constructOracleResourceOrganizer(OracleCalendarResourceAccount resource) {
+		return constructOracleResourceOrganizer(resource, resource.getOracleGuid());
+	}
+	/**
+	 * 
+	 * @param resource
+	 * @param resourceGuid the Oracle GUID for the resource
+	 * @return
+	 */
+	protected Organizer constructOracleResourceOrganizer(OracleCalendarResourceAccount resource, String resourceGuid) {
 		ParameterList parameters = new ParameterList();
-		parameters.add(new XParameter(ORACLE_GUID, resource.getOracleGuid()));
+		parameters.add(new XParameter(ORACLE_GUID, resourceGuid));
 		parameters.add(new Cn(resource.getResourceName()));
 		parameters.add(AppointmentRole.OWNER);
 		Organizer organizer = new Organizer(parameters, emailToURI(resource.getEmailAddress()));
 		return organizer;
 	}
+	/**
+	 * The GUID for a resource owned appointment is the owner GUID the caller located (on its own session);
+	 * a deferred GUID is never resolved here.
+	 * 
+	 * @param resource
+	 * @param ownerGuid
+	 * @return the ownerGuid, or the resource's GUID if ownerGuid is null and the resource's GUID is not deferred
+	 */
+	static String resourceOracleGuid(OracleCalendarResourceAccount resource, String ownerGuid) {
+		return ownerGuid != null ? ownerGuid : resource.getResolvedOracleGuid();
+	}
 
 	/**
 	 * This method defines our criteria for which {@link VEvent}s will cause a conflict
@@ -349,37 +402,118 @@ public class OracleEventUtilsImpl extends DefaultEventUtilsImpl {
 	 * <li>The calendarAccount is listed as an Attendee for the event and either is marked with {@link PartStat#NEEDS_ACTION} OR {@link #ORACLE_SHOWASFREE}.</li>
 	 * </ol>
 	 * 
+	 * The event's properties are examined in a single pass, see {@link #evaluateConflict(ICalendarAccount, OracleAttendeeIdentity, VEvent)}.
+	 * 
 	 * @param calendarAccount
 	 * @param event
 	 * @return true if the specified {@link VEvent} will cause a conflict for the {@link ScheduleOwner}
 	 */
 	@Override
 	public boolean willEventCauseConflict(ICalendarAccount calendarAccount, VEvent event) {
-		Property oracleEventType = event.getProperty(ORACLE_EVENTTYPE);
-		if(null == oracleEventType || !ORACLE_APPOINTMENT_PROPERTY.equals(oracleEventType)) {
-			// non-appointment events never cause conflict
-			return false;
+		OracleAttendeeIdentity identity = null;
+		if(calendarAccount instanceof AbstractOracleCalendarAccount) {
+			identity = ((AbstractOracleCalendarAccount) calendarAccount).getAttendeeIdentity();
+			if(null == identity) {
+				LOG.debug("returning false for calendarAccount with null email address in willEventCauseConflict: " + calendarAccount);
+				return false;
+			}
 		}
+		return evaluateConflict(calendarAccount, identity, event);
+	}
 
-		// check to see if the owner is the only attendee and has marked self show as free
-		Property ownerAttendee = getAttendeeForUserFromEvent(event, calendarAccount);
-		if(ownerAttendee != null) {
-			if(isOracleShowAsFree(ownerAttendee) || DefaultEventUtilsImpl.isPartStatNeedsAction(ownerAttendee)) {
-				// owner is an attendee with either ParticipationStatus at NEEDS_ACTION or is Oracle SHOW AS FREE
-				return false;
-			} else {
-				// owner is an attendee with a status that means conflict 
-				return true;
+	/**
+	 * Apply the criteria of {@link #willEventCauseConflict(ICalendarAccount, VEvent)} to every event in the list.
+	 * 
+	 * Each event's property list is walked once, collecting the X-ORACLE-EVENTTYPE and the first ATTENDEE and
+	 * {@link OracleResourceAttendee} that match the account; for Oracle accounts the match uses the account's 
+	 * {@link OracleAttendeeIdentity}.
+	 * Components other than {@link VEvent}s are ignored.
+	 * 
+	 * @param calendarAccount
+	 * @param components
+	 * @return the events that cause a conflict for the account, ordered by start time (never null)
+	 */
+	public List<VEvent> getConflictingEvents(ICalendarAccount calendarAccount, ComponentList components) {
+		List<VEvent> conflicts = new ArrayList<VEvent>();
+		OracleAttendeeIdentity identity = null;
+		if(calendarAccount instanceof AbstractOracleCalendarAccount) {
+			identity = ((AbstractOracleCalendarAccount) calendarAccount).getAttendeeIdentity();
+			if(null == identity) {
+				LOG.warn("no conflicts possible for calendarAccount with null email address: " + calendarAccount);
+				return conflicts;
 			}
-		} else {
-			Property resourceAttendee = event.getProperty(OracleResourceAttendee.ORACLE_RESOURCE_ATTENDEE);
-			if(null != resourceAttendee) {
-				return attendeeMatchesPerson(resourceAttendee, calendarAccount);
+		}
+		for(Object o : components) {
+			if(o instanceof VEvent) {
+				VEvent event = (VEvent) o;
+				if(evaluateConflict(calendarAccount, identity, event)) {
+					conflicts.add(event);
+				}
 			}
 		}
-		
-		// owner is not attending, return false
-		return false;
+		if(conflicts.size() > 1) {
+			Collections.sort(conflicts, START_TIME_ORDER);
+		}
+		return conflicts;
+	}
+
+	/**
+	 * Single pass equivalent of {@link #willEventCauseConflict(ICalendarAccount, VEvent)}.
+	 * 
+	 * @param calendarAccount
+	 * @param identity the account's {@link OracleAttendeeIdentity}, or null for non-Oracle accounts
+	 * @param event
+	 * @return true if the event causes a conflict for the account
+	 */
+	protected boolean evaluateConflict(ICalendarAccount calendarAccount, OracleAttendeeIdentity identity, VEvent event) {
+		boolean eventTypeSeen = false;
+		Property matchedAttendee = null;
+		Property matchedResourceAttendee = null;
+		for(Object o : event.getProperties()) {
+			Property property = (Property) o;
+			final String name = property.getName();
+			if(ORACLE_EVENTTYPE.equals(name)) {
+				if(!eventTypeSeen) {
+					if(!ORACLE_APPOINTMENT_PROPERTY.equals(property)) {
+						// non-appointment events never cause conflict
+						return false;
+					}
+					eventTypeSeen = true;
+				}
+			} else if (Attendee.ATTENDEE.equals(name)) {
+				if(null == matchedAttendee && attendeeMatches(calendarAccount, identity, property)) {
+					matchedAttendee = property;
+				}
+			} else if (OracleResourceAttendee.ORACLE_RESOURCE_ATTENDEE.equals(name)) {
+				if(null == matchedResourceAttendee && attendeeMatches(calendarAccount, identity, property)) {
+					matchedResourceAttendee = property;
+				}
+			}
+		}
+		if(!eventTypeSeen) {
+			return false;
+		}
+		// same precedence as getAttendeeListFromEvent: ATTENDEEs, then resource attendees
+		Property attendee = null != matchedAttendee ? matchedAttendee : matchedResourceAttendee;
+		if(null == attendee) {
+			// account is not attending
+			return false;
+		}
+		return !isOracleShowAsFree(attendee) && !DefaultEventUtilsImpl.isPartStatNeedsAction(attendee);
+	}
+
+	/**
+	 * 
+	 * @param calendarAccount
+	 * @param identity
+	 * @param attendee
+	 * @return true if the attendee represents the account
+	 */
+	private boolean attendeeMatches(ICalendarAccount calendarAccount, OracleAttendeeIdentity identity, Property attendee) {
+		if(null != identity) {
+			return identity.matches(attendee);
+		}
+		return attendeeMatchesPerson(attendee, calendarAccount);
 	}
 
 	/*
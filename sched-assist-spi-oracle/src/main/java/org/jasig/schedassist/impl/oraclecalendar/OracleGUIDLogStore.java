@@ -0,0 +1,495 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Required;
+
+/**
+ * Durable local store of calendar unique id (ctcalxitemid) to Oracle GUID mappings.
+ * 
+ * An Oracle GUID never changes for a given ctcalxitemid, so once resolved it can be kept 
+ * indefinitely. Mappings are held in memory in an open addressing (linear probing) index and
+ * persisted to an append-only log, one record per line:
+ * <pre>
+ * ctcalxitemid TAB guid TAB crc32-of-the-preceding-text (hex)
+ * </pre>
+ * The whole log is read into the index in {@link #afterPropertiesSet()}; records with a bad checksum
+ * (e.g. a line truncated by a crash) are skipped, and a truncated final line is terminated before the 
+ * first append so the next record starts on a line of its own. Each {@link #put(String, String)} of a new mapping
+ * appends and flushes a record; the log is synced to disk when the store is closed. {@link #compactIfNeeded()}, 
+ * intended to be invoked periodically by the scheduler, rewrites the log without duplicate or damaged records 
+ * once they exceed {@link #setCompactionThreshold(double)}; the new log is written to a temporary file, synced 
+ * and swapped in with {@link WarmRestartCacheSnapshotter#replaceFile(File, File)}. If a crash interrupts the
+ * swap, {@link #afterPropertiesSet()} restores the previous log before reading it.
+ * 
+ * The store file is required and must not be under java.io.tmpdir, which is neither durable across 
+ * restarts nor private. Its directory is created if it does not exist.
+ *
+ * @version $Id: OracleGUIDLogStore.java $
+ */
+public class OracleGUIDLogStore implements InitializingBean, DisposableBean {
+
+	private static final String UTF8 = "UTF-8";
+	private static final char SEPARATOR = '\t';
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	private Log LOG = LogFactory.getLog(this.getClass());
+
+	private File storeFile;
+	private double compactionThreshold = 1.5;
+	
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private String [] keys = new String[INITIAL_CAPACITY];
+	private String [] values = new String[INITIAL_CAPACITY];
+	private int size = 0;
+	private int logRecords = 0;
+	private FileOutputStream appenderStream;
+	private Writer appender;
+	
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong appends = new AtomicLong();
+	private final AtomicLong compactions = new AtomicLong();
+	private final AtomicLong damagedRecords = new AtomicLong();
+	
+	/**
+	 * @param storeFile the storeFile to set, not under java.io.tmpdir
+	 */
+	@Required
+	public void setStoreFile(File storeFile) {
+		this.storeFile = storeFile;
+	}
+	/**
+	 * @param compactionThreshold compact when the log holds more than this many records per live mapping (default 1.5)
+	 */
+	public void setCompactionThreshold(double compactionThreshold) {
+		this.compactionThreshold = compactionThreshold;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
+	 */
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		if(this.storeFile == null) {
+			throw new IllegalStateException("storeFile is required");
+		}
+		if(WarmRestartCacheSnapshotter.isUnderTempDirectory(this.storeFile)) {
+			throw new IllegalStateException("storeFile " + storeFile + " must not be under java.io.tmpdir");
+		}
+		if(!WarmRestartCacheSnapshotter.createParentDirectory(this.storeFile)) {
+			LOG.warn("unable to create directory for oracle GUID store " + storeFile);
+		}
+		lock.writeLock().lock();
+		try {
+			if(WarmRestartCacheSnapshotter.recoverReplacedFile(this.storeFile)) {
+				LOG.warn("restored oracle GUID store " + storeFile + " after an interrupted compaction");
+			}
+			if(this.storeFile.exists()) {
+				try {
+					preload();
+				} catch (IOException e) {
+					// a bad store must never prevent startup
+					LOG.error("failed to preload oracle GUID store from " + storeFile + ", starting empty", e);
+				}
+			} else {
+				LOG.info("no oracle GUID store found at " + storeFile + ", starting empty");
+			}
+			openAppender();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.beans.factory.DisposableBean#destroy()
+	 */
+	@Override
+	public void destroy() throws Exception {
+		lock.writeLock().lock();
+		try {
+			closeAppender();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * 
+	 * @param calendarUniqueId
+	 * @return the stored GUID, or null
+	 */
+	public String get(String calendarUniqueId) {
+		if(calendarUniqueId == null) {
+			return null;
+		}
+		lock.readLock().lock();
+		try {
+			int slot = findSlot(keys, calendarUniqueId);
+			if(keys[slot] != null) {
+				hits.incrementAndGet();
+				return values[slot];
+			}
+			misses.incrementAndGet();
+			return null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Store the mapping and append it to the log. A mapping that is already stored is not re-appended.
+	 * 
+	 * @param calendarUniqueId
+	 * @param guid
+	 */
+	public void put(String calendarUniqueId, String guid) {
+		if(calendarUniqueId == null || calendarUniqueId.length() == 0 || guid == null) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			if(!insert(calendarUniqueId, guid)) {
+				return;
+			}
+			if(appender != null) {
+				try {
+					appender.write(formatRecord(calendarUniqueId, guid));
+					appender.flush();
+					logRecords++;
+					appends.incrementAndGet();
+				} catch (IOException e) {
+					LOG.error("failed to append " + calendarUniqueId + " to oracle GUID store " + storeFile, e);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Compact the log if duplicate or damaged records exceed the compaction threshold.
+	 * 
+	 * @return true if the log was compacted
+	 */
+	public boolean compactIfNeeded() {
+		lock.readLock().lock();
+		try {
+			if(logRecords <= Math.max(size, 1) * compactionThreshold) {
+				return false;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		compact();
+		return true;
+	}
+	
+	/**
+	 * Rewrite the log with exactly one record per stored mapping.
+	 * Lookups and appends wait for the rewrite, which is a sequential write of small records.
+	 */
+	public void compact() {
+		final long start = System.currentTimeMillis();
+		lock.writeLock().lock();
+		try {
+			File tempFile = new File(storeFile.getPath() + ".tmp");
+			FileOutputStream out = new FileOutputStream(tempFile);
+			try {
+				Writer writer = new BufferedWriter(new OutputStreamWriter(out, UTF8));
+				for(int i = 0; i < keys.length; i++) {
+					if(keys[i] != null) {
+						writer.write(formatRecord(keys[i], values[i]));
+					}
+				}
+				writer.flush();
+				out.getFD().sync();
+			} finally {
+				out.close();
+			}
+			closeAppender();
+			if(!WarmRestartCacheSnapshotter.replaceFile(tempFile, storeFile)) {
+				LOG.error("unable to replace " + storeFile + " with " + tempFile + ", keeping the uncompacted log");
+			} else {
+				int before = logRecords;
+				logRecords = size;
+				compactions.incrementAndGet();
+				LOG.info("compacted oracle GUID store " + storeFile + " from " + before + " to " + size + " records in " + (System.currentTimeMillis() - start) + " msec");
+			}
+		} catch (IOException e) {
+			LOG.error("failed to compact oracle GUID store " + storeFile, e);
+		} finally {
+			try {
+				openAppender();
+			} catch (IOException e) {
+				LOG.error("failed to reopen oracle GUID store " + storeFile + ", new mappings will not be persisted", e);
+			}
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the number of stored mappings
+	 */
+	public int getSize() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	/**
+	 * 
+	 * @return the number of records in the log, including duplicate and damaged records
+	 */
+	public int getLogRecords() {
+		lock.readLock().lock();
+		try {
+			return logRecords;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	/**
+	 * 
+	 * @return the number of lookups answered by the store
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	/**
+	 * 
+	 * @return the number of lookups not found in the store
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	/**
+	 * 
+	 * @return the number of records appended since startup
+	 */
+	public long getAppends() {
+		return appends.get();
+	}
+	/**
+	 * 
+	 * @return the number of compactions since startup
+	 */
+	public long getCompactions() {
+		return compactions.get();
+	}
+	/**
+	 * 
+	 * @return the number of damaged records skipped during preload
+	 */
+	public long getDamagedRecords() {
+		return damagedRecords.get();
+	}
+	
+	/**
+	 * Read the log into the index. Caller must hold the write lock.
+	 * 
+	 * @throws IOException
+	 */
+	private void preload() throws IOException {
+		final long start = System.currentTimeMillis();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(storeFile), UTF8));
+		try {
+			String line;
+			while((line = reader.readLine()) != null) {
+				logRecords++;
+				int first = line.indexOf(SEPARATOR);
+				int second = first < 0 ? -1 : line.indexOf(SEPARATOR, first + 1);
+				if(first <= 0 || second < 0 || !line.substring(second + 1).equals(checksum(line.substring(0, second)))) {
+					damagedRecords.incrementAndGet();
+					continue;
+				}
+				insert(line.substring(0, first), line.substring(first + 1, second));
+			}
+		} finally {
+			reader.close();
+		}
+		LOG.info("preloaded " + size + " oracle GUIDs from " + logRecords + " records in " + storeFile + " in " + (System.currentTimeMillis() - start) + " msec");
+	}
+	
+	/**
+	 * Caller must hold the write lock.
+	 * 
+	 * @param key
+	 * @param value
+	 * @return true if the key was not already present
+	 */
+	private boolean insert(String key, String value) {
+		int slot = findSlot(keys, key);
+		if(keys[slot] != null) {
+			// GUIDs never change; keep the first mapping
+			return false;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		size++;
+		if(size * 2 > keys.length) {
+			resize();
+		}
+		return true;
+	}
+	
+	/**
+	 * Double the index capacity. Caller must hold the write lock.
+	 */
+	private void resize() {
+		String [] oldKeys = keys;
+		String [] oldValues = values;
+		String [] newKeys = new String[oldKeys.length * 2];
+		String [] newValues = new String[oldKeys.length * 2];
+		for(int i = 0; i < oldKeys.length; i++) {
+			if(oldKeys[i] != null) {
+				int slot = findSlot(newKeys, oldKeys[i]);
+				newKeys[slot] = oldKeys[i];
+				newValues[slot] = oldValues[i];
+			}
+		}
+		keys = newKeys;
+		values = newValues;
+	}
+	
+	/**
+	 * 
+	 * @param table
+	 * @param key
+	 * @return the slot holding the key, or the empty slot where it belongs
+	 */
+	static int findSlot(String [] table, String key) {
+		int h = key.hashCode();
+		// spread the high bits, the keys share long common prefixes
+		h ^= (h >>> 16);
+		final int mask = table.length - 1;
+		int slot = h & mask;
+		while(table[slot] != null && !table[slot].equals(key)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	/**
+	 * Caller must hold the write lock.
+	 * 
+	 * @throws IOException
+	 */
+	private void openAppender() throws IOException {
+		boolean terminate = !endsWithNewline(storeFile);
+		this.appenderStream = new FileOutputStream(storeFile, true);
+		this.appender = new BufferedWriter(new OutputStreamWriter(appenderStream, UTF8));
+		if(terminate) {
+			// a torn final record; without this the next record would be glued onto it
+			this.appender.write('\n');
+			this.appender.flush();
+		}
+	}
+	/**
+	 * Flush, sync and close the log. Caller must hold the write lock.
+	 */
+	private void closeAppender() {
+		if(this.appender != null) {
+			try {
+				this.appender.flush();
+				this.appenderStream.getFD().sync();
+			} catch (IOException e) {
+				LOG.error("failed to sync oracle GUID store " + storeFile, e);
+			}
+			try {
+				this.appender.close();
+			} catch (IOException e) {
+				LOG.debug("ignoring exception closing oracle GUID store " + storeFile, e);
+			}
+			this.appender = null;
+			this.appenderStream = null;
+		}
+	}
+	
+	/**
+	 * 
+	 * @param file
+	 * @return true if the file is missing, empty or ends with a newline
+	 * @throws IOException
+	 */
+	static boolean endsWithNewline(File file) throws IOException {
+		if(!file.exists() || file.length() == 0) {
+			return true;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.seek(raf.length() - 1);
+			return raf.read() == '\n';
+		} finally {
+			raf.close();
+		}
+	}
+	
+	/**
+	 * 
+	 * @param key
+	 * @param value
+	 * @return the log line for the mapping
+	 */
+	static String formatRecord(String key, String value) {
+		StringBuilder record = new StringBuilder();
+		record.append(key).append(SEPARATOR).append(value);
+		String checksum = checksum(record.toString());
+		record.append(SEPARATOR).append(checksum).append('\n');
+		return record.toString();
+	}
+	/**
+	 * 
+	 * @param text
+	 * @return the CRC32 of the text's UTF-8 bytes in hex
+	 */
+	static String checksum(String text) {
+		CRC32 crc = new CRC32();
+		try {
+			crc.update(text.getBytes(UTF8));
+		} catch (IOException e) {
+			throw new IllegalStateException("UTF-8 not supported", e);
+		}
+		return Long.toHexString(crc.getValue());
+	}
+}
@@ -0,0 +1,233 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jasig.schedassist.impl.oraclecalendar.OracleGUIDLookupResult.Outcome;
+import org.springframework.beans.factory.annotation.Required;
+
+/**
+ * Ehcache backed cache of {@link OracleGUIDLookupResult}s, keyed by calendar unique id (ctcalxitemid).
+ * 
+ * Each {@link Outcome} is cached differently:
+ * <ul>
+ * <li>{@link Outcome#FOUND} for {@link #setFoundTimeToLiveSeconds(int)},</li>
+ * <li>{@link Outcome#NOT_FOUND} for {@link #setNotFoundTimeToLiveSeconds(int)}, so accounts without a GUID 
+ * don't cost a node round trip on every request,</li>
+ * <li>{@link Outcome#ERROR} is retried after an exponential backoff, starting at {@link #setErrorInitialBackoffSeconds(int)}
+ * and doubling with each consecutive error up to {@link #setErrorMaxBackoffSeconds(int)}; a transient failure 
+ * is therefore never pinned in the cache.</li>
+ * </ul>
+ *
+ * @version $Id: OracleGUIDLookupCache.java $
+ */
+public class OracleGUIDLookupCache {
+
+	private Log LOG = LogFactory.getLog(this.getClass());
+	
+	private Ehcache cache;
+	private int foundTimeToLiveSeconds = 86400;
+	private int notFoundTimeToLiveSeconds = 3600;
+	private int errorInitialBackoffSeconds = 5;
+	private int errorMaxBackoffSeconds = 300;
+	
+	private final AtomicLong foundHits = new AtomicLong();
+	private final AtomicLong notFoundHits = new AtomicLong();
+	private final AtomicLong errorBackoffHits = new AtomicLong();
+	private final AtomicLong errorRetries = new AtomicLong();
+	private final AtomicLong cacheMisses = new AtomicLong();
+	private final AtomicLong foundLookups = new AtomicLong();
+	private final AtomicLong notFoundLookups = new AtomicLong();
+	private final AtomicLong errorLookups = new AtomicLong();
+	
+	/**
+	 * @param cache the cache to set
+	 */
+	@Required
+	public void setCache(Ehcache cache) {
+		this.cache = cache;
+	}
+	/**
+	 * @param foundTimeToLiveSeconds time to live for found GUIDs (default 86400)
+	 */
+	public void setFoundTimeToLiveSeconds(int foundTimeToLiveSeconds) {
+		this.foundTimeToLiveSeconds = foundTimeToLiveSeconds;
+	}
+	/**
+	 * @param notFoundTimeToLiveSeconds time to live for permanent misses (default 3600)
+	 */
+	public void setNotFoundTimeToLiveSeconds(int notFoundTimeToLiveSeconds) {
+		this.notFoundTimeToLiveSeconds = notFoundTimeToLiveSeconds;
+	}
+	/**
+	 * @param errorInitialBackoffSeconds wait before retrying after the first error (default 5)
+	 */
+	public void setErrorInitialBackoffSeconds(int errorInitialBackoffSeconds) {
+		this.errorInitialBackoffSeconds = errorInitialBackoffSeconds;
+	}
+	/**
+	 * @param errorMaxBackoffSeconds longest wait between retries after consecutive errors (default 300)
+	 */
+	public void setErrorMaxBackoffSeconds(int errorMaxBackoffSeconds) {
+		this.errorMaxBackoffSeconds = errorMaxBackoffSeconds;
+	}
+	
+	/**
+	 * 
+	 * @param calendarUniqueId
+	 * @return the cached result, or null if a lookup is required (nothing cached, or an error's backoff has elapsed)
+	 */
+	public OracleGUIDLookupResult get(String calendarUniqueId) {
+		Element element = calendarUniqueId == null ? null : cache.get(calendarUniqueId);
+		Object value = element == null ? null : element.getObjectValue();
+		if(!(value instanceof OracleGUIDLookupResult)) {
+			cacheMisses.incrementAndGet();
+			return null;
+		}
+		OracleGUIDLookupResult result = (OracleGUIDLookupResult) value;
+		switch(result.getOutcome()) {
+		case FOUND:
+			foundHits.incrementAndGet();
+			return result;
+		case NOT_FOUND:
+			notFoundHits.incrementAndGet();
+			return result;
+		default:
+			if(System.currentTimeMillis() < result.getRetryAfter()) {
+				errorBackoffHits.incrementAndGet();
+				return result;
+			}
+			errorRetries.incrementAndGet();
+			return null;
+		}
+	}
+	
+	/**
+	 * Cache the result of a lookup.
+	 * 
+	 * @param calendarUniqueId
+	 * @param result
+	 */
+	public void put(String calendarUniqueId, OracleGUIDLookupResult result) {
+		if(calendarUniqueId == null || result == null) {
+			return;
+		}
+		Element element;
+		switch(result.getOutcome()) {
+		case FOUND:
+			foundLookups.incrementAndGet();
+			element = new Element(calendarUniqueId, result);
+			element.setTimeToLive(foundTimeToLiveSeconds);
+			break;
+		case NOT_FOUND:
+			notFoundLookups.incrementAndGet();
+			element = new Element(calendarUniqueId, result);
+			element.setTimeToLive(notFoundTimeToLiveSeconds);
+			break;
+		default:
+			errorLookups.incrementAndGet();
+			int consecutive = 1;
+			Element previous = cache.getQuiet(calendarUniqueId);
+			if(previous != null && previous.getObjectValue() instanceof OracleGUIDLookupResult) {
+				OracleGUIDLookupResult previousResult = (OracleGUIDLookupResult) previous.getObjectValue();
+				if(previousResult.getOutcome() == Outcome.ERROR) {
+					consecutive = previousResult.getConsecutiveErrors() + 1;
+				}
+			}
+			long backoffSeconds = getBackoffSeconds(consecutive);
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("GUID lookup error #" + consecutive + " for " + calendarUniqueId + ", next retry in " + backoffSeconds + " seconds");
+			}
+			element = new Element(calendarUniqueId, result.withBackoff(consecutive, System.currentTimeMillis() + backoffSeconds * 1000L));
+			// keep the entry past the backoff so the error count survives until the next attempt
+			element.setTimeToLive(errorMaxBackoffSeconds * 2);
+			break;
+		}
+		cache.put(element);
+	}
+	
+	/**
+	 * 
+	 * @param consecutiveErrors
+	 * @return the backoff for the number of consecutive errors
+	 */
+	long getBackoffSeconds(int consecutiveErrors) {
+		long backoff = errorInitialBackoffSeconds;
+		for(int i = 1; i < consecutiveErrors && backoff < errorMaxBackoffSeconds; i++) {
+			backoff *= 2;
+		}
+		return Math.min(backoff, errorMaxBackoffSeconds);
+	}
+	
+	/**
+	 * @return the number of cache hits on found GUIDs
+	 */
+	public long getFoundHits() {
+		return foundHits.get();
+	}
+	/**
+	 * @return the number of cache hits on permanent misses
+	 */
+	public long getNotFoundHits() {
+		return notFoundHits.get();
+	}
+	/**
+	 * @return the number of requests answered with a cached error during its backoff
+	 */
+	public long getErrorBackoffHits() {
+		return errorBackoffHits.get();
+	}
+	/**
+	 * @return the number of cached errors retried after their backoff elapsed
+	 */
+	public long getErrorRetries() {
+		return errorRetries.get();
+	}
+	/**
+	 * @return the number of requests with nothing cached
+	 */
+	public long getCacheMisses() {
+		return cacheMisses.get();
+	}
+	/**
+	 * @return the number of lookups that found a GUID
+	 */
+	public long getFoundLookups() {
+		return foundLookups.get();
+	}
+	/**
+	 * @return the number of lookups that found no GUID
+	 */
+	public long getNotFoundLookups() {
+		return notFoundLookups.get();
+	}
+	/**
+	 * @return the number of lookups that failed
+	 */
+	public long getErrorLookups() {
+		return errorLookups.get();
+	}
+}
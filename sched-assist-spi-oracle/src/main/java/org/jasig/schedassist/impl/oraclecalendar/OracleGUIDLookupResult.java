@@ -0,0 +1,145 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.io.Serializable;
+
+/**
+ * The outcome of a single Oracle GUID lookup against the Oracle Calendar server.
+ * Instances are immutable and are the values held by {@link OracleGUIDLookupCache}.
+ *
+ * @version $Id: OracleGUIDLookupResult.java $
+ */
+public final class OracleGUIDLookupResult implements Serializable {
+
+	private static final long serialVersionUID = 53706L;
+
+	/**
+	 * Lookup outcome categories.
+	 */
+	public static enum Outcome {
+		/**
+		 * The GUID was found.
+		 */
+		FOUND,
+		/**
+		 * The account has no GUID (no server node, or unknown to the server); this is permanent.
+		 */
+		NOT_FOUND,
+		/**
+		 * The lookup failed for a reason that may be transient.
+		 */
+		ERROR;
+	}
+	
+	private final Outcome outcome;
+	private final String guid;
+	private final int consecutiveErrors;
+	private final long retryAfter;
+	
+	/**
+	 * @param outcome
+	 * @param guid
+	 * @param consecutiveErrors
+	 * @param retryAfter
+	 */
+	private OracleGUIDLookupResult(Outcome outcome, String guid,
+			int consecutiveErrors, long retryAfter) {
+		this.outcome = outcome;
+		this.guid = guid;
+		this.consecutiveErrors = consecutiveErrors;
+		this.retryAfter = retryAfter;
+	}
+	
+	/**
+	 * 
+	 * @param guid
+	 * @return a {@link Outcome#FOUND} result
+	 */
+	public static OracleGUIDLookupResult found(String guid) {
+		return new OracleGUIDLookupResult(Outcome.FOUND, guid, 0, 0L);
+	}
+	/**
+	 * 
+	 * @return a {@link Outcome#NOT_FOUND} result
+	 */
+	public static OracleGUIDLookupResult notFound() {
+		return new OracleGUIDLookupResult(Outcome.NOT_FOUND, null, 0, 0L);
+	}
+	/**
+	 * 
+	 * @return a {@link Outcome#ERROR} result; {@link OracleGUIDLookupCache} assigns the backoff
+	 */
+	public static OracleGUIDLookupResult error() {
+		return new OracleGUIDLookupResult(Outcome.ERROR, null, 1, 0L);
+	}
+	/**
+	 * 
+	 * @param consecutiveErrors
+	 * @param retryAfter
+	 * @return a copy of this {@link Outcome#ERROR} result with the backoff applied
+	 */
+	OracleGUIDLookupResult withBackoff(int consecutiveErrors, long retryAfter) {
+		return new OracleGUIDLookupResult(this.outcome, this.guid, consecutiveErrors, retryAfter);
+	}
+	
+	/**
+	 * @return the outcome
+	 */
+	public Outcome getOutcome() {
+		return outcome;
+	}
+	/**
+	 * @return the guid, null unless {@link Outcome#FOUND}
+	 */
+	public String getGuid() {
+		return guid;
+	}
+	/**
+	 * @return the number of consecutive {@link Outcome#ERROR} results for the account
+	 */
+	public int getConsecutiveErrors() {
+		return consecutiveErrors;
+	}
+	/**
+	 * @return the time (epoch millis) before which an {@link Outcome#ERROR} result should not be retried
+	 */
+	public long getRetryAfter() {
+		return retryAfter;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("OracleGUIDLookupResult [outcome=");
+		builder.append(outcome);
+		builder.append(", guid=");
+		builder.append(guid);
+		builder.append(", consecutiveErrors=");
+		builder.append(consecutiveErrors);
+		builder.append(", retryAfter=");
+		builder.append(retryAfter);
+		builder.append("]");
+		return builder.toString();
+	}
+}
@@ -19,6 +19,9 @@
 
 package org.jasig.schedassist.impl.oraclecalendar;
 
+import java.util.Collection;
+import java.util.Map;
+
 import oracle.calendar.sdk.Api.StatusException;
 import oracle.calendar.sdk.Session;
 
@@ -39,6 +42,15 @@ public interface OracleGUIDSource {
 	 */
 	String getOracleGUID(ICalendarAccount account);
 	
+	/**
+	 * As {@link #getOracleGUID(ICalendarAccount)}, but distinguishes an account that has no GUID
+	 * from a lookup that failed and may succeed later.
+	 * 
+	 * @param account
+	 * @return the {@link OracleGUIDLookupResult}, never null
+	 */
+	OracleGUIDLookupResult lookupOracleGUID(ICalendarAccount account);
+	
 	/**
 	 * Useful overloaded version to re-use an existing Oracle {@link Session} to retrieve
 	 * the Oracle GUID for the {@link ICalendarAccount}. 
@@ -49,4 +61,14 @@ public interface OracleGUIDSource {
 	 * @throws StatusException 
 	 */
 	String getOracleGUID(ICalendarAccount account, Session session) throws StatusException;
+	
+	/**
+	 * Retrieve the Oracle GUIDs for several accounts at once.
+	 * Implementations should group the accounts by Oracle Calendar node and use 
+	 * a single {@link Session} per node.
+	 * 
+	 * @param accounts
+	 * @return a map of {@link ICalendarAccount#getCalendarUniqueId()} to Oracle GUID; accounts whose GUID is not available are absent
+	 */
+	Map<String, String> getOracleGUIDs(Collection<? extends ICalendarAccount> accounts);
 }
@@ -19,8 +19,13 @@
 
 package org.jasig.schedassist.impl.oraclecalendar;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import oracle.calendar.sdk.Api;
 import oracle.calendar.sdk.Api.StatusException;
@@ -47,6 +52,7 @@ OracleGUIDSource {
 	private Map<String, OracleCalendarServerNode> serverNodes = new HashMap<String, OracleCalendarServerNode>();
 
 	private Log LOG = LogFactory.getLog(this.getClass());
+	private final int [] notFoundStatusCodes = OracleCalendarStatusClassifier.resolveStatusCodes(PooledOracleGUIDSourceImpl.DEFAULT_NOT_FOUND_STATUS_NAMES);
 	/**
 	 * 
 	 */
@@ -67,10 +73,19 @@ OracleGUIDSource {
 	@Cacheable(cacheName="oracleGUIDCache", selfPopulating=true)
 	@Override
 	public String getOracleGUID(final ICalendarAccount account) {
+		return lookupOracleGUID(account).getGuid();
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see org.jasig.schedassist.impl.oraclecalendar.OracleGUIDSource#lookupOracleGUID(org.jasig.schedassist.model.ICalendarAccount)
+	 */
+	@Override
+	public OracleGUIDLookupResult lookupOracleGUID(final ICalendarAccount account) {
 		OracleCalendarServerNode serverNode = serverNodes.get(getOracleNode(account));
 		if(serverNode == null) {
 			LOG.debug("no servernode available for account: " + account);
-			return null;
+			return OracleGUIDLookupResult.notFound();
 		}
 		
 		Session session = null;
@@ -86,12 +101,16 @@ OracleGUIDSource {
 			session.setIdentity(Api.CSDK_FLAG_NONE, account.getCalendarLoginId());
 
 			String guid = getOracleGUID(account, session);
-			return guid;
+			return guid == null ? OracleGUIDLookupResult.notFound() : OracleGUIDLookupResult.found(guid);
 
 		} catch (StatusException e) {
+			if(OracleCalendarStatusClassifier.matches(e.getStatus(), notFoundStatusCodes)) {
+				LOG.debug("no GUID for " + account + ", status " + e.getStatus());
+				return OracleGUIDLookupResult.notFound();
+			}
 			LOG.error("caught Api.StatusException returning null GUID for " + account);
 			LOG.debug(e);
-			return null;
+			return OracleGUIDLookupResult.error();
 		} finally {
 			disconnectQuietly(session);
 		}
@@ -113,6 +132,60 @@ OracleGUIDSource {
 		return guid;
 	}
 
+	/**
+	 * Connects once per node and resolves that node's accounts on the one {@link Session}.
+	 * 
+	 * (non-Javadoc)
+	 * @see org.jasig.schedassist.impl.oraclecalendar.OracleGUIDSource#getOracleGUIDs(java.util.Collection)
+	 */
+	@Override
+	public Map<String, String> getOracleGUIDs(final Collection<? extends ICalendarAccount> accounts) {
+		Map<String, List<ICalendarAccount>> accountsByNode = new LinkedHashMap<String, List<ICalendarAccount>>();
+		for(ICalendarAccount account : accounts) {
+			String nodeId = getOracleNode(account);
+			List<ICalendarAccount> nodeAccounts = accountsByNode.get(nodeId);
+			if(nodeAccounts == null) {
+				nodeAccounts = new ArrayList<ICalendarAccount>();
+				accountsByNode.put(nodeId, nodeAccounts);
+			}
+			nodeAccounts.add(account);
+		}
+		
+		Map<String, String> results = new HashMap<String, String>();
+		for(Entry<String, List<ICalendarAccount>> entry : accountsByNode.entrySet()) {
+			OracleCalendarServerNode serverNode = serverNodes.get(entry.getKey());
+			if(serverNode == null) {
+				LOG.debug("no servernode available for node id: " + entry.getKey());
+				continue;
+			}
+			Session session = null;
+			try {
+				session = new Session();
+				session.connectAsSysop(Api.CSDK_FLAG_NONE, 
+						serverNode.getServerAddress(), 
+						serverNode.getNodeName(), 
+						serverNode.getSysopPassword());
+				for(ICalendarAccount account : entry.getValue()) {
+					try {
+						String guid = getOracleGUID(account, session);
+						if(guid != null) {
+							results.put(account.getCalendarUniqueId(), guid);
+						}
+					} catch (StatusException e) {
+						LOG.error("caught Api.StatusException resolving GUID for " + account);
+						LOG.debug(e);
+					}
+				}
+			} catch (StatusException e) {
+				LOG.error("caught Api.StatusException connecting to node " + entry.getKey());
+				LOG.debug(e);
+			} finally {
+				disconnectQuietly(session);
+			}
+		}
+		return results;
+	}
+
 	/**
 	 * 
 	 * @param user
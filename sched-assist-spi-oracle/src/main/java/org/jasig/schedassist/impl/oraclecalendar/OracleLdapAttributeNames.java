@@ -0,0 +1,86 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Canonical (lower cased, interned) LDAP attribute names for the attribute mappers.
+ * 
+ * The directory returns the same few attribute names for every entry; mapping each through 
+ * {@link #canonical(String)} lower cases a given spelling once, and every mapped account's attributes map 
+ * shares the same key instances instead of holding its own copies.
+ *
+ * @version $Id: OracleLdapAttributeNames.java $
+ */
+final class OracleLdapAttributeNames {
+
+	/**
+	 * Bounds the memo against directories that return unusual attribute names.
+	 */
+	private static final int MAX_NAMES = 1024;
+	private static final String ALL_USER_ATTRIBUTES = "*";
+	private static final ConcurrentMap<String, String> NAMES = new ConcurrentHashMap<String, String>();
+	
+	/**
+	 * Not instantiated.
+	 */
+	private OracleLdapAttributeNames() {
+	}
+	
+	/**
+	 * 
+	 * @param attributeName as returned by the directory
+	 * @return the lower cased, interned name
+	 */
+	static String canonical(String attributeName) {
+		String canonical = NAMES.get(attributeName);
+		if(canonical == null) {
+			canonical = attributeName.toLowerCase().intern();
+			if(NAMES.size() < MAX_NAMES) {
+				NAMES.putIfAbsent(attributeName, canonical);
+			}
+		}
+		return canonical;
+	}
+	
+	/**
+	 * 
+	 * @param returningAttributes the attributes requested from the directory, may be null
+	 * @return the canonical names of the requested attributes, or null if all attributes were requested
+	 */
+	static Set<String> retained(String [] returningAttributes) {
+		if(returningAttributes == null) {
+			return null;
+		}
+		Set<String> result = new HashSet<String>();
+		for(String attributeName : returningAttributes) {
+			if(ALL_USER_ATTRIBUTES.equals(attributeName)) {
+				return null;
+			}
+			result.add(canonical(attributeName));
+		}
+		return Collections.unmodifiableSet(result);
+	}
+}
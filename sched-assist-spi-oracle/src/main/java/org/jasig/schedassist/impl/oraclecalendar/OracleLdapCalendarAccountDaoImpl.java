@@ -19,23 +19,34 @@
 
 package org.jasig.schedassist.impl.oraclecalendar;
 
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.naming.directory.SearchControls;
 
-import org.apache.commons.lang.builder.CompareToBuilder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.jasig.schedassist.CalendarAccountNotFoundException;
 import org.jasig.schedassist.ICalendarAccountDao;
+import org.jasig.schedassist.impl.oraclecalendar.OracleCalendarAccountCache.KeyType;
 import org.jasig.schedassist.model.ICalendarAccount;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Required;
 import org.springframework.dao.support.DataAccessUtils;
 import org.springframework.ldap.SizeLimitExceededException;
 import org.springframework.ldap.TimeLimitExceededException;
+import org.springframework.ldap.core.AttributesMapperCallbackHandler;
 import org.springframework.ldap.core.LdapTemplate;
 import org.springframework.ldap.filter.AndFilter;
 import org.springframework.ldap.filter.EqualsFilter;
@@ -57,12 +68,25 @@ public final class OracleLdapCalendarAccountDaoImpl implements ICalendarAccountD
 	private Log LOG = LogFactory.getLog(this.getClass());
 
 	private static final String WILD = "*";
+	static final String LOOKUP_SEARCH = "account.lookup";
+	static final String TEXT_SEARCH = "account.search";
+	static final String BULK_SEARCH = "account.bulk";
 	private LdapTemplate ldapTemplate;
 	private String baseDn = "o=isp";
 	private String calendarUniqueIdAttributeName = AbstractOracleCalendarAccount.CTCALXITEMID;
 	private OracleGUIDSource oracleGUIDSource;
+	private DeferredOracleGUIDResolver deferredOracleGUIDResolver;
 	private long searchResultsLimit = 25;
 	private int searchTimeLimit = 5000;
+	private OracleCalendarAccountCache accountCache;
+	private OracleCalendarAccountNotFoundCache notFoundCache;
+	private ExecutorService bulkLookupExecutor;
+	private int bulkLookupChunkSize = 50;
+	private long bulkLookupTimeoutMillis = 10000L;
+	private OracleCalendarAccountSearchIndex searchIndex;
+	private String [] returningAttributes;
+	private Set<String> retainedAttributes;
+	private OracleLdapSearchStatistics searchStatistics;
 
 	/**
 	 * @param baseDn The baseDn to set.
@@ -86,6 +110,26 @@ public final class OracleLdapCalendarAccountDaoImpl implements ICalendarAccountD
 	public void setOracleGUIDSource(OracleGUIDSource oracleGUIDSource) {
 		this.oracleGUIDSource = oracleGUIDSource;
 	}
+	/**
+	 * Optional; share a {@link DeferredOracleGUIDResolver} to collect its statistics.
+	 * If not set, each search defers to the {@link OracleGUIDSource} through a private resolver.
+	 * 
+	 * @param deferredOracleGUIDResolver the deferredOracleGUIDResolver to set
+	 */
+	public void setDeferredOracleGUIDResolver(
+			DeferredOracleGUIDResolver deferredOracleGUIDResolver) {
+		this.deferredOracleGUIDResolver = deferredOracleGUIDResolver;
+	}
+	/**
+	 * 
+	 * @return the configured {@link DeferredOracleGUIDResolver}, or a new one for the {@link OracleGUIDSource}
+	 */
+	protected DeferredOracleGUIDResolver getDeferredOracleGUIDResolver() {
+		if(this.deferredOracleGUIDResolver != null) {
+			return this.deferredOracleGUIDResolver;
+		}
+		return new DeferredOracleGUIDResolver(this.oracleGUIDSource);
+	}
 	/**
 	 * Default value is "ctcalxitemid".
 	 * 
@@ -106,57 +150,163 @@ public final class OracleLdapCalendarAccountDaoImpl implements ICalendarAccountD
 	public void setSearchTimeLimit(int searchTimeLimit) {
 		this.searchTimeLimit = searchTimeLimit;
 	}
+	/**
+	 * Optional; if set, every account lookup consults it first and caches the accounts it finds, 
+	 * so an account loaded by one key (username, calendar unique id, email address) is found by the others.
+	 * 
+	 * @param accountCache the accountCache to set
+	 */
+	public void setAccountCache(OracleCalendarAccountCache accountCache) {
+		this.accountCache = accountCache;
+	}
+	/**
+	 * Optional; if set, lookups by username, calendar unique id or attribute that find no account are 
+	 * remembered, and repeated lookups for the same key return null without searching.
+	 * 
+	 * @param notFoundCache the notFoundCache to set
+	 */
+	public void setNotFoundCache(OracleCalendarAccountNotFoundCache notFoundCache) {
+		this.notFoundCache = notFoundCache;
+	}
+	/**
+	 * Optional; if set, the chunks of a bulk lookup are searched concurrently.
+	 * 
+	 * @param bulkLookupExecutor the bulkLookupExecutor to set
+	 */
+	public void setBulkLookupExecutor(ExecutorService bulkLookupExecutor) {
+		this.bulkLookupExecutor = bulkLookupExecutor;
+	}
+	/**
+	 * Optional; the attributes to request from the directory. The default (null) requests all 
+	 * of them. The list must include uid and the calendar unique id attribute, and accounts' attributes 
+	 * maps will only contain the listed attributes.
+	 * 
+	 * @param returningAttributes the returningAttributes to set
+	 */
+	public void setReturningAttributes(String[] returningAttributes) {
+		this.returningAttributes = returningAttributes;
+		this.retainedAttributes = OracleLdapAttributeNames.retained(returningAttributes);
+	}
+	/**
+	 * Optional; if set and loaded, {@link #searchForCalendarAccounts(String)} is answered from the index
+	 * instead of LDAP.
+	 * 
+	 * @param searchIndex the searchIndex to set
+	 */
+	public void setSearchIndex(OracleCalendarAccountSearchIndex searchIndex) {
+		this.searchIndex = searchIndex;
+	}
+	/**
+	 * See BulkAccountLookupBenchmark in the test sources for choosing a value.
+	 * 
+	 * @param bulkLookupChunkSize the number of values OR'ed into one search filter (default 50)
+	 */
+	public void setBulkLookupChunkSize(int bulkLookupChunkSize) {
+		this.bulkLookupChunkSize = bulkLookupChunkSize;
+	}
+	/**
+	 * @param bulkLookupTimeoutMillis how long a bulk lookup waits for its concurrent chunks (default 10000)
+	 */
+	public void setBulkLookupTimeoutMillis(long bulkLookupTimeoutMillis) {
+		this.bulkLookupTimeoutMillis = bulkLookupTimeoutMillis;
+	}
+	/**
+	 * Optional; if set, every LDAP search is recorded (see {@link OracleLdapSearchStatistics}).
+	 * 
+	 * @param searchStatistics the searchStatistics to set
+	 */
+	public void setSearchStatistics(OracleLdapSearchStatistics searchStatistics) {
+		this.searchStatistics = searchStatistics;
+	}
 
 	/*
 	 * (non-Javadoc)
 	 * @see org.jasig.schedassist.ICalendarAccountDao#getCalendarAccount(java.lang.String)
 	 */
-	@Cacheable(cacheName="userAccountCache")
 	@Override
 	public ICalendarAccount getCalendarAccount(String username) {
+		ICalendarAccount cached = getCachedAccount(KeyType.USERNAME, username);
+		if(cached != null || isNotFound(OracleCalendarUserAccountAttributesMapper.USERNAME_ATTRIBUTE, username)) {
+			return cached;
+		}
 		EqualsFilter searchFilter = new EqualsFilter(OracleCalendarUserAccountAttributesMapper.USERNAME_ATTRIBUTE, username);
-		return executeSearch(searchFilter);
+		return cacheAccount(executeSearch(searchFilter, OracleCalendarUserAccountAttributesMapper.USERNAME_ATTRIBUTE, username), null, null);
 	}
 
 	/*
 	 * (non-Javadoc)
 	 * @see org.jasig.schedassist.ICalendarAccountDao#getCalendarAccount(java.lang.String, java.lang.String)
 	 */
-	@Cacheable(cacheName="userAccountCache")
 	@Override
 	public ICalendarAccount getCalendarAccount(String attributeName,
 			String attributeValue) {
+		if(accountCache != null) {
+			ICalendarAccount cached = accountCache.getByAttribute(attributeName, attributeValue);
+			if(cached != null) {
+				return cached;
+			}
+		}
+		if(isNotFound(attributeName, attributeValue)) {
+			return null;
+		}
 		AndFilter searchFilter = new AndFilter();
 		searchFilter.and(new EqualsFilter(attributeName, attributeValue));
 		// and guarantee our search returns users that have uids
 		searchFilter.and(new LikeFilter(OracleCalendarUserAccountAttributesMapper.USERNAME_ATTRIBUTE, WILD));
 		
-		return executeSearch(searchFilter);
+		return cacheAccount(executeSearch(searchFilter, attributeName, attributeValue), attributeName, attributeValue);
 	}
 
 	/*
 	 * (non-Javadoc)
 	 * @see org.jasig.schedassist.ICalendarAccountDao#getCalendarAccountFromUniqueId(java.lang.String)
 	 */
-	@Cacheable(cacheName="userAccountCache")
 	@Override
 	public ICalendarAccount getCalendarAccountFromUniqueId(
 			String calendarUniqueId) {
+		ICalendarAccount cached = getCachedAccount(KeyType.CALENDAR_UNIQUE_ID, calendarUniqueId);
+		if(cached != null || isNotFound(calendarUniqueIdAttributeName, calendarUniqueId)) {
+			return cached;
+		}
 		AndFilter searchFilter = new AndFilter();
 		searchFilter.and(new EqualsFilter(calendarUniqueIdAttributeName, calendarUniqueId));
 		// guarantee our search returns users that have uids
 		searchFilter.and(new LikeFilter(OracleCalendarUserAccountAttributesMapper.USERNAME_ATTRIBUTE, WILD));
 
-		return executeSearch(searchFilter);
+		return cacheAccount(executeSearch(searchFilter, calendarUniqueIdAttributeName, calendarUniqueId), null, null);
 	}
 
+	/**
+	 * Locate several accounts by username, with one LDAP search per chunk of usernames
+	 * instead of one per username.
+	 * 
+	 * @param usernames
+	 * @return the accounts found, keyed by the requested username; usernames not found are absent
+	 */
+	public Map<String, ICalendarAccount> getCalendarAccounts(Collection<String> usernames) {
+		return bulkLookup(usernames, OracleCalendarUserAccountAttributesMapper.USERNAME_ATTRIBUTE, KeyType.USERNAME);
+	}
+	/**
+	 * Locate several accounts by calendar unique id (ctcalxitemid), with one LDAP search per chunk 
+	 * of ids instead of one per id.
+	 * 
+	 * @param calendarUniqueIds
+	 * @return the accounts found, keyed by the requested calendar unique id; ids not found are absent
+	 */
+	public Map<String, ICalendarAccount> getCalendarAccountsFromUniqueIds(Collection<String> calendarUniqueIds) {
+		return bulkLookup(calendarUniqueIds, calendarUniqueIdAttributeName, KeyType.CALENDAR_UNIQUE_ID);
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see org.jasig.schedassist.ICalendarAccountDao#searchForCalendarAccounts(java.lang.String)
 	 */
-	@Cacheable(cacheName="userAccountCache")
+	@Cacheable(cacheName="userAccountSearchCache")
 	@Override
 	public List<ICalendarAccount> searchForCalendarAccounts(String searchText) {
+		if(searchIndex != null && searchIndex.isReady()) {
+			return searchIndex.search(searchText, (int) searchResultsLimit);
+		}
 		AndFilter searchFilter = new AndFilter();
 		
 		StringBuilder wildcardSearchText = new StringBuilder();
@@ -173,7 +323,7 @@ public final class OracleLdapCalendarAccountDaoImpl implements ICalendarAccountD
 		searchFilter.and(new LikeFilter(calendarUniqueIdAttributeName, WILD));
 		// guarantee we search for users with uids
 		searchFilter.and(new LikeFilter(OracleCalendarUserAccountAttributesMapper.USERNAME_ATTRIBUTE, WILD));
-		return executeSearchReturnList(searchFilter);
+		return executeSearchReturnList(searchFilter, TEXT_SEARCH);
 	}
 
 	/**
@@ -183,11 +333,27 @@ public final class OracleLdapCalendarAccountDaoImpl implements ICalendarAccountD
 	 * @throws CalendarAccountNotFoundException
 	 */
 	protected ICalendarAccount executeSearch(final Filter searchFilter) {		
-		List<ICalendarAccount> results = executeSearchReturnList(searchFilter);
-		ICalendarAccount result = DataAccessUtils.singleResult(results);
+		return executeSearch(searchFilter, null, null);
+	}
+	
+	/**
+	 * If the search completes within the time limit and finds nothing, the attribute value is 
+	 * recorded in the not found cache.
+	 * 
+	 * @param searchFilter
+	 * @param attributeName the attribute the lookup is by, or null
+	 * @param attributeValue
+	 * @return the single matching account, or null
+	 */
+	protected ICalendarAccount executeSearch(final Filter searchFilter, final String attributeName, final String attributeValue) {
+		SearchResults results = search(searchFilter, LOOKUP_SEARCH);
+		ICalendarAccount result = DataAccessUtils.singleResult(results.accounts);
 		if(result != null && LOG.isDebugEnabled()) {
 			LOG.debug("search filter " + searchFilter.toString() + " success: " + result);
 		}
+		if(result == null && results.complete && notFoundCache != null && attributeName != null && attributeValue != null) {
+			notFoundCache.putNotFoundByAttribute(attributeName, attributeValue);
+		}
 		return result;
 	}
 
@@ -196,39 +362,267 @@ public final class OracleLdapCalendarAccountDaoImpl implements ICalendarAccountD
 	 * @param searchFilter
 	 * @return
 	 */
-	@SuppressWarnings("unchecked")
 	protected List<ICalendarAccount> executeSearchReturnList(final Filter searchFilter) {
+		return executeSearchReturnList(searchFilter, TEXT_SEARCH);
+	}
+	
+	/**
+	 * Search with the configured result and time limits.
+	 * 
+	 * The directory stops sending entries once either limit is reached; the entries received 
+	 * up to that point are returned rather than discarded.
+	 * 
+	 * @param searchFilter
+	 * @param searchKind the key to record the search under in {@link OracleLdapSearchStatistics}
+	 * @return the matching accounts, at most {@link #setSearchResultsLimit(long)} of them
+	 */
+	protected List<ICalendarAccount> executeSearchReturnList(final Filter searchFilter, final String searchKind) {
+		return search(searchFilter, searchKind).accounts;
+	}
+	
+	/**
+	 * 
+	 * @param searchFilter
+	 * @param searchKind
+	 * @return the accounts received, and whether the search ran to completion
+	 */
+	@SuppressWarnings("unchecked")
+	private SearchResults search(final Filter searchFilter, final String searchKind) {
 		LOG.debug("searchFilter: " + searchFilter);
 		SearchControls searchControls = new SearchControls();
 		searchControls.setCountLimit(searchResultsLimit);
 		searchControls.setTimeLimit(searchTimeLimit);
 		searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
-		List<ICalendarAccount> results = Collections.emptyList();
+		searchControls.setReturningAttributes(returningAttributes);
+		AttributesMapperCallbackHandler handler = new AttributesMapperCallbackHandler(
+				new OracleCalendarUserAccountAttributesMapper(getDeferredOracleGUIDResolver(), retainedAttributes));
+		boolean truncated = false;
+		boolean timedOut = false;
 		try {
-			results = ldapTemplate.search(baseDn, 
-					searchFilter.toString(), searchControls, 
-					new OracleCalendarUserAccountAttributesMapper(this.oracleGUIDSource));
-			if(LOG.isDebugEnabled()) {
-				LOG.debug("search " + searchFilter + " returned " + results.size() + " results");
-			}
-			Collections.sort(results, new AccountComparator());
+			ldapTemplate.search(baseDn, searchFilter.toString(), searchControls, handler);
 		} catch (SizeLimitExceededException e) {
-			LOG.debug("search filter exceeded size limit (" + searchResultsLimit + "): " + searchFilter);
+			truncated = true;
+			LOG.debug("search filter exceeded size limit (" + searchResultsLimit + "), keeping " + handler.getList().size() + " results: " + searchFilter);
 		} catch (TimeLimitExceededException e) {
-			LOG.debug("search filter exceeded time limit(" + searchTimeLimit + " milliseconds): " + searchFilter);
+			timedOut = true;
+			LOG.debug("search filter exceeded time limit(" + searchTimeLimit + " milliseconds), keeping " + handler.getList().size() + " results: " + searchFilter);
+		}
+		List<ICalendarAccount> results = handler.getList();
+		if(LOG.isDebugEnabled()) {
+			LOG.debug("search " + searchFilter + " returned " + results.size() + " results");
+		}
+		OracleCalendarAccountOrdering.sort(results, true);
+		recordSearch(searchKind, results.size(), truncated, timedOut);
+		return new SearchResults(results, !truncated && !timedOut);
+	}
+	
+	/**
+	 * 
+	 * @param searchKind
+	 * @param results
+	 * @param truncated
+	 * @param timedOut
+	 */
+	protected void recordSearch(String searchKind, int results, boolean truncated, boolean timedOut) {
+		if(searchStatistics != null) {
+			searchStatistics.record(searchKind, results, truncated, timedOut);
 		}
-		return results;
 	}
 
-	private static class AccountComparator implements Comparator<ICalendarAccount> {
-
-		@Override
-		public int compare(ICalendarAccount o1, ICalendarAccount o2) {
-			return new CompareToBuilder()
-				.append(o1.getDisplayName(), o2.getDisplayName())
-				.append(o1.getUsername(), o2.getUsername())
-				.toComparison();
+	/**
+	 * 
+	 * @param values
+	 * @param attributeName
+	 * @param keyType the {@link KeyType} of the values
+	 * @return the accounts whose attribute matches one of the values, keyed by the requested value
+	 */
+	protected Map<String, ICalendarAccount> bulkLookup(Collection<String> values, String attributeName, KeyType keyType) {
+		Map<String, ICalendarAccount> results = new HashMap<String, ICalendarAccount>();
+		// LDAP equality matching on these attributes is case insensitive
+		Map<String, String> pending = new LinkedHashMap<String, String>();
+		for(String value : values) {
+			if(value == null || results.containsKey(value)) {
+				continue;
+			}
+			String normalized = value.toLowerCase();
+			ICalendarAccount cached = getCachedAccount(keyType, normalized);
+			if(cached != null) {
+				results.put(value, cached);
+			} else if(isNotFound(attributeName, normalized)) {
+				continue;
+			} else {
+				pending.put(normalized, value);
+			}
+		}
+		if(pending.isEmpty()) {
+			return results;
+		}
+		
+		List<List<String>> chunks = new ArrayList<List<String>>();
+		List<String> chunk = null;
+		for(String normalized : pending.keySet()) {
+			if(chunk == null || chunk.size() >= Math.max(1, bulkLookupChunkSize)) {
+				chunk = new ArrayList<String>();
+				chunks.add(chunk);
+			}
+			chunk.add(normalized);
+		}
+		
+		final String lcAttributeName = attributeName.toLowerCase();
+		for(ICalendarAccount found : searchChunks(attributeName, chunks)) {
+			ICalendarAccount account = cacheAccount(found, null, null);
+			String attributeValue = account.getAttributeValue(lcAttributeName);
+			String requested = attributeValue == null ? null : pending.get(attributeValue.toLowerCase());
+			if(requested != null) {
+				results.put(requested, account);
+			}
+		}
+		if(LOG.isDebugEnabled()) {
+			LOG.debug("bulk lookup on " + attributeName + " found " + results.size() + " of " + values.size() + " accounts with " + chunks.size() + " searches");
+		}
+		return results;
+	}
+	
+	/**
+	 * 
+	 * @param attributeName
+	 * @param chunks
+	 * @return the accounts returned by the searches for all chunks
+	 */
+	protected List<ICalendarAccount> searchChunks(final String attributeName, List<List<String>> chunks) {
+		List<ICalendarAccount> accounts = new ArrayList<ICalendarAccount>();
+		if(bulkLookupExecutor == null || chunks.size() < 2) {
+			for(List<String> chunk : chunks) {
+				accounts.addAll(searchChunk(attributeName, chunk));
+			}
+			return accounts;
+		}
+		
+		List<Future<List<ICalendarAccount>>> futures = new ArrayList<Future<List<ICalendarAccount>>>();
+		for(final List<String> chunk : chunks) {
+			futures.add(bulkLookupExecutor.submit(new Callable<List<ICalendarAccount>>() {
+				@Override
+				public List<ICalendarAccount> call() {
+					return searchChunk(attributeName, chunk);
+				}
+			}));
+		}
+		final long deadline = System.currentTimeMillis() + bulkLookupTimeoutMillis;
+		for(Future<List<ICalendarAccount>> future : futures) {
+			try {
+				long remaining = Math.max(0L, deadline - System.currentTimeMillis());
+				accounts.addAll(future.get(remaining, TimeUnit.MILLISECONDS));
+			} catch (TimeoutException e) {
+				LOG.warn("bulk lookup chunk on " + attributeName + " timed out after " + bulkLookupTimeoutMillis + " milliseconds");
+				future.cancel(true);
+			} catch (ExecutionException e) {
+				LOG.error("bulk lookup chunk on " + attributeName + " failed", e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				future.cancel(true);
+			}
+		}
+		return accounts;
+	}
+	
+	/**
+	 * Search for the accounts matching any of the values with a single OR filter.
+	 * 
+	 * @param attributeName
+	 * @param chunk
+	 * @return the accounts found
+	 */
+	@SuppressWarnings("unchecked")
+	protected List<ICalendarAccount> searchChunk(String attributeName, List<String> chunk) {
+		OrFilter orFilter = new OrFilter();
+		for(String value : chunk) {
+			orFilter.or(new EqualsFilter(attributeName, value));
 		}
+		AndFilter searchFilter = new AndFilter();
+		searchFilter.and(orFilter);
+		// guarantee our search returns users that have uids
+		searchFilter.and(new LikeFilter(OracleCalendarUserAccountAttributesMapper.USERNAME_ATTRIBUTE, WILD));
 		
+		SearchControls searchControls = new SearchControls();
+		// the filter bounds the number of results; the usual search result limit would truncate large chunks
+		searchControls.setCountLimit(0);
+		searchControls.setTimeLimit(searchTimeLimit);
+		searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+		searchControls.setReturningAttributes(returningAttributes);
+		AttributesMapperCallbackHandler handler = new AttributesMapperCallbackHandler(
+				new OracleCalendarUserAccountAttributesMapper(getDeferredOracleGUIDResolver(), retainedAttributes));
+		boolean truncated = false;
+		boolean timedOut = false;
+		try {
+			ldapTemplate.search(baseDn, searchFilter.toString(), searchControls, handler);
+		} catch (SizeLimitExceededException e) {
+			truncated = true;
+			LOG.warn("bulk lookup chunk of " + chunk.size() + " exceeded the server size limit, keeping " + handler.getList().size() + " results");
+		} catch (TimeLimitExceededException e) {
+			timedOut = true;
+			LOG.warn("bulk lookup chunk of " + chunk.size() + " exceeded time limit (" + searchTimeLimit + " milliseconds), keeping " + handler.getList().size() + " results");
+		}
+		List<ICalendarAccount> results = handler.getList();
+		recordSearch(BULK_SEARCH, results.size(), truncated, timedOut);
+		return results;
+	}
+	
+	/**
+	 * 
+	 * @param keyType
+	 * @param value
+	 * @return the cached account, or null
+	 */
+	private ICalendarAccount getCachedAccount(KeyType keyType, String value) {
+		if(accountCache == null || value == null) {
+			return null;
+		}
+		return accountCache.get(keyType, value);
+	}
+	/**
+	 * 
+	 * @param account may be null
+	 * @param attributeName optional attribute the account was found by
+	 * @param attributeValue
+	 * @return the account, in its compact form (see {@link CompactOracleCalendarUserAccount}) if it was cached
+	 */
+	private ICalendarAccount cacheAccount(ICalendarAccount account, String attributeName, String attributeValue) {
+		if(accountCache != null && account != null) {
+			account = CompactOracleCalendarUserAccount.compact(account);
+			accountCache.put(account, attributeName, attributeValue);
+		}
+		if(notFoundCache != null && account != null) {
+			notFoundCache.remove(account);
+		}
+		return account;
+	}
+	/**
+	 * 
+	 * @param attributeName
+	 * @param attributeValue
+	 * @return true if a recent lookup by the attribute found no account
+	 */
+	private boolean isNotFound(String attributeName, String attributeValue) {
+		if(notFoundCache == null || attributeValue == null) {
+			return false;
+		}
+		return notFoundCache.isNotFoundByAttribute(attributeName, attributeValue);
+	}
+	
+	/**
+	 * The accounts returned by a search, and whether the search ran to completion
+	 * (false if it stopped at the count or time limit).
+	 */
+	private static final class SearchResults {
+		private final List<ICalendarAccount> accounts;
+		private final boolean complete;
+		/**
+		 * @param accounts
+		 * @param complete
+		 */
+		SearchResults(List<ICalendarAccount> accounts, boolean complete) {
+			this.accounts = accounts;
+			this.complete = complete;
+		}
 	}
 }
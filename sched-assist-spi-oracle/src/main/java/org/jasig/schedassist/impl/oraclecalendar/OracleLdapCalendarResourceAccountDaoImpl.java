@@ -19,13 +19,11 @@
 
 package org.jasig.schedassist.impl.oraclecalendar;
 
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
 
 import javax.naming.directory.SearchControls;
 
-import org.apache.commons.lang.builder.CompareToBuilder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.jasig.schedassist.IDelegateCalendarAccountDao;
@@ -35,6 +33,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.support.DataAccessUtils;
 import org.springframework.ldap.SizeLimitExceededException;
 import org.springframework.ldap.TimeLimitExceededException;
+import org.springframework.ldap.core.AttributesMapperCallbackHandler;
 import org.springframework.ldap.core.LdapOperations;
 import org.springframework.ldap.filter.AndFilter;
 import org.springframework.ldap.filter.EqualsFilter;
@@ -63,10 +62,17 @@ IDelegateCalendarAccountDao {
 	protected static final String SN = "sn";
 	protected static final String TELEPHONENUMBER = "telephonenumber";
 	private static final String WILDCARD = "*";
+	static final String LOOKUP_SEARCH = "resource.lookup";
+	static final String TEXT_SEARCH = "resource.search";
 
 	private LdapOperations ldapTemplate;
 	private String baseDn = "o=isp";
 	private OracleGUIDSource oracleGUIDSource;
+	private DeferredOracleGUIDResolver deferredOracleGUIDResolver;
+	private OracleCalendarResourceDirectory resourceDirectory;
+	private String [] returningAttributes;
+	private Set<String> retainedAttributes;
+	private OracleLdapSearchStatistics searchStatistics;
 
 	private long searchResultsLimit = 25L;
 	private int searchTimeLimit = 5000;
@@ -85,6 +91,54 @@ IDelegateCalendarAccountDao {
 	public void setOracleGUIDSource(OracleGUIDSource oracleGUIDSource) {
 		this.oracleGUIDSource = oracleGUIDSource;
 	}
+	/**
+	 * Optional; share a {@link DeferredOracleGUIDResolver} to collect its statistics.
+	 * If not set, each search defers to the {@link OracleGUIDSource} through a private resolver.
+	 * 
+	 * @param deferredOracleGUIDResolver the deferredOracleGUIDResolver to set
+	 */
+	public void setDeferredOracleGUIDResolver(
+			DeferredOracleGUIDResolver deferredOracleGUIDResolver) {
+		this.deferredOracleGUIDResolver = deferredOracleGUIDResolver;
+	}
+	/**
+	 * 
+	 * @return the configured {@link DeferredOracleGUIDResolver}, or a new one for the {@link OracleGUIDSource}
+	 */
+	protected DeferredOracleGUIDResolver getDeferredOracleGUIDResolver() {
+		if(this.deferredOracleGUIDResolver != null) {
+			return this.deferredOracleGUIDResolver;
+		}
+		return new DeferredOracleGUIDResolver(this.oracleGUIDSource);
+	}
+
+	/**
+	 * Optional; the attributes to request from the directory. The default (null) requests all 
+	 * of them. The list must include cn and ctcalxitemid, and accounts' attributes maps will only 
+	 * contain the listed attributes.
+	 * 
+	 * @param returningAttributes the returningAttributes to set
+	 */
+	public void setReturningAttributes(String[] returningAttributes) {
+		this.returningAttributes = returningAttributes;
+		this.retainedAttributes = OracleLdapAttributeNames.retained(returningAttributes);
+	}
+	/**
+	 * Optional; if set and loaded, every lookup and search is answered from the directory instead of LDAP.
+	 * 
+	 * @param resourceDirectory the resourceDirectory to set
+	 */
+	public void setResourceDirectory(
+			OracleCalendarResourceDirectory resourceDirectory) {
+		this.resourceDirectory = resourceDirectory;
+	}
+	/**
+	 * 
+	 * @return true if the {@link OracleCalendarResourceDirectory} is set and loaded
+	 */
+	protected boolean isResourceDirectoryReady() {
+		return this.resourceDirectory != null && this.resourceDirectory.isReady();
+	}
 
 	/**
 	 * @param baseDn the baseDn to set
@@ -104,6 +158,14 @@ IDelegateCalendarAccountDao {
 	public void setSearchTimeLimit(int searchTimeLimit) {
 		this.searchTimeLimit = searchTimeLimit;
 	}
+	/**
+	 * Optional; if set, every LDAP search is recorded (see {@link OracleLdapSearchStatistics}).
+	 * 
+	 * @param searchStatistics the searchStatistics to set
+	 */
+	public void setSearchStatistics(OracleLdapSearchStatistics searchStatistics) {
+		this.searchStatistics = searchStatistics;
+	}
 	/*
 	 * (non-Javadoc)
 	 * @see org.jasig.schedassist.IDelegateCalendarAccountDao#getDelegate(java.lang.String)
@@ -111,6 +173,9 @@ IDelegateCalendarAccountDao {
 	@Cacheable(cacheName="delegateAccountCache")
 	@Override
 	public IDelegateCalendarAccount getDelegate(String accountName) {
+		if(isResourceDirectoryReady()) {
+			return resourceDirectory.getDelegate(accountName, null);
+		}
 		AndFilter searchFilter = new AndFilter();
 		searchFilter.and(new EqualsFilter(CN, accountName));
 		searchFilter.and(new LikeFilter(AbstractOracleCalendarAccount.CTCALXITEMID, WILDCARD));
@@ -127,6 +192,9 @@ IDelegateCalendarAccountDao {
 	@Override
 	public IDelegateCalendarAccount getDelegate(String accountName,
 			ICalendarAccount owner) {
+		if(isResourceDirectoryReady()) {
+			return resourceDirectory.getDelegate(accountName, owner);
+		}
 		AndFilter searchFilter = new AndFilter();
 		searchFilter.and(new EqualsFilter(CN, accountName));
 		searchFilter.and(new EqualsFilter(OracleCalendarResourceAccountAttributesMapper.RESOURCE_OWNER_USERNAME, owner.getUsername()));
@@ -145,6 +213,9 @@ IDelegateCalendarAccountDao {
 	@Override
 	public IDelegateCalendarAccount getDelegateByUniqueId(
 			String accountUniqueId) {
+		if(isResourceDirectoryReady()) {
+			return resourceDirectory.getDelegateByUniqueId(accountUniqueId, null);
+		}
 		AndFilter searchFilter = new AndFilter();
 		searchFilter.and(new EqualsFilter(AbstractOracleCalendarAccount.CTCALXITEMID, accountUniqueId));
 
@@ -160,6 +231,9 @@ IDelegateCalendarAccountDao {
 	@Override
 	public IDelegateCalendarAccount getDelegateByUniqueId(
 			String accountUniqueId, ICalendarAccount owner) {
+		if(isResourceDirectoryReady()) {
+			return resourceDirectory.getDelegateByUniqueId(accountUniqueId, owner);
+		}
 		AndFilter searchFilter = new AndFilter();
 		searchFilter.and(new EqualsFilter(AbstractOracleCalendarAccount.CTCALXITEMID, accountUniqueId));
 		searchFilter.and(new EqualsFilter(OracleCalendarResourceAccountAttributesMapper.RESOURCE_OWNER_USERNAME, owner.getUsername()));
@@ -176,6 +250,9 @@ IDelegateCalendarAccountDao {
 	@Override
 	public List<IDelegateCalendarAccount> searchForDelegates(String searchText,
 			ICalendarAccount owner) {
+		if(isResourceDirectoryReady()) {
+			return resourceDirectory.searchForDelegates(searchText, owner, (int) searchResultsLimit);
+		}
 		String searchTextInternal = searchText.replace(" ", WILDCARD);
 		if(!searchTextInternal.endsWith(WILDCARD)) {
 			searchTextInternal += WILDCARD;
@@ -186,7 +263,7 @@ IDelegateCalendarAccountDao {
 		searchFilter.and(new EqualsFilter(OracleCalendarResourceAccountAttributesMapper.RESOURCE_OWNER_USERNAME, owner.getUsername()));
 		searchFilter.and(new LikeFilter(AbstractOracleCalendarAccount.CTCALXITEMID, WILDCARD));
 
-		List<IDelegateCalendarAccount> results = executeSearchReturnList(searchFilter, owner);
+		List<IDelegateCalendarAccount> results = executeSearchReturnList(searchFilter, owner, TEXT_SEARCH);
 		return results;
 	}
 
@@ -196,6 +273,9 @@ IDelegateCalendarAccountDao {
 	 */
 	@Override
 	public List<IDelegateCalendarAccount> searchForDelegates(String searchText) {
+		if(isResourceDirectoryReady()) {
+			return resourceDirectory.searchForDelegates(searchText, null, (int) searchResultsLimit);
+		}
 		String searchTextInternal = searchText.replace(" ", WILDCARD);
 		if(!searchTextInternal.endsWith(WILDCARD)) {
 			searchTextInternal += WILDCARD;
@@ -206,7 +286,7 @@ IDelegateCalendarAccountDao {
 		//searchFilter.and(new EqualsFilter(OracleCalendarResourceAccountAttributesMapper.RESOURCE_OWNER_USERNAME, owner.getUsername()));
 		searchFilter.and(new LikeFilter(AbstractOracleCalendarAccount.CTCALXITEMID, WILDCARD));
 
-		List<IDelegateCalendarAccount> results = executeSearchReturnList(searchFilter);
+		List<IDelegateCalendarAccount> results = executeSearchReturnList(searchFilter, null, TEXT_SEARCH);
 		return results;
 	}
 	
@@ -226,45 +306,50 @@ IDelegateCalendarAccountDao {
 	 * @param owner
 	 * @return
 	 */
-	@SuppressWarnings("unchecked")
 	protected List<IDelegateCalendarAccount> executeSearchReturnList(final Filter searchFilter, final ICalendarAccount owner) {
+		return executeSearchReturnList(searchFilter, owner, LOOKUP_SEARCH);
+	}
+
+	/**
+	 * Search with the configured result and time limits.
+	 * 
+	 * The directory stops sending entries once either limit is reached; the entries received 
+	 * up to that point are returned rather than discarded.
+	 * 
+	 * @param searchFilter
+	 * @param owner
+	 * @param searchKind the key to record the search under in {@link OracleLdapSearchStatistics}
+	 * @return the matching resources, at most {@link #setSearchResultsLimit(long)} of them
+	 */
+	@SuppressWarnings("unchecked")
+	protected List<IDelegateCalendarAccount> executeSearchReturnList(final Filter searchFilter, final ICalendarAccount owner, final String searchKind) {
 		SearchControls searchControls = new SearchControls();
 		searchControls.setCountLimit(searchResultsLimit);
 		searchControls.setTimeLimit(searchTimeLimit);
 		searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+		searchControls.setReturningAttributes(returningAttributes);
 		
-		List<IDelegateCalendarAccount> results = Collections.emptyList();
+		AttributesMapperCallbackHandler handler = new AttributesMapperCallbackHandler(
+				new OracleCalendarResourceAccountAttributesMapper(getDeferredOracleGUIDResolver(), owner, retainedAttributes));
+		boolean truncated = false;
+		boolean timedOut = false;
 		try {
-			results = ldapTemplate.search(
-				baseDn, 
-				searchFilter.toString(), 
-				searchControls, 
-				new OracleCalendarResourceAccountAttributesMapper(this.oracleGUIDSource, owner));
-			if(LOG.isDebugEnabled()) {
-				LOG.debug("search " + searchFilter + " returned " + results.size() + " results");
-			}
-			
-			Collections.sort(results, new DelegateDisplayNameComparator());
+			ldapTemplate.search(baseDn, searchFilter.toString(), searchControls, handler);
 		} catch (SizeLimitExceededException e) {
-			LOG.debug("search filter exceeded size limit (" + searchResultsLimit + "): " + searchFilter);
+			truncated = true;
+			LOG.debug("search filter exceeded size limit (" + searchResultsLimit + "), keeping " + handler.getList().size() + " results: " + searchFilter);
 		} catch (TimeLimitExceededException e) {
-			LOG.debug("search filter exceeded time limit(" + searchTimeLimit + " milliseconds): " + searchFilter);
+			timedOut = true;
+			LOG.debug("search filter exceeded time limit(" + searchTimeLimit + " milliseconds), keeping " + handler.getList().size() + " results: " + searchFilter);
 		}
-		return results;
-	}
-
-	/**
-	 * Simple {@link Comparator} for {@link IDelegateCalendarAccount} that compares
-	 * on the displayName field.
-	 *
-	 * @author Nicholas Blair, nblair@doit.wisc.edu
-	 * @version $Id: OracleLdapCalendarResourceAccountDaoImpl.java 2600 2010-09-16 17:42:57Z npblair $
-	 */
-	private static class DelegateDisplayNameComparator implements Comparator<IDelegateCalendarAccount>{
-		@Override
-		public int compare(IDelegateCalendarAccount o1,
-				IDelegateCalendarAccount o2) {
-			return new CompareToBuilder().append(o1.getDisplayName(), o2.getDisplayName()).toComparison();
+		List<IDelegateCalendarAccount> results = handler.getList();
+		if(LOG.isDebugEnabled()) {
+			LOG.debug("search " + searchFilter + " returned " + results.size() + " results");
+		}
+		OracleCalendarAccountOrdering.sort(results, false);
+		if(searchStatistics != null) {
+			searchStatistics.record(searchKind, results.size(), truncated, timedOut);
 		}
+		return results;
 	}
 }
@@ -0,0 +1,91 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.ldap.control.PagedResultsCookie;
+import org.springframework.ldap.control.PagedResultsDirContextProcessor;
+import org.springframework.ldap.core.AttributesMapper;
+import org.springframework.ldap.core.LdapTemplate;
+import org.springframework.ldap.core.support.SingleContextSource;
+
+/**
+ * Runs a search with the LDAP paged results control, for loads that exceed the server's size limit.
+ * 
+ * Paged results cookies are only valid on the connection that issued them, so every page is 
+ * requested over one read only context borrowed from the {@link LdapTemplate}'s context source.
+ *
+ * @version $Id: OracleLdapPagedSearch.java $
+ */
+final class OracleLdapPagedSearch {
+
+	private static final Log LOG = LogFactory.getLog(OracleLdapPagedSearch.class);
+	
+	/**
+	 * Not instantiated.
+	 */
+	private OracleLdapPagedSearch() {
+	}
+	
+	/**
+	 * 
+	 * @param ldapTemplate
+	 * @param baseDn
+	 * @param filter
+	 * @param searchControls
+	 * @param mapper
+	 * @param pageSize
+	 * @return every result of the search
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> List<T> search(LdapTemplate ldapTemplate, String baseDn, String filter, SearchControls searchControls, AttributesMapper mapper, int pageSize) {
+		List<T> results = new ArrayList<T>();
+		DirContext context = ldapTemplate.getContextSource().getReadOnlyContext();
+		try {
+			LdapTemplate pagedTemplate = new LdapTemplate(new SingleContextSource(context));
+			PagedResultsCookie cookie = null;
+			int pages = 0;
+			do {
+				PagedResultsDirContextProcessor processor = new PagedResultsDirContextProcessor(pageSize, cookie);
+				results.addAll(pagedTemplate.search(baseDn, filter, searchControls, mapper, processor));
+				cookie = processor.getCookie();
+				pages++;
+			} while(cookie != null && cookie.getCookie() != null);
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("paged search " + filter + " returned " + results.size() + " results in " + pages + " pages");
+			}
+			return results;
+		} finally {
+			try {
+				context.close();
+			} catch (NamingException e) {
+				LOG.debug("ignoring exception closing context", e);
+			}
+		}
+	}
+}
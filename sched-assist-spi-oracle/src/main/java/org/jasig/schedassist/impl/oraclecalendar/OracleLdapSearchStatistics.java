@@ -0,0 +1,150 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the LDAP searches run by the account DAOs, keyed by search kind 
+ * (e.g. "account.search", "resource.lookup"), for tuning the search result and time limits.
+ * 
+ * A search is truncated when the directory stopped at the count limit (ours or the server's) 
+ * and timed out when it stopped at the time limit; in both cases the DAOs return the entries 
+ * received before the limit was reached.
+ *
+ * @version $Id: OracleLdapSearchStatistics.java $
+ */
+public class OracleLdapSearchStatistics {
+
+	private final ConcurrentMap<String, SearchCounters> counters = new ConcurrentHashMap<String, SearchCounters>();
+	
+	/**
+	 * 
+	 * @param kind
+	 * @param results the number of entries returned to the caller
+	 * @param truncated true if the search stopped at a count limit
+	 * @param timedOut true if the search stopped at the time limit
+	 */
+	public void record(String kind, int results, boolean truncated, boolean timedOut) {
+		SearchCounters kindCounters = counters.get(kind);
+		if(kindCounters == null) {
+			SearchCounters created = new SearchCounters();
+			kindCounters = counters.putIfAbsent(kind, created);
+			if(kindCounters == null) {
+				kindCounters = created;
+			}
+		}
+		kindCounters.searches.incrementAndGet();
+		kindCounters.results.addAndGet(results);
+		if(results == 0) {
+			kindCounters.empty.incrementAndGet();
+		}
+		if(truncated) {
+			kindCounters.truncated.incrementAndGet();
+		}
+		if(timedOut) {
+			kindCounters.timedOut.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the number of searches, keyed by kind
+	 */
+	public Map<String, Long> getSearches() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for(Map.Entry<String, SearchCounters> entry : counters.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().searches.get());
+		}
+		return result;
+	}
+	/**
+	 * 
+	 * @return the number of searches that returned nothing, keyed by kind
+	 */
+	public Map<String, Long> getEmptySearches() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for(Map.Entry<String, SearchCounters> entry : counters.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().empty.get());
+		}
+		return result;
+	}
+	/**
+	 * 
+	 * @return the number of searches that stopped at a count limit, keyed by kind
+	 */
+	public Map<String, Long> getTruncatedSearches() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for(Map.Entry<String, SearchCounters> entry : counters.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().truncated.get());
+		}
+		return result;
+	}
+	/**
+	 * 
+	 * @return the number of searches that stopped at the time limit, keyed by kind
+	 */
+	public Map<String, Long> getTimedOutSearches() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for(Map.Entry<String, SearchCounters> entry : counters.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().timedOut.get());
+		}
+		return result;
+	}
+	/**
+	 * 
+	 * @return the percentage (0-100) of searches that stopped at a count limit, keyed by kind
+	 */
+	public Map<String, Double> getTruncatedPercent() {
+		Map<String, Double> result = new TreeMap<String, Double>();
+		for(Map.Entry<String, SearchCounters> entry : counters.entrySet()) {
+			long searches = entry.getValue().searches.get();
+			result.put(entry.getKey(), searches == 0 ? 0.0 : (entry.getValue().truncated.get() * 100.0) / searches);
+		}
+		return result;
+	}
+	/**
+	 * 
+	 * @return the mean number of entries returned per search, keyed by kind
+	 */
+	public Map<String, Double> getMeanResults() {
+		Map<String, Double> result = new TreeMap<String, Double>();
+		for(Map.Entry<String, SearchCounters> entry : counters.entrySet()) {
+			long searches = entry.getValue().searches.get();
+			result.put(entry.getKey(), searches == 0 ? 0.0 : ((double) entry.getValue().results.get()) / searches);
+		}
+		return result;
+	}
+	
+	/**
+	 * Counters for one kind of search.
+	 */
+	static class SearchCounters {
+		private final AtomicLong searches = new AtomicLong();
+		private final AtomicLong results = new AtomicLong();
+		private final AtomicLong empty = new AtomicLong();
+		private final AtomicLong truncated = new AtomicLong();
+		private final AtomicLong timedOut = new AtomicLong();
+	}
+}
@@ -0,0 +1,196 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+import oracle.calendar.sdk.Api.StatusException;
+import oracle.calendar.sdk.Session;
+
+import org.apache.commons.lang.StringUtils;
+import org.jasig.schedassist.model.ICalendarAccount;
+import org.springframework.beans.factory.annotation.Required;
+
+/**
+ * {@link OracleGUIDSource} that consults an {@link OracleGUIDLogStore} before the delegate
+ * {@link OracleGUIDSource} (which talks to the Oracle Calendar server), and writes every 
+ * GUID the delegate returns through to the store.
+ * 
+ * Only found GUIDs are stored; an account without a GUID is asked of the delegate each time.
+ *
+ * @version $Id: PersistentOracleGUIDSourceImpl.java $
+ */
+public class PersistentOracleGUIDSourceImpl implements OracleGUIDSource {
+
+	private OracleGUIDSource delegate;
+	private OracleGUIDLogStore store;
+	private final AtomicLong storeHits = new AtomicLong();
+	private final AtomicLong delegateLookups = new AtomicLong();
+	
+	/**
+	 * @param delegate the delegate to set
+	 */
+	@Required
+	public void setDelegate(OracleGUIDSource delegate) {
+		this.delegate = delegate;
+	}
+	/**
+	 * @param store the store to set
+	 */
+	@Required
+	public void setStore(OracleGUIDLogStore store) {
+		this.store = store;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.jasig.schedassist.impl.oraclecalendar.OracleGUIDSource#getOracleGUID(org.jasig.schedassist.model.ICalendarAccount)
+	 */
+	@Override
+	public String getOracleGUID(ICalendarAccount account) {
+		String guid = lookup(account);
+		if(guid != null) {
+			return guid;
+		}
+		delegateLookups.incrementAndGet();
+		guid = this.delegate.getOracleGUID(account);
+		record(account, guid);
+		return guid;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.jasig.schedassist.impl.oraclecalendar.OracleGUIDSource#lookupOracleGUID(org.jasig.schedassist.model.ICalendarAccount)
+	 */
+	@Override
+	public OracleGUIDLookupResult lookupOracleGUID(ICalendarAccount account) {
+		String guid = lookup(account);
+		if(guid != null) {
+			return OracleGUIDLookupResult.found(guid);
+		}
+		delegateLookups.incrementAndGet();
+		OracleGUIDLookupResult result = this.delegate.lookupOracleGUID(account);
+		record(account, result.getGuid());
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.jasig.schedassist.impl.oraclecalendar.OracleGUIDSource#getOracleGUID(org.jasig.schedassist.model.ICalendarAccount, oracle.calendar.sdk.Session)
+	 */
+	@Override
+	public String getOracleGUID(ICalendarAccount account, Session session)
+			throws StatusException {
+		String guid = lookup(account);
+		if(guid != null) {
+			return guid;
+		}
+		delegateLookups.incrementAndGet();
+		guid = this.delegate.getOracleGUID(account, session);
+		record(account, guid);
+		return guid;
+	}
+
+	/**
+	 * Only the accounts missing from the store are passed to the delegate.
+	 * 
+	 * (non-Javadoc)
+	 * @see org.jasig.schedassist.impl.oraclecalendar.OracleGUIDSource#getOracleGUIDs(java.util.Collection)
+	 */
+	@Override
+	public Map<String, String> getOracleGUIDs(
+			Collection<? extends ICalendarAccount> accounts) {
+		Map<String, String> results = new HashMap<String, String>();
+		List<ICalendarAccount> missing = new ArrayList<ICalendarAccount>();
+		for(ICalendarAccount account : accounts) {
+			String guid = lookup(account);
+			if(guid != null) {
+				results.put(account.getCalendarUniqueId(), guid);
+			} else {
+				missing.add(account);
+			}
+		}
+		if(!missing.isEmpty()) {
+			delegateLookups.addAndGet(missing.size());
+			Map<String, String> resolved = this.delegate.getOracleGUIDs(missing);
+			for(Entry<String, String> entry : resolved.entrySet()) {
+				this.store.put(entry.getKey(), entry.getValue());
+			}
+			results.putAll(resolved);
+		}
+		return results;
+	}
+	
+	/**
+	 * 
+	 * @return the number of GUIDs answered by the store
+	 */
+	public long getStoreHits() {
+		return storeHits.get();
+	}
+	/**
+	 * 
+	 * @return the number of GUIDs requested from the delegate
+	 */
+	public long getDelegateLookups() {
+		return delegateLookups.get();
+	}
+	/**
+	 * 
+	 * @return the percentage (0-100) of GUIDs answered by the store
+	 */
+	public double getStoreHitPercent() {
+		long hits = storeHits.get();
+		long total = hits + delegateLookups.get();
+		return total == 0 ? 0.0 : (hits * 100.0) / total;
+	}
+	
+	/**
+	 * 
+	 * @param account
+	 * @return the stored GUID for the account, or null
+	 */
+	private String lookup(ICalendarAccount account) {
+		if(account == null || StringUtils.isBlank(account.getCalendarUniqueId())) {
+			return null;
+		}
+		String guid = this.store.get(account.getCalendarUniqueId());
+		if(guid != null) {
+			storeHits.incrementAndGet();
+		}
+		return guid;
+	}
+	/**
+	 * 
+	 * @param account
+	 * @param guid
+	 */
+	private void record(ICalendarAccount account, String guid) {
+		if(guid != null && account != null && StringUtils.isNotBlank(account.getCalendarUniqueId())) {
+			this.store.put(account.getCalendarUniqueId(), guid);
+		}
+	}
+}
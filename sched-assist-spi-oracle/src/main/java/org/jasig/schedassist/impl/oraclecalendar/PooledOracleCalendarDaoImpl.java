@@ -19,7 +19,6 @@
 
 package org.jasig.schedassist.impl.oraclecalendar;
 
-import oracle.calendar.sdk.Api;
 import oracle.calendar.sdk.Api.StatusException;
 import oracle.calendar.sdk.Session;
 
@@ -55,7 +54,7 @@ public class PooledOracleCalendarDaoImpl extends AbstractOracleCalendarDao {
 		try {
 			Session session = (Session) oracleSessionPool.borrowObject(serverNode);
 			
-			session.setIdentity(Api.CSDK_FLAG_NONE, calendarAccount.getCalendarLoginId());
+			setIdentity(session, calendarAccount);
 			return session;
 		} catch (Exception e) {
 			throw new OracleCalendarDataAccessException("unable to retrieve Session from pool", e);
@@ -19,8 +19,21 @@
 
 package org.jasig.schedassist.impl.oraclecalendar;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import oracle.calendar.sdk.Api;
 import oracle.calendar.sdk.Api.StatusException;
@@ -34,8 +47,6 @@ import org.jasig.schedassist.model.ICalendarAccount;
 import org.jasig.schedassist.oraclecalendar.OracleCalendarSDKSupport;
 import org.jasig.schedassist.oraclecalendar.OracleCalendarServerNode;
 
-import com.googlecode.ehcache.annotations.Cacheable;
-
 /**
  * Commons {@link KeyedObjectPool} backed implementation of {@link OracleGUIDSource}.
  * 
@@ -45,10 +56,22 @@ import com.googlecode.ehcache.annotations.Cacheable;
 public class PooledOracleGUIDSourceImpl extends OracleCalendarSDKSupport
 		implements OracleGUIDSource {
 
+	/**
+	 * Names of the {@link Api} status constants that mean the login id is unknown to the server.
+	 */
+	static final List<String> DEFAULT_NOT_FOUND_STATUS_NAMES = Collections.unmodifiableList(Arrays.asList(
+			"CSDK_STAT_DATA_UID_NOTFOUND", "CAPI_STAT_DATA_UID_NOTFOUND"));
+	
 	private Log LOG = LogFactory.getLog(this.getClass());
 	
 	private KeyedObjectPool oracleSessionPool;
 	private Map<String, OracleCalendarServerNode> serverNodes = new HashMap<String, OracleCalendarServerNode>();
+	private OracleCalendarNodeBulkhead nodeBulkhead;
+	private ExecutorService nodeExecutor;
+	private long batchTimeoutMillis = 10000L;
+	private OracleGUIDLookupCache guidLookupCache;
+	private int [] notFoundStatusCodes = OracleCalendarStatusClassifier.resolveStatusCodes(DEFAULT_NOT_FOUND_STATUS_NAMES);
+	private OracleCalendarStatusClassifier statusClassifier = new OracleCalendarStatusClassifier();
 
 	/**
 	 * @param oracleSessionPool the oracleSessionPool to set
@@ -62,19 +85,99 @@ public class PooledOracleGUIDSourceImpl extends OracleCalendarSDKSupport
 	public void setServerNodes(Map<String, OracleCalendarServerNode> serverNodes) {
 		this.serverNodes = serverNodes;
 	}
+	/**
+	 * Optional; if set, a permit for the account's node is required before borrowing a {@link Session}.
+	 * 
+	 * @param nodeBulkhead the nodeBulkhead to set
+	 */
+	public void setNodeBulkhead(OracleCalendarNodeBulkhead nodeBulkhead) {
+		this.nodeBulkhead = nodeBulkhead;
+	}
+	/**
+	 * Optional; if set, {@link #getOracleGUIDs(Collection)} resolves each node's accounts in parallel.
+	 * 
+	 * @param nodeExecutor the nodeExecutor to set
+	 */
+	public void setNodeExecutor(ExecutorService nodeExecutor) {
+		this.nodeExecutor = nodeExecutor;
+	}
+	/**
+	 * Optional; caches found GUIDs, permanent misses and transient errors separately.
+	 * 
+	 * @param guidLookupCache the guidLookupCache to set
+	 */
+	public void setGuidLookupCache(OracleGUIDLookupCache guidLookupCache) {
+		this.guidLookupCache = guidLookupCache;
+	}
+	/**
+	 * Names of {@link Api} status constants that mean the account has no GUID; 
+	 * names not defined by the installed CSDK are ignored.
+	 * 
+	 * @param notFoundStatusNames the notFoundStatusNames to set
+	 */
+	public void setNotFoundStatusNames(List<String> notFoundStatusNames) {
+		this.notFoundStatusCodes = OracleCalendarStatusClassifier.resolveStatusCodes(notFoundStatusNames);
+	}
+	/**
+	 * Decides from the status of a failed lookup whether the {@link Session} is discarded; also counts 
+	 * the statuses and rate limits their stack traces. Defaults to an {@link OracleCalendarStatusClassifier} 
+	 * with the default configuration.
+	 * 
+	 * @param statusClassifier the statusClassifier to set
+	 */
+	public void setStatusClassifier(OracleCalendarStatusClassifier statusClassifier) {
+		this.statusClassifier = statusClassifier;
+	}
+	/**
+	 * @param batchTimeoutMillis how long {@link #getOracleGUIDs(Collection)} waits for the nodes (default 10000)
+	 */
+	public void setBatchTimeoutMillis(long batchTimeoutMillis) {
+		this.batchTimeoutMillis = batchTimeoutMillis;
+	}
 	
 	/*
 	 * (non-Javadoc)
 	 * @see org.jasig.schedassist.impl.oraclecalendar.OracleGUIDSource#getOracleGUID(org.jasig.schedassist.model.ICalendarAccount)
 	 */
-	@Cacheable(cacheName="oracleGUIDCache", selfPopulating=true)
 	@Override
 	public String getOracleGUID(ICalendarAccount account) {
+		return lookupOracleGUID(account).getGuid();
+	}
+	
+	/**
+	 * If a {@link OracleGUIDLookupCache} is set, it is consulted first and receives the outcome of the lookup.
+	 * 
+	 * (non-Javadoc)
+	 * @see org.jasig.schedassist.impl.oraclecalendar.OracleGUIDSource#lookupOracleGUID(org.jasig.schedassist.model.ICalendarAccount)
+	 */
+	@Override
+	public OracleGUIDLookupResult lookupOracleGUID(ICalendarAccount account) {
+		final String key = account.getCalendarUniqueId();
+		if(guidLookupCache != null) {
+			OracleGUIDLookupResult cached = guidLookupCache.get(key);
+			if(cached != null) {
+				return cached;
+			}
+		}
+		OracleGUIDLookupResult result = fetchOracleGUID(account);
+		if(guidLookupCache != null) {
+			guidLookupCache.put(key, result);
+		}
+		return result;
+	}
+	
+	/**
+	 * Look up the GUID on the account's node, classifying the outcome.
+	 * 
+	 * @param account
+	 * @return the {@link OracleGUIDLookupResult}, never null
+	 */
+	protected OracleGUIDLookupResult fetchOracleGUID(ICalendarAccount account) {
 		OracleCalendarServerNode serverNode = getOracleCalendarServerNode(account);
 
 		if(serverNode == null) {
 			LOG.debug("no servernode available for account: " + account);
-			return null;
+			return OracleGUIDLookupResult.notFound();
 		}
 		
 		Session session = null;
@@ -82,19 +185,34 @@ public class PooledOracleGUIDSourceImpl extends OracleCalendarSDKSupport
 		
 		try {
 			session = getOracleSession(account, serverNode);
+			if(session == null) {
+				// bulkhead rejection or pool failure, both transient
+				return OracleGUIDLookupResult.error();
+			}
 			String guid = getOracleGUID(account, session);
-			return guid;
-
+			return guid == null ? OracleGUIDLookupResult.notFound() : OracleGUIDLookupResult.found(guid);
 		} catch (StatusException e) {
-			LOG.error("caught Api.StatusException returning null GUID for " + account);
-			LOG.debug(e);
-			invalidateSession = true;
-			return null;
+			if(isNotFoundStatus(e.getStatus())) {
+				LOG.debug("no GUID for " + account + ", status " + e.getStatus());
+				return OracleGUIDLookupResult.notFound();
+			}
+			invalidateSession = statusClassifier.record(LOG, "caught Api.StatusException returning null GUID for " + account, serverNode, e).isSessionInvalid();
+			return OracleGUIDLookupResult.error();
 		} finally {
-			doneWithSession(serverNode, session, invalidateSession);
+			if(session != null) {
+				doneWithSession(serverNode, session, invalidateSession);
+			}
 		}
 	}
 
+	/**
+	 * 
+	 * @param status
+	 * @return true if the status is one of the configured "not found" codes, with or without {@link Api#CSDK_STATMODE_FATAL}
+	 */
+	protected boolean isNotFoundStatus(int status) {
+		return OracleCalendarStatusClassifier.matches(status, notFoundStatusCodes);
+	}
 
 	/*
 	 * (non-Javadoc)
@@ -111,6 +229,133 @@ public class PooledOracleGUIDSourceImpl extends OracleCalendarSDKSupport
 		LOG.debug("user guid: " + guid);
 		return guid;
 	}
+	/**
+	 * Groups the accounts by node and resolves each group on a single pooled {@link Session},
+	 * without switching identity per account. Nodes are processed in parallel when a 
+	 * node executor is set.
+	 * 
+	 * (non-Javadoc)
+	 * @see org.jasig.schedassist.impl.oraclecalendar.OracleGUIDSource#getOracleGUIDs(java.util.Collection)
+	 */
+	@Override
+	public Map<String, String> getOracleGUIDs(Collection<? extends ICalendarAccount> accounts) {
+		Map<String, String> results = new HashMap<String, String>();
+		Map<String, List<ICalendarAccount>> accountsByNode = new LinkedHashMap<String, List<ICalendarAccount>>();
+		for(ICalendarAccount account : accounts) {
+			if(guidLookupCache != null) {
+				OracleGUIDLookupResult cached = guidLookupCache.get(account.getCalendarUniqueId());
+				if(cached != null) {
+					if(cached.getGuid() != null) {
+						results.put(account.getCalendarUniqueId(), cached.getGuid());
+					}
+					continue;
+				}
+			}
+			String nodeId = getOracleNodeId(account);
+			List<ICalendarAccount> nodeAccounts = accountsByNode.get(nodeId);
+			if(nodeAccounts == null) {
+				nodeAccounts = new ArrayList<ICalendarAccount>();
+				accountsByNode.put(nodeId, nodeAccounts);
+			}
+			nodeAccounts.add(account);
+		}
+		
+		if(nodeExecutor == null || accountsByNode.size() < 2) {
+			for(Entry<String, List<ICalendarAccount>> entry : accountsByNode.entrySet()) {
+				results.putAll(getOracleGUIDsOnNode(entry.getKey(), entry.getValue()));
+			}
+			return results;
+		}
+		
+		Map<String, Future<Map<String, String>>> futures = new LinkedHashMap<String, Future<Map<String, String>>>();
+		for(final Entry<String, List<ICalendarAccount>> entry : accountsByNode.entrySet()) {
+			futures.put(entry.getKey(), nodeExecutor.submit(new Callable<Map<String, String>>() {
+				@Override
+				public Map<String, String> call() {
+					return getOracleGUIDsOnNode(entry.getKey(), entry.getValue());
+				}
+			}));
+		}
+		final long deadline = System.currentTimeMillis() + batchTimeoutMillis;
+		for(Entry<String, Future<Map<String, String>>> entry : futures.entrySet()) {
+			Future<Map<String, String>> future = entry.getValue();
+			try {
+				long remaining = Math.max(0L, deadline - System.currentTimeMillis());
+				results.putAll(future.get(remaining, TimeUnit.MILLISECONDS));
+			} catch (TimeoutException e) {
+				LOG.warn("timed out resolving GUIDs on node " + entry.getKey() + ", omitting " + accountsByNode.get(entry.getKey()).size() + " accounts");
+				future.cancel(true);
+			} catch (ExecutionException e) {
+				LOG.error("failed to resolve GUIDs on node " + entry.getKey(), e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				LOG.warn("interrupted resolving GUIDs on node " + entry.getKey());
+				future.cancel(true);
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Resolve the GUIDs for accounts on a single node with one {@link Session}.
+	 * A failed lookup omits only that account; the session is invalidated afterwards, as 
+	 * in {@link #getOracleGUID(ICalendarAccount)}.
+	 * 
+	 * @param nodeId
+	 * @param accounts
+	 * @return a map of calendar unique id to GUID for the accounts that could be resolved
+	 */
+	protected Map<String, String> getOracleGUIDsOnNode(String nodeId, List<ICalendarAccount> accounts) {
+		Map<String, String> results = new HashMap<String, String>();
+		OracleCalendarServerNode serverNode = this.serverNodes.get(nodeId);
+		if(serverNode == null) {
+			LOG.debug("no servernode available for node id " + nodeId + ", skipping " + accounts.size() + " accounts");
+			return results;
+		}
+		
+		Session session = borrowSession(serverNode, accounts.size() + " accounts");
+		if(session == null) {
+			return results;
+		}
+		boolean invalidateSession = false;
+		try {
+			for(ICalendarAccount account : accounts) {
+				try {
+					String guid = getOracleGUID(account, session);
+					if(guid != null) {
+						results.put(account.getCalendarUniqueId(), guid);
+					}
+					cacheResult(account, guid == null ? OracleGUIDLookupResult.notFound() : OracleGUIDLookupResult.found(guid));
+				} catch (StatusException e) {
+					if(isNotFoundStatus(e.getStatus())) {
+						cacheResult(account, OracleGUIDLookupResult.notFound());
+						continue;
+					}
+					cacheResult(account, OracleGUIDLookupResult.error());
+					if(statusClassifier.record(LOG, "caught Api.StatusException resolving GUID for " + account, serverNode, e).isSessionInvalid()) {
+						invalidateSession = true;
+					}
+				}
+			}
+		} finally {
+			doneWithSession(serverNode, session, invalidateSession);
+		}
+		if(LOG.isDebugEnabled()) {
+			LOG.debug("resolved " + results.size() + " of " + accounts.size() + " GUIDs on node " + nodeId);
+		}
+		return results;
+	}
+	/**
+	 * 
+	 * @param account
+	 * @param result
+	 */
+	private void cacheResult(ICalendarAccount account, OracleGUIDLookupResult result) {
+		if(guidLookupCache != null) {
+			guidLookupCache.put(account.getCalendarUniqueId(), result);
+		}
+	}
+	
 	/**
 	 * 
 	 * @param account
@@ -138,6 +383,14 @@ public class PooledOracleGUIDSourceImpl extends OracleCalendarSDKSupport
 	 * @return
 	 */
 	protected Session getOracleSession(ICalendarAccount account, OracleCalendarServerNode serverNode) {
+		if(nodeBulkhead != null) {
+			try {
+				nodeBulkhead.acquire(serverNode);
+			} catch (OracleCalendarNodeSaturatedException e) {
+				LOG.warn("node bulkhead rejected GUID lookup for " + account + ": " + e.getMessage());
+				return null;
+			}
+		}
 		try {
 			Session session = (Session) oracleSessionPool.borrowObject(serverNode);
 			
@@ -145,6 +398,36 @@ public class PooledOracleGUIDSourceImpl extends OracleCalendarSDKSupport
 			return session;
 		} catch (Exception e) {
 			LOG.error("unable to retrieve Session from pool for " + account, e);
+			if(nodeBulkhead != null) {
+				nodeBulkhead.release(serverNode);
+			}
+			return null;
+		}
+	}
+	/**
+	 * Borrow a {@link Session} for the node without switching identity;
+	 * {@link Session#getHandle(int, String)} does not require it.
+	 * 
+	 * @param serverNode
+	 * @param description used in log messages
+	 * @return a session, or null if the bulkhead or pool refused
+	 */
+	protected Session borrowSession(OracleCalendarServerNode serverNode, String description) {
+		if(nodeBulkhead != null) {
+			try {
+				nodeBulkhead.acquire(serverNode);
+			} catch (OracleCalendarNodeSaturatedException e) {
+				LOG.warn("node bulkhead rejected GUID lookup for " + description + ": " + e.getMessage());
+				return null;
+			}
+		}
+		try {
+			return (Session) oracleSessionPool.borrowObject(serverNode);
+		} catch (Exception e) {
+			LOG.error("unable to retrieve Session from pool for " + description, e);
+			if(nodeBulkhead != null) {
+				nodeBulkhead.release(serverNode);
+			}
 			return null;
 		}
 	}
@@ -171,6 +454,10 @@ public class PooledOracleGUIDSourceImpl extends OracleCalendarSDKSupport
 			}
 		} catch (Exception e) {
 			LOG.error("caught exception while returning session to pool", e);
+		} finally {
+			if(nodeBulkhead != null && session != null) {
+				nodeBulkhead.release(serverNode);
+			}
 		}
 	}
 }
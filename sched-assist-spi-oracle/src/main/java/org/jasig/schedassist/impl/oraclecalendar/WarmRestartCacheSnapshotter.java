@@ -0,0 +1,672 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.ObjectExistsException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Required;
+
+/**
+ * Persists the hottest entries of selected ehcache caches (e.g. oracleGUIDLookupCache and userAccountCache)
+ * to a local file, and reloads them at startup so a restarted node does not begin with empty caches.
+ * 
+ * The snapshot is loaded in {@link #afterPropertiesSet()} and written by {@link #writeSnapshot()}, which is
+ * intended to be invoked periodically by the scheduler and is also called from {@link #destroy()}.
+ * 
+ * File format (all integers big-endian), version {@link #FORMAT_VERSION}:
+ * <pre>
+ * int    magic ({@link #MAGIC})
+ * int    format version
+ * long   time written (epoch millis)
+ * int    number of caches
+ * per cache:
+ *   int    length of cache name, followed by the UTF-8 bytes of the name
+ *   int    number of entries
+ *   per entry:
+ *     int    record length (bytes following this field)
+ *     long   expiration time (epoch millis, {@link Long#MAX_VALUE} for eternal entries)
+ *     int    key length, followed by the Java serialized key
+ *     int    value length, followed by the Java serialized value
+ * </pre>
+ * The file is written and read through memory mapped buffers. It is written to a temporary file first 
+ * and swapped in with {@link #replaceFile(File, File)}; if a crash interrupts the swap, 
+ * {@link #afterPropertiesSet()} restores the previous snapshot with {@link #recoverReplacedFile(File)}.
+ * Entries that have expired by load time are skipped, the rest are loaded with their remaining time to live.
+ * 
+ * The snapshot file must be configured explicitly and may not be under java.io.tmpdir. Only the classes
+ * named by {@link #setAllowedClassNames(List)} are deserialized; a record naming any other class is skipped.
+ *
+ * @version $Id: WarmRestartCacheSnapshotter.java $
+ */
+public class WarmRestartCacheSnapshotter implements InitializingBean, DisposableBean {
+
+	/**
+	 * "SACS"
+	 */
+	public static final int MAGIC = 0x53414353;
+	public static final int FORMAT_VERSION = 1;
+	private static final String UTF8 = "UTF-8";
+	/**
+	 * Classes held by the oracleGUIDCache, oracleGUIDLookupCache, userAccountCache and delegateAccountCache.
+	 */
+	public static final List<String> DEFAULT_ALLOWED_CLASS_NAMES = Collections.unmodifiableList(Arrays.asList(
+			"java.lang.String",
+			"java.lang.Number",
+			"java.lang.Long",
+			"java.lang.Integer",
+			"java.lang.Boolean",
+			"java.lang.Enum",
+			"java.util.HashMap",
+			"java.util.LinkedHashMap",
+			"java.util.ArrayList",
+			"org.jasig.schedassist.model.AbstractCalendarAccount",
+			AbstractOracleCalendarAccount.class.getName(),
+			OracleCalendarUserAccount.class.getName(),
+			CompactOracleCalendarUserAccount.class.getName(),
+			CompactAttributesMap.class.getName(),
+			OracleCalendarResourceAccount.class.getName(),
+			OracleCalendarAccountCache.CachedAccount.class.getName(),
+			OracleGUIDLookupResult.class.getName(),
+			OracleGUIDLookupResult.Outcome.class.getName()));
+
+	private Log LOG = LogFactory.getLog(this.getClass());
+
+	private CacheManager cacheManager;
+	private List<String> cacheNames = new ArrayList<String>();
+	private File snapshotFile;
+	private int maxEntriesPerCache = 20000;
+	private int loadThreads = 4;
+	private Set<String> allowedClassNames = new HashSet<String>(DEFAULT_ALLOWED_CLASS_NAMES);
+	private List<OracleCalendarAccountCache> accountCaches = new ArrayList<OracleCalendarAccountCache>();
+
+	/**
+	 * @param cacheManager the cacheManager to set
+	 */
+	public void setCacheManager(CacheManager cacheManager) {
+		this.cacheManager = cacheManager;
+	}
+	/**
+	 * @param cacheNames the names of the caches to snapshot
+	 */
+	public void setCacheNames(List<String> cacheNames) {
+		this.cacheNames = cacheNames;
+	}
+	/**
+	 * Required; must not be under java.io.tmpdir, which is world writable and subject to cleanup.
+	 * 
+	 * @param snapshotFile the snapshotFile to set
+	 */
+	@Required
+	public void setSnapshotFile(File snapshotFile) {
+		this.snapshotFile = snapshotFile;
+	}
+	/**
+	 * @param maxEntriesPerCache the number of most frequently hit entries written per cache (default 20000)
+	 */
+	public void setMaxEntriesPerCache(int maxEntriesPerCache) {
+		this.maxEntriesPerCache = maxEntriesPerCache;
+	}
+	/**
+	 * @param loadThreads the number of threads used to deserialize the snapshot at startup (default 4)
+	 */
+	public void setLoadThreads(int loadThreads) {
+		this.loadThreads = loadThreads;
+	}
+	/**
+	 * Replaces {@link #DEFAULT_ALLOWED_CLASS_NAMES}; arrays are allowed if their component type is.
+	 * 
+	 * @param allowedClassNames the names of the classes that may be deserialized from the snapshot
+	 */
+	public void setAllowedClassNames(List<String> allowedClassNames) {
+		this.allowedClassNames = new HashSet<String>(allowedClassNames);
+	}
+	/**
+	 * Optional; {@link OracleCalendarAccountCache}s over any of the snapshotted caches, re-indexed after loading
+	 * so that restored accounts can be found by all of their keys.
+	 * 
+	 * @param accountCaches the accountCaches to set
+	 */
+	public void setAccountCaches(List<OracleCalendarAccountCache> accountCaches) {
+		this.accountCaches = accountCaches;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
+	 */
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		if(this.cacheManager == null || this.snapshotFile == null) {
+			throw new IllegalStateException("cacheManager and snapshotFile are required");
+		}
+		if(isUnderTempDirectory(this.snapshotFile)) {
+			throw new IllegalStateException("snapshotFile " + snapshotFile + " must not be under java.io.tmpdir");
+		}
+		if(!createParentDirectory(this.snapshotFile)) {
+			LOG.warn("unable to create directory for cache snapshot " + snapshotFile);
+		}
+		if(recoverReplacedFile(this.snapshotFile)) {
+			LOG.warn("restored cache snapshot " + snapshotFile + " after an interrupted write");
+		}
+		if(this.snapshotFile.exists()) {
+			try {
+				loadSnapshot();
+			} catch (Exception e) {
+				// a bad snapshot must never prevent startup
+				LOG.error("failed to load cache snapshot from " + snapshotFile + ", starting cold", e);
+			}
+		} else {
+			LOG.info("no cache snapshot found at " + snapshotFile + ", starting cold");
+		}
+		for(OracleCalendarAccountCache accountCache : accountCaches) {
+			accountCache.rebuildIndex();
+		}
+	}
+	
+	/**
+	 * 
+	 * @param file
+	 * @return true if the file is in java.io.tmpdir or a directory below it
+	 * @throws IOException
+	 */
+	static boolean isUnderTempDirectory(File file) throws IOException {
+		String tmpdir = System.getProperty("java.io.tmpdir");
+		if(tmpdir == null) {
+			return false;
+		}
+		File tempDirectory = new File(tmpdir).getCanonicalFile();
+		for(File parent = file.getCanonicalFile().getParentFile(); parent != null; parent = parent.getParentFile()) {
+			if(parent.equals(tempDirectory)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * 
+	 * @param file
+	 * @return true if the directory containing the file exists or was created
+	 */
+	static boolean createParentDirectory(File file) {
+		File directory = file.getAbsoluteFile().getParentFile();
+		return directory == null || directory.isDirectory() || directory.mkdirs();
+	}
+	
+	/**
+	 * Replace the target with the source. Where the platform renames over an existing file the swap is a 
+	 * single atomic rename; elsewhere the target is first moved aside to its backup file (see 
+	 * {@link #recoverReplacedFile(File)}), so there is never a moment without a complete copy on disk.
+	 * 
+	 * @param source a complete file, already synced to disk
+	 * @param target
+	 * @return true if the target was replaced
+	 */
+	static boolean replaceFile(File source, File target) {
+		if(source.renameTo(target)) {
+			return true;
+		}
+		if(!target.exists()) {
+			return false;
+		}
+		File backup = backupFile(target);
+		if(backup.exists() && !backup.delete()) {
+			return false;
+		}
+		if(!target.renameTo(backup)) {
+			return false;
+		}
+		if(!source.renameTo(target)) {
+			backup.renameTo(target);
+			return false;
+		}
+		backup.delete();
+		return true;
+	}
+	
+	/**
+	 * Finish a {@link #replaceFile(File, File)} interrupted by a crash: if the target is missing its 
+	 * backup is restored, otherwise a leftover backup is removed.
+	 * 
+	 * @param target
+	 * @return true if the target was restored from its backup
+	 */
+	static boolean recoverReplacedFile(File target) {
+		File backup = backupFile(target);
+		if(!backup.exists()) {
+			return false;
+		}
+		if(target.exists()) {
+			backup.delete();
+			return false;
+		}
+		return backup.renameTo(target);
+	}
+	
+	/**
+	 * 
+	 * @param target
+	 * @return the file the target is moved to while {@link #replaceFile(File, File)} swaps it
+	 */
+	static File backupFile(File target) {
+		return new File(target.getPath() + ".bak");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.beans.factory.DisposableBean#destroy()
+	 */
+	@Override
+	public void destroy() throws Exception {
+		writeSnapshot();
+	}
+
+	/**
+	 * Write the current contents of the configured caches to the snapshot file.
+	 * 
+	 * @return the number of entries written
+	 */
+	public synchronized int writeSnapshot() {
+		final long start = System.currentTimeMillis();
+		List<String> names = new ArrayList<String>();
+		List<List<byte[]>> recordsByCache = new ArrayList<List<byte[]>>();
+		long size = 4 + 4 + 8 + 4;
+		int total = 0;
+		try {
+			for(String cacheName : cacheNames) {
+				Ehcache cache = cacheManager.getEhcache(cacheName);
+				if(cache == null) {
+					continue;
+				}
+				List<byte[]> records = serializeHotEntries(cache);
+				names.add(cacheName);
+				recordsByCache.add(records);
+				size += 4 + cacheName.getBytes(UTF8).length + 4;
+				for(byte[] record : records) {
+					size += 4 + record.length;
+				}
+				total += records.size();
+			}
+
+			File tempFile = new File(snapshotFile.getPath() + ".tmp");
+			RandomAccessFile file = new RandomAccessFile(tempFile, "rw");
+			try {
+				file.setLength(size);
+				MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+				buffer.putInt(MAGIC);
+				buffer.putInt(FORMAT_VERSION);
+				buffer.putLong(System.currentTimeMillis());
+				buffer.putInt(names.size());
+				for(int i = 0; i < names.size(); i++) {
+					byte [] nameBytes = names.get(i).getBytes(UTF8);
+					buffer.putInt(nameBytes.length);
+					buffer.put(nameBytes);
+					List<byte[]> records = recordsByCache.get(i);
+					buffer.putInt(records.size());
+					for(byte[] record : records) {
+						buffer.putInt(record.length);
+						buffer.put(record);
+					}
+				}
+				buffer.force();
+			} finally {
+				file.close();
+			}
+			if(!replaceFile(tempFile, snapshotFile)) {
+				LOG.error("unable to replace " + snapshotFile + " with " + tempFile + ", keeping the previous snapshot");
+				return 0;
+			}
+			LOG.info("wrote " + total + " cache entries (" + size + " bytes) to " + snapshotFile + " in " + (System.currentTimeMillis() - start) + " msec");
+			return total;
+		} catch (IOException e) {
+			LOG.error("failed to write cache snapshot to " + snapshotFile, e);
+			return 0;
+		}
+	}
+
+	/**
+	 * Load the snapshot file into the configured caches.
+	 * 
+	 * @return the number of entries loaded
+	 * @throws IOException
+	 * @throws InterruptedException 
+	 */
+	public int loadSnapshot() throws IOException, InterruptedException {
+		final long start = System.currentTimeMillis();
+		RandomAccessFile file = new RandomAccessFile(snapshotFile, "r");
+		MappedByteBuffer buffer;
+		try {
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+		} finally {
+			// the mapping stays valid after the channel is closed
+			file.close();
+		}
+		if(buffer.remaining() < 20 || buffer.getInt() != MAGIC) {
+			LOG.warn("ignoring " + snapshotFile + ", not a cache snapshot");
+			return 0;
+		}
+		int version = buffer.getInt();
+		if(version != FORMAT_VERSION) {
+			LOG.warn("ignoring " + snapshotFile + ", unsupported snapshot version " + version);
+			return 0;
+		}
+		final long writtenAt = buffer.getLong();
+		final int cacheCount = buffer.getInt();
+
+		// first pass: find the offset of every record so the records can be split among threads
+		List<RecordSlice> slices = new ArrayList<RecordSlice>();
+		final int sliceCount = Math.max(1, loadThreads);
+		for(int c = 0; c < cacheCount; c++) {
+			byte [] nameBytes = new byte[buffer.getInt()];
+			buffer.get(nameBytes);
+			String cacheName = new String(nameBytes, UTF8);
+			int entryCount = buffer.getInt();
+			int [] offsets = new int[entryCount];
+			for(int e = 0; e < entryCount; e++) {
+				int length = buffer.getInt();
+				offsets[e] = buffer.position();
+				buffer.position(buffer.position() + length);
+			}
+			if(!cacheNames.contains(cacheName)) {
+				continue;
+			}
+			Ehcache cache = getOrCreateCache(cacheName);
+			int perSlice = (entryCount + sliceCount - 1) / sliceCount;
+			for(int from = 0; from < entryCount; from += perSlice) {
+				slices.add(new RecordSlice(cache, offsets, from, Math.min(entryCount, from + perSlice)));
+			}
+		}
+
+		final AtomicInteger loaded = new AtomicInteger();
+		final AtomicInteger expired = new AtomicInteger();
+		final AtomicInteger rejected = new AtomicInteger();
+		ExecutorService loadExecutor = Executors.newFixedThreadPool(sliceCount);
+		try {
+			List<Future<Object>> futures = new ArrayList<Future<Object>>();
+			for(final RecordSlice slice : slices) {
+				final ByteBuffer view = buffer.duplicate();
+				futures.add(loadExecutor.submit(new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						loadSlice(slice, view, loaded, expired, rejected);
+						return null;
+					}
+				}));
+			}
+			for(Future<Object> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					LOG.error("failed to load part of cache snapshot", e.getCause());
+				}
+			}
+		} finally {
+			loadExecutor.shutdown();
+		}
+		if(rejected.get() > 0) {
+			LOG.warn("skipped " + rejected.get() + " cache snapshot entries naming classes not in allowedClassNames");
+		}
+		LOG.info("loaded " + loaded.get() + " cache entries (skipped " + expired.get() + " expired) from snapshot written " 
+				+ new Date(writtenAt) + " in " + (System.currentTimeMillis() - start) + " msec");
+		return loaded.get();
+	}
+
+	/**
+	 * 
+	 * @param slice
+	 * @param view
+	 * @param loaded
+	 * @param expired
+	 * @param rejected
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	protected void loadSlice(RecordSlice slice, ByteBuffer view, AtomicInteger loaded, AtomicInteger expired, AtomicInteger rejected) throws IOException, ClassNotFoundException {
+		final long now = System.currentTimeMillis();
+		for(int i = slice.from; i < slice.to; i++) {
+			view.position(slice.offsets[i]);
+			long expirationTime = view.getLong();
+			long remainingMillis = expirationTime - now;
+			if(remainingMillis <= 0) {
+				expired.incrementAndGet();
+				continue;
+			}
+			Object key;
+			Object value;
+			try {
+				key = readObject(view);
+				value = readObject(view);
+			} catch (InvalidClassException e) {
+				rejected.incrementAndGet();
+				LOG.debug("skipping cache snapshot entry: " + e.getMessage());
+				continue;
+			}
+			Element element = new Element(key, value);
+			if(expirationTime != Long.MAX_VALUE) {
+				element.setTimeToLive((int) Math.max(1, Math.min(Integer.MAX_VALUE, remainingMillis / 1000)));
+			}
+			slice.cache.putQuiet(element);
+			loaded.incrementAndGet();
+		}
+	}
+
+	/**
+	 * 
+	 * @param cache
+	 * @return the serialized records for the most frequently hit, unexpired entries of the cache
+	 * @throws IOException
+	 */
+	protected List<byte[]> serializeHotEntries(Ehcache cache) throws IOException {
+		List<Element> elements = new ArrayList<Element>();
+		for(Object key : cache.getKeys()) {
+			Element element = cache.getQuiet(key);
+			if(element != null && !element.isExpired() && element.isSerializable()) {
+				elements.add(element);
+			}
+		}
+		if(elements.size() > maxEntriesPerCache) {
+			Collections.sort(elements, new Comparator<Element>() {
+				@Override
+				public int compare(Element o1, Element o2) {
+					long h1 = o1.getHitCount();
+					long h2 = o2.getHitCount();
+					return h1 > h2 ? -1 : (h1 == h2 ? 0 : 1);
+				}
+			});
+			elements = elements.subList(0, maxEntriesPerCache);
+		}
+
+		List<byte[]> records = new ArrayList<byte[]>(elements.size());
+		for(Element element : elements) {
+			byte [] key = serialize(element.getObjectKey());
+			byte [] value = serialize(element.getObjectValue());
+			long expirationTime = element.isEternal() ? Long.MAX_VALUE : element.getExpirationTime();
+			ByteBuffer record = ByteBuffer.allocate(8 + 4 + key.length + 4 + value.length);
+			record.putLong(expirationTime);
+			record.putInt(key.length);
+			record.put(key);
+			record.putInt(value.length);
+			record.put(value);
+			records.add(record.array());
+		}
+		return records;
+	}
+
+	/**
+	 * 
+	 * @param cacheName
+	 * @return the named cache, created with the default configuration if necessary
+	 */
+	private Ehcache getOrCreateCache(String cacheName) {
+		Ehcache cache = cacheManager.getEhcache(cacheName);
+		if(cache == null) {
+			try {
+				cacheManager.addCache(cacheName);
+			} catch (ObjectExistsException e) {
+				// created concurrently
+			}
+			cache = cacheManager.getEhcache(cacheName);
+		}
+		return cache;
+	}
+
+	/**
+	 * 
+	 * @param object
+	 * @return the Java serialized form of the object
+	 * @throws IOException
+	 */
+	private static byte[] serialize(Object object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject((Serializable) object);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * 
+	 * @param view
+	 * @return the next length-prefixed serialized object in the buffer
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private Object readObject(ByteBuffer view) throws IOException, ClassNotFoundException {
+		byte [] bytes = new byte[view.getInt()];
+		view.get(bytes);
+		ObjectInputStream in = new AllowedClassesObjectInputStream(new ByteArrayInputStream(bytes), allowedClassNames);
+		try {
+			return in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * {@link ObjectInputStream} that refuses every class not named in its allowed set, before the class is loaded.
+	 */
+	static class AllowedClassesObjectInputStream extends ObjectInputStream {
+		private final Set<String> allowedClassNames;
+		/**
+		 * @param in
+		 * @param allowedClassNames
+		 * @throws IOException
+		 */
+		AllowedClassesObjectInputStream(InputStream in, Set<String> allowedClassNames) throws IOException {
+			super(in);
+			this.allowedClassNames = allowedClassNames;
+		}
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.ObjectInputStream#resolveClass(java.io.ObjectStreamClass)
+		 */
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			if(!isAllowed(desc.getName())) {
+				throw new InvalidClassException(desc.getName(), "not allowed in a cache snapshot");
+			}
+			return super.resolveClass(desc);
+		}
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.ObjectInputStream#resolveProxyClass(java.lang.String[])
+		 */
+		@Override
+		protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+			throw new InvalidClassException("proxy classes are not allowed in a cache snapshot");
+		}
+		/**
+		 * 
+		 * @param className
+		 * @return true if the class, or the component type of the array class, is allowed
+		 */
+		boolean isAllowed(String className) {
+			String name = className;
+			while(name.startsWith("[")) {
+				name = name.substring(1);
+			}
+			if(name.startsWith("L") && name.endsWith(";")) {
+				name = name.substring(1, name.length() - 1);
+			} else if (name.length() == 1 && name.length() != className.length()) {
+				// array of a primitive type
+				return true;
+			}
+			return allowedClassNames.contains(name);
+		}
+	}
+	
+	/**
+	 * A contiguous range of records belonging to one cache.
+	 */
+	static class RecordSlice {
+		private final Ehcache cache;
+		private final int [] offsets;
+		private final int from;
+		private final int to;
+		/**
+		 * @param cache
+		 * @param offsets
+		 * @param from
+		 * @param to
+		 */
+		RecordSlice(Ehcache cache, int[] offsets, int from, int to) {
+			this.cache = cache;
+			this.offsets = offsets;
+			this.from = from;
+			this.to = to;
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.fortuna.ical4j.model.Property;
+import net.fortuna.ical4j.model.parameter.Cn;
+import net.fortuna.ical4j.model.property.Attendee;
+
+import org.jasig.schedassist.NullAffiliationSourceImpl;
+import org.jasig.schedassist.model.AppointmentRole;
+import org.jasig.schedassist.model.DefaultEventUtilsImpl;
+import org.jasig.schedassist.model.ICalendarAccount;
+
+/**
+ * Microbenchmark comparing {@link OracleEventUtilsImpl#attendeeMatchesPerson(Property, ICalendarAccount)} 
+ * with the previous implementation (building the mailto URI and display name on every call) 
+ * over the attendee list of a large group appointment.
+ * 
+ * Not a unit test; run the main method with the test classpath.
+ * 
+ * @version $Id: AttendeeMatchingBenchmark.java $
+ */
+public class AttendeeMatchingBenchmark {
+
+	private static final int ATTENDEES = 500;
+	private static final int EVENTS = 200;
+	private static final int ROUNDS = 5;
+
+	/**
+	 * 
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		OracleEventUtilsImpl eventUtils = new OracleEventUtilsImpl(new NullAffiliationSourceImpl());
+		List<Property> attendees = new ArrayList<Property>();
+		for(int i = 0; i < ATTENDEES; i++) {
+			OracleCalendarUserAccount attendeeAccount = account(i);
+			attendees.add(eventUtils.constructAvailableAttendee(attendeeAccount, AppointmentRole.VISITOR, "GUID" + i));
+		}
+		// the account being looked for is the last attendee
+		OracleCalendarUserAccount account = account(ATTENDEES - 1);
+
+		for(int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			int matches = 0;
+			for(int e = 0; e < EVENTS; e++) {
+				for(Property attendee : attendees) {
+					if(previousAttendeeMatchesPerson(attendee, account)) {
+						matches++;
+					}
+				}
+			}
+			long previous = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			int identityMatches = 0;
+			for(int e = 0; e < EVENTS; e++) {
+				for(Property attendee : attendees) {
+					if(eventUtils.attendeeMatchesPerson(attendee, account)) {
+						identityMatches++;
+					}
+				}
+			}
+			long current = System.nanoTime() - start;
+			if(matches != identityMatches) {
+				throw new IllegalStateException("implementations disagree: " + matches + " vs " + identityMatches);
+			}
+			long comparisons = (long) EVENTS * ATTENDEES;
+			System.out.println("round " + round + ": previous " + (previous / comparisons) + " ns/attendee, identity key " 
+					+ (current / comparisons) + " ns/attendee (" + comparisons + " comparisons, " + matches + " matches)");
+		}
+	}
+
+	/**
+	 * The implementation of attendeeMatchesPerson prior to {@link OracleAttendeeIdentity}.
+	 * 
+	 * @param attendee
+	 * @param calendarAccount
+	 * @return
+	 */
+	static boolean previousAttendeeMatchesPerson(Property attendee, ICalendarAccount calendarAccount) {
+		if(null == attendee) { 
+			return false;
+		}
+		if( !Attendee.ATTENDEE.equals(attendee.getName()) && !OracleResourceAttendee.ORACLE_RESOURCE_ATTENDEE.equals(attendee.getName())) {
+			return false;
+		}
+		Cn cn = (Cn) attendee.getParameter(Cn.CN);
+		if(null == cn) {
+			return false;
+		}
+		boolean cnResult = cn.getValue().equals(calendarAccount.getDisplayName());
+		final String emailAddress = calendarAccount.getEmailAddress();
+		if(null == emailAddress) {
+			return false;
+		}
+		boolean mailResult = attendee.getValue().equals(DefaultEventUtilsImpl.emailToURI(emailAddress).toString());
+		return cnResult && mailResult;
+	}
+
+	/**
+	 * 
+	 * @param i
+	 * @return a distinct account
+	 */
+	private static OracleCalendarUserAccount account(int i) {
+		OracleCalendarUserAccount account = new OracleCalendarUserAccount();
+		account.setCtcalxitemid("20000:" + (10000 + i));
+		account.setEmailAddress("student" + i + "@wisc.edu");
+		account.setGivenName("Student");
+		account.setSurname("Number" + i);
+		return account;
+	}
+}
@@ -0,0 +1,170 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttributes;
+
+/**
+ * Microbenchmark for {@link OracleCalendarUserAccountAttributesMapper} over synthetic LDAP entries, 
+ * comparing full entries, as returned without a projection, with the entries the directory 
+ * returns when the DAO's returning attributes are set.
+ * 
+ * Reports bytes allocated per mapped account, measured with the HotSpot per thread allocation counter 
+ * (com.sun.management.ThreadMXBean#getThreadAllocatedBytes), and the number of attributes retained per account.
+ * 
+ * Not a unit test; run the main method with the test classpath on a HotSpot JVM.
+ * 
+ * @version $Id: AttributeMappingBenchmark.java $
+ */
+public class AttributeMappingBenchmark {
+
+	private static final int ENTRIES = 20000;
+	private static final int ROUNDS = 5;
+	/**
+	 * The attributes the scheduling assistant reads.
+	 */
+	private static final String [] PROJECTION = { "uid", "ctcalxitemid", "wisceducalemail", "displayName", "givenName", "sn" };
+	/**
+	 * Typical additional attributes of a campus directory entry.
+	 */
+	private static final String [] OTHER_ATTRIBUTES = { "objectClass", "cn", "mail", "telephoneNumber", "title", "ou", 
+		"postalAddress", "street", "l", "st", "postalCode", "employeeNumber", "departmentNumber", "eduPersonAffiliation", 
+		"eduPersonPrincipalName", "eduPersonPrimaryAffiliation", "wiscEduPVI", "wiscEduStudentID", "wiscEduHRSEmplID", 
+		"ctCalOrgUnit1", "ctCalOrgUnit2", "ctCalOrgUnit3", "ctCalNodeAlias", "ctCalPublishedType", "ctCalFlags", 
+		"ctCalHost", "ctCalMobileTelephoneType", "ctCalTimeZone", "ctCalLanguageId", "ctCalSysopCanWriteOrgUnit", 
+		"createTimestamp", "modifyTimestamp", "creatorsName", "modifiersName" };
+	
+	/**
+	 * 
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		List<Attributes> fullEntries = new ArrayList<Attributes>(ENTRIES);
+		List<Attributes> projectedEntries = new ArrayList<Attributes>(ENTRIES);
+		for(int i = 0; i < ENTRIES; i++) {
+			fullEntries.add(entry(i, true));
+			projectedEntries.add(entry(i, false));
+		}
+		DeferredOracleGUIDResolver resolver = new DeferredOracleGUIDResolver(null);
+		OracleCalendarUserAccountAttributesMapper unprojected = new OracleCalendarUserAccountAttributesMapper(resolver);
+		Set<String> retained = OracleLdapAttributeNames.retained(PROJECTION);
+		OracleCalendarUserAccountAttributesMapper projected = new OracleCalendarUserAccountAttributesMapper(resolver, retained);
+		
+		for(int round = 0; round < ROUNDS; round++) {
+			Result full = map(unprojected, fullEntries);
+			Result reduced = map(projected, projectedEntries);
+			System.out.println("round " + round + ": no projection " + full + "; projection " + reduced);
+		}
+	}
+	
+	/**
+	 * 
+	 * @param mapper
+	 * @param entries
+	 * @return the measurements
+	 * @throws NamingException
+	 */
+	private static Result map(OracleCalendarUserAccountAttributesMapper mapper, List<Attributes> entries) throws NamingException {
+		List<Object> accounts = new ArrayList<Object>(entries.size());
+		long bytesBefore = allocatedBytes();
+		long start = System.nanoTime();
+		for(Attributes entry : entries) {
+			accounts.add(mapper.mapFromAttributes(entry));
+		}
+		long elapsed = System.nanoTime() - start;
+		long bytes = allocatedBytes() - bytesBefore;
+		int attributes = ((OracleCalendarUserAccount) accounts.get(0)).getAttributes().size();
+		return new Result(bytes < 0 ? -1 : bytes / entries.size(), elapsed / entries.size(), attributes);
+	}
+	
+	/**
+	 * 
+	 * @return the bytes allocated by the current thread, or a negative value if the JVM does not report it
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		try {
+			Method method = threadMXBean.getClass().getMethod("getThreadAllocatedBytes", long.class);
+			method.setAccessible(true);
+			return (Long) method.invoke(threadMXBean, Thread.currentThread().getId());
+		} catch (Exception e) {
+			return Long.MIN_VALUE;
+		}
+	}
+	
+	/**
+	 * 
+	 * @param i
+	 * @param full include the attributes outside of the projection
+	 * @return a synthetic directory entry
+	 */
+	private static Attributes entry(int i, boolean full) {
+		BasicAttributes attributes = new BasicAttributes(true);
+		attributes.put("uid", "user" + i);
+		attributes.put("ctcalxitemid", "20000:" + (10000 + i));
+		attributes.put("wisceducalemail", "user" + i + "@wisc.edu");
+		attributes.put("displayName", "Student M Number" + i);
+		attributes.put("givenName", "Student");
+		attributes.put("sn", "Number" + i);
+		if(full) {
+			for(String name : OTHER_ATTRIBUTES) {
+				attributes.put(name, name + " value for entry " + i);
+			}
+		}
+		return attributes;
+	}
+	
+	/**
+	 * Per account measurements.
+	 */
+	private static class Result {
+		private final long bytesPerAccount;
+		private final long nanosPerAccount;
+		private final int attributesPerAccount;
+		/**
+		 * @param bytesPerAccount
+		 * @param nanosPerAccount
+		 * @param attributesPerAccount
+		 */
+		Result(long bytesPerAccount, long nanosPerAccount, int attributesPerAccount) {
+			this.bytesPerAccount = bytesPerAccount;
+			this.nanosPerAccount = nanosPerAccount;
+			this.attributesPerAccount = attributesPerAccount;
+		}
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return bytesPerAccount + " bytes/account, " + nanosPerAccount + " ns/account, " + attributesPerAccount + " attributes retained";
+		}
+	}
+}
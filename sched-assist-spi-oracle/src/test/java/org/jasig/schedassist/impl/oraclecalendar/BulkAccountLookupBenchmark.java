@@ -0,0 +1,119 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jasig.schedassist.model.ICalendarAccount;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+/**
+ * Benchmark for choosing {@link OracleLdapCalendarAccountDaoImpl#setBulkLookupChunkSize(int)}.
+ * 
+ * Compares one {@link OracleLdapCalendarAccountDaoImpl#getCalendarAccount(String)} search per username
+ * with {@link OracleLdapCalendarAccountDaoImpl#getCalendarAccounts(java.util.Collection)} at several
+ * chunk sizes, sequential and concurrent. 
+ * 
+ * Not a unit test; requires the directory configured in ldap-test.xml. Run the main method with the test 
+ * classpath and the path of a file containing one username per line.
+ * 
+ * @version $Id: BulkAccountLookupBenchmark.java $
+ */
+public class BulkAccountLookupBenchmark {
+
+	private static final int [] CHUNK_SIZES = { 10, 25, 50, 100, 200 };
+	private static final int ROUNDS = 3;
+	
+	/**
+	 * 
+	 * @param args the path of the username file
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		if(args.length != 1) {
+			System.err.println("usage: BulkAccountLookupBenchmark usernames.txt");
+			return;
+		}
+		List<String> usernames = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(args[0]));
+		try {
+			String line;
+			while((line = reader.readLine()) != null) {
+				if(line.trim().length() > 0) {
+					usernames.add(line.trim());
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		
+		ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext("ldap-test.xml", "oracle-calendar-beans.xml");
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			OracleLdapCalendarAccountDaoImpl dao = context.getBean(OracleLdapCalendarAccountDaoImpl.class);
+			for(int round = 0; round < ROUNDS; round++) {
+				long start = System.nanoTime();
+				int found = 0;
+				for(String username : usernames) {
+					ICalendarAccount account = dao.getCalendarAccount(username);
+					if(account != null) {
+						found++;
+					}
+				}
+				report(round, "one search per username", found, start, usernames.size());
+				
+				for(int chunkSize : CHUNK_SIZES) {
+					dao.setBulkLookupChunkSize(chunkSize);
+					dao.setBulkLookupExecutor(null);
+					start = System.nanoTime();
+					Map<String, ICalendarAccount> results = dao.getCalendarAccounts(usernames);
+					report(round, "chunk size " + chunkSize + ", sequential", results.size(), start, usernames.size());
+					
+					dao.setBulkLookupExecutor(executor);
+					start = System.nanoTime();
+					results = dao.getCalendarAccounts(usernames);
+					report(round, "chunk size " + chunkSize + ", 4 threads", results.size(), start, usernames.size());
+				}
+			}
+		} finally {
+			executor.shutdown();
+			context.close();
+		}
+	}
+	
+	/**
+	 * 
+	 * @param round
+	 * @param description
+	 * @param found
+	 * @param startNanos
+	 * @param requested
+	 */
+	private static void report(int round, String description, int found, long startNanos, int requested) {
+		long elapsedMillis = (System.nanoTime() - startNanos) / 1000000L;
+		System.out.println("round " + round + ", " + description + ": " + found + "/" + requested + " accounts in " + elapsedMillis + " msec");
+	}
+}
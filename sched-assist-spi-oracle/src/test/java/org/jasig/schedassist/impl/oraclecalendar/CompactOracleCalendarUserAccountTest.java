@@ -0,0 +1,144 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.easymock.EasyMock;
+import org.jasig.schedassist.model.ICalendarAccount;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CompactOracleCalendarUserAccount}.
+ *
+ * @version $Id: CompactOracleCalendarUserAccountTest.java $
+ */
+public class CompactOracleCalendarUserAccountTest {
+
+	/**
+	 * The compact form carries the original's fields and hash code, and keeps a deferred GUID deferred.
+	 */
+	@Test
+	public void testCompactMatchesOriginal() {
+		OracleGUIDSource mockGUIDSource = EasyMock.createMock(OracleGUIDSource.class);
+		EasyMock.expect(mockGUIDSource.lookupOracleGUID(EasyMock.isA(ICalendarAccount.class))).andReturn(OracleGUIDLookupResult.found("0123456789"));
+		EasyMock.replay(mockGUIDSource);
+		DeferredOracleGUIDResolver resolver = new DeferredOracleGUIDResolver(mockGUIDSource);
+		
+		OracleCalendarUserAccount original = account();
+		resolver.defer(original);
+		CompactOracleCalendarUserAccount compact = (CompactOracleCalendarUserAccount) CompactOracleCalendarUserAccount.compact(original);
+		Assert.assertSame(compact, CompactOracleCalendarUserAccount.compact(compact));
+		
+		Assert.assertTrue(compact.isOracleGuidDeferred());
+		Assert.assertEquals(1, resolver.getDeferredCount());
+		Assert.assertEquals("20000", compact.getCalendarNodeId());
+		Assert.assertEquals("01182", compact.getCalendarId());
+		Assert.assertEquals(original.getAttributes(), compact.getAttributes());
+		Assert.assertEquals("Nicholas Blair", compact.getDisplayName());
+		Assert.assertEquals(original.hashCode(), compact.hashCode());
+		
+		// resolving the GUID leaves the hash code unchanged
+		int hash = compact.hashCode();
+		Assert.assertEquals("0123456789", compact.getOracleGuid());
+		Assert.assertEquals("0123456789", compact.getAttributes().get(AbstractOracleCalendarAccount.ORACLE_GUID_ATTRIBUTE));
+		Assert.assertEquals(hash, compact.hashCode());
+		EasyMock.verify(mockGUIDSource);
+	}
+	
+	/**
+	 * The externalized form restores an equal account.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testExternalizeRoundTrip() throws Exception {
+		OracleCalendarUserAccount original = account();
+		original.setOracleGuid("0123456789");
+		ICalendarAccount compact = CompactOracleCalendarUserAccount.compact(original);
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(compact);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		CompactOracleCalendarUserAccount restored = (CompactOracleCalendarUserAccount) in.readObject();
+		
+		Assert.assertEquals(compact, restored);
+		Assert.assertEquals(compact.hashCode(), restored.hashCode());
+		Assert.assertEquals("npblair", restored.getUsername());
+		Assert.assertEquals("nblair@doit.wisc.edu", restored.getEmailAddress());
+		Assert.assertEquals("0123456789", restored.getOracleGuid());
+		Assert.assertEquals("wisc.edu", restored.getAttributeValue("edupersonscopedaffiliation"));
+		Assert.assertEquals("20000", restored.getCalendarNodeId());
+		Assert.assertFalse(restored.isOracleGuidDeferred());
+	}
+	
+	/**
+	 * Puts and removes on the compact attributes map replace the backing array.
+	 */
+	@Test
+	public void testAttributesMapUpdates() {
+		Map<String, String> source = new HashMap<String, String>();
+		source.put("uid", "npblair");
+		source.put("sn", "Blair");
+		CompactAttributesMap attributes = new CompactAttributesMap(source);
+		Assert.assertEquals("npblair", attributes.get("uid"));
+		Assert.assertEquals("Blair", attributes.put("sn", "Blair2"));
+		Assert.assertNull(attributes.put("givenname", "Nicholas"));
+		Assert.assertEquals(3, attributes.size());
+		Assert.assertEquals("npblair", attributes.remove("uid"));
+		Assert.assertFalse(attributes.containsKey("uid"));
+		Assert.assertEquals("Blair2", attributes.get("sn"));
+		Assert.assertEquals("Nicholas", attributes.get("givenname"));
+		Assert.assertEquals(2, attributes.entrySet().size());
+	}
+	
+	/**
+	 * 
+	 * @return an account as the LDAP mapper would build it
+	 */
+	private OracleCalendarUserAccount account() {
+		Map<String, String> attributes = new HashMap<String, String>();
+		attributes.put("uid", "npblair");
+		attributes.put("ctcalxitemid", "20000:01182");
+		attributes.put("wisceducalemail", "nblair@doit.wisc.edu");
+		attributes.put("displayname", "Nicholas P Blair");
+		attributes.put("givenname", "Nicholas");
+		attributes.put("sn", "Blair");
+		attributes.put("edupersonscopedaffiliation", "wisc.edu");
+		OracleCalendarUserAccount account = new OracleCalendarUserAccount(attributes);
+		account.setUsername("npblair");
+		account.setCtcalxitemid("20000:01182");
+		account.setEmailAddress("nblair@doit.wisc.edu");
+		account.setDisplayName("Nicholas P Blair");
+		account.setGivenName("Nicholas");
+		account.setSurname("Blair");
+		return account;
+	}
+}
@@ -24,7 +24,10 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import net.fortuna.ical4j.data.ParserException;
 import net.fortuna.ical4j.model.Calendar;
@@ -44,6 +47,7 @@ import oracle.calendar.sdk.Session;
 
 import org.apache.commons.lang.time.DateUtils;
 import org.jasig.schedassist.NullAffiliationSourceImpl;
+import org.jasig.schedassist.impl.oraclecalendar.OracleCalendarRetryPolicy.ReadBack;
 import org.jasig.schedassist.model.AppointmentRole;
 import org.jasig.schedassist.model.AvailableBlock;
 import org.jasig.schedassist.model.AvailableBlockBuilder;
@@ -103,6 +107,48 @@ public class DefaultOracleCalendarDaoImplTest {
 		Assert.assertNotNull(calendar);
 	}
 	
+	/**
+	 * A chunk that fails with a status is counted once, by getCalendar, and not again by the chunk task.
+	 */
+	@Test
+	public void testFailedChunkCountedOnce() {
+		OracleCalendarUserAccount user = new OracleCalendarUserAccount();
+		user.setUsername("nosuchuser");
+		user.setCtcalxitemid("20000:99999");
+		user.setEmailAddress("nosuchuser@doit.wisc.edu");
+		Date now = new Date();
+		Date fourWeeks = DateUtils.addDays(now, 28);
+		
+		OracleCalendarStatusClassifier classifier = new OracleCalendarStatusClassifier();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		oracleCalendarDao.setStatusClassifier(classifier);
+		oracleCalendarDao.setChunkFetchExecutor(executor);
+		try {
+			oracleCalendarDao.getCalendar(user, now, fourWeeks);
+			Assert.fail("expected OracleCalendarDataAccessException");
+		} catch (OracleCalendarDataAccessException e) {
+			Assert.assertEquals(1L, sum(classifier.getStatusClassCounts()));
+			Assert.assertEquals(1L, sum(classifier.getStatusCodeCounts()));
+		} finally {
+			oracleCalendarDao.setChunkFetchExecutor(null);
+			oracleCalendarDao.setStatusClassifier(new OracleCalendarStatusClassifier());
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * 
+	 * @param counts
+	 * @return the sum of the counts
+	 */
+	private long sum(Map<String, Long> counts) {
+		long total = 0L;
+		for(Long count : counts.values()) {
+			total += count;
+		}
+		return total;
+	}
+	
 	/**
 	 * 
 	 * @throws Exception
@@ -161,6 +207,53 @@ public class DefaultOracleCalendarDaoImplTest {
 		Assert.assertNull(lookupResultAfterCancel);
 	}
 	
+	/**
+	 * Read-backs the DAO makes after a failed create or cancel, before deciding whether to retry it.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testReadBackAfterFailedWrite() throws Exception {
+		OracleCalendarUserAccount user = new OracleCalendarUserAccount();
+		user.setUsername("npblair");
+		user.setCtcalxitemid("20000:01182");
+		user.setDisplayName("NICHOLAS P BLAIR");
+		user.setEmailAddress("nblair@doit.wisc.edu");
+		user.setGivenName("NICHOLAS");
+		user.setSurname("BLAIR");
+		MockScheduleOwner owner = new MockScheduleOwner(user, 1);
+		owner.setPreference(Preferences.MEETING_PREFIX, "prefix");
+		owner.setPreference(Preferences.LOCATION, "meeting room");
+		
+		OracleCalendarUserAccount visitorUser = new OracleCalendarUserAccount();
+		visitorUser.setUsername("jstalnak");
+		visitorUser.setCtcalxitemid("20000:01220");
+		visitorUser.setDisplayName("JAMES G STALNAKER");
+		visitorUser.setEmailAddress("jstalnak@doit.wisc.edu");
+		visitorUser.setGivenName("JAMES");
+		visitorUser.setSurname("STALNAKER");
+		MockScheduleVisitor visitor = new MockScheduleVisitor(visitorUser);
+		
+		Date startDate = DateUtils.addDays(DateUtils.truncate(new Date(), java.util.Calendar.MINUTE), 1);
+		Date endDate = DateUtils.addHours(startDate, 1);
+		AvailableBlock block = AvailableBlockBuilder.createBlock(startDate, endDate, 1);
+		OracleCalendarDataAccessException failure = new OracleCalendarDataAccessException("simulated failure");
+		
+		// an empty block: safe to create again
+		Assert.assertEquals(ReadBack.NOT_APPLIED, oracleCalendarDao.createAppointmentOperation(visitor, owner, block, "testReadBackAfterFailedWrite").readBack(failure));
+		
+		VEvent event = oracleCalendarDao.createAppointment(visitor, owner, block, "testReadBackAfterFailedWrite");
+		try {
+			// the appointment is there: a create must not be repeated, a cancel may be
+			Assert.assertEquals(ReadBack.UNSAFE, oracleCalendarDao.createAppointmentOperation(visitor, owner, block, "testReadBackAfterFailedWrite").readBack(failure));
+			Assert.assertEquals(ReadBack.NOT_APPLIED, oracleCalendarDao.cancelAppointmentOperation(visitor, owner, event).readBack(failure));
+		} finally {
+			oracleCalendarDao.cancelAppointment(visitor, owner, event);
+		}
+		// the appointment is gone: the cancel was applied
+		Assert.assertEquals(ReadBack.APPLIED, oracleCalendarDao.cancelAppointmentOperation(visitor, owner, event).readBack(failure));
+	}
+	
 	/**
 	 * 
 	 * @throws Exception
@@ -553,4 +646,66 @@ public class DefaultOracleCalendarDaoImplTest {
 			this.oracleCalendarDao.disconnectSessionQuietly(session);
 		}
 	}
+	
+	/**
+	 * With a single bulkhead permit per node, reflecting a schedule over existing reflections
+	 * must purge them on the session it already holds rather than wait on itself for a second permit.
+	 * 
+	 * @throws InputFormatException
+	 * @throws ParseException
+	 * @throws ParserException 
+	 * @throws IOException 
+	 */
+	@Test
+	public void testReflectScheduleSinglePermitBulkhead() throws InputFormatException, ParseException, IOException, ParserException {
+		OracleCalendarUserAccount user = new OracleCalendarUserAccount();
+		user.setUsername("npblair");
+		user.setCtcalxitemid("20000:01182");
+		user.setDisplayName("NICHOLAS P BLAIR");
+		user.setEmailAddress("nblair@doit.wisc.edu");
+		user.setGivenName("NICHOLAS");
+		user.setSurname("BLAIR");
+		
+		MockScheduleOwner owner = new MockScheduleOwner(user, 1);
+		owner.setPreference(Preferences.MEETING_PREFIX, "prefix");
+		owner.setPreference(Preferences.LOCATION, "meeting room");
+		
+		Date startDate = CommonDateOperations.getDateFormat().parse("20100801");
+		Date endDate = CommonDateOperations.getDateFormat().parse("20100807");
+		Set<AvailableBlock> availableBlocks = AvailableBlockBuilder.createBlocks("9:00 AM", "3:00 PM", "MWF", 
+				startDate, endDate);
+		AvailableSchedule schedule = new AvailableSchedule(availableBlocks);
+		
+		OracleCalendarNodeBulkhead bulkhead = new OracleCalendarNodeBulkhead();
+		bulkhead.setMaxConcurrentCallsPerNode(1);
+		bulkhead.setMaxWaitingCallsPerNode(0);
+		bulkhead.setMaxWaitMillis(0);
+		oracleCalendarDao.setNodeBulkhead(bulkhead);
+		Session session = null;
+		try {
+			// the second call has reflections of the first to purge
+			oracleCalendarDao.reflectAvailableSchedule(owner, schedule);
+			oracleCalendarDao.reflectAvailableSchedule(owner, schedule);
+			Assert.assertEquals(Long.valueOf(0), bulkhead.getRejectedCalls().get("20000"));
+			Assert.assertEquals(Integer.valueOf(0), bulkhead.getActiveCalls().get("20000"));
+			
+			session = this.oracleCalendarDao.getSession(owner.getCalendarAccount(), oracleCalendarDao.getOracleCalendarServerNode(owner.getCalendarAccount()));
+			Calendar reflections = oracleCalendarDao.getExistingAvailableScheduleReflections(owner, startDate, endDate, session);
+			ComponentList components = reflections.getComponents();
+			Assert.assertEquals(3, components.size());
+			
+			List<String> uids = new ArrayList<String>();
+			for(Object o: components) {
+				Component c = (Component) o;
+				uids.add(c.getProperty(Uid.UID).getValue());
+			}
+			this.oracleCalendarDao.removeAvailableScheduleReflections(owner, uids, session);
+		} catch (StatusException e) {
+			e.printStackTrace();
+			Assert.fail("status exception thrown verifying reflectAvailableSchedule results");
+		} finally {
+			oracleCalendarDao.setNodeBulkhead(null);
+			this.oracleCalendarDao.disconnectSessionQuietly(session);
+		}
+	}
 }
@@ -0,0 +1,258 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.Assert;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.jasig.schedassist.model.ICalendarAccount;
+import org.junit.Test;
+
+/**
+ * Tests for {@link DeferredOracleGUIDResolver}.
+ *
+ * @version $Id: DeferredOracleGUIDResolverTest.java $
+ */
+public class DeferredOracleGUIDResolverTest {
+
+	/**
+	 * Deferring makes no call; the first read of the attribute resolves the GUID
+	 * exactly once.
+	 */
+	@Test
+	public void testResolvedOnceOnFirstRead() {
+		OracleGUIDSource mockGUIDSource = EasyMock.createMock(OracleGUIDSource.class);
+		EasyMock.expect(mockGUIDSource.lookupOracleGUID(EasyMock.isA(ICalendarAccount.class))).andReturn(OracleGUIDLookupResult.found("0123456789"));
+		EasyMock.replay(mockGUIDSource);
+
+		DeferredOracleGUIDResolver resolver = new DeferredOracleGUIDResolver(mockGUIDSource);
+		OracleCalendarUserAccount user = new OracleCalendarUserAccount();
+		user.setCtcalxitemid("20000:01234");
+		resolver.defer(user);
+
+		Assert.assertTrue(user.isOracleGuidDeferred());
+		Assert.assertNull(user.getAttributes().get(AbstractOracleCalendarAccount.ORACLE_GUID_ATTRIBUTE));
+		Assert.assertEquals(1, resolver.getDeferredCount());
+		Assert.assertEquals(0, resolver.getResolvedCount());
+		Assert.assertEquals(100.0, resolver.getAvoidedLookupPercent(), 0.001);
+
+		Assert.assertEquals("0123456789", user.getAttributeValue(AbstractOracleCalendarAccount.ORACLE_GUID_ATTRIBUTE));
+		Assert.assertEquals("0123456789", user.getOracleGuid());
+		Assert.assertFalse(user.isOracleGuidDeferred());
+		Assert.assertEquals(1, resolver.getResolvedCount());
+		Assert.assertEquals(0.0, resolver.getAvoidedLookupPercent(), 0.001);
+		EasyMock.verify(mockGUIDSource);
+	}
+
+	/**
+	 * The lookup runs outside of the account's monitor: a GUID completed on another
+	 * thread (e.g. on a session the DAO holds) while the lookup is in flight is not blocked, and wins.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testLookupDoesNotBlockCompletion() throws Exception {
+		final OracleCalendarUserAccount user = new OracleCalendarUserAccount();
+		user.setCtcalxitemid("20000:01234");
+		final AtomicBoolean completed = new AtomicBoolean();
+		OracleGUIDSource mockGUIDSource = EasyMock.createMock(OracleGUIDSource.class);
+		EasyMock.expect(mockGUIDSource.lookupOracleGUID(EasyMock.isA(ICalendarAccount.class))).andAnswer(new IAnswer<OracleGUIDLookupResult>() {
+			public OracleGUIDLookupResult answer() throws Throwable {
+				Thread other = new Thread() {
+					@Override
+					public void run() {
+						completed.set(user.completeDeferredOracleGuid("9876543210"));
+					}
+				};
+				other.start();
+				other.join(5000L);
+				return OracleGUIDLookupResult.found("0123456789");
+			}
+		});
+		EasyMock.replay(mockGUIDSource);
+
+		DeferredOracleGUIDResolver resolver = new DeferredOracleGUIDResolver(mockGUIDSource);
+		resolver.defer(user);
+		Assert.assertEquals("9876543210", user.getOracleGuid());
+		Assert.assertTrue(completed.get());
+		Assert.assertFalse(user.isOracleGuidDeferred());
+		EasyMock.verify(mockGUIDSource);
+	}
+
+	/**
+	 * A failed lookup leaves the GUID deferred so the next read tries again.
+	 */
+	@Test
+	public void testFailureLeavesGuidDeferred() {
+		OracleGUIDSource mockGUIDSource = EasyMock.createMock(OracleGUIDSource.class);
+		EasyMock.expect(mockGUIDSource.lookupOracleGUID(EasyMock.isA(ICalendarAccount.class))).andThrow(new OracleCalendarDataAccessException("node down"));
+		EasyMock.expect(mockGUIDSource.lookupOracleGUID(EasyMock.isA(ICalendarAccount.class))).andReturn(OracleGUIDLookupResult.found("0123456789"));
+		EasyMock.replay(mockGUIDSource);
+
+		DeferredOracleGUIDResolver resolver = new DeferredOracleGUIDResolver(mockGUIDSource);
+		OracleCalendarUserAccount user = new OracleCalendarUserAccount();
+		resolver.defer(user);
+		try {
+			user.getOracleGuid();
+			Assert.fail("expected OracleCalendarDataAccessException");
+		} catch (OracleCalendarDataAccessException e) {
+			// success
+		}
+		Assert.assertTrue(user.isOracleGuidDeferred());
+		Assert.assertEquals(1, resolver.getFailedCount());
+		Assert.assertEquals("0123456789", user.getOracleGuid());
+		EasyMock.verify(mockGUIDSource);
+	}
+
+	/**
+	 * A lookup that reports a transient error leaves the GUID deferred, rather than 
+	 * setting it to null; the next read tries again.
+	 */
+	@Test
+	public void testErrorResultLeavesGuidDeferred() {
+		OracleGUIDSource mockGUIDSource = EasyMock.createMock(OracleGUIDSource.class);
+		EasyMock.expect(mockGUIDSource.lookupOracleGUID(EasyMock.isA(ICalendarAccount.class))).andReturn(OracleGUIDLookupResult.error());
+		EasyMock.expect(mockGUIDSource.lookupOracleGUID(EasyMock.isA(ICalendarAccount.class))).andReturn(OracleGUIDLookupResult.found("0123456789"));
+		EasyMock.replay(mockGUIDSource);
+
+		DeferredOracleGUIDResolver resolver = new DeferredOracleGUIDResolver(mockGUIDSource);
+		OracleCalendarUserAccount user = new OracleCalendarUserAccount();
+		user.setCtcalxitemid("20000:01234");
+		resolver.defer(user);
+		Assert.assertNull(user.getOracleGuid());
+		Assert.assertTrue(user.isOracleGuidDeferred());
+		Assert.assertEquals(1, resolver.getFailedCount());
+		Assert.assertEquals(0, resolver.getResolvedCount());
+		
+		Assert.assertEquals("0123456789", user.getOracleGuid());
+		Assert.assertFalse(user.isOracleGuidDeferred());
+		Assert.assertEquals(1, resolver.getResolvedCount());
+		EasyMock.verify(mockGUIDSource);
+	}
+	
+	/**
+	 * A permanent miss completes the deferral with no GUID.
+	 */
+	@Test
+	public void testNotFoundCompletesDeferral() {
+		OracleGUIDSource mockGUIDSource = EasyMock.createMock(OracleGUIDSource.class);
+		EasyMock.expect(mockGUIDSource.lookupOracleGUID(EasyMock.isA(ICalendarAccount.class))).andReturn(OracleGUIDLookupResult.notFound());
+		EasyMock.replay(mockGUIDSource);
+
+		DeferredOracleGUIDResolver resolver = new DeferredOracleGUIDResolver(mockGUIDSource);
+		OracleCalendarUserAccount user = new OracleCalendarUserAccount();
+		user.setCtcalxitemid("20000:01234");
+		resolver.defer(user);
+		Assert.assertNull(user.getOracleGuid());
+		Assert.assertFalse(user.isOracleGuidDeferred());
+		Assert.assertNull(user.getOracleGuid());
+		EasyMock.verify(mockGUIDSource);
+	}
+	
+	/**
+	 * Serializing a deferred account makes no lookup; the restored account is still deferred,
+	 * is reattached to the resolver for deserialized accounts, and equals its resolved copy.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSerializationKeepsGuidDeferred() throws Exception {
+		OracleGUIDSource mockGUIDSource = EasyMock.createMock(OracleGUIDSource.class);
+		EasyMock.expect(mockGUIDSource.lookupOracleGUID(EasyMock.isA(ICalendarAccount.class))).andReturn(OracleGUIDLookupResult.found("0123456789"));
+		EasyMock.replay(mockGUIDSource);
+
+		DeferredOracleGUIDResolver resolver = new DeferredOracleGUIDResolver(mockGUIDSource);
+		resolver.setResolvesDeserializedAccounts(true);
+		try {
+			OracleCalendarUserAccount user = new OracleCalendarUserAccount();
+			user.setCtcalxitemid("20000:01234");
+			user.setUsername("npblair");
+			resolver.defer(user);
+			
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(user);
+			out.close();
+			Assert.assertTrue(user.isOracleGuidDeferred());
+			
+			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+			OracleCalendarUserAccount restored = (OracleCalendarUserAccount) in.readObject();
+			Assert.assertTrue(restored.isOracleGuidDeferred());
+			Assert.assertEquals(user, restored);
+			Assert.assertEquals(user.hashCode(), restored.hashCode());
+			
+			Assert.assertEquals("0123456789", restored.getOracleGuid());
+			Assert.assertFalse(restored.isOracleGuidDeferred());
+			Assert.assertEquals(user, restored);
+			Assert.assertEquals(user.hashCode(), restored.hashCode());
+			Assert.assertTrue(user.isOracleGuidDeferred());
+		} finally {
+			resolver.setResolvesDeserializedAccounts(false);
+		}
+		EasyMock.verify(mockGUIDSource);
+	}
+
+	/**
+	 * {@link DeferredOracleGUIDResolver#resolveAll(Collection)} makes one batch call for the
+	 * pending accounts and leaves unresolved accounts deferred.
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testResolveAll() {
+		OracleCalendarUserAccount first = new OracleCalendarUserAccount();
+		first.setCtcalxitemid("20000:01234");
+		OracleCalendarUserAccount second = new OracleCalendarUserAccount();
+		second.setCtcalxitemid("11000:05678");
+		OracleCalendarUserAccount alreadySet = new OracleCalendarUserAccount();
+		alreadySet.setCtcalxitemid("20000:09999");
+		alreadySet.setOracleGuid("9999");
+		
+		Map<String, String> batch = new HashMap<String, String>();
+		batch.put("20000:01234", "1234");
+		OracleGUIDSource mockGUIDSource = EasyMock.createMock(OracleGUIDSource.class);
+		EasyMock.expect(mockGUIDSource.getOracleGUIDs((Collection<? extends ICalendarAccount>) EasyMock.isA(Collection.class))).andReturn(batch);
+		EasyMock.replay(mockGUIDSource);
+		
+		DeferredOracleGUIDResolver resolver = new DeferredOracleGUIDResolver(mockGUIDSource);
+		resolver.defer(first);
+		resolver.defer(second);
+		List<OracleCalendarUserAccount> accounts = Arrays.asList(first, second, alreadySet);
+		Assert.assertEquals(1, resolver.resolveAll(accounts));
+		Assert.assertFalse(first.isOracleGuidDeferred());
+		Assert.assertEquals("1234", first.getOracleGuid());
+		Assert.assertTrue(second.isOracleGuidDeferred());
+		Assert.assertEquals("9999", alreadySet.getOracleGuid());
+		Assert.assertEquals(0, resolver.resolveAll(Collections.singletonList(alreadySet)));
+		EasyMock.verify(mockGUIDSource);
+	}
+}
@@ -0,0 +1,281 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.Assert;
+import net.fortuna.ical4j.data.CalendarBuilder;
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.Parameter;
+import net.fortuna.ical4j.model.Property;
+import net.fortuna.ical4j.model.PropertyList;
+import net.fortuna.ical4j.model.component.VEvent;
+import net.fortuna.ical4j.model.property.DtStamp;
+import net.fortuna.ical4j.model.property.Uid;
+
+import org.jasig.schedassist.NullAffiliationSourceImpl;
+import org.jasig.schedassist.model.AvailableBlock;
+import org.jasig.schedassist.model.AvailableBlockBuilder;
+import org.jasig.schedassist.model.Preferences;
+import org.jasig.schedassist.model.mock.MockScheduleOwner;
+import org.jasig.schedassist.model.mock.MockScheduleVisitor;
+import org.junit.Test;
+
+/**
+ * Tests for {@link OracleAvailableAppointmentWriter}; every case parses the writer's output and compares
+ * it, property by property, with the {@link OracleEventUtilsImpl#constructAvailableAppointment(AvailableBlock, org.jasig.schedassist.model.IScheduleOwner, String, org.jasig.schedassist.model.IScheduleVisitor, String, String)} result.
+ *
+ * @version $Id: OracleAvailableAppointmentWriterTest.java $
+ */
+public class OracleAvailableAppointmentWriterTest {
+
+	private OracleEventUtilsImpl eventUtils = new OracleEventUtilsImpl(new NullAffiliationSourceImpl());
+	private OracleAvailableAppointmentWriter writer = new OracleAvailableAppointmentWriter(eventUtils);
+
+	/**
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testOneOnOneAppointment() throws Exception {
+		MockScheduleOwner owner = new MockScheduleOwner(userAccount("someowner@wisc.edu", "Some", "Owner"), 1);
+		owner.setPreference(Preferences.LOCATION, "Owner's office");
+		MockScheduleVisitor visitor = new MockScheduleVisitor(userAccount("somevisitor@wisc.edu", "Some", "Visitor"));
+
+		assertEquivalent(AvailableBlockBuilder.createBlock("20091006-1300", "20091006-1330"), 
+				owner, "OWNER-GUID-123", visitor, "VISITOR-GUID-123", "test event description");
+	}
+
+	/**
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testGroupAppointmentWithoutGuids() throws Exception {
+		MockScheduleOwner owner = new MockScheduleOwner(userAccount("someowner@wisc.edu", "Some", "Owner"), 1);
+		MockScheduleVisitor visitor = new MockScheduleVisitor(userAccount("somevisitor@wisc.edu", "Some", "Visitor"));
+
+		assertEquivalent(AvailableBlockBuilder.createBlock("20091006-1300", "20091006-1400", 10), 
+				owner, null, visitor, null, "ignored for groups");
+	}
+
+	/**
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSamePersonAndLocationOverride() throws Exception {
+		OracleCalendarUserAccount account = userAccount("someone@wisc.edu", "Some", "One");
+		MockScheduleOwner owner = new MockScheduleOwner(account, 1);
+		owner.setPreference(Preferences.LOCATION, "Owner's office");
+		MockScheduleVisitor visitor = new MockScheduleVisitor(account);
+
+		assertEquivalent(AvailableBlockBuilder.createBlock("20091006-1300", "20091006-1330", 1, "alternate location"), 
+				owner, "GUID-123", visitor, "GUID-123", "talking to myself");
+	}
+
+	/**
+	 * Names, description and location with characters that iCalendar quotes or escapes.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testEscapedAndQuotedValues() throws Exception {
+		MockScheduleOwner owner = new MockScheduleOwner(userAccount("someowner@wisc.edu", "Zo\u00eb", "O'Owner, Jr."), 1);
+		owner.setPreference(Preferences.LOCATION, "Room 101; Building \"A\", 2nd floor");
+		owner.setPreference(Preferences.MEETING_PREFIX, "Office Hours: Chem\\101");
+		MockScheduleVisitor visitor = new MockScheduleVisitor(userAccount("somevisitor@wisc.edu", "Some;", "Visitor:"));
+
+		assertEquivalent(AvailableBlockBuilder.createBlock("20091006-1300", "20091006-1330"), 
+				owner, "OWNER-GUID-123", visitor, "VISITOR-GUID-123", "line one\nline two, with; punctuation");
+	}
+
+	/**
+	 * Resource owned appointments carry an ORGANIZER and resource attendee.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testResourceOwner() throws Exception {
+		OracleCalendarResourceAccount resource = new OracleCalendarResourceAccount();
+		resource.setCtcalxitemid("20000:00001");
+		resource.setResourceName("DOIT blair test");
+		resource.setOracleGuid("200000000011234567890");
+		MockScheduleOwner owner = new MockScheduleOwner(resource, 1);
+		MockScheduleVisitor visitor = new MockScheduleVisitor(userAccount("somevisitor@wisc.edu", "Some", "Visitor"));
+
+		assertEquivalent(AvailableBlockBuilder.createBlock("20091006-1300", "20091006-1330"), 
+				owner, "200000000011234567890", visitor, "VISITOR-GUID-123", "description");
+	}
+	
+	/**
+	 * An appointment the writer can't express returns null and is counted.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testFallbackCounted() throws Exception {
+		MockScheduleOwner owner = new MockScheduleOwner(userAccount("someowner@wisc.edu", "Some", "Owner"), 1);
+		OracleCalendarUserAccount visitorAccount = userAccount("somevisitor@wisc.edu", "Some", "Visitor");
+		visitorAccount.setEmailAddress(null);
+		MockScheduleVisitor visitor = new MockScheduleVisitor(visitorAccount);
+
+		Assert.assertEquals(0, writer.getFallbackCount());
+		Assert.assertNull(writer.writeAvailableAppointment(AvailableBlockBuilder.createBlock("20091006-1300", "20091006-1330"), 
+				owner, null, visitor, null, "description", new Date(), null));
+		Assert.assertEquals(1, writer.getFallbackCount());
+	}
+	
+	/**
+	 * A customized {@link OracleEventUtilsImpl} disables the writer.
+	 */
+	@Test
+	public void testCustomizedEventUtilsDisabled() {
+		OracleEventUtilsImpl customized = new OracleEventUtilsImpl(new NullAffiliationSourceImpl()) {
+		};
+		OracleAvailableAppointmentWriter customizedWriter = new OracleAvailableAppointmentWriter(customized);
+		Assert.assertFalse(customizedWriter.isEnabled());
+		MockScheduleOwner owner = new MockScheduleOwner(userAccount("someowner@wisc.edu", "Some", "Owner"), 1);
+		MockScheduleVisitor visitor = new MockScheduleVisitor(userAccount("somevisitor@wisc.edu", "Some", "Visitor"));
+		Assert.assertNull(customizedWriter.writeAvailableAppointment(AvailableBlockBuilder.createBlock("20091006-1300", "20091006-1330"), 
+				owner, null, visitor, null, "description", new Date(), null));
+	}
+
+	/**
+	 * Parse the writer's output and compare it with the event, before and after the UID is added.
+	 * 
+	 * @param block
+	 * @param owner
+	 * @param ownerGuid
+	 * @param visitor
+	 * @param visitorGuid
+	 * @param description
+	 * @throws Exception
+	 */
+	private void assertEquivalent(AvailableBlock block, MockScheduleOwner owner, String ownerGuid, 
+			MockScheduleVisitor visitor, String visitorGuid, String description) throws Exception {
+		Assert.assertTrue(writer.isEnabled());
+		VEvent event = eventUtils.constructAvailableAppointment(block, owner, ownerGuid, visitor, visitorGuid, description);
+		Date dateStamp = new Date(1254852000000L);
+
+		Calendar expected = eventUtils.wrapEventInCalendar(event);
+		String written = writer.writeAvailableAppointment(block, owner, ownerGuid, visitor, visitorGuid, description, dateStamp, null);
+		assertSameCalendar(expected, written, dateStamp);
+
+		event.getProperties().add(new Uid("20091006T180000Z-1234-5678@oracle"));
+		expected = eventUtils.wrapEventInCalendar(event);
+		written = writer.writeAvailableAppointment(block, owner, ownerGuid, visitor, visitorGuid, description, dateStamp, "20091006T180000Z-1234-5678@oracle");
+		assertSameCalendar(expected, written, dateStamp);
+		Assert.assertEquals(0, writer.getFallbackCount());
+	}
+	
+	/**
+	 * 
+	 * @param expected
+	 * @param written
+	 * @param dateStamp the DTSTAMP given to the writer
+	 * @throws Exception
+	 */
+	private void assertSameCalendar(Calendar expected, String written, Date dateStamp) throws Exception {
+		Assert.assertNotNull(written);
+		Calendar parsed = new CalendarBuilder().build(new StringReader(written));
+		assertSameProperties(expected.getProperties(), parsed.getProperties());
+		Assert.assertEquals(1, parsed.getComponents().size());
+		
+		PropertyList parsedProperties = ((VEvent) parsed.getComponents().get(0)).getProperties();
+		Assert.assertEquals(OracleEventUtilsImpl.FASTDATEFORMAT.format(dateStamp), parsedProperties.getProperty(DtStamp.DTSTAMP).getValue());
+		assertSameProperties(((VEvent) expected.getComponents().get(0)).getProperties(), parsedProperties);
+	}
+	
+	/**
+	 * Compare names, values and parameters in order; DTSTAMP is skipped, the event's own 
+	 * (if iCal4j adds one) is the time it was constructed.
+	 * 
+	 * @param expected
+	 * @param actual
+	 */
+	private void assertSameProperties(PropertyList expected, PropertyList actual) {
+		List<Property> expectedProperties = withoutDateStamp(expected);
+		List<Property> actualProperties = withoutDateStamp(actual);
+		Assert.assertEquals(expectedProperties.size(), actualProperties.size());
+		for(int i = 0; i < expectedProperties.size(); i++) {
+			Property expectedProperty = expectedProperties.get(i);
+			Property actualProperty = actualProperties.get(i);
+			Assert.assertEquals(expectedProperty.getName(), actualProperty.getName());
+			Assert.assertEquals(expectedProperty.getValue(), actualProperty.getValue());
+			List<Parameter> expectedParameters = parameters(expectedProperty);
+			List<Parameter> actualParameters = parameters(actualProperty);
+			Assert.assertEquals(expectedProperty.getName(), expectedParameters.size(), actualParameters.size());
+			for(int j = 0; j < expectedParameters.size(); j++) {
+				Assert.assertEquals(expectedParameters.get(j).getName(), actualParameters.get(j).getName());
+				Assert.assertEquals(expectedParameters.get(j).getValue(), actualParameters.get(j).getValue());
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @param properties
+	 * @return the properties other than DTSTAMP
+	 */
+	private List<Property> withoutDateStamp(PropertyList properties) {
+		List<Property> result = new ArrayList<Property>();
+		for(Object o : properties) {
+			Property property = (Property) o;
+			if(!DtStamp.DTSTAMP.equals(property.getName())) {
+				result.add(property);
+			}
+		}
+		return result;
+	}
+	/**
+	 * 
+	 * @param property
+	 * @return the property's parameters, in order
+	 */
+	private List<Parameter> parameters(Property property) {
+		List<Parameter> result = new ArrayList<Parameter>();
+		for(Iterator<?> i = property.getParameters().iterator(); i.hasNext(); ) {
+			result.add((Parameter) i.next());
+		}
+		return result;
+	}
+	
+	/**
+	 * 
+	 * @param email
+	 * @param givenName
+	 * @param surname
+	 * @return a new {@link OracleCalendarUserAccount}
+	 */
+	private OracleCalendarUserAccount userAccount(String email, String givenName, String surname) {
+		OracleCalendarUserAccount account = new OracleCalendarUserAccount();
+		account.setEmailAddress(email);
+		account.setGivenName(givenName);
+		account.setSurname(surname);
+		account.setCtcalxitemid("20000:0" + Math.abs(email.hashCode() % 10000));
+		return account;
+	}
+}
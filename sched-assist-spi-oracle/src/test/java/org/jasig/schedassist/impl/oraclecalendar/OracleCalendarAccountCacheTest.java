@@ -0,0 +1,120 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import junit.framework.Assert;
+import net.sf.ehcache.CacheManager;
+
+import org.jasig.schedassist.impl.oraclecalendar.OracleCalendarAccountCache.KeyType;
+import org.jasig.schedassist.model.ICalendarAccount;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link OracleCalendarAccountCache}.
+ *
+ * @version $Id: OracleCalendarAccountCacheTest.java $
+ */
+public class OracleCalendarAccountCacheTest {
+
+	private static final String CACHE_NAME = "oracleCalendarAccountCacheTest";
+	private CacheManager cacheManager;
+	private OracleCalendarAccountCache accountCache;
+	
+	@Before
+	public void setUp() {
+		cacheManager = CacheManager.create();
+		cacheManager.addCache(CACHE_NAME);
+		accountCache = new OracleCalendarAccountCache();
+		accountCache.setCache(cacheManager.getEhcache(CACHE_NAME));
+		accountCache.afterPropertiesSet();
+	}
+	@After
+	public void tearDown() {
+		cacheManager.removeCache(CACHE_NAME);
+	}
+	
+	/**
+	 * An account cached once is found by username, unique id and email address, without regard to case.
+	 */
+	@Test
+	public void testCrossKeyHits() {
+		ICalendarAccount account = account("npblair", "20000:01182", "nblair@doit.wisc.edu");
+		Assert.assertNull(accountCache.get(KeyType.CALENDAR_UNIQUE_ID, "20000:01182"));
+		accountCache.put(account);
+		
+		Assert.assertSame(account, accountCache.get(KeyType.USERNAME, "NPBLAIR"));
+		Assert.assertSame(account, accountCache.get(KeyType.CALENDAR_UNIQUE_ID, "20000:01182"));
+		Assert.assertSame(account, accountCache.get(KeyType.EMAIL_ADDRESS, "NBlair@doit.wisc.edu"));
+		Assert.assertSame(account, accountCache.getByAttribute("ctcalxitemid", "20000:01182"));
+		Assert.assertEquals(1, accountCache.getSize());
+		Assert.assertEquals(2, accountCache.getSecondaryKeyCount());
+		Assert.assertEquals(Long.valueOf(2), accountCache.getHits().get("CALENDAR_UNIQUE_ID"));
+		Assert.assertEquals(Long.valueOf(1), accountCache.getMisses().get("CALENDAR_UNIQUE_ID"));
+		Assert.assertEquals(100.0, accountCache.getHitPercent().get("USERNAME"), 0.001);
+	}
+	
+	/**
+	 * Arbitrary attribute keys are kept when the account is cached again, and 
+	 * removing the account removes its secondary keys.
+	 */
+	@Test
+	public void testAttributeKeysAndRemoval() {
+		ICalendarAccount account = account("npblair", "20000:01182", "nblair@doit.wisc.edu");
+		accountCache.put(account, "pvi", "UW123A456");
+		accountCache.put(account);
+		Assert.assertSame(account, accountCache.getByAttribute("PVI", "uw123a456"));
+		Assert.assertNull(accountCache.getByAttribute("pvi", "UW999"));
+		
+		Assert.assertTrue(accountCache.remove("npblair"));
+		Assert.assertEquals(0, accountCache.getSecondaryKeyCount());
+		Assert.assertNull(accountCache.get(KeyType.EMAIL_ADDRESS, "nblair@doit.wisc.edu"));
+	}
+	
+	/**
+	 * A key the current account no longer carries is not honored.
+	 */
+	@Test
+	public void testReplacedAccount() {
+		accountCache.put(account("npblair", "20000:01182", "nblair@doit.wisc.edu"));
+		ICalendarAccount replacement = account("npblair", "20000:05555", "nblair@doit.wisc.edu");
+		accountCache.put(replacement);
+		
+		Assert.assertNull(accountCache.get(KeyType.CALENDAR_UNIQUE_ID, "20000:01182"));
+		Assert.assertSame(replacement, accountCache.get(KeyType.CALENDAR_UNIQUE_ID, "20000:05555"));
+		Assert.assertEquals(2, accountCache.getSecondaryKeyCount());
+	}
+	
+	/**
+	 * 
+	 * @param username
+	 * @param ctcalxitemid
+	 * @param emailAddress
+	 * @return an account
+	 */
+	private ICalendarAccount account(String username, String ctcalxitemid, String emailAddress) {
+		OracleCalendarUserAccount account = new OracleCalendarUserAccount();
+		account.setUsername(username);
+		account.setCtcalxitemid(ctcalxitemid);
+		account.setEmailAddress(emailAddress);
+		return account;
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import junit.framework.Assert;
+import net.sf.ehcache.CacheManager;
+
+import org.jasig.schedassist.impl.oraclecalendar.OracleCalendarAccountCache.KeyType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link OracleCalendarAccountNotFoundCache}.
+ *
+ * @version $Id: OracleCalendarAccountNotFoundCacheTest.java $
+ */
+public class OracleCalendarAccountNotFoundCacheTest {
+
+	private static final String CACHE_NAME = "oracleCalendarAccountNotFoundCacheTest";
+	private CacheManager cacheManager;
+	private OracleCalendarAccountNotFoundCache notFoundCache;
+	
+	@Before
+	public void setUp() {
+		cacheManager = CacheManager.create();
+		cacheManager.addCache(CACHE_NAME);
+		notFoundCache = new OracleCalendarAccountNotFoundCache();
+		notFoundCache.setCache(cacheManager.getEhcache(CACHE_NAME));
+	}
+	@After
+	public void tearDown() {
+		cacheManager.removeCache(CACHE_NAME);
+	}
+	
+	/**
+	 * A miss recorded by attribute name is found by the matching key type, without regard to case,
+	 * and counted as a hit.
+	 */
+	@Test
+	public void testNotFoundByAttribute() {
+		Assert.assertFalse(notFoundCache.isNotFound(KeyType.USERNAME, "visitor"));
+		notFoundCache.putNotFoundByAttribute("uid", "visitor");
+		notFoundCache.putNotFoundByAttribute("wiscedupvi", "UW123A456");
+		
+		Assert.assertTrue(notFoundCache.isNotFound(KeyType.USERNAME, "VISITOR"));
+		Assert.assertTrue(notFoundCache.isNotFoundByAttribute("wiscedupvi", "uw123a456"));
+		Assert.assertFalse(notFoundCache.isNotFound(KeyType.CALENDAR_UNIQUE_ID, "visitor"));
+		Assert.assertEquals(2, notFoundCache.getSize());
+		Assert.assertEquals(2, notFoundCache.getNotFoundLookups());
+		Assert.assertEquals(Long.valueOf(1), notFoundCache.getHits().get("USERNAME"));
+		Assert.assertEquals(Long.valueOf(1), notFoundCache.getMisses().get("USERNAME"));
+		Assert.assertEquals(50.0, notFoundCache.getHitPercent().get("USERNAME"), 0.001);
+	}
+	
+	/**
+	 * Finding the account, or invalidating, clears its entries.
+	 */
+	@Test
+	public void testRemoveAndInvalidate() {
+		notFoundCache.putNotFound(KeyType.USERNAME, "npblair");
+		notFoundCache.putNotFound(KeyType.CALENDAR_UNIQUE_ID, "20000:01182");
+		notFoundCache.putNotFound(KeyType.EMAIL_ADDRESS, "someone@wisc.edu");
+		notFoundCache.putNotFoundByAttribute("wiscedupvi", "UW123A456");
+		
+		OracleCalendarUserAccount account = new OracleCalendarUserAccount();
+		account.setUsername("npblair");
+		account.setCtcalxitemid("20000:01182");
+		notFoundCache.remove(account);
+		Assert.assertFalse(notFoundCache.isNotFound(KeyType.USERNAME, "npblair"));
+		Assert.assertFalse(notFoundCache.isNotFound(KeyType.CALENDAR_UNIQUE_ID, "20000:01182"));
+		
+		Assert.assertEquals(1, notFoundCache.invalidate("Someone@wisc.edu"));
+		Assert.assertFalse(notFoundCache.isNotFound(KeyType.EMAIL_ADDRESS, "someone@wisc.edu"));
+		Assert.assertEquals(1, notFoundCache.invalidateAll());
+		Assert.assertEquals(0, notFoundCache.getSize());
+		Assert.assertEquals(2, notFoundCache.getInvalidations());
+	}
+}
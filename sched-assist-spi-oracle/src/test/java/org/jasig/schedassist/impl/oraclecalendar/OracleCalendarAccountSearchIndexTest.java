@@ -0,0 +1,154 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.jasig.schedassist.impl.oraclecalendar.OracleCalendarAccountSearchIndex.Snapshot;
+import org.jasig.schedassist.model.ICalendarAccount;
+import org.junit.Test;
+
+/**
+ * Tests for {@link OracleCalendarAccountSearchIndex}.
+ *
+ * @version $Id: OracleCalendarAccountSearchIndexTest.java $
+ */
+public class OracleCalendarAccountSearchIndexTest {
+
+	/**
+	 * Substring queries match either field, ignore case and come back in display name order.
+	 */
+	@Test
+	public void testSearch() {
+		Snapshot snapshot = Snapshot.build(Arrays.asList(
+				account("npblair", "Nicholas Blair", "20101028151939Z"),
+				account("jstalnak", "James Stalnaker", "20101101080000Z"),
+				account("blairx", "Alex Smith", "20100901000000Z")), null);
+		
+		Assert.assertEquals("20101101080000Z", snapshot.highWaterMark);
+		Assert.assertEquals(Arrays.asList("blairx", "npblair"), usernames(snapshot.search("blair", 25)));
+		Assert.assertEquals(Arrays.asList("jstalnak"), usernames(snapshot.search("stal", 25)));
+		Assert.assertEquals(Arrays.asList("npblair"), usernames(snapshot.search("las bl", 25)));
+		// short queries are scanned
+		Assert.assertEquals(Arrays.asList("blairx", "jstalnak", "npblair"), usernames(snapshot.search("a", 25)));
+		Assert.assertEquals(Arrays.asList("blairx"), usernames(snapshot.search("a", 1)));
+		// every trigram present but not contiguous
+		Assert.assertEquals(0, snapshot.search("blaiblai", 25).size());
+		// matches must not span the uid and display name
+		Assert.assertEquals(0, snapshot.search("rxale", 25).size());
+		Assert.assertEquals(0, snapshot.search("zzz", 25).size());
+	}
+	
+	/**
+	 * Modified accounts replace their earlier versions and advance the high water mark.
+	 */
+	@Test
+	public void testMerge() {
+		Snapshot snapshot = Snapshot.build(Arrays.asList(
+				account("npblair", "Nicholas Blair", "20101028151939Z"),
+				account("jstalnak", "James Stalnaker", "20101101080000Z")), null);
+		List<ICalendarAccount> modified = new ArrayList<ICalendarAccount>();
+		modified.add(account("npblair", "Nick Blair", "20101102090000Z"));
+		modified.add(account("ctfoster", "Cal Foster", "20101102090500Z"));
+		
+		Snapshot merged = snapshot.merge(modified, new ArrayList<ICalendarAccount>());
+		Assert.assertEquals(3, merged.accounts.length);
+		Assert.assertEquals("20101102090500Z", merged.highWaterMark);
+		Assert.assertEquals(0, merged.search("nicholas", 25).size());
+		Assert.assertEquals(Arrays.asList("npblair"), usernames(merged.search("nick", 25)));
+		Assert.assertEquals(Arrays.asList("ctfoster"), usernames(merged.search("foster", 25)));
+		// the original snapshot is unchanged
+		Assert.assertEquals(Arrays.asList("npblair"), usernames(snapshot.search("nicholas", 25)));
+	}
+	
+	/**
+	 * A modified account that is no longer eligible is removed, and still advances the high water mark.
+	 */
+	@Test
+	public void testMergeRemovesIneligible() {
+		Snapshot snapshot = Snapshot.build(Arrays.asList(
+				account("npblair", "Nicholas Blair", "20101028151939Z"),
+				account("jstalnak", "James Stalnaker", "20101101080000Z")), null);
+		List<ICalendarAccount> removed = new ArrayList<ICalendarAccount>();
+		removed.add(account("jstalnak", "James Stalnaker", "20101103000000Z"));
+		
+		Snapshot merged = snapshot.merge(new ArrayList<ICalendarAccount>(), removed);
+		Assert.assertEquals(1, merged.accounts.length);
+		Assert.assertEquals(0, merged.search("stal", 25).size());
+		Assert.assertEquals(Arrays.asList("npblair"), usernames(merged.search("blair", 25)));
+		Assert.assertEquals("20101103000000Z", merged.highWaterMark);
+	}
+	
+	/**
+	 * The index refuses queries until loaded.
+	 */
+	@Test
+	public void testNotReady() {
+		OracleCalendarAccountSearchIndex index = new OracleCalendarAccountSearchIndex();
+		Assert.assertFalse(index.isReady());
+		try {
+			index.search("blair", 25);
+			Assert.fail("expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			// success
+		}
+	}
+	
+	/**
+	 * 
+	 * @param username
+	 * @param displayName
+	 * @param modifyTimestamp
+	 * @return an account with the attributes the LDAP mapper would set
+	 */
+	private ICalendarAccount account(String username, String displayName, String modifyTimestamp) {
+		Map<String, String> attributes = new HashMap<String, String>();
+		attributes.put("uid", username);
+		attributes.put("displayname", displayName);
+		attributes.put("modifytimestamp", modifyTimestamp);
+		OracleCalendarUserAccount account = new OracleCalendarUserAccount(attributes);
+		account.setUsername(username);
+		account.setDisplayName(displayName);
+		// getDisplayName, and so the result order, is Oracle's givenName sn construct
+		String [] names = displayName.split(" ");
+		account.setGivenName(names[0]);
+		account.setSurname(names[1]);
+		return account;
+	}
+	
+	/**
+	 * 
+	 * @param accounts
+	 * @return the usernames in order
+	 */
+	private List<String> usernames(List<ICalendarAccount> accounts) {
+		List<String> result = new ArrayList<String>();
+		for(ICalendarAccount account : accounts) {
+			result.add(account.getUsername());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.ComponentList;
+import net.fortuna.ical4j.model.DateTime;
+import net.fortuna.ical4j.model.component.VEvent;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link OracleCalendarAgendaCoalescer}.
+ *
+ * @version $Id: OracleCalendarAgendaCoalescerTest.java $
+ */
+public class OracleCalendarAgendaCoalescerTest {
+
+	/**
+	 * Two concurrent requests for the same account and range share one load, and
+	 * each receives its own copy of the result.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentIdenticalRequestsShareOneLoad() throws Exception {
+		final OracleCalendarAgendaCoalescer coalescer = new OracleCalendarAgendaCoalescer();
+		final OracleCalendarUserAccount account = new OracleCalendarUserAccount();
+		account.setCtcalxitemid("20000:01234");
+		final Date start = new Date(1288000000000L);
+		final Date end = new Date(1288600000000L);
+
+		final CountDownLatch loaderStarted = new CountDownLatch(1);
+		final CountDownLatch releaseLoader = new CountDownLatch(1);
+		final AtomicInteger loads = new AtomicInteger();
+		final Callable<Calendar> loader = new Callable<Calendar>() {
+			@Override
+			public Calendar call() throws Exception {
+				loads.incrementAndGet();
+				loaderStarted.countDown();
+				releaseLoader.await(5, TimeUnit.SECONDS);
+				ComponentList components = new ComponentList();
+				components.add(new VEvent(new DateTime(start), new DateTime(end), "test event"));
+				return new Calendar(components);
+			}
+		};
+
+		final Calendar [] results = new Calendar[2];
+		Thread leader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				results[0] = coalescer.getCalendar(account, start, end, loader);
+			}
+		});
+		leader.start();
+		Assert.assertTrue(loaderStarted.await(5, TimeUnit.SECONDS));
+
+		Thread follower = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				results[1] = coalescer.getCalendar(account, start, end, loader);
+			}
+		});
+		follower.start();
+		// wait for the follower to register before releasing the leader
+		long deadline = System.currentTimeMillis() + 5000;
+		while(coalescer.getCoalescedFetches() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		releaseLoader.countDown();
+		leader.join(5000);
+		follower.join(5000);
+
+		Assert.assertEquals(1, loads.get());
+		Assert.assertEquals(1, coalescer.getLeaderFetches());
+		Assert.assertEquals(1, coalescer.getCoalescedFetches());
+		Assert.assertEquals(50.0, coalescer.getCoalescingRatePercent(), 0.001);
+		Assert.assertNotNull(results[0]);
+		Assert.assertNotNull(results[1]);
+		Assert.assertNotSame(results[0], results[1]);
+		Assert.assertNotSame(results[0].getComponents().get(0), results[1].getComponents().get(0));
+		Assert.assertEquals(results[0].getComponents().get(0), results[1].getComponents().get(0));
+		Assert.assertEquals(0, coalescer.getInFlightFetches());
+	}
+
+	/**
+	 * A failure in the loader is rethrown to the caller and is not retained.
+	 */
+	@Test
+	public void testLoaderFailureIsRethrown() {
+		OracleCalendarAgendaCoalescer coalescer = new OracleCalendarAgendaCoalescer();
+		OracleCalendarUserAccount account = new OracleCalendarUserAccount();
+		account.setCtcalxitemid("20000:01234");
+		Date start = new Date(1288000000000L);
+		Date end = new Date(1288600000000L);
+		try {
+			coalescer.getCalendar(account, start, end, new Callable<Calendar>() {
+				@Override
+				public Calendar call() {
+					throw new OracleCalendarDataAccessException("node down");
+				}
+			});
+			Assert.fail("expected OracleCalendarDataAccessException");
+		} catch (OracleCalendarDataAccessException e) {
+			Assert.assertEquals("node down", e.getMessage());
+		}
+		Assert.assertEquals(0, coalescer.getInFlightFetches());
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.Date;
+
+import junit.framework.Assert;
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.ComponentList;
+import net.fortuna.ical4j.model.DateTime;
+import net.fortuna.ical4j.model.component.VEvent;
+import net.fortuna.ical4j.model.property.Uid;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link OracleCalendarAgendaSnapshotStore}.
+ *
+ * @version $Id: OracleCalendarAgendaSnapshotStoreTest.java $
+ */
+public class OracleCalendarAgendaSnapshotStoreTest {
+
+	private static final long HOUR = 3600000L;
+
+	/**
+	 * Store a week long agenda, then verify a covered range is served (marked stale and
+	 * limited to the events in range) and an uncovered range is not.
+	 */
+	@Test
+	public void testServeCoveredRange() {
+		OracleCalendarAgendaSnapshotStore store = new OracleCalendarAgendaSnapshotStore();
+		OracleCalendarUserAccount account = new OracleCalendarUserAccount();
+		account.setCtcalxitemid("20000:01234");
+
+		long base = 1288000000000L;
+		ComponentList events = new ComponentList();
+		VEvent first = new VEvent(new DateTime(base + HOUR), new DateTime(base + 2 * HOUR), "first");
+		first.getProperties().add(new Uid("first-uid"));
+		events.add(first);
+		VEvent second = new VEvent(new DateTime(base + 48 * HOUR), new DateTime(base + 49 * HOUR), "second");
+		second.getProperties().add(new Uid("second-uid"));
+		events.add(second);
+		Calendar agenda = new Calendar(events);
+		Assert.assertFalse(OracleCalendarAgendaSnapshotStore.isStale(agenda));
+
+		store.store(account, new Date(base), new Date(base + 168 * HOUR), agenda);
+
+		Calendar stale = store.getStaleCalendar(account, "20000", new Date(base), new Date(base + 24 * HOUR));
+		Assert.assertNotNull(stale);
+		Assert.assertTrue(OracleCalendarAgendaSnapshotStore.isStale(stale));
+		Assert.assertEquals(1, stale.getComponents(VEvent.VEVENT).size());
+		VEvent served = (VEvent) stale.getComponents(VEvent.VEVENT).get(0);
+		Assert.assertEquals("first-uid", served.getUid().getValue());
+		// served events are copies, and later changes to the agenda or its events do not reach the snapshot
+		Assert.assertNotSame(first, served);
+		first.getProperties().remove(first.getUid());
+		served.getProperties().remove(served.getUid());
+		agenda.getComponents().clear();
+		Calendar again = store.getStaleCalendar(account, "20000", new Date(base), new Date(base + 24 * HOUR));
+		Assert.assertEquals(1, again.getComponents(VEvent.VEVENT).size());
+		Assert.assertEquals("first-uid", ((VEvent) again.getComponents(VEvent.VEVENT).get(0)).getUid().getValue());
+
+		Assert.assertNull(store.getStaleCalendar(account, "20000", new Date(base), new Date(base + 200 * HOUR)));
+		Assert.assertEquals(Long.valueOf(2), store.getStaleServeCounts().get("20000"));
+		Assert.assertEquals(Long.valueOf(1), store.getStaleMissCounts().get("20000"));
+	}
+
+	/**
+	 * Verify snapshots older than the maximum age are not served.
+	 */
+	@Test
+	public void testExpiredSnapshotNotServed() {
+		OracleCalendarAgendaSnapshotStore store = new OracleCalendarAgendaSnapshotStore();
+		store.setMaxSnapshotAgeMillis(-1);
+		OracleCalendarUserAccount account = new OracleCalendarUserAccount();
+		account.setCtcalxitemid("20000:01234");
+
+		Date start = new Date(1288000000000L);
+		Date end = new Date(start.getTime() + 24 * HOUR);
+		store.store(account, start, end, new Calendar(new ComponentList()));
+		Assert.assertNull(store.getStaleCalendar(account, "20000", start, end));
+	}
+}
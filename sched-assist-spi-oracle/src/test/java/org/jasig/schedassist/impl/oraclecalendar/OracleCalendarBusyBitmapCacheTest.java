@@ -0,0 +1,128 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.Assert;
+import net.fortuna.ical4j.model.DateTime;
+import net.fortuna.ical4j.model.component.VEvent;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link OracleCalendarBusyBitmapCache}.
+ *
+ * @version $Id: OracleCalendarBusyBitmapCacheTest.java $
+ */
+public class OracleCalendarBusyBitmapCacheTest {
+
+	/**
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testStoreAndCheck() throws Exception {
+		OracleCalendarBusyBitmapCache cache = new OracleCalendarBusyBitmapCache();
+		OracleCalendarUserAccount account = account();
+		
+		Assert.assertNull(cache.isBusy(account, date("20101019-1000"), date("20101019-1030")));
+		
+		List<VEvent> conflicts = new ArrayList<VEvent>();
+		conflicts.add(new VEvent(new DateTime(date("20101019-0930")), new DateTime(date("20101019-1000")), "ends as the block starts"));
+		conflicts.add(new VEvent(new DateTime(date("20101019-1415")), new DateTime(date("20101019-1545")), "afternoon"));
+		long generation = cache.getGeneration();
+		cache.store(account, cache.getDayStart(date("20101019-1000")), cache.getRangeEnd(date("20101019-1030")), conflicts, generation);
+		
+		Assert.assertEquals(Boolean.FALSE, cache.isBusy(account, date("20101019-1000"), date("20101019-1030")));
+		Assert.assertEquals(Boolean.TRUE, cache.isBusy(account, date("20101019-0945"), date("20101019-1015")));
+		Assert.assertEquals(Boolean.TRUE, cache.isBusy(account, date("20101019-1530"), date("20101019-1600")));
+		Assert.assertEquals(Boolean.FALSE, cache.isBusy(account, date("20101019-1545"), date("20101019-1615")));
+		Assert.assertEquals(Boolean.FALSE, cache.isBusy(account, date("20101019-1345"), date("20101019-1415")));
+		// next day not loaded
+		Assert.assertNull(cache.isBusy(account, date("20101020-1000"), date("20101020-1030")));
+	}
+	
+	/**
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testMarkBusyAndInvalidate() throws Exception {
+		OracleCalendarBusyBitmapCache cache = new OracleCalendarBusyBitmapCache();
+		OracleCalendarUserAccount account = account();
+		cache.store(account, cache.getDayStart(date("20101019-1000")), cache.getRangeEnd(date("20101019-1030")), new ArrayList<VEvent>(), cache.getGeneration());
+		Assert.assertEquals(Boolean.FALSE, cache.isBusy(account, date("20101019-1000"), date("20101019-1030")));
+		
+		cache.markBusy(account, date("20101019-1000"), date("20101019-1030"));
+		Assert.assertEquals(Boolean.TRUE, cache.isBusy(account, date("20101019-1000"), date("20101019-1030")));
+		Assert.assertEquals(Boolean.FALSE, cache.isBusy(account, date("20101019-1030"), date("20101019-1100")));
+		
+		cache.invalidate(account, date("20101019-1000"), date("20101019-1030"));
+		Assert.assertNull(cache.isBusy(account, date("20101019-1000"), date("20101019-1030")));
+		Assert.assertEquals(1, cache.getMarkedBusy());
+		Assert.assertEquals(1, cache.getInvalidations());
+	}
+	
+	/**
+	 * A load that started before an update is not stored.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testLoadDiscardedAfterConcurrentUpdate() throws Exception {
+		OracleCalendarBusyBitmapCache cache = new OracleCalendarBusyBitmapCache();
+		OracleCalendarUserAccount account = account();
+		long generation = cache.getGeneration();
+		cache.markBusy(account, date("20101019-1000"), date("20101019-1030"));
+		cache.store(account, cache.getDayStart(date("20101019-1000")), cache.getRangeEnd(date("20101019-1030")), new ArrayList<VEvent>(), generation);
+		Assert.assertNull(cache.isBusy(account, date("20101019-1000"), date("20101019-1030")));
+		Assert.assertEquals(1, cache.getDiscardedLoads());
+	}
+	
+	/**
+	 * Bit ranges within one word and across words.
+	 */
+	@Test
+	public void testBitRanges() {
+		long [] bits = new long[24];
+		OracleCalendarBusyBitmapCache.setRange(bits, 60, 130);
+		Assert.assertFalse(OracleCalendarBusyBitmapCache.anySet(bits, 0, 60));
+		Assert.assertTrue(OracleCalendarBusyBitmapCache.anySet(bits, 59, 61));
+		Assert.assertTrue(OracleCalendarBusyBitmapCache.anySet(bits, 64, 128));
+		Assert.assertTrue(OracleCalendarBusyBitmapCache.anySet(bits, 129, 200));
+		Assert.assertFalse(OracleCalendarBusyBitmapCache.anySet(bits, 130, 1500));
+		Assert.assertFalse(OracleCalendarBusyBitmapCache.anySet(bits, 100, 100));
+		OracleCalendarBusyBitmapCache.setRange(bits, 1400, 1500);
+		Assert.assertTrue(OracleCalendarBusyBitmapCache.anySet(bits, 1499, 1500));
+	}
+
+	private OracleCalendarUserAccount account() {
+		OracleCalendarUserAccount account = new OracleCalendarUserAccount();
+		account.setCtcalxitemid("20000:01234");
+		return account;
+	}
+	private Date date(String value) throws Exception {
+		return new SimpleDateFormat("yyyyMMdd-HHmm").parse(value);
+	}
+}
@@ -0,0 +1,193 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.ComponentList;
+import net.fortuna.ical4j.model.DateTime;
+import net.fortuna.ical4j.model.property.XProperty;
+
+import org.jasig.schedassist.model.AvailableBlock;
+import org.jasig.schedassist.model.ICalendarAccount;
+import org.junit.Test;
+
+/**
+ * Tests for {@link OracleCalendarCommonFreeTimeFinder}.
+ *
+ * @version $Id: OracleCalendarCommonFreeTimeFinderTest.java $
+ */
+public class OracleCalendarCommonFreeTimeFinderTest {
+
+	private static final long MINUTE = 60000L;
+	private static final long BASE = 1287496800000L;
+
+	/**
+	 * Overlapping, touching and nested intervals from different accounts, out of order.
+	 */
+	@Test
+	public void testFindFreeWindows() {
+		List<long[]> busy = new ArrayList<long[]>();
+		// account 1: 60-90, 120-180
+		busy.add(interval(120, 180));
+		busy.add(interval(60, 90));
+		// account 2: 80-100 (overlaps), 180-200 (touches), 130-140 (nested)
+		busy.add(interval(180, 200));
+		busy.add(interval(80, 100));
+		busy.add(interval(130, 140));
+		// account 3: 230-235
+		busy.add(interval(230, 235));
+		
+		List<AvailableBlock> free = OracleCalendarCommonFreeTimeFinder.findFreeWindows(busy, BASE, BASE + 300 * MINUTE, 15 * MINUTE);
+		// 0-60, 100-120, 200-230, 235-300
+		Assert.assertEquals(4, free.size());
+		assertWindow(free.get(0), 0, 60);
+		assertWindow(free.get(1), 100, 120);
+		assertWindow(free.get(2), 200, 230);
+		assertWindow(free.get(3), 235, 300);
+		
+		free = OracleCalendarCommonFreeTimeFinder.findFreeWindows(busy, BASE, BASE + 300 * MINUTE, 30 * MINUTE);
+		Assert.assertEquals(3, free.size());
+		assertWindow(free.get(0), 0, 60);
+		assertWindow(free.get(1), 200, 230);
+		assertWindow(free.get(2), 235, 300);
+	}
+	
+	/**
+	 * No busy intervals leaves the whole range free; busy covering the range leaves nothing.
+	 */
+	@Test
+	public void testEmptyAndFullyBusy() {
+		List<AvailableBlock> free = OracleCalendarCommonFreeTimeFinder.findFreeWindows(new ArrayList<long[]>(), BASE, BASE + 60 * MINUTE, 30 * MINUTE);
+		Assert.assertEquals(1, free.size());
+		assertWindow(free.get(0), 0, 60);
+		
+		List<long[]> busy = new ArrayList<long[]>();
+		busy.add(interval(0, 60));
+		Assert.assertTrue(OracleCalendarCommonFreeTimeFinder.findFreeWindows(busy, BASE, BASE + 60 * MINUTE, 30 * MINUTE).isEmpty());
+	}
+
+	/**
+	 * The accounts of one node are retrieved concurrently, but no more than maxParallelAccountsPerNode at once.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testAccountsOfNodeFetchedInParallel() throws Exception {
+		final AtomicInteger active = new AtomicInteger();
+		final AtomicInteger maxActive = new AtomicInteger();
+		final AtomicInteger fetched = new AtomicInteger();
+		OracleCalendarCommonFreeTimeFinder finder = new OracleCalendarCommonFreeTimeFinder() {
+			@Override
+			protected String getNodeName(ICalendarAccount account) {
+				return "20000";
+			}
+			@Override
+			protected Calendar getAgenda(ICalendarAccount account, Date startTime, Date endTime) {
+				int now = active.incrementAndGet();
+				synchronized (maxActive) {
+					if(now > maxActive.get()) {
+						maxActive.set(now);
+					}
+				}
+				try {
+					Thread.sleep(50L);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					active.decrementAndGet();
+				}
+				fetched.incrementAndGet();
+				return new Calendar(new ComponentList());
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			finder.setNodeFetchExecutor(executor);
+			finder.setMaxParallelAccountsPerNode(2);
+			List<ICalendarAccount> accounts = new ArrayList<ICalendarAccount>();
+			for(int i = 0; i < 6; i++) {
+				accounts.add(userAccount("2000" + i));
+			}
+			List<AvailableBlock> free = finder.findCommonFreeTime(accounts, new Date(BASE), new Date(BASE + 60 * MINUTE), 30);
+			Assert.assertEquals(1, free.size());
+			Assert.assertEquals(6, fetched.get());
+			Assert.assertTrue(maxActive.get() <= 2);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * A stale agenda fails the search unless stale agendas are allowed; either way it is counted.
+	 */
+	@Test
+	public void testStaleAgenda() {
+		OracleCalendarCommonFreeTimeFinder finder = new OracleCalendarCommonFreeTimeFinder() {
+			@Override
+			protected String getNodeName(ICalendarAccount account) {
+				return "20000";
+			}
+			@Override
+			protected Calendar getAgenda(ICalendarAccount account, Date startTime, Date endTime) {
+				Calendar result = new Calendar(new ComponentList());
+				if("20001".equals(account.getUsername())) {
+					result.getProperties().add(new XProperty(OracleCalendarAgendaSnapshotStore.STALE_AGENDA_PROPERTY, new DateTime(BASE).toString()));
+				}
+				return result;
+			}
+		};
+		List<ICalendarAccount> accounts = new ArrayList<ICalendarAccount>();
+		accounts.add(userAccount("20000"));
+		accounts.add(userAccount("20001"));
+		try {
+			finder.findCommonFreeTime(accounts, new Date(BASE), new Date(BASE + 60 * MINUTE), 30);
+			Assert.fail("expected OracleCalendarDataAccessException for the stale agenda");
+		} catch (OracleCalendarDataAccessException e) {
+			// success
+		}
+		Assert.assertEquals(1, finder.getStaleAgendaCount());
+
+		finder.setAllowStaleAgendas(true);
+		Assert.assertEquals(1, finder.findCommonFreeTime(accounts, new Date(BASE), new Date(BASE + 60 * MINUTE), 30).size());
+		Assert.assertEquals(2, finder.getStaleAgendaCount());
+	}
+
+	private ICalendarAccount userAccount(String username) {
+		OracleCalendarUserAccount account = new OracleCalendarUserAccount();
+		account.setUsername(username);
+		account.setCtcalxitemid("20000:" + username);
+		return account;
+	}
+	private long[] interval(int startMinute, int endMinute) {
+		return new long[] { BASE + startMinute * MINUTE, BASE + endMinute * MINUTE };
+	}
+	private void assertWindow(AvailableBlock block, int startMinute, int endMinute) {
+		Assert.assertEquals(BASE + startMinute * MINUTE, block.getStartTime().getTime());
+		Assert.assertEquals(BASE + endMinute * MINUTE, block.getEndTime().getTime());
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.jasig.schedassist.oraclecalendar.OracleCalendarServerNode;
+import org.junit.Test;
+
+/**
+ * Tests for {@link OracleCalendarNodeBulkhead}.
+ *
+ * @version $Id: OracleCalendarNodeBulkheadTest.java $
+ */
+public class OracleCalendarNodeBulkheadTest {
+
+	/**
+	 * Saturate one node and verify calls for it are rejected while
+	 * calls for another node are still admitted.
+	 */
+	@Test
+	public void testSaturatedNodeDoesNotAffectOtherNodes() {
+		OracleCalendarNodeBulkhead bulkhead = new OracleCalendarNodeBulkhead();
+		bulkhead.setMaxConcurrentCallsPerNode(2);
+		bulkhead.setMaxWaitingCallsPerNode(0);
+		bulkhead.setMaxWaitMillis(0);
+
+		OracleCalendarServerNode slowNode = new OracleCalendarServerNode();
+		slowNode.setNodeName("10000");
+		OracleCalendarServerNode healthyNode = new OracleCalendarServerNode();
+		healthyNode.setNodeName("11000");
+
+		bulkhead.acquire(slowNode);
+		bulkhead.acquire(slowNode);
+		try {
+			bulkhead.acquire(slowNode);
+			Assert.fail("expected OracleCalendarNodeSaturatedException");
+		} catch (OracleCalendarNodeSaturatedException e) {
+			Assert.assertEquals("10000", e.getNodeName());
+		}
+
+		bulkhead.acquire(healthyNode);
+		Assert.assertEquals(Integer.valueOf(2), bulkhead.getActiveCalls().get("10000"));
+		Assert.assertEquals(Integer.valueOf(1), bulkhead.getActiveCalls().get("11000"));
+		Assert.assertEquals(Long.valueOf(1), bulkhead.getRejectedCalls().get("10000"));
+		Assert.assertEquals(Long.valueOf(0), bulkhead.getRejectedCalls().get("11000"));
+		Assert.assertEquals(Integer.valueOf(100), bulkhead.getSaturationPercent().get("10000"));
+
+		bulkhead.release(slowNode);
+		bulkhead.acquire(slowNode);
+		Assert.assertEquals(Long.valueOf(3), bulkhead.getAdmittedCalls().get("10000"));
+	}
+
+	/**
+	 * Verify a per node override replaces the default permit count.
+	 */
+	@Test
+	public void testNodeConcurrencyOverride() {
+		OracleCalendarNodeBulkhead bulkhead = new OracleCalendarNodeBulkhead();
+		bulkhead.setMaxConcurrentCallsPerNode(5);
+		bulkhead.setMaxWaitingCallsPerNode(0);
+		Map<String, Integer> overrides = new HashMap<String, Integer>();
+		overrides.put("20000", 1);
+		bulkhead.setNodeConcurrencyOverrides(overrides);
+
+		OracleCalendarServerNode node = new OracleCalendarServerNode();
+		node.setNodeName("20000");
+		bulkhead.acquire(node);
+		try {
+			bulkhead.acquire(node);
+			Assert.fail("expected OracleCalendarNodeSaturatedException");
+		} catch (OracleCalendarNodeSaturatedException e) {
+			// success
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.jasig.schedassist.ConflictExistsException;
+import org.jasig.schedassist.impl.oraclecalendar.OracleCalendarOperationMetrics.LatencyHistogram;
+import org.jasig.schedassist.impl.oraclecalendar.OracleCalendarOperationMetrics.Operation;
+import org.jasig.schedassist.impl.oraclecalendar.OracleCalendarOperationMetrics.Outcome;
+import org.jasig.schedassist.impl.oraclecalendar.OracleCalendarOperationMetrics.Phase;
+import org.junit.Test;
+
+/**
+ * Tests for {@link OracleCalendarOperationMetrics}.
+ *
+ * @version $Id: OracleCalendarOperationMetricsTest.java $
+ */
+public class OracleCalendarOperationMetricsTest {
+
+	/**
+	 * Phases, nested phases and nested operations are each recorded against the right key.
+	 */
+	@Test
+	public void testPhasesAndNestedOperations() {
+		OracleCalendarOperationMetrics metrics = new OracleCalendarOperationMetrics();
+		Operation outer = metrics.begin("checkForConflicts", "10000");
+		metrics.startPhase(Phase.BORROW);
+		metrics.startPhase(Phase.SET_IDENTITY);
+		metrics.endPhase();
+		metrics.endPhase();
+		
+		Operation inner = metrics.begin("getCalendar", "10000");
+		metrics.startPhase(Phase.FETCH);
+		// left open; closed when the operation ends
+		metrics.end(inner, new OracleCalendarNodeUnavailableException("10000", "node down"));
+		
+		metrics.startPhase(Phase.STORE);
+		metrics.endPhase();
+		metrics.end(outer, null);
+		// no operation running: ignored
+		metrics.startPhase(Phase.PARSE);
+		metrics.endPhase();
+
+		Assert.assertTrue(metrics.getOperationLatency().get("checkForConflicts").startsWith("count=1 "));
+		Assert.assertTrue(metrics.getNodeLatency().get("getCalendar 10000").startsWith("count=1 "));
+		Assert.assertNotNull(metrics.getPhaseLatency().get("checkForConflicts BORROW"));
+		Assert.assertNotNull(metrics.getPhaseLatency().get("checkForConflicts SET_IDENTITY"));
+		Assert.assertNotNull(metrics.getPhaseLatency().get("checkForConflicts STORE"));
+		Assert.assertNull(metrics.getPhaseLatency().get("checkForConflicts FETCH"));
+		Assert.assertNotNull(metrics.getNodePhaseLatency().get("getCalendar 10000 FETCH"));
+		Assert.assertEquals(4, metrics.getPhaseLatency().size());
+		
+		Assert.assertEquals(Long.valueOf(1), metrics.getOutcomes().get("checkForConflicts SUCCESS"));
+		Assert.assertEquals(Long.valueOf(1), metrics.getOutcomes().get("getCalendar NODE_UNAVAILABLE"));
+		Assert.assertEquals(Long.valueOf(1), metrics.getNodeOutcomes().get("10000 SUCCESS"));
+	}
+	
+	/**
+	 * An operation begun inside another's open phase is excluded from that phase's time.
+	 * 
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testNestedOperationNotCountedInEnclosingPhase() throws InterruptedException {
+		OracleCalendarOperationMetrics metrics = new OracleCalendarOperationMetrics();
+		Operation outer = metrics.begin("getCalendar", "10000");
+		metrics.startPhase(Phase.PURGE);
+		Operation inner = metrics.begin("cancelAppointment", "10000");
+		Thread.sleep(300);
+		metrics.end(inner, null);
+		metrics.endPhase();
+		metrics.end(outer, null);
+		
+		Assert.assertTrue(maxMillis(metrics.getPhaseLatency().get("getCalendar PURGE")) < 300);
+		Assert.assertTrue(maxMillis(metrics.getOperationLatency().get("cancelAppointment")) >= 300);
+		Assert.assertTrue(maxMillis(metrics.getOperationLatency().get("getCalendar")) >= 300);
+	}
+	
+	/**
+	 * A successful operation that served a snapshot is counted as stale.
+	 */
+	@Test
+	public void testStaleOutcome() {
+		OracleCalendarOperationMetrics metrics = new OracleCalendarOperationMetrics();
+		Operation operation = metrics.begin("getCalendar", null);
+		metrics.markStale();
+		metrics.end(operation, null);
+		Assert.assertEquals(Long.valueOf(1), metrics.getOutcomes().get("getCalendar STALE"));
+		Assert.assertEquals(Long.valueOf(1), metrics.getNodeOutcomes().get("unknown STALE"));
+	}
+	
+	/**
+	 * Exceptions map to the expected outcomes.
+	 */
+	@Test
+	public void testClassify() {
+		Assert.assertEquals(Outcome.SUCCESS, OracleCalendarOperationMetrics.classify(null));
+		Assert.assertEquals(Outcome.CONFLICT, OracleCalendarOperationMetrics.classify(new ConflictExistsException("conflict")));
+		Assert.assertEquals(Outcome.NODE_SATURATED, OracleCalendarOperationMetrics.classify(new OracleCalendarNodeSaturatedException("10000", "full")));
+		Assert.assertEquals(Outcome.PARSE_ERROR, OracleCalendarOperationMetrics.classify(new OracleCalendarParserException("bad", new RuntimeException())));
+		Assert.assertEquals(Outcome.ORACLE_ERROR, OracleCalendarOperationMetrics.classify(new OracleCalendarDataAccessException("failed")));
+		Assert.assertEquals(Outcome.ERROR, OracleCalendarOperationMetrics.classify(new IllegalStateException()));
+	}
+	
+	/**
+	 * 
+	 * @param summary a {@link LatencyHistogram#toString()}
+	 * @return the max=...ms value
+	 */
+	private static long maxMillis(String summary) {
+		int start = summary.indexOf("max=") + "max=".length();
+		return Long.parseLong(summary.substring(start, summary.indexOf("ms", start)));
+	}
+	
+	/**
+	 * Percentiles report the upper bound of the bucket they fall in.
+	 */
+	@Test
+	public void testHistogramPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for(int i = 0; i < 98; i++) {
+			histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+		}
+		histogram.record(TimeUnit.MILLISECONDS.toNanos(150));
+		histogram.record(TimeUnit.SECONDS.toNanos(90));
+		
+		Assert.assertEquals(100, histogram.getCount());
+		Assert.assertEquals(5, histogram.getPercentileMillis(50));
+		Assert.assertEquals(5, histogram.getPercentileMillis(95));
+		Assert.assertEquals(200, histogram.getPercentileMillis(99));
+		Assert.assertEquals(90000, histogram.getPercentileMillis(100));
+		Assert.assertEquals(90000, histogram.getMaxMillis());
+	}
+}
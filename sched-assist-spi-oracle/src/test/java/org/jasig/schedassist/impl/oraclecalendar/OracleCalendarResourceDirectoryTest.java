@@ -0,0 +1,143 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.jasig.schedassist.model.IDelegateCalendarAccount;
+import org.junit.Test;
+
+/**
+ * Tests for {@link OracleCalendarResourceDirectory}.
+ *
+ * @version $Id: OracleCalendarResourceDirectoryTest.java $
+ */
+public class OracleCalendarResourceDirectoryTest {
+
+	/**
+	 * Lookups by name and unique id honor the owner and return copies carrying the owner.
+	 */
+	@Test
+	public void testLookups() {
+		OracleCalendarResourceDirectory directory = loadedDirectory();
+		OracleCalendarUserAccount owner = new OracleCalendarUserAccount();
+		owner.setUsername("npblair");
+		OracleCalendarUserAccount other = new OracleCalendarUserAccount();
+		other.setUsername("jstalnak");
+		
+		IDelegateCalendarAccount room = directory.getDelegate("cs room 1240", null);
+		Assert.assertNotNull(room);
+		Assert.assertEquals("20000:00100", room.getCalendarUniqueId());
+		Assert.assertNull(room.getAccountOwner());
+		
+		IDelegateCalendarAccount owned = directory.getDelegate("CS Room 1240", owner);
+		Assert.assertSame(owner, owned.getAccountOwner());
+		Assert.assertNotSame(room, owned);
+		Assert.assertEquals("GUID100", ((OracleCalendarResourceAccount) owned).getOracleGuid());
+		Assert.assertNull(directory.getDelegate("CS Room 1240", other));
+		
+		Assert.assertEquals("CS Projector", directory.getDelegateByUniqueId("20000:00101", other).getDisplayName());
+		Assert.assertNull(directory.getDelegateByUniqueId("20000:00101", owner));
+		Assert.assertNull(directory.getDelegateByUniqueId("20000:99999", null));
+	}
+	
+	/**
+	 * Searches match the start of the name, treat spaces as wildcards and are ordered by display name.
+	 */
+	@Test
+	public void testSearch() {
+		OracleCalendarResourceDirectory directory = loadedDirectory();
+		OracleCalendarUserAccount owner = new OracleCalendarUserAccount();
+		owner.setUsername("npblair");
+		
+		Assert.assertEquals(Arrays.asList("CS Projector", "CS Room 1240", "CS Room 2310"), names(directory.searchForDelegates("cs", null, 25)));
+		Assert.assertEquals(Arrays.asList("CS Room 1240", "CS Room 2310"), names(directory.searchForDelegates("cs room", null, 25)));
+		Assert.assertEquals(Arrays.asList("CS Room 2310"), names(directory.searchForDelegates("cs 23", null, 25)));
+		Assert.assertEquals(Arrays.asList("CS Room 1240", "CS Room 2310"), names(directory.searchForDelegates("cs", owner, 25)));
+		Assert.assertEquals(Arrays.asList("CS Projector"), names(directory.searchForDelegates("cs", null, 1)));
+		Assert.assertEquals(0, directory.searchForDelegates("room", null, 25).size());
+		Assert.assertEquals(6, directory.getLookups());
+	}
+	
+	/**
+	 * The directory refuses lookups until loaded.
+	 */
+	@Test
+	public void testNotReady() {
+		OracleCalendarResourceDirectory directory = new OracleCalendarResourceDirectory();
+		Assert.assertFalse(directory.isReady());
+		try {
+			directory.getDelegate("CS Room 1240", null);
+			Assert.fail("expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			// success
+		}
+	}
+	
+	/**
+	 * 
+	 * @return a directory holding three resources
+	 */
+	private OracleCalendarResourceDirectory loadedDirectory() {
+		OracleCalendarResourceDirectory directory = new OracleCalendarResourceDirectory();
+		List<OracleCalendarResourceAccount> resources = new ArrayList<OracleCalendarResourceAccount>();
+		resources.add(resource("CS Room 2310", "20000:00102", "npblair"));
+		resources.add(resource("CS Room 1240", "20000:00100", "npblair"));
+		resources.add(resource("CS Projector", "20000:00101", "jstalnak"));
+		directory.replace(resources);
+		Assert.assertTrue(directory.isReady());
+		Assert.assertEquals(3, directory.getResourceCount());
+		Assert.assertEquals(2, directory.getOwnerCount());
+		return directory;
+	}
+	
+	/**
+	 * 
+	 * @param name
+	 * @param ctcalxitemid
+	 * @param ownerUsername
+	 * @return a resource as the LDAP mapper would build it, with its GUID already resolved
+	 */
+	private OracleCalendarResourceAccount resource(String name, String ctcalxitemid, String ownerUsername) {
+		OracleCalendarResourceAccount resource = new OracleCalendarResourceAccount();
+		resource.setResourceName(name);
+		resource.setCtcalxitemid(ctcalxitemid);
+		resource.setAccountOwnerUsername(ownerUsername);
+		resource.setOracleGuid("GUID" + ctcalxitemid.substring(ctcalxitemid.length() - 3));
+		return resource;
+	}
+	
+	/**
+	 * 
+	 * @param accounts
+	 * @return the display names in order
+	 */
+	private List<String> names(List<IDelegateCalendarAccount> accounts) {
+		List<String> result = new ArrayList<String>();
+		for(IDelegateCalendarAccount account : accounts) {
+			result.add(account.getDisplayName());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,269 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.Arrays;
+
+import junit.framework.Assert;
+import net.fortuna.ical4j.model.component.VEvent;
+import net.fortuna.ical4j.model.property.Uid;
+import oracle.calendar.sdk.Api.StatusException;
+
+import org.jasig.schedassist.impl.oraclecalendar.OracleCalendarRetryPolicy.ReadBack;
+import org.jasig.schedassist.impl.oraclecalendar.OracleCalendarRetryPolicy.RetryableOperation;
+import org.junit.Test;
+
+/**
+ * Tests for {@link OracleCalendarRetryPolicy}.
+ *
+ * @version $Id: OracleCalendarRetryPolicyTest.java $
+ */
+public class OracleCalendarRetryPolicyTest {
+
+	private static final int UID_NOTFOUND = OracleCalendarStatusClassifier.resolveStatusCodes(Arrays.asList("CSDK_STAT_DATA_UID_NOTFOUND"))[0];
+
+	/**
+	 * Backoff doubles per attempt, stays in the upper half of its ceiling and is capped.
+	 */
+	@Test
+	public void testBackoffBounds() {
+		OracleCalendarRetryPolicy policy = new OracleCalendarRetryPolicy();
+		policy.setInitialBackoffMillis(100);
+		policy.setMaxBackoffMillis(300);
+		for(int i = 0; i < 50; i++) {
+			long first = policy.getBackoffMillis(1);
+			Assert.assertTrue(first >= 50 && first <= 100);
+			long second = policy.getBackoffMillis(2);
+			Assert.assertTrue(second >= 100 && second <= 200);
+			long capped = policy.getBackoffMillis(10);
+			Assert.assertTrue(capped >= 150 && capped <= 300);
+		}
+	}
+
+	/**
+	 * No retry after the last allowed attempt.
+	 */
+	@Test
+	public void testAttemptsExhausted() {
+		OracleCalendarRetryPolicy policy = new OracleCalendarRetryPolicy();
+		policy.setMaxAttempts(2);
+		policy.setInitialBackoffMillis(2);
+		final long started = System.currentTimeMillis();
+		Assert.assertTrue(policy.awaitRetry("getCalendar", 1, started));
+		Assert.assertFalse(policy.awaitRetry("getCalendar", 2, started));
+		policy.recordRecovery("getCalendar");
+		Assert.assertEquals(Long.valueOf(1), policy.getRetries().get("getCalendar"));
+		Assert.assertEquals(Long.valueOf(1), policy.getAttemptsExhausted().get("getCalendar"));
+		Assert.assertEquals(Long.valueOf(1), policy.getRecoveries().get("getCalendar"));
+	}
+
+	/**
+	 * No retry if the backoff would run past the time budget.
+	 */
+	@Test
+	public void testBudgetExhausted() {
+		OracleCalendarRetryPolicy policy = new OracleCalendarRetryPolicy();
+		policy.setInitialBackoffMillis(1000);
+		policy.setTimeBudgetMillis(100);
+		Assert.assertFalse(policy.awaitRetry("createAppointment", 1, System.currentTimeMillis()));
+		Assert.assertEquals(Long.valueOf(1), policy.getBudgetExhausted().get("createAppointment"));
+		Assert.assertNull(policy.getRetries().get("createAppointment"));
+	}
+	
+	/**
+	 * A read is attempted again after a transient failure.
+	 */
+	@Test
+	public void testExecuteRetriesTransientFailure() {
+		OracleCalendarRetryPolicy policy = fastPolicy();
+		FailingOperation operation = new FailingOperation(1, transientFailure(), null);
+		Assert.assertEquals("result", policy.execute("getCalendar", transientClassifier(), operation));
+		Assert.assertEquals(2, operation.attempts);
+		Assert.assertEquals(Long.valueOf(1), policy.getRecoveries().get("getCalendar"));
+	}
+	
+	/**
+	 * A failure that is not transient is not retried.
+	 */
+	@Test
+	public void testExecuteDoesNotRetryOtherFailures() {
+		OracleCalendarRetryPolicy policy = fastPolicy();
+		OracleCalendarDataAccessException failure = new OracleCalendarDataAccessException("no status");
+		FailingOperation operation = new FailingOperation(1, failure, null);
+		try {
+			policy.execute("getCalendar", transientClassifier(), operation);
+			Assert.fail("expected OracleCalendarDataAccessException");
+		} catch (OracleCalendarDataAccessException e) {
+			Assert.assertSame(failure, e);
+		}
+		Assert.assertEquals(1, operation.attempts);
+		Assert.assertNull(policy.getRetries().get("getCalendar"));
+	}
+	
+	/**
+	 * A create is attempted again if the read-back finds the block empty.
+	 */
+	@Test
+	public void testCreateRetriedIfReadBackFindsNothing() {
+		OracleCalendarRetryPolicy policy = fastPolicy();
+		FailingOperation operation = new FailingOperation(1, transientFailure(), ReadBack.afterCreate(null));
+		Assert.assertEquals("result", policy.execute("createAppointment", transientClassifier(), operation));
+		Assert.assertEquals(2, operation.attempts);
+		Assert.assertNull(policy.getUnsafeWrites().get("createAppointment"));
+	}
+	
+	/**
+	 * A create is not attempted again if the read-back finds an appointment in the block.
+	 */
+	@Test
+	public void testCreateNotRetriedIfReadBackFindsAppointment() {
+		OracleCalendarRetryPolicy policy = fastPolicy();
+		OracleCalendarDataAccessException failure = transientFailure();
+		FailingOperation operation = new FailingOperation(1, failure, ReadBack.afterCreate(event("stored")));
+		try {
+			policy.execute("createAppointment", transientClassifier(), operation);
+			Assert.fail("expected OracleCalendarDataAccessException");
+		} catch (OracleCalendarDataAccessException e) {
+			Assert.assertSame(failure, e);
+		}
+		Assert.assertEquals(1, operation.attempts);
+		Assert.assertEquals(Long.valueOf(1), policy.getUnsafeWrites().get("createAppointment"));
+	}
+	
+	/**
+	 * A write is not attempted again if the read-back fails.
+	 */
+	@Test
+	public void testNotRetriedIfReadBackFails() {
+		OracleCalendarRetryPolicy policy = fastPolicy();
+		OracleCalendarDataAccessException failure = transientFailure();
+		FailingOperation operation = new FailingOperation(1, failure, null) {
+			@Override
+			ReadBack readBack(OracleCalendarDataAccessException failure) {
+				throw new OracleCalendarDataAccessException("read-back failed");
+			}
+		};
+		try {
+			policy.execute("createAppointment", transientClassifier(), operation);
+			Assert.fail("expected OracleCalendarDataAccessException");
+		} catch (OracleCalendarDataAccessException e) {
+			Assert.assertSame(failure, e);
+		}
+		Assert.assertEquals(1, operation.attempts);
+		Assert.assertEquals(Long.valueOf(1), policy.getUnsafeWrites().get("createAppointment"));
+	}
+	
+	/**
+	 * A cancel whose event is gone on read-back succeeded; it is not attempted again.
+	 */
+	@Test
+	public void testCancelAppliedIfReadBackFindsNothing() {
+		OracleCalendarRetryPolicy policy = fastPolicy();
+		FailingOperation operation = new FailingOperation(1, transientFailure(), ReadBack.afterCancel(event("cancelled"), null));
+		Assert.assertEquals("applied", policy.execute("cancelAppointment", transientClassifier(), operation));
+		Assert.assertEquals(1, operation.attempts);
+		Assert.assertEquals(Long.valueOf(1), policy.getRecoveries().get("cancelAppointment"));
+	}
+	
+	/**
+	 * Read-back outcomes of a cancel, including events without a UID.
+	 */
+	@Test
+	public void testReadBackAfterCancel() {
+		Assert.assertEquals(ReadBack.NOT_APPLIED, ReadBack.afterCancel(event("cancelled"), event("cancelled")));
+		Assert.assertEquals(ReadBack.APPLIED, ReadBack.afterCancel(event("cancelled"), event("other")));
+		Assert.assertEquals(ReadBack.UNSAFE, ReadBack.afterCancel(event("cancelled"), new VEvent()));
+		Assert.assertEquals(ReadBack.UNSAFE, ReadBack.afterCancel(new VEvent(), event("other")));
+		Assert.assertEquals(ReadBack.APPLIED, ReadBack.afterCancel(new VEvent(), null));
+	}
+	
+	/**
+	 * 
+	 * @return a policy with short backoffs
+	 */
+	private OracleCalendarRetryPolicy fastPolicy() {
+		OracleCalendarRetryPolicy policy = new OracleCalendarRetryPolicy();
+		policy.setInitialBackoffMillis(2);
+		return policy;
+	}
+	/**
+	 * 
+	 * @return a classifier for which {@link #transientFailure()} is transient
+	 */
+	private OracleCalendarStatusClassifier transientClassifier() {
+		OracleCalendarStatusClassifier classifier = new OracleCalendarStatusClassifier();
+		classifier.setTransientStatusNames(Arrays.asList("CSDK_STAT_DATA_UID_NOTFOUND"));
+		return classifier;
+	}
+	/**
+	 * 
+	 * @return a failure {@link #transientClassifier()} classifies as transient
+	 */
+	private OracleCalendarDataAccessException transientFailure() {
+		return new OracleCalendarDataAccessException("caught Api.StatusException", new StatusException(UID_NOTFOUND, "CSDK_STAT_DATA_UID_NOTFOUND"));
+	}
+	/**
+	 * 
+	 * @param uid
+	 * @return an event with the uid
+	 */
+	private VEvent event(String uid) {
+		VEvent event = new VEvent();
+		event.getProperties().add(new Uid(uid));
+		return event;
+	}
+	
+	/**
+	 * Fails a number of times, then returns "result".
+	 */
+	private static class FailingOperation extends RetryableOperation<String> {
+		private final int failures;
+		private final OracleCalendarDataAccessException failure;
+		private final ReadBack readBack;
+		private int attempts = 0;
+		
+		/**
+		 * @param failures
+		 * @param failure
+		 * @param readBack the read-back outcome; null for a read
+		 */
+		FailingOperation(int failures, OracleCalendarDataAccessException failure, ReadBack readBack) {
+			this.failures = failures;
+			this.failure = failure;
+			this.readBack = readBack;
+		}
+		@Override
+		String attempt() {
+			if(++attempts <= failures) {
+				throw failure;
+			}
+			return "result";
+		}
+		@Override
+		ReadBack readBack(OracleCalendarDataAccessException e) {
+			return readBack == null ? super.readBack(e) : readBack;
+		}
+		@Override
+		String applied() {
+			return "applied";
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.util.Arrays;
+
+import junit.framework.Assert;
+import oracle.calendar.sdk.Api;
+import oracle.calendar.sdk.Api.StatusException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jasig.schedassist.impl.oraclecalendar.OracleCalendarStatusClassifier.StatusClass;
+import org.jasig.schedassist.oraclecalendar.OracleCalendarServerNode;
+import org.junit.Test;
+
+/**
+ * Tests for {@link OracleCalendarStatusClassifier}.
+ *
+ * @version $Id: OracleCalendarStatusClassifierTest.java $
+ */
+public class OracleCalendarStatusClassifierTest {
+
+	/**
+	 * Resolved by name, as {@link PooledOracleGUIDSourceImpl} does.
+	 */
+	private static final int UID_NOTFOUND = OracleCalendarStatusClassifier.resolveStatusCodes(Arrays.asList("CSDK_STAT_DATA_UID_NOTFOUND"))[0];
+	
+	private Log LOG = LogFactory.getLog(this.getClass());
+	
+	/**
+	 * Configured names take precedence, then the category of the constant's name.
+	 */
+	@Test
+	public void testClassify() {
+		OracleCalendarStatusClassifier classifier = new OracleCalendarStatusClassifier();
+		Assert.assertEquals(StatusClass.NODE_DOWN, classifier.classify(Api.CSDK_STAT_LIBRARY_SERVER_UNAVAILABLE));
+		Assert.assertEquals(StatusClass.NODE_DOWN, classifier.classify(Api.CSDK_STAT_LIBRARY_SERVER_UNAVAILABLE | Api.CSDK_STATMODE_FATAL));
+		Assert.assertEquals(StatusClass.PERMISSION, classifier.classify(Api.CSDK_STAT_SECUR_CANTBOOKATTENDEE | Api.CSDK_STATMODE_FATAL));
+		Assert.assertEquals(StatusClass.DATA_ERROR, classifier.classify(UID_NOTFOUND));
+		
+		classifier.setTransientStatusNames(Arrays.asList("CSDK_STAT_DATA_UID_NOTFOUND", "NOT_A_CSDK_CONSTANT"));
+		Assert.assertEquals(StatusClass.TRANSIENT, classifier.classify(UID_NOTFOUND));
+		Assert.assertTrue(StatusClass.TRANSIENT.isRetryable());
+		Assert.assertFalse(StatusClass.DATA_ERROR.isSessionInvalid());
+	}
+	
+	/**
+	 * A status exception wrapped in another exception is still found.
+	 */
+	@Test
+	public void testClassifyCauseChain() {
+		OracleCalendarStatusClassifier classifier = new OracleCalendarStatusClassifier();
+		StatusException cause = new StatusException(Api.CSDK_STAT_LIBRARY_SERVER_UNAVAILABLE, "CSDK_STAT_LIBRARY_SERVER_UNAVAILABLE");
+		Assert.assertEquals(StatusClass.NODE_DOWN, classifier.classify(new OracleCalendarDataAccessException("unable to retrieve Session from pool", cause)));
+		Assert.assertNull(classifier.classify(new OracleCalendarDataAccessException("no status")));
+	}
+	
+	/**
+	 * Every occurrence is counted, but only the first stack trace in the interval is logged.
+	 */
+	@Test
+	public void testRecordCountsAndRateLimits() {
+		OracleCalendarStatusClassifier classifier = new OracleCalendarStatusClassifier();
+		classifier.setStackTraceIntervalMillis(60000L);
+		OracleCalendarServerNode node = new OracleCalendarServerNode();
+		node.setNodeName("10000");
+		
+		for(int i = 0; i < 3; i++) {
+			StatusClass result = classifier.record(LOG, "test failure", node, new StatusException(Api.CSDK_STAT_LIBRARY_SERVER_UNAVAILABLE, "down"));
+			Assert.assertEquals(StatusClass.NODE_DOWN, result);
+		}
+		classifier.record(LOG, "test failure", null, new StatusException(UID_NOTFOUND, "not found"));
+		
+		Assert.assertEquals(Long.valueOf(3), classifier.getStatusClassCounts().get("10000 NODE_DOWN"));
+		Assert.assertEquals(Long.valueOf(1), classifier.getStatusClassCounts().get("unknown DATA_ERROR"));
+		Assert.assertEquals(2L, classifier.getSuppressedStackTraces());
+		Assert.assertEquals(2, classifier.getStatusCodeCounts().size());
+	}
+	
+	/**
+	 * {@link OracleCalendarStatusClassifier#matches(int, int[])} ignores the fatal mode.
+	 */
+	@Test
+	public void testMatches() {
+		int [] codes = new int [] { UID_NOTFOUND };
+		Assert.assertTrue(OracleCalendarStatusClassifier.matches(UID_NOTFOUND, codes));
+		Assert.assertTrue(OracleCalendarStatusClassifier.matches(UID_NOTFOUND | Api.CSDK_STATMODE_FATAL, codes));
+		Assert.assertFalse(OracleCalendarStatusClassifier.matches(Api.CSDK_STAT_LIBRARY_SERVER_UNAVAILABLE, codes));
+	}
+}
@@ -23,6 +23,7 @@ import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttributes;
 
 import org.easymock.EasyMock;
 import org.jasig.schedassist.model.ICalendarAccount;
@@ -45,7 +46,7 @@ public class OracleCalendarUserAccountAttributesMapperTest {
 	@Test
 	public void testControl() throws Exception {
 		OracleGUIDSource mockGUIDSource = EasyMock.createMock(OracleGUIDSource.class);
-		EasyMock.expect(mockGUIDSource.getOracleGUID(EasyMock.isA(ICalendarAccount.class))).andReturn("0123456789");
+		EasyMock.expect(mockGUIDSource.lookupOracleGUID(EasyMock.isA(ICalendarAccount.class))).andReturn(OracleGUIDLookupResult.found("0123456789"));
 		EasyMock.replay(mockGUIDSource);
 		
 		NamingEnumeration<String> mockAttributeIds = EasyMock.createMock(NamingEnumeration.class);
@@ -97,7 +98,7 @@ public class OracleCalendarUserAccountAttributesMapperTest {
 	@Test
 	public void testAdvisor() throws Exception {
 		OracleGUIDSource mockGUIDSource = EasyMock.createMock(OracleGUIDSource.class);
-		EasyMock.expect(mockGUIDSource.getOracleGUID(EasyMock.isA(ICalendarAccount.class))).andReturn("0123456789");
+		EasyMock.expect(mockGUIDSource.lookupOracleGUID(EasyMock.isA(ICalendarAccount.class))).andReturn(OracleGUIDLookupResult.found("0123456789"));
 		EasyMock.replay(mockGUIDSource);
 		
 		NamingEnumeration<String> mockAttributeIds = EasyMock.createMock(NamingEnumeration.class);
@@ -156,7 +157,7 @@ public class OracleCalendarUserAccountAttributesMapperTest {
 	@Test
 	public void testStudent() throws Exception {
 		OracleGUIDSource mockGUIDSource = EasyMock.createMock(OracleGUIDSource.class);
-		EasyMock.expect(mockGUIDSource.getOracleGUID(EasyMock.isA(ICalendarAccount.class))).andReturn("0123456789");
+		EasyMock.expect(mockGUIDSource.lookupOracleGUID(EasyMock.isA(ICalendarAccount.class))).andReturn(OracleGUIDLookupResult.found("0123456789"));
 		EasyMock.replay(mockGUIDSource);
 		
 		NamingEnumeration<String> mockAttributeIds = EasyMock.createMock(NamingEnumeration.class);
@@ -204,6 +205,52 @@ public class OracleCalendarUserAccountAttributesMapperTest {
 		EasyMock.verify(mockAttributeIds, mockAttributes, mockGUIDSource);
 	}
 	
+	/**
+	 * Attributes outside of the retained set are not copied into the attributes map,
+	 * and retained keys are shared between accounts.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testRetainedAttributes() throws Exception {
+		OracleCalendarUserAccountAttributesMapper mapper = new OracleCalendarUserAccountAttributesMapper(
+				new DeferredOracleGUIDResolver(null), 
+				OracleLdapAttributeNames.retained(new String [] { "uid", "ctcalxitemid", "wisceducalemail", "givenName", "sn" }));
+		
+		OracleCalendarUserAccount user = (OracleCalendarUserAccount) mapper.mapFromAttributes(entry("username", "20000:12345"));
+		OracleCalendarUserAccount other = (OracleCalendarUserAccount) mapper.mapFromAttributes(entry("other", "20000:12346"));
+		Assert.assertEquals("username", user.getUsername());
+		Assert.assertEquals("FIRST LAST", user.getDisplayName());
+		Assert.assertEquals("FIRST", user.getAttributes().get("givenname"));
+		Assert.assertNull(user.getAttributes().get("wisceduisisstudentemplid"));
+		Assert.assertEquals(5, user.getAttributes().size());
+		for(String key : user.getAttributes().keySet()) {
+			Assert.assertTrue(other.getAttributes().containsKey(key));
+			for(String otherKey : other.getAttributes().keySet()) {
+				if(key.equals(otherKey)) {
+					Assert.assertSame(key, otherKey);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @param uid
+	 * @param ctcalxitemid
+	 * @return a directory entry
+	 */
+	private Attributes entry(String uid, String ctcalxitemid) {
+		BasicAttributes attributes = new BasicAttributes(true);
+		attributes.put("uid", uid);
+		attributes.put("ctcalxitemid", ctcalxitemid);
+		attributes.put("wisceducalemail", uid + "@wisc.edu");
+		attributes.put("givenName", "FIRST");
+		attributes.put("sn", "LAST");
+		attributes.put("wisceduisisstudentemplid", "01234567");
+		return attributes;
+	}
+	
 	/**
 	 * 
 	 * @param attributeValue
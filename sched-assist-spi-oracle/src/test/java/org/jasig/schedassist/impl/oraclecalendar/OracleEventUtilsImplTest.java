@@ -794,6 +794,36 @@ public class OracleEventUtilsImplTest {
 		Assert.assertTrue(OracleEventUtilsImpl.isOracleShowAsFree(attendee));
 	}
 	
+	/**
+	 * Verify attendeeMatchesPerson follows changes to the fields behind the account's cached
+	 * {@link OracleAttendeeIdentity}.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testAttendeeMatchesPersonAfterAccountChanges() throws Exception {
+		OracleCalendarUserAccount user = new OracleCalendarUserAccount();
+		user.setCtcalxitemid("10000:00001");
+		user.setEmailAddress("person@domain.edu");
+		user.setGivenName("GIVEN");
+		user.setSurname("SURNAME");
+		
+		Attendee attendee = this.eventUtils.constructAvailableAttendee(user, AppointmentRole.VISITOR);
+		Assert.assertTrue(this.eventUtils.attendeeMatchesPerson(attendee, user));
+		Assert.assertSame(user.getAttendeeIdentity(), user.getAttendeeIdentity());
+		
+		user.setSurname("OTHERNAME");
+		Assert.assertFalse(this.eventUtils.attendeeMatchesPerson(attendee, user));
+		user.setSurname("SURNAME");
+		Assert.assertTrue(this.eventUtils.attendeeMatchesPerson(attendee, user));
+		
+		user.setEmailAddress("someone.else@domain.edu");
+		Assert.assertFalse(this.eventUtils.attendeeMatchesPerson(attendee, user));
+		
+		user.setEmailAddress(null);
+		Assert.assertFalse(this.eventUtils.attendeeMatchesPerson(attendee, user));
+	}
+	
 	/**
 	 * Call {@link OracleEventUtilsImpl#getAttendeeForUserFromEvent(VEvent, CalendarUser)} on an 
 	 * event with 0 {@link Attendee}s, assert null return.
@@ -1208,6 +1238,71 @@ public class OracleEventUtilsImplTest {
 		}
 	}
 	
+	/**
+	 * Verify getConflictingEvents applies the willEventCauseConflict criteria to each event
+	 * and returns the conflicts in start time order.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetConflictingEvents() throws Exception {
+		OracleCalendarUserAccount user = new OracleCalendarUserAccount();
+		user.setCtcalxitemid("10000:00001");
+		user.setEmailAddress("person@domain.edu");
+		user.setGivenName("GIVEN");
+		user.setSurname("SURNAME");
+		
+		VEvent late = conflictTestEvent("20100405-1400", "busy, late", user, "BUSY");
+		VEvent free = conflictTestEvent("20100405-1100", "show as free", user, "FREE");
+		VEvent early = conflictTestEvent("20100405-0900", "busy, early", user, "BUSY");
+		VEvent note = new VEvent(new net.fortuna.ical4j.model.DateTime(makeDateTime("20100405-0800")),
+				new net.fortuna.ical4j.model.DateTime(makeDateTime("20100405-0830")), "daily note");
+		note.getProperties().add(OracleEventUtilsImpl.ORACLE_DAILY_NOTE_PROPERTY);
+		OracleCalendarUserAccount someoneElse = new OracleCalendarUserAccount();
+		someoneElse.setEmailAddress("person2@domain.edu");
+		someoneElse.setGivenName("GIVEN2");
+		someoneElse.setSurname("SURNAME2");
+		VEvent notAttending = conflictTestEvent("20100405-1000", "someone else", someoneElse, "BUSY");
+		
+		ComponentList components = new ComponentList();
+		components.add(late);
+		components.add(free);
+		components.add(note);
+		components.add(notAttending);
+		components.add(early);
+		
+		List<VEvent> conflicts = this.eventUtils.getConflictingEvents(user, components);
+		Assert.assertEquals(2, conflicts.size());
+		Assert.assertSame(early, conflicts.get(0));
+		Assert.assertSame(late, conflicts.get(1));
+		for(Object o : components) {
+			VEvent event = (VEvent) o;
+			Assert.assertEquals(conflicts.contains(event), this.eventUtils.willEventCauseConflict(user, event));
+		}
+	}
+	
+	/**
+	 * 
+	 * @param start
+	 * @param summary
+	 * @param attendeeAccount
+	 * @param showAsFree
+	 * @return a 30 minute Oracle appointment with the account as attendee
+	 * @throws Exception
+	 */
+	private VEvent conflictTestEvent(String start, String summary, OracleCalendarUserAccount attendeeAccount, String showAsFree) throws Exception {
+		Date startTime = makeDateTime(start);
+		VEvent event = new VEvent(new net.fortuna.ical4j.model.DateTime(startTime),
+				new net.fortuna.ical4j.model.DateTime(DateUtils.addMinutes(startTime, 30)), summary);
+		Attendee attendee = new Attendee();
+		attendee.setValue("mailto:" + attendeeAccount.getEmailAddress());
+		attendee.getParameters().add(new XParameter("X-ORACLE-SHOWASFREE", showAsFree));
+		attendee.getParameters().add(new Cn(attendeeAccount.getDisplayName()));
+		event.getProperties().add(attendee);
+		event.getProperties().add(OracleEventUtilsImpl.ORACLE_APPOINTMENT_PROPERTY);
+		return event;
+	}
+	
 	@Test
 	public void testResourceOwnerGroupAppointment() throws IOException, ParserException {
 		ClassPathResource resource = new ClassPathResource("org/jasig/schedassist/impl/oraclecalendar/resource-owner-group-appt.ics");
@@ -0,0 +1,185 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link OracleGUIDLogStore}.
+ *
+ * @version $Id: OracleGUIDLogStoreTest.java $
+ */
+public class OracleGUIDLogStoreTest {
+
+	private File file;
+	
+	@Before
+	public void setUp() throws Exception {
+		// the store may not be kept under java.io.tmpdir
+		File directory = new File("target", "oracle-guid-test");
+		directory.mkdirs();
+		file = new File(directory, "oracle-guid.log");
+		file.delete();
+	}
+	
+	@After
+	public void tearDown() {
+		file.delete();
+		WarmRestartCacheSnapshotter.backupFile(file).delete();
+	}
+
+	/**
+	 * Mappings written by one instance are preloaded by the next; a truncated
+	 * final record is skipped.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testPreloadSkipsDamagedRecord() throws Exception {
+		
+		OracleGUIDLogStore store = new OracleGUIDLogStore();
+		store.setStoreFile(file);
+		store.afterPropertiesSet();
+		Assert.assertNull(store.get("20000:01182"));
+		store.put("20000:01182", "200000118219869582153896");
+		store.put("20000:01516", "200000151619869596736320");
+		store.put("20000:01182", "200000118219869582153896");
+		Assert.assertEquals(2, store.getSize());
+		Assert.assertEquals(2, store.getLogRecords());
+		store.destroy();
+		
+		// simulate a crash part way through an append
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8");
+		writer.write("20000:05555\t2000005555198");
+		writer.close();
+		
+		OracleGUIDLogStore reloaded = new OracleGUIDLogStore();
+		reloaded.setStoreFile(file);
+		reloaded.afterPropertiesSet();
+		Assert.assertEquals(2, reloaded.getSize());
+		Assert.assertEquals(1, reloaded.getDamagedRecords());
+		Assert.assertEquals("200000118219869582153896", reloaded.get("20000:01182"));
+		Assert.assertEquals("200000151619869596736320", reloaded.get("20000:01516"));
+		Assert.assertNull(reloaded.get("20000:05555"));
+		
+		// the next append starts on a new line rather than being glued onto the torn record
+		reloaded.put("20000:06666", "200000666619869596736320");
+		reloaded.destroy();
+		
+		OracleGUIDLogStore again = new OracleGUIDLogStore();
+		again.setStoreFile(file);
+		again.afterPropertiesSet();
+		Assert.assertEquals(3, again.getSize());
+		Assert.assertEquals(1, again.getDamagedRecords());
+		Assert.assertEquals("200000666619869596736320", again.get("20000:06666"));
+		again.destroy();
+	}
+	
+	/**
+	 * A crash after the store was moved aside, but before the compacted log replaced it, 
+	 * loses nothing: the previous log is restored at startup.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testInterruptedCompactionRecovered() throws Exception {
+		OracleGUIDLogStore store = new OracleGUIDLogStore();
+		store.setStoreFile(file);
+		store.afterPropertiesSet();
+		store.put("20000:01182", "200000118219869582153896");
+		store.put("20000:01516", "200000151619869596736320");
+		store.destroy();
+		
+		File backup = WarmRestartCacheSnapshotter.backupFile(file);
+		Assert.assertTrue(file.renameTo(backup));
+		
+		OracleGUIDLogStore reloaded = new OracleGUIDLogStore();
+		reloaded.setStoreFile(file);
+		reloaded.afterPropertiesSet();
+		Assert.assertEquals(2, reloaded.getSize());
+		Assert.assertEquals("200000151619869596736320", reloaded.get("20000:01516"));
+		Assert.assertFalse(backup.exists());
+		reloaded.destroy();
+	}
+	
+	/**
+	 * A store file under java.io.tmpdir is refused.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testTempDirectoryRefused() throws Exception {
+		OracleGUIDLogStore store = new OracleGUIDLogStore();
+		store.setStoreFile(new File(System.getProperty("java.io.tmpdir"), "oracle-guid.log"));
+		try {
+			store.afterPropertiesSet();
+			Assert.fail("expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			// success
+		}
+	}
+	
+	/**
+	 * Compaction drops damaged records and keeps every mapping, including across index resizes.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testCompaction() throws Exception {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		for(int i = 0; i < 10; i++) {
+			writer.write("garbage\n");
+		}
+		writer.close();
+		
+		OracleGUIDLogStore store = new OracleGUIDLogStore();
+		store.setStoreFile(file);
+		store.afterPropertiesSet();
+		for(int i = 0; i < 3000; i++) {
+			store.put("20000:" + i, "guid" + i);
+		}
+		Assert.assertEquals(3010, store.getLogRecords());
+		Assert.assertFalse(store.compactIfNeeded());
+		store.setCompactionThreshold(1.0);
+		Assert.assertTrue(store.compactIfNeeded());
+		Assert.assertEquals(3000, store.getLogRecords());
+		store.put("20000:3000", "guid3000");
+		store.destroy();
+		
+		OracleGUIDLogStore reloaded = new OracleGUIDLogStore();
+		reloaded.setStoreFile(file);
+		reloaded.afterPropertiesSet();
+		Assert.assertEquals(3001, reloaded.getSize());
+		Assert.assertEquals(0, reloaded.getDamagedRecords());
+		for(int i = 0; i <= 3000; i++) {
+			Assert.assertEquals("guid" + i, reloaded.get("20000:" + i));
+		}
+		reloaded.destroy();
+	}
+}
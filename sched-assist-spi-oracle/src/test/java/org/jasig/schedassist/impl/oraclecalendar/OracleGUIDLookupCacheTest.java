@@ -0,0 +1,104 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import junit.framework.Assert;
+import net.sf.ehcache.CacheManager;
+
+import org.jasig.schedassist.impl.oraclecalendar.OracleGUIDLookupResult.Outcome;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link OracleGUIDLookupCache}.
+ *
+ * @version $Id: OracleGUIDLookupCacheTest.java $
+ */
+public class OracleGUIDLookupCacheTest {
+
+	private static final String CACHE_NAME = "oracleGUIDLookupCacheTest";
+	private CacheManager cacheManager;
+	private OracleGUIDLookupCache lookupCache;
+	
+	@Before
+	public void setUp() {
+		cacheManager = CacheManager.create();
+		cacheManager.addCache(CACHE_NAME);
+		lookupCache = new OracleGUIDLookupCache();
+		lookupCache.setCache(cacheManager.getEhcache(CACHE_NAME));
+	}
+	@After
+	public void tearDown() {
+		cacheManager.removeCache(CACHE_NAME);
+	}
+	
+	/**
+	 * Found GUIDs and permanent misses are served from the cache.
+	 */
+	@Test
+	public void testFoundAndNotFound() {
+		Assert.assertNull(lookupCache.get("20000:01182"));
+		lookupCache.put("20000:01182", OracleGUIDLookupResult.found("200000118219869582153896"));
+		lookupCache.put("20000:99999", OracleGUIDLookupResult.notFound());
+		
+		Assert.assertEquals("200000118219869582153896", lookupCache.get("20000:01182").getGuid());
+		OracleGUIDLookupResult miss = lookupCache.get("20000:99999");
+		Assert.assertEquals(Outcome.NOT_FOUND, miss.getOutcome());
+		Assert.assertNull(miss.getGuid());
+		Assert.assertEquals(1, lookupCache.getFoundHits());
+		Assert.assertEquals(1, lookupCache.getNotFoundHits());
+		Assert.assertEquals(1, lookupCache.getCacheMisses());
+		Assert.assertEquals(1, lookupCache.getFoundLookups());
+		Assert.assertEquals(1, lookupCache.getNotFoundLookups());
+	}
+	
+	/**
+	 * An error is served during its backoff, the backoff doubles with consecutive errors,
+	 * and an elapsed backoff asks for a new lookup.
+	 */
+	@Test
+	public void testErrorBackoff() {
+		lookupCache.setErrorInitialBackoffSeconds(5);
+		lookupCache.setErrorMaxBackoffSeconds(300);
+		Assert.assertEquals(5, lookupCache.getBackoffSeconds(1));
+		Assert.assertEquals(10, lookupCache.getBackoffSeconds(2));
+		Assert.assertEquals(160, lookupCache.getBackoffSeconds(6));
+		Assert.assertEquals(300, lookupCache.getBackoffSeconds(7));
+		Assert.assertEquals(300, lookupCache.getBackoffSeconds(50));
+		
+		lookupCache.put("20000:01182", OracleGUIDLookupResult.error());
+		lookupCache.put("20000:01182", OracleGUIDLookupResult.error());
+		OracleGUIDLookupResult cached = lookupCache.get("20000:01182");
+		Assert.assertEquals(Outcome.ERROR, cached.getOutcome());
+		Assert.assertEquals(2, cached.getConsecutiveErrors());
+		Assert.assertTrue(cached.getRetryAfter() > System.currentTimeMillis() + 5000L);
+		Assert.assertEquals(1, lookupCache.getErrorBackoffHits());
+		Assert.assertEquals(2, lookupCache.getErrorLookups());
+		
+		lookupCache.setErrorInitialBackoffSeconds(0);
+		lookupCache.put("20000:05555", OracleGUIDLookupResult.error());
+		Assert.assertNull(lookupCache.get("20000:05555"));
+		Assert.assertEquals(1, lookupCache.getErrorRetries());
+		
+		lookupCache.put("20000:01182", OracleGUIDLookupResult.found("200000118219869582153896"));
+		Assert.assertEquals(Outcome.FOUND, lookupCache.get("20000:01182").getOutcome());
+	}
+}
@@ -19,6 +19,9 @@
 
 package org.jasig.schedassist.impl.oraclecalendar;
 
+import java.util.Arrays;
+import java.util.Map;
+
 import junit.framework.Assert;
 
 import org.junit.Test;
@@ -76,5 +79,24 @@ public class OracleGUIDSourceImplTest {
 		Assert.assertEquals("200000151619869596736320", guid);
 	}
 	
+	@Test
+	public void testBatch() throws Exception {
+		OracleCalendarUserAccount user = new OracleCalendarUserAccount();
+		user.setUsername("npblair");
+		user.setCtcalxitemid("20000:01182");
+		OracleCalendarUserAccount fake = new OracleCalendarUserAccount();
+		fake.setUsername("fake");
+		fake.setCtcalxitemid("20000:99999");
+		OracleCalendarResourceAccount resource = new OracleCalendarResourceAccount();
+		resource.setCtcalxitemid("20000:01516");
+		resource.setResourceName("DOIT blair test");
+		
+		Map<String, String> guids = this.oracleGUIDSource.getOracleGUIDs(Arrays.asList(user, fake, resource));
+		Assert.assertEquals(2, guids.size());
+		Assert.assertEquals("200000118219869582153896", guids.get("20000:01182"));
+		Assert.assertEquals("200000151619869596736320", guids.get("20000:01516"));
+		Assert.assertFalse(guids.containsKey("20000:99999"));
+	}
+	
 	
 }
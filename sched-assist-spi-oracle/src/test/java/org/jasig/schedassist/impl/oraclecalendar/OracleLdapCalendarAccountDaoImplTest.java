@@ -19,6 +19,9 @@
 
 package org.jasig.schedassist.impl.oraclecalendar;
 
+import java.util.Arrays;
+import java.util.Map;
+
 import javax.annotation.Resource;
 
 import org.jasig.schedassist.model.ICalendarAccount;
@@ -121,4 +124,25 @@ public class OracleLdapCalendarAccountDaoImplTest {
 		Assert.assertEquals(controlRoleBasedAccount.getEmailAddress(), roleAccount.getEmailAddress());
 		Assert.assertEquals(controlRoleBasedAccount.getDisplayName(), roleAccount.getDisplayName());
 	}
+	
+	/**
+	 * Lookup the control accounts together by username and by unique id.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testBulkLookup() throws Exception {
+		Map<String, ICalendarAccount> byUsername = this.calendarAccountDao.getCalendarAccounts(
+				Arrays.asList(controlUser.getUsername(), controlRoleBasedAccount.getUsername(), "nonexistent"));
+		Assert.assertEquals(2, byUsername.size());
+		Assert.assertEquals(controlUser.getCalendarUniqueId(), byUsername.get(controlUser.getUsername()).getCalendarUniqueId());
+		Assert.assertEquals(controlRoleBasedAccount.getCalendarUniqueId(), byUsername.get(controlRoleBasedAccount.getUsername()).getCalendarUniqueId());
+		Assert.assertFalse(byUsername.containsKey("nonexistent"));
+		
+		Map<String, ICalendarAccount> byUniqueId = this.calendarAccountDao.getCalendarAccountsFromUniqueIds(
+				Arrays.asList(controlUser.getCalendarUniqueId(), controlRoleBasedAccount.getCalendarUniqueId()));
+		Assert.assertEquals(2, byUniqueId.size());
+		Assert.assertEquals(controlUser.getUsername(), byUniqueId.get(controlUser.getCalendarUniqueId()).getUsername());
+		Assert.assertEquals(controlRoleBasedAccount.getUsername(), byUniqueId.get(controlRoleBasedAccount.getCalendarUniqueId()).getUsername());
+	}
 }
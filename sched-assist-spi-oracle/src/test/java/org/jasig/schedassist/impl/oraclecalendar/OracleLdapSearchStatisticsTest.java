@@ -0,0 +1,57 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link OracleLdapSearchStatistics}.
+ *
+ * @version $Id: OracleLdapSearchStatisticsTest.java $
+ */
+public class OracleLdapSearchStatisticsTest {
+
+	/**
+	 * Verify the counters are kept separately for each search kind.
+	 */
+	@Test
+	public void testRecordByKind() {
+		OracleLdapSearchStatistics statistics = new OracleLdapSearchStatistics();
+		statistics.record("account.search", 25, true, false);
+		statistics.record("account.search", 3, false, false);
+		statistics.record("account.search", 0, false, true);
+		statistics.record("account.search", 0, false, false);
+		statistics.record("resource.lookup", 1, false, false);
+
+		Assert.assertEquals(Long.valueOf(4), statistics.getSearches().get("account.search"));
+		Assert.assertEquals(Long.valueOf(2), statistics.getEmptySearches().get("account.search"));
+		Assert.assertEquals(Long.valueOf(1), statistics.getTruncatedSearches().get("account.search"));
+		Assert.assertEquals(Long.valueOf(1), statistics.getTimedOutSearches().get("account.search"));
+		Assert.assertEquals(25.0, statistics.getTruncatedPercent().get("account.search"), 0.001);
+		Assert.assertEquals(7.0, statistics.getMeanResults().get("account.search"), 0.001);
+
+		Assert.assertEquals(Long.valueOf(1), statistics.getSearches().get("resource.lookup"));
+		Assert.assertEquals(Long.valueOf(0), statistics.getTruncatedSearches().get("resource.lookup"));
+		Assert.assertNull(statistics.getSearches().get("account.bulk"));
+	}
+}
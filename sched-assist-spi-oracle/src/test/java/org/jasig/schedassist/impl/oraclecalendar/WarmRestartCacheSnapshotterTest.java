@@ -0,0 +1,226 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.schedassist.impl.oraclecalendar;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Collections;
+import java.util.Date;
+
+import junit.framework.Assert;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+
+import org.junit.After;
+import org.junit.Before;
+import org.jasig.schedassist.impl.oraclecalendar.OracleCalendarAccountCache.KeyType;
+import org.junit.Test;
+
+/**
+ * Tests for {@link WarmRestartCacheSnapshotter}.
+ *
+ * @version $Id: WarmRestartCacheSnapshotterTest.java $
+ */
+public class WarmRestartCacheSnapshotterTest {
+
+	private static final String CACHE_NAME = "warmRestartSnapshotterTestCache";
+
+	private CacheManager cacheManager;
+	private File snapshotFile;
+
+	@Before
+	public void setUp() throws Exception {
+		cacheManager = CacheManager.create();
+		cacheManager.addCache(CACHE_NAME);
+		// snapshots may not be kept under java.io.tmpdir
+		File directory = new File("target", "cache-snapshot-test");
+		directory.mkdirs();
+		snapshotFile = new File(directory, "cache-snapshot.bin");
+		snapshotFile.delete();
+	}
+
+	@After
+	public void tearDown() {
+		cacheManager.removeCache(CACHE_NAME);
+		snapshotFile.delete();
+		WarmRestartCacheSnapshotter.backupFile(snapshotFile).delete();
+	}
+
+	/**
+	 * Write a snapshot, empty the cache, and verify the entries come back on load.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testWriteAndLoad() throws Exception {
+		Ehcache cache = cacheManager.getEhcache(CACHE_NAME);
+		OracleCalendarUserAccount account = new OracleCalendarUserAccount();
+		account.setUsername("someuser");
+		account.setCtcalxitemid("20000:01234");
+		cache.put(new Element("someuser", account));
+		cache.put(new Element("guid:20000:01234", "0123456789ABCDEF"));
+
+		WarmRestartCacheSnapshotter snapshotter = new WarmRestartCacheSnapshotter();
+		snapshotter.setCacheManager(cacheManager);
+		snapshotter.setCacheNames(Collections.singletonList(CACHE_NAME));
+		snapshotter.setSnapshotFile(snapshotFile);
+		// no snapshot yet, loads nothing
+		snapshotter.afterPropertiesSet();
+
+		Assert.assertEquals(2, snapshotter.writeSnapshot());
+		Assert.assertTrue(snapshotFile.exists());
+
+		cache.removeAll();
+		Assert.assertEquals(0, cache.getSize());
+
+		Assert.assertEquals(2, snapshotter.loadSnapshot());
+		Assert.assertEquals("0123456789ABCDEF", cache.get("guid:20000:01234").getObjectValue());
+		OracleCalendarUserAccount loaded = (OracleCalendarUserAccount) cache.get("someuser").getObjectValue();
+		Assert.assertEquals("someuser", loaded.getUsername());
+		Assert.assertEquals("20000:01234", loaded.getCtcalxitemid());
+	}
+
+	/**
+	 * A second snapshot replaces the first; a crash after the previous snapshot was moved aside 
+	 * leaves it to be restored at startup.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testInterruptedWriteRecovered() throws Exception {
+		Ehcache cache = cacheManager.getEhcache(CACHE_NAME);
+		cache.put(new Element("guid:20000:01234", "0123456789ABCDEF"));
+
+		WarmRestartCacheSnapshotter snapshotter = new WarmRestartCacheSnapshotter();
+		snapshotter.setCacheManager(cacheManager);
+		snapshotter.setCacheNames(Collections.singletonList(CACHE_NAME));
+		snapshotter.setSnapshotFile(snapshotFile);
+		snapshotter.afterPropertiesSet();
+		Assert.assertEquals(1, snapshotter.writeSnapshot());
+		cache.put(new Element("guid:20000:05678", "56789ABCDEF01234"));
+		Assert.assertEquals(2, snapshotter.writeSnapshot());
+		
+		File backup = WarmRestartCacheSnapshotter.backupFile(snapshotFile);
+		Assert.assertFalse(backup.exists());
+		Assert.assertTrue(snapshotFile.renameTo(backup));
+		cache.removeAll();
+		
+		WarmRestartCacheSnapshotter restarted = new WarmRestartCacheSnapshotter();
+		restarted.setCacheManager(cacheManager);
+		restarted.setCacheNames(Collections.singletonList(CACHE_NAME));
+		restarted.setSnapshotFile(snapshotFile);
+		restarted.afterPropertiesSet();
+		Assert.assertTrue(snapshotFile.exists());
+		Assert.assertFalse(backup.exists());
+		Assert.assertEquals("56789ABCDEF01234", cache.get("guid:20000:05678").getObjectValue());
+	}
+
+	/**
+	 * A file that is not a snapshot is ignored.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testIgnoreForeignFile() throws Exception {
+		FileOutputStream out = new FileOutputStream(snapshotFile);
+		out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21 });
+		out.close();
+
+		WarmRestartCacheSnapshotter snapshotter = new WarmRestartCacheSnapshotter();
+		snapshotter.setCacheManager(cacheManager);
+		snapshotter.setCacheNames(Collections.singletonList(CACHE_NAME));
+		snapshotter.setSnapshotFile(snapshotFile);
+		Assert.assertEquals(0, snapshotter.loadSnapshot());
+	}
+
+	/**
+	 * A snapshot file under java.io.tmpdir is refused.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testTempDirectoryRefused() throws Exception {
+		WarmRestartCacheSnapshotter snapshotter = new WarmRestartCacheSnapshotter();
+		snapshotter.setCacheManager(cacheManager);
+		snapshotter.setCacheNames(Collections.singletonList(CACHE_NAME));
+		snapshotter.setSnapshotFile(new File(System.getProperty("java.io.tmpdir"), "cache-snapshot.bin"));
+		try {
+			snapshotter.afterPropertiesSet();
+			Assert.fail("expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			// success
+		}
+	}
+	
+	/**
+	 * Entries naming a class that is not allowed are skipped on load.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDisallowedClassSkipped() throws Exception {
+		Ehcache cache = cacheManager.getEhcache(CACHE_NAME);
+		cache.put(new Element("allowed", "0123456789ABCDEF"));
+		cache.put(new Element("disallowed", new Date()));
+		
+		WarmRestartCacheSnapshotter snapshotter = new WarmRestartCacheSnapshotter();
+		snapshotter.setCacheManager(cacheManager);
+		snapshotter.setCacheNames(Collections.singletonList(CACHE_NAME));
+		snapshotter.setSnapshotFile(snapshotFile);
+		Assert.assertEquals(2, snapshotter.writeSnapshot());
+		
+		cache.removeAll();
+		Assert.assertEquals(1, snapshotter.loadSnapshot());
+		Assert.assertEquals("0123456789ABCDEF", cache.get("allowed").getObjectValue());
+		Assert.assertNull(cache.get("disallowed"));
+	}
+	
+	/**
+	 * Accounts restored into an {@link OracleCalendarAccountCache}'s cache can be found by their secondary keys.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testAccountCacheReindexed() throws Exception {
+		Ehcache cache = cacheManager.getEhcache(CACHE_NAME);
+		OracleCalendarAccountCache accountCache = new OracleCalendarAccountCache();
+		accountCache.setCache(cache);
+		accountCache.afterPropertiesSet();
+		OracleCalendarUserAccount account = new OracleCalendarUserAccount();
+		account.setUsername("someuser");
+		account.setCtcalxitemid("20000:01234");
+		account.setEmailAddress("someuser@wisc.edu");
+		accountCache.put(account);
+		
+		WarmRestartCacheSnapshotter snapshotter = new WarmRestartCacheSnapshotter();
+		snapshotter.setCacheManager(cacheManager);
+		snapshotter.setCacheNames(Collections.singletonList(CACHE_NAME));
+		snapshotter.setSnapshotFile(snapshotFile);
+		snapshotter.setAccountCaches(Collections.singletonList(accountCache));
+		Assert.assertEquals(1, snapshotter.writeSnapshot());
+		
+		cache.removeAll();
+		Assert.assertEquals(0, accountCache.getSecondaryKeyCount());
+		snapshotter.afterPropertiesSet();
+		Assert.assertNotNull(accountCache.get(KeyType.EMAIL_ADDRESS, "someuser@wisc.edu"));
+		Assert.assertNotNull(accountCache.get(KeyType.CALENDAR_UNIQUE_ID, "20000:01234"));
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.schedassist.web.admin;
+
+import org.jasig.schedassist.impl.oraclecalendar.OracleCalendarAccountNotFoundCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.ModelMap;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+/**
+ * Administrative {@link Controller} for viewing and invalidating
+ * the {@link OracleCalendarAccountNotFoundCache}.
+ * 
+ * @version $Id: AccountNotFoundCacheAdminController.java $
+ */
+@Controller
+@RequestMapping("/admin/account-not-found-cache.html")
+public class AccountNotFoundCacheAdminController {
+
+	private OracleCalendarAccountNotFoundCache notFoundCache;
+
+	/**
+	 * @param notFoundCache the notFoundCache to set
+	 */
+	@Autowired
+	public void setNotFoundCache(OracleCalendarAccountNotFoundCache notFoundCache) {
+		this.notFoundCache = notFoundCache;
+	}
+
+	/**
+	 * 
+	 * @param model
+	 * @return
+	 */
+	@RequestMapping(method=RequestMethod.GET)
+	public String showCacheStatus(ModelMap model) {
+		model.addAttribute("size", notFoundCache.getSize());
+		model.addAttribute("notFoundLookups", notFoundCache.getNotFoundLookups());
+		model.addAttribute("invalidations", notFoundCache.getInvalidations());
+		model.addAttribute("hits", notFoundCache.getHits().entrySet());
+		model.addAttribute("hitPercent", notFoundCache.getHitPercent());
+		return "admin/account-not-found-cache-status";
+	}
+
+	/**
+	 * 
+	 * @param value a username, calendar unique id or email address
+	 * @param model
+	 * @return
+	 */
+	@RequestMapping(method=RequestMethod.POST, params="action=invalidate")
+	public String invalidate(@RequestParam String value, ModelMap model) {
+		model.addAttribute("value", value);
+		model.addAttribute("removed", notFoundCache.invalidate(value.trim()));
+		return "admin/account-not-found-cache-invalidate-complete";
+	}
+
+	/**
+	 * 
+	 * @param model
+	 * @return
+	 */
+	@RequestMapping(method=RequestMethod.POST, params="action=invalidateAll")
+	public String invalidateAll(ModelMap model) {
+		model.addAttribute("removed", notFoundCache.invalidateAll());
+		return "admin/account-not-found-cache-invalidate-complete";
+	}
+}
@@ -0,0 +1,86 @@
+<%--
+
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+
+--%>
+
+<!DOCTYPE html PUBLIC "-//W3C//DTD XHTML 1.0 Strict//EN" "http://www.w3.org/TR/xhtml1/DTD/xhtml1-strict.dtd">
+<%@ include file="/WEB-INF/jsp/includes.jsp" %>
+<html xmlns="http://www.w3.org/1999/xhtml" lang="en">
+<head>
+<title><spring:message code="application.name.admin"/> - Account Not Found Cache</title>
+<%@ include file="/WEB-INF/jsp/themes/jasig/head-elements.jsp" %>
+<script type="text/javascript" src="<c:url value="/js/jquery.lockSubmit.js"/>"></script>
+<script type="text/javascript">
+$(document).ready(function(){
+	$(':submit').lockSubmit();
+});
+</script>
+<style type="text/css">
+.formborder {
+border: 1px solid gray;
+margin: 1em;
+padding: 1em;
+}
+</style>
+
+</head>
+
+<body>
+<%@ include file="/WEB-INF/jsp/themes/jasig/body-start.jsp" %>
+<%@ include file="/WEB-INF/jsp/login-info.jsp" %>
+<div id="content" class="main col">
+
+<div class="info">
+<span>Account lookups that found no account</span>
+<ul>
+<li>${size }&nbsp;keys currently cached</li>
+<li>${notFoundLookups }&nbsp;lookups recorded as not found</li>
+<li>${invalidations }&nbsp;entries invalidated</li>
+<c:forEach items="${hits }" var="hit">
+<li>${hit.key }:&nbsp;${hit.value }&nbsp;lookups answered from the cache (${hitPercent[hit.key] }%)</li>
+</c:forEach>
+</ul>
+</div>
+
+<div id="invalidateForm" class="formborder">
+<c:url var="invalidateUrl" value="account-not-found-cache.html">
+<c:param name="action" value="invalidate"></c:param>
+</c:url>
+<form:form action="${invalidateUrl }" method="post">
+<label for="value">Username, ctcalxitemid or email address:&nbsp;</label> 
+<input type="text" name="value"/><br/>
+Invalidate the cached entries for this account&nbsp;<input type="submit" value="Invalidate"/>
+</form:form>
+</div>
+
+<div id="invalidateAllForm" class="formborder">
+<c:url var="invalidateAllUrl" value="account-not-found-cache.html">
+<c:param name="action" value="invalidateAll"></c:param>
+</c:url>
+<form:form action="${invalidateAllUrl }" method="post"> 
+Invalidate every cached entry&nbsp;<input type="submit" value="Invalidate All"/>
+</form:form>
+</div>
+
+<a href="<c:url value="/admin/index.html"/>">&laquo;<spring:message code="return.to.admin.home"/></a>
+</div> <!--  content -->
+
+<%@ include file="/WEB-INF/jsp/themes/jasig/body-end.jsp" %>
+</body>
+</html>
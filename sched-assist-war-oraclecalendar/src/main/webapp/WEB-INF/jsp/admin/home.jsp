@@ -39,6 +39,7 @@
 <li><a href="<c:url value="schedule-debug.html"/>"><spring:message code="visible.schedule.debug"/></a></li>
 <li><a href="<c:url value="cache-manager.html"/>"><spring:message code="cache.manager"/></a></li>
 <li><a href="<c:url value="oracle-session-pool.html"/>">Oracle Session Pool Manager</a></li>
+<li><a href="<c:url value="account-not-found-cache.html"/>">Account Not Found Cache</a></li>
 </ul>
 <p>Value of 'org.jasig.schedassist.runScheduledTasks' for this instance: ${runScheduledTasks}</p>
 </div> <!--  content -->